@@ -15,11 +15,17 @@
  */
 package org.lastaflute.mixer2;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.List;
 
 import javax.annotation.Resource;
 import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
 
 import org.dbflute.helper.message.ExceptionMessageBuilder;
 import org.dbflute.util.DfReflectionUtil;
@@ -27,8 +33,15 @@ import org.dbflute.util.Srl;
 import org.lastaflute.core.util.ContainerUtil;
 import org.lastaflute.mixer2.exception.Mixer2DynamicHtmlFailureException;
 import org.lastaflute.mixer2.exception.Mixer2ViewInterfaceNotImplementedException;
+import org.lastaflute.mixer2.template.Mixer2StaticFragments;
+import org.lastaflute.mixer2.template.Mixer2StaticFragments.StaticFragmentRendering;
+import org.lastaflute.mixer2.template.Mixer2TemplateCache;
 import org.lastaflute.mixer2.template.Mixer2TemplateReader;
 import org.lastaflute.mixer2.template.Mixer2TemplateReader.LoadedHtml;
+import org.lastaflute.mixer2.template.Mixer2TemplateTransformer;
+import org.lastaflute.mixer2.view.Mixer2FragmentCache;
+import org.lastaflute.mixer2.view.Mixer2FragmentCache.FragmentRendering;
+import org.lastaflute.mixer2.view.Mixer2StreamingTable;
 import org.lastaflute.mixer2.view.Mixer2Supporter;
 import org.lastaflute.mixer2.view.Mixer2View;
 import org.lastaflute.web.path.ActionPathResolver;
@@ -50,17 +63,105 @@ public class Mixer2HtmlRenderer implements HtmlRenderer {
     //                                                                          Definition
     //                                                                          ==========
     private static final Logger logger = LoggerFactory.getLogger(Mixer2HtmlRenderer.class);
+    protected static final String DERIVED_STATIC_FRAGMENTS_KEY = Mixer2StaticFragments.class.getName();
 
     // ===================================================================================
     //                                                                           Attribute
     //                                                                           =========
     protected final Mixer2Engine engine;
+    protected final Mixer2TemplateCache templateCache; // null allowed: no cache
+    protected final Mixer2FragmentCache fragmentCache; // null allowed: no cache
+    protected boolean staticFragmentUsed; // splices serialized text of data-static elements
+    protected boolean staticShared; // shares data-static elements with cached master instead of copying
+    protected boolean wholeHtmlSearch; // searches all tags in body from html by supporter
+    protected boolean deepSearch; // searches also in content of table and head by supporter
+    protected boolean featureSkipped; // skips resolver stages by template features
 
     // ===================================================================================
     //                                                                         Constructor
     //                                                                         ===========
     public Mixer2HtmlRenderer(Mixer2Engine engine) {
+        this(engine, null);
+    }
+
+    /**
+     * @param engine The engine of Mixer2. (NotNull)
+     * @param templateCache The cache of parsed templates shared by renderers. (NullAllowed: if null, parse every time)
+     */
+    public Mixer2HtmlRenderer(Mixer2Engine engine, Mixer2TemplateCache templateCache) {
+        this(engine, templateCache, null);
+    }
+
+    /**
+     * @param engine The engine of Mixer2. (NotNull)
+     * @param templateCache The cache of parsed templates shared by renderers. (NullAllowed: if null, parse every time)
+     * @param fragmentCache The cache of rendered fragments shared by renderers. (NullAllowed: if null, render every time)
+     */
+    public Mixer2HtmlRenderer(Mixer2Engine engine, Mixer2TemplateCache templateCache, Mixer2FragmentCache fragmentCache) {
         this.engine = engine;
+        this.templateCache = templateCache;
+        this.fragmentCache = fragmentCache;
+    }
+
+    // ===================================================================================
+    //                                                                              Option
+    //                                                                              ======
+    /**
+     * Use static fragments, elements marked by data-static attribute are serialized once and spliced later.
+     * @param staticFragmentUsed Does it use static fragments?
+     * @return this. (NotNull)
+     */
+    public Mixer2HtmlRenderer asStaticFragment(boolean staticFragmentUsed) {
+        this.staticFragmentUsed = staticFragmentUsed;
+        return this;
+    }
+
+    /**
+     * Share the elements marked by data-static attribute with cached master instead of deep copy per request. <br>
+     * Views should not change the static elements, or the cached master is broken.
+     * The walkers of supporter skip them, so link URLs and relative paths in them should be resolved at load time
+     * (e.g. load-time transform of style resolver), or the template fails to be loaded.
+     * @param staticShared Does it share static elements?
+     * @return this. (NotNull)
+     */
+    public Mixer2HtmlRenderer asStaticShared(boolean staticShared) {
+        this.staticShared = staticShared;
+        return this;
+    }
+
+    /**
+     * Search all tags in body when the base tag is html, for searchTagList(), findInput() and so on of supporter. <br>
+     * As default (compatible), the search from html is in head and header, footer and script elements in body.
+     * @param wholeHtmlSearch Does it search all tags in body from html?
+     * @return this. (NotNull)
+     */
+    public Mixer2HtmlRenderer asWholeHtmlSearch(boolean wholeHtmlSearch) {
+        this.wholeHtmlSearch = wholeHtmlSearch;
+        return this;
+    }
+
+    /**
+     * Search also in content of table and head (e.g. input in td), for searchTagList(), findInput(), data-errors and so on. <br>
+     * As default (compatible), the content of table and head is not searched.
+     * @param deepSearch Does it search also in content of table and head?
+     * @return this. (NotNull)
+     * @see Mixer2Supporter#asDeepSearch(boolean)
+     */
+    public Mixer2HtmlRenderer asDeepSearch(boolean deepSearch) {
+        this.deepSearch = deepSearch;
+        return this;
+    }
+
+    /**
+     * Skip the resolver stages that the template does not need, e.g. no walk for link URL if template has no @{/...}. <br>
+     * As default (compatible), the stages are not skipped, because tags added by views are not summarized.
+     * @param featureSkipped Does it skip the stages by template features?
+     * @return this. (NotNull)
+     * @see Mixer2Supporter#asFeatureSkipped(boolean)
+     */
+    public Mixer2HtmlRenderer asFeatureSkipped(boolean featureSkipped) {
+        this.featureSkipped = featureSkipped;
+        return this;
     }
 
     // ===================================================================================
@@ -70,13 +171,68 @@ public class Mixer2HtmlRenderer implements HtmlRenderer {
     public void render(RequestManager requestManager, ActionRuntime runtime, NextJourney journey) throws IOException, ServletException {
         final Mixer2View view = extractMixer2View(runtime, journey);
         showRendering(journey, view);
-        final Mixer2TemplateReader reader = new Mixer2TemplateReader(engine, requestManager, runtime);
-        final LoadedHtml loadedHtml = reader.loadHtml(journey.getRoutingPath()).get();
+        final Mixer2TemplateReader reader = createMixer2TemplateReader(requestManager, runtime);
+        final LoadedHtml loadedHtml = loadHtml(reader, journey, view.prepareTemplateTransformer(requestManager));
         final Html html = loadedHtml.getHtml();
-        beDynamic(requestManager, runtime, journey, view, reader, html);
-        final String htmlText = engine.saveToString(html);
-        final String realText = reader.resolveHtmlDef(htmlText, loadedHtml);
-        write(requestManager, realText);
+        final StaticFragmentRendering fragmentRendering = prepareStaticFragment(loadedHtml); // null allowed
+        final Mixer2Supporter supporter = createMixer2Supporter(requestManager, runtime, journey, reader, loadedHtml);
+        beDynamic(runtime, journey, view, html, supporter);
+        final String htmlText = spliceCachedFragment(saveToString(html, fragmentRendering), supporter);
+        if (!supporter.getStreamingTableList().isEmpty()) { // rows are written while iterating
+            writeStreamingTable(requestManager, runtime, journey, view, reader, loadedHtml, htmlText, supporter);
+        } else {
+            final String realText = reader.resolveHtmlDef(htmlText, loadedHtml);
+            write(requestManager, realText);
+        }
+    }
+
+    protected LoadedHtml loadHtml(Mixer2TemplateReader reader, NextJourney journey, Mixer2TemplateTransformer transformer) {
+        final String routingPath = journey.getRoutingPath(); // transformer is null allowed
+        if (staticShared) {
+            return reader.loadStaticSharedHtml(routingPath, transformer).get();
+        } else {
+            return reader.loadHtml(routingPath, transformer).get();
+        }
+    }
+
+    // ===================================================================================
+    //                                                                     Static Fragment
+    //                                                                     ===============
+    protected StaticFragmentRendering prepareStaticFragment(LoadedHtml loadedHtml) {
+        if (!staticFragmentUsed) {
+            return null;
+        }
+        final Mixer2StaticFragments fragments = loadedHtml.deriveFromMaster(DERIVED_STATIC_FRAGMENTS_KEY, master -> {
+            return new Mixer2StaticFragments(master, loadedHtml.newDerivedCharger(), prepareForeignTokenPrefixList()); // charges text
+        });
+        return !fragments.isEmpty() ? fragments.prepare(loadedHtml.getHtml()) : null;
+    }
+
+    protected List<String> prepareForeignTokenPrefixList() { // not captured as static text
+        return Arrays.asList(Mixer2FragmentCache.getTokenPrefix(), Mixer2StreamingTable.getTokenPrefix());
+    }
+
+    protected String saveToString(Html html, StaticFragmentRendering fragmentRendering) {
+        if (fragmentRendering == null) {
+            return engine.saveToString(html);
+        }
+        fragmentRendering.markPending();
+        return fragmentRendering.splice(engine.saveToString(html));
+    }
+
+    // ===================================================================================
+    //                                                                      Fragment Cache
+    //                                                                      ==============
+    protected String spliceCachedFragment(String htmlText, Mixer2Supporter supporter) { // after static fragments
+        final FragmentRendering rendering = supporter.findFragmentRendering(); // null allowed
+        return rendering != null && !rendering.isEmpty() ? rendering.splice(htmlText) : htmlText;
+    }
+
+    // ===================================================================================
+    //                                                                     Template Reader
+    //                                                                     ===============
+    protected Mixer2TemplateReader createMixer2TemplateReader(RequestManager requestManager, ActionRuntime runtime) {
+        return new Mixer2TemplateReader(engine, templateCache, requestManager, runtime);
     }
 
     protected void showRendering(NextJourney journey, Mixer2View view) {
@@ -150,19 +306,20 @@ public class Mixer2HtmlRenderer implements HtmlRenderer {
     // ===================================================================================
     //                                                                        Dynamic HTML
     //                                                                        ============
-    protected void beDynamic(RequestManager requestManager, ActionRuntime runtime, NextJourney journey, Mixer2View view,
-            Mixer2TemplateReader reader, Html html) {
+    protected void beDynamic(ActionRuntime runtime, NextJourney journey, Mixer2View view, Html html, Mixer2Supporter supporter) {
         try {
-            view.beDynamic(html, createMixer2Supporter(requestManager, runtime, journey, reader));
+            view.beDynamic(html, supporter);
         } catch (RuntimeException e) {
             throwMixer2DynamicHtmlFailureException(runtime, journey, view, html, e);
         }
     }
 
     protected Mixer2Supporter createMixer2Supporter(RequestManager requestManager, ActionRuntime runtime, NextJourney journey,
-            Mixer2TemplateReader reader) {
+            Mixer2TemplateReader reader, LoadedHtml loadedHtml) {
         final ActionPathResolver actionPathResolver = ContainerUtil.getComponent(ActionPathResolver.class); // #pending from requestManager
-        return new Mixer2Supporter(engine, requestManager, reader, actionPathResolver);
+        final Mixer2Supporter supporter =
+                new Mixer2Supporter(engine, requestManager, reader, actionPathResolver, loadedHtml, fragmentCache);
+        return supporter.asWholeHtmlSearch(wholeHtmlSearch).asDeepSearch(deepSearch).asFeatureSkipped(featureSkipped);
     }
 
     protected void throwMixer2DynamicHtmlFailureException(ActionRuntime runtime, NextJourney journey, Mixer2View view, Html html,
@@ -188,6 +345,55 @@ public class Mixer2HtmlRenderer implements HtmlRenderer {
         requestManager.getResponseManager().write(htmlText, "text/html", getEncoding());
     }
 
+    protected void writeStreamingTable(RequestManager requestManager, ActionRuntime runtime, NextJourney journey, Mixer2View view,
+            Mixer2TemplateReader reader, LoadedHtml loadedHtml, String htmlText, Mixer2Supporter supporter) throws IOException {
+        final Writer writer = prepareResponseWriter(requestManager);
+        writeStreamingTable(runtime, journey, view, reader, loadedHtml, htmlText, supporter, writer);
+        writer.flush(); // not close, container closes it
+    }
+
+    protected Writer prepareResponseWriter(RequestManager requestManager) throws IOException {
+        final HttpServletResponse response = requestManager.getResponseManager().getResponse();
+        final String encoding = getEncoding();
+        response.setContentType("text/html; charset=" + encoding);
+        return new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), encoding));
+    }
+
+    /**
+     * Write the page text to the writer, and the rows of streaming tables at their placeholders while iterating the entities. <br>
+     * The front text is written before the rows, so the failure in rows is thrown after some of the page is written.
+     */
+    protected void writeStreamingTable(ActionRuntime runtime, NextJourney journey, Mixer2View view, Mixer2TemplateReader reader,
+            LoadedHtml loadedHtml, String htmlText, Mixer2Supporter supporter, Writer writer) throws IOException {
+        int current = 0;
+        boolean defWritten = false;
+        for (Mixer2StreamingTable<?> table : supporter.getStreamingTableList()) { // in registration order
+            final int[] placeholder = table.findPlaceholder(htmlText, current);
+            if (placeholder == null) { // e.g. removed by view
+                continue;
+            }
+            final String front = htmlText.substring(current, placeholder[0]);
+            if (!defWritten) { // html tag is in the first part
+                reader.writeHtmlDef(front, loadedHtml, writer);
+                defWritten = true;
+            } else {
+                writer.write(front);
+            }
+            try {
+                table.writeRows(writer);
+            } catch (RuntimeException e) { // from your row lambda or entities
+                throwMixer2DynamicHtmlFailureException(runtime, journey, view, loadedHtml.getHtml(), e);
+            }
+            current = placeholder[1];
+        }
+        final String rear = htmlText.substring(current);
+        if (!defWritten) {
+            reader.writeHtmlDef(rear, loadedHtml, writer);
+        } else {
+            writer.write(rear);
+        }
+    }
+
     protected String getEncoding() {
         return "UTF-8";
     }
@@ -15,11 +15,24 @@
  */
 package org.lastaflute.mixer2;
 
+import java.util.Collections;
+import java.util.List;
+
+import javax.servlet.ServletContext;
+
+import org.lastaflute.core.util.ContainerUtil;
+import org.lastaflute.mixer2.exception.Mixer2TemplateWarmupFailureException;
+import org.lastaflute.mixer2.template.Mixer2TemplateCache;
+import org.lastaflute.mixer2.template.Mixer2TemplateCache.CacheStatistics;
+import org.lastaflute.mixer2.template.Mixer2TemplateReader;
+import org.lastaflute.mixer2.template.Mixer2TemplateWarmer;
+import org.lastaflute.mixer2.view.Mixer2FragmentCache;
 import org.lastaflute.web.response.HtmlResponse;
 import org.lastaflute.web.ruts.NextJourney;
 import org.lastaflute.web.ruts.process.ActionRuntime;
 import org.lastaflute.web.ruts.renderer.HtmlRenderer;
 import org.lastaflute.web.ruts.renderer.HtmlRenderingProvider;
+import org.lastaflute.web.servlet.request.RequestManager;
 import org.lastaflute.web.util.LaServletContextUtil;
 import org.mixer2.Mixer2Engine;
 
@@ -39,7 +52,14 @@ public class Mixer2RenderingProvider implements HtmlRenderingProvider {
     //                                                                           Attribute
     //                                                                           =========
     protected boolean development;
+    protected boolean staticFragmentUsed;
+    protected boolean staticShared;
+    protected boolean wholeHtmlSearch;
+    protected boolean deepSearch;
+    protected boolean featureSkipped;
     private Mixer2Engine cachedTemplateEngine;
+    private Mixer2TemplateCache cachedTemplateCache;
+    private Mixer2FragmentCache cachedFragmentCache;
 
     // ===================================================================================
     //                                                                              Option
@@ -49,6 +69,46 @@ public class Mixer2RenderingProvider implements HtmlRenderingProvider {
         return this;
     }
 
+    public Mixer2RenderingProvider asStaticFragment(boolean staticFragmentUsed) {
+        this.staticFragmentUsed = staticFragmentUsed;
+        return this;
+    }
+
+    public Mixer2RenderingProvider asStaticShared(boolean staticShared) {
+        this.staticShared = staticShared;
+        return this;
+    }
+
+    /**
+     * @param wholeHtmlSearch Does it search all tags in body from html? (default is compatible scope)
+     * @return this. (NotNull)
+     * @see Mixer2HtmlRenderer#asWholeHtmlSearch(boolean)
+     */
+    public Mixer2RenderingProvider asWholeHtmlSearch(boolean wholeHtmlSearch) {
+        this.wholeHtmlSearch = wholeHtmlSearch;
+        return this;
+    }
+
+    /**
+     * @param deepSearch Does it search also in content of table and head? (default is compatible scope)
+     * @return this. (NotNull)
+     * @see Mixer2HtmlRenderer#asDeepSearch(boolean)
+     */
+    public Mixer2RenderingProvider asDeepSearch(boolean deepSearch) {
+        this.deepSearch = deepSearch;
+        return this;
+    }
+
+    /**
+     * @param featureSkipped Does it skip resolver stages by template features? (default is no skip, compatible)
+     * @return this. (NotNull)
+     * @see Mixer2HtmlRenderer#asFeatureSkipped(boolean)
+     */
+    public Mixer2RenderingProvider asFeatureSkipped(boolean featureSkipped) {
+        this.featureSkipped = featureSkipped;
+        return this;
+    }
+
     // ===================================================================================
     //                                                                             Provide
     //                                                                             =======
@@ -66,7 +126,9 @@ public class Mixer2RenderingProvider implements HtmlRenderingProvider {
     }
 
     protected Mixer2HtmlRenderer createMixer2HtmlRenderer() {
-        return new Mixer2HtmlRenderer(getTemplateEngine());
+        final Mixer2HtmlRenderer renderer = new Mixer2HtmlRenderer(getTemplateEngine(), getTemplateCache(), getFragmentCache());
+        renderer.asStaticFragment(staticFragmentUsed).asStaticShared(staticShared);
+        return renderer.asWholeHtmlSearch(wholeHtmlSearch).asDeepSearch(deepSearch).asFeatureSkipped(featureSkipped);
     }
 
     @Override
@@ -103,6 +165,97 @@ public class Mixer2RenderingProvider implements HtmlRenderingProvider {
     protected void setupTemplateEngine(Mixer2Engine engine) {
     }
 
+    // ===================================================================================
+    //                                                                      Template Cache
+    //                                                                      ==============
+    protected Mixer2TemplateCache getTemplateCache() {
+        if (cachedTemplateCache != null) {
+            return cachedTemplateCache;
+        }
+        synchronized (this) {
+            if (cachedTemplateCache != null) {
+                return cachedTemplateCache;
+            }
+            cachedTemplateCache = createTemplateCache();
+        }
+        return cachedTemplateCache;
+    }
+
+    protected Mixer2TemplateCache createTemplateCache() {
+        return new Mixer2TemplateCache(isTemplateModifiedChecked(), getTemplateCacheMaxWeight()); // cached also in development
+    }
+
+    protected long getTemplateCacheMaxWeight() { // about count of characters in template files
+        return Mixer2TemplateCache.DEFAULT_MAX_WEIGHT;
+    }
+
+    /**
+     * @return The snapshot of template cache statistics, e.g. for logging to size the cache. (NotNull)
+     */
+    public CacheStatistics getTemplateCacheStatistics() {
+        return getTemplateCache().getStatistics();
+    }
+
+    // ===================================================================================
+    //                                                                      Fragment Cache
+    //                                                                      ==============
+    protected Mixer2FragmentCache getFragmentCache() { // null if not cacheable
+        if (!isCacheable()) { // view code should be always run in development
+            return null;
+        }
+        if (cachedFragmentCache != null) {
+            return cachedFragmentCache;
+        }
+        synchronized (this) {
+            if (cachedFragmentCache != null) {
+                return cachedFragmentCache;
+            }
+            cachedFragmentCache = createFragmentCache();
+        }
+        return cachedFragmentCache;
+    }
+
+    protected Mixer2FragmentCache createFragmentCache() {
+        return new Mixer2FragmentCache(getFragmentCacheMaxWeight());
+    }
+
+    protected long getFragmentCacheMaxWeight() { // about count of characters in fragments
+        return Mixer2FragmentCache.DEFAULT_MAX_WEIGHT;
+    }
+
+    // ===================================================================================
+    //                                                                     Template Warmup
+    //                                                                     ===============
+    /**
+     * Parse all templates under the HTML view prefix and cache them, e.g. called by your boot process. <br>
+     * It avoids the first-request cost after deployment, and it fails fast if some templates are broken. <br>
+     * It runs out of action so the reader has no action runtime, and load-time transformers are not applied
+     * (they depend on request e.g. context path), so the transformed templates are made at first request.
+     * @return The count of warmed-up templates.
+     * @throws Mixer2TemplateWarmupFailureException When the templates contain parse failure, containing all failures.
+     */
+    public int warmupTemplates() {
+        final RequestManager requestManager = ContainerUtil.getComponent(RequestManager.class);
+        final Mixer2TemplateReader reader = new Mixer2TemplateReader(getTemplateEngine(), getTemplateCache(), requestManager, null);
+        final ServletContext servletContext = requestManager.getServletContext();
+        return createTemplateWarmer(reader, servletContext).warmup(getWarmupAdditionalPathList());
+    }
+
+    protected Mixer2TemplateWarmer createTemplateWarmer(Mixer2TemplateReader reader, ServletContext servletContext) {
+        return new Mixer2TemplateWarmer(reader, servletContext, getHtmlViewPrefix(), getWarmupThreadCount());
+    }
+
+    protected List<String> getWarmupAdditionalPathList() { // e.g. parts outside view prefix
+        return Collections.emptyList(); // layout under view prefix is already scanned
+    }
+
+    protected int getWarmupThreadCount() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    // ===================================================================================
+    //                                                                        Small Helper
+    //                                                                        ============
     protected String getHtmlViewPrefix() {
         return LaServletContextUtil.getHtmlViewPrefix();
     }
@@ -118,4 +271,8 @@ public class Mixer2RenderingProvider implements HtmlRenderingProvider {
     protected boolean isCacheable() {
         return !development;
     }
+
+    protected boolean isTemplateModifiedChecked() { // parsed again only when source file is modified
+        return !isCacheable();
+    }
 }
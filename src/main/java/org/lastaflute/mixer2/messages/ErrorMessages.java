@@ -17,7 +17,10 @@ package org.lastaflute.mixer2.messages;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.dbflute.util.DfTypeUtil;
@@ -42,6 +45,9 @@ public class ErrorMessages implements Serializable {
     //                                                                           =========
     protected final ActionMessages messages;
     protected final RequestManager requestManager;
+    protected transient ResolvedMessageCache messageCache; // null allowed: lazy-loaded
+    protected transient List<ResolvedMessage> cachedAllList; // null allowed: lazy-loaded
+    protected transient Map<String, List<ResolvedMessage>> cachedPartMap; // null allowed: lazy-loaded
 
     // ===================================================================================
     //                                                                         Constructor
@@ -61,24 +67,50 @@ public class ErrorMessages implements Serializable {
     // ===================================================================================
     //                                                                      Convert Access
     //                                                                      ==============
+    /**
+     * @return The read-only list of all messages, created once and messages are resolved once. (NotNull)
+     */
     public List<ResolvedMessage> getAll() { // e.g. th:each="error : ${errors.all}"
-        List<ResolvedMessage> list = new ArrayList<ResolvedMessage>();
-        messages.accessByFlatIterator().forEachRemaining(message -> {
-            list.add(createResolvedMessage(message));
-        });
-        return list;
+        if (cachedAllList == null) {
+            List<ResolvedMessage> list = new ArrayList<ResolvedMessage>();
+            messages.accessByFlatIterator().forEachRemaining(message -> {
+                list.add(createResolvedMessage(message));
+            });
+            cachedAllList = Collections.unmodifiableList(list);
+        }
+        return cachedAllList;
     }
 
+    /**
+     * @param property The name of property for the messages. (NotNull)
+     * @return The read-only list of messages of the property, created once per property. (NotNull)
+     */
     public List<ResolvedMessage> part(String property) { // e.g. th:each="error : ${errors.part('seaName')}"
-        List<ResolvedMessage> list = new ArrayList<ResolvedMessage>();
-        messages.accessByIteratorOf(property).forEachRemaining(message -> {
-            list.add(createResolvedMessage(message));
+        if (cachedPartMap == null) {
+            cachedPartMap = new HashMap<String, List<ResolvedMessage>>(); // one request uses one thread
+        }
+        return cachedPartMap.computeIfAbsent(property, key -> {
+            List<ResolvedMessage> list = new ArrayList<ResolvedMessage>();
+            messages.accessByIteratorOf(property).forEachRemaining(message -> {
+                list.add(createResolvedMessage(message));
+            });
+            return Collections.unmodifiableList(list);
         });
-        return list;
     }
 
     protected ResolvedMessage createResolvedMessage(ActionMessage message) {
-        return new ResolvedMessage(message, requestManager);
+        return new ResolvedMessage(message, requestManager, getMessageCache());
+    }
+
+    protected ResolvedMessageCache getMessageCache() { // shared by messages of this instance
+        if (messageCache == null) {
+            messageCache = createResolvedMessageCache();
+        }
+        return messageCache;
+    }
+
+    protected ResolvedMessageCache createResolvedMessageCache() {
+        return new ResolvedMessageCache(requestManager);
     }
 
     // ===================================================================================
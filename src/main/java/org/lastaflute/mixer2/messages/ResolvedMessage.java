@@ -38,13 +38,25 @@ public class ResolvedMessage implements Serializable {
     //                                                                           =========
     protected final ActionMessage message;
     protected final RequestManager requestManager;
+    protected final transient ResolvedMessageCache messageCache; // null allowed: not shared with other messages
+    protected transient String resolvedMessage; // null allowed: lazy-loaded
 
     // ===================================================================================
     //                                                                         Constructor
     //                                                                         ===========
     public ResolvedMessage(ActionMessage origin, RequestManager requestManager) {
+        this(origin, requestManager, null);
+    }
+
+    /**
+     * @param origin The original message. (NotNull)
+     * @param requestManager The manager of request. (NotNull)
+     * @param messageCache The cache of resolved messages shared in the request. (NullAllowed: resolved by itself)
+     */
+    public ResolvedMessage(ActionMessage origin, RequestManager requestManager, ResolvedMessageCache messageCache) {
         this.message = origin;
         this.requestManager = requestManager;
+        this.messageCache = messageCache;
     }
 
     // ===================================================================================
@@ -54,7 +66,17 @@ public class ResolvedMessage implements Serializable {
      * @return The resolved message about message resources. (NotNull)
      */
     public String getMessage() { // called by thymeleaf templates e.g. th:text="${er.message}"
+        if (resolvedMessage == null) { // resolved only once
+            resolvedMessage = resolveMessage();
+        }
+        return resolvedMessage;
+    }
+
+    protected String resolveMessage() {
         if (message.isResource()) {
+            if (messageCache != null) {
+                return messageCache.resolve(message.getKey());
+            }
             final Locale locale = requestManager.getUserLocale();
             final MessageManager messageManager = requestManager.getMessageManager();
             return messageManager.getMessage(locale, message.getKey());
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2015-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.lastaflute.mixer2.messages;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.lastaflute.core.direction.FwAssistantDirector;
+import org.lastaflute.core.message.MessageManager;
+import org.lastaflute.core.util.ContainerUtil;
+import org.lastaflute.web.servlet.request.RequestManager;
+
+/**
+ * The cache of messages resolved from message resources, created per request. <br>
+ * Each message key is resolved at most once in the request (memo),
+ * and the resolved messages are shared per message manager instance by locale and key except development,
+ * where the message manager should read the resources again when they are modified,
+ * which is determined once per message manager when its shared messages are prepared. <br>
+ * The shared messages of old manager are released when the manager is recreated e.g. by hot deploy.
+ * @author jflute
+ */
+public class ResolvedMessageCache {
+
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    protected static final int SHARED_CACHE_LIMIT = 4096; // not cached over the limit (keys are not so many)
+    protected static final Map<MessageManager, SharedMessages> sharedMessageMap =
+            Collections.synchronizedMap(new WeakHashMap<MessageManager, SharedMessages>()); // weak key
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    protected final RequestManager requestManager;
+    protected Locale locale; // null allowed: lazy-loaded
+    protected MessageManager messageManager; // null allowed: lazy-loaded
+    protected final Map<String, String> memoMap = new HashMap<String, String>(); // one request uses one thread
+
+    // ===================================================================================
+    //                                                                         Constructor
+    //                                                                         ===========
+    /**
+     * @param requestManager The manager of request to get locale and message manager. (NotNull)
+     */
+    public ResolvedMessageCache(RequestManager requestManager) {
+        if (requestManager == null) {
+            throw new IllegalArgumentException("The argument 'requestManager' should not be null.");
+        }
+        this.requestManager = requestManager;
+    }
+
+    // ===================================================================================
+    //                                                                             Resolve
+    //                                                                             =======
+    /**
+     * @param key The key of message resource e.g. errors.required (NotNull)
+     * @return The resolved message by the user locale of the request. (NotNull)
+     */
+    public String resolve(String key) {
+        final String memo = memoMap.get(key);
+        if (memo != null) {
+            return memo;
+        }
+        final String resolved = resolveShared(key);
+        memoMap.put(key, resolved);
+        return resolved;
+    }
+
+    protected String resolveShared(String key) {
+        final SharedMessages sharedMessages = findSharedMessages();
+        if (!sharedMessages.isEnabled()) { // e.g. development
+            return resolveByManager(key);
+        }
+        final Map<MessageCacheKey, String> managerMessageMap = sharedMessages.getMessageMap();
+        final MessageCacheKey cacheKey = new MessageCacheKey(getLocale(), key);
+        final String cached = managerMessageMap.get(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+        final String resolved = resolveByManager(key);
+        if (resolved != null && managerMessageMap.size() < SHARED_CACHE_LIMIT) {
+            managerMessageMap.put(cacheKey, resolved);
+        }
+        return resolved;
+    }
+
+    protected SharedMessages findSharedMessages() { // per manager, not shared with other applications
+        return sharedMessageMap.computeIfAbsent(getMessageManager(), manager -> new SharedMessages(isSharedCacheEnabled()));
+    }
+
+    protected String resolveByManager(String key) {
+        return getMessageManager().getMessage(getLocale(), key);
+    }
+
+    protected Locale getLocale() {
+        if (locale == null) {
+            locale = requestManager.getUserLocale();
+        }
+        return locale;
+    }
+
+    protected MessageManager getMessageManager() {
+        if (messageManager == null) {
+            messageManager = requestManager.getMessageManager();
+        }
+        return messageManager;
+    }
+
+    // ===================================================================================
+    //                                                                        Shared Cache
+    //                                                                        ============
+    protected boolean isSharedCacheEnabled() { // called once per message manager
+        return !isDevelopmentHere(); // messages may be modified in development
+    }
+
+    protected boolean isDevelopmentHere() { // #pending quit getComponent()
+        return ContainerUtil.getComponent(FwAssistantDirector.class).assistCoreDirection().isDevelopmentHere();
+    }
+
+    /**
+     * Clear the shared messages of all managers, e.g. when message resources are deployed without restart.
+     */
+    public static void clearSharedCache() {
+        sharedMessageMap.clear();
+    }
+
+    protected static class SharedMessages {
+
+        protected final boolean enabled; // false: not cached, e.g. development
+        protected final Map<MessageCacheKey, String> messageMap = new ConcurrentHashMap<MessageCacheKey, String>();
+
+        public SharedMessages(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public Map<MessageCacheKey, String> getMessageMap() {
+            return messageMap;
+        }
+    }
+
+    // ===================================================================================
+    //                                                                           Cache Key
+    //                                                                           =========
+    protected static class MessageCacheKey {
+
+        protected final Locale locale; // null allowed: no locale
+        protected final String key;
+
+        public MessageCacheKey(Locale locale, String key) {
+            this.locale = locale;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof MessageCacheKey)) {
+                return false;
+            }
+            final MessageCacheKey other = (MessageCacheKey) obj;
+            return key.equals(other.key) && (locale != null ? locale.equals(other.locale) : other.locale == null);
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() * 31 + (locale != null ? locale.hashCode() : 0);
+        }
+    }
+
+    // ===================================================================================
+    //                                                                      Basic Override
+    //                                                                      ==============
+    @Override
+    public String toString() {
+        return "resolvedMessageCache:{locale=" + locale + ", memo=" + memoMap.size() + "}";
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2015-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.lastaflute.mixer2.template;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+
+import org.lastaflute.mixer2.template.Mixer2TemplateCache.WeightedDerived;
+import org.lastaflute.mixer2.util.Mixer2TagUtil;
+import org.mixer2.jaxb.xhtml.Html;
+import org.mixer2.xhtml.AbstractJaxb;
+
+/**
+ * The index of data attributes in template, built once from master HTML when the template is loaded. <br>
+ * The index has paths of tags (not tags themselves) so it can be used for HTML copied from the master.
+ * The tags added by views are not indexed, and if the indexed tag is moved by views,
+ * the lookup returns null so the caller should search by walking the tree.
+ * The index without deep does not have tags in content of table and head, as searchTagList() of old versions.
+ * @author jflute
+ */
+public class Mixer2DataIndex implements WeightedDerived {
+
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    protected static final String DATA_ATTR_PREFIX = "data-";
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    /** The map of data key (e.g. errors for data-errors) to paths of tags from HTML, in document order. (NotNull) */
+    protected final Map<String, List<int[]>> dataPathMap;
+
+    /** Does the index have tags in content of table and head? */
+    protected final boolean deepIncluded;
+
+    // ===================================================================================
+    //                                                                         Constructor
+    //                                                                         ===========
+    /**
+     * @param masterHtml The master HTML of template, only read. (NotNull)
+     */
+    public Mixer2DataIndex(Html masterHtml) {
+        this(masterHtml, true);
+    }
+
+    /**
+     * @param masterHtml The master HTML of template, only read. (NotNull)
+     * @param deepIncluded Does the index have tags in content of table and head? (false: compatible search scope)
+     */
+    public Mixer2DataIndex(Html masterHtml, boolean deepIncluded) {
+        this.deepIncluded = deepIncluded;
+        final Map<String, List<int[]>> dataPathMap = new HashMap<String, List<int[]>>();
+        indexData(masterHtml, new ArrayList<Integer>(), dataPathMap);
+        this.dataPathMap = Collections.unmodifiableMap(dataPathMap);
+    }
+
+    protected void indexData(Object element, List<Integer> pathList, Map<String, List<int[]>> dataPathMap) {
+        if (!(element instanceof AbstractJaxb)) {
+            return;
+        }
+        final AbstractJaxb tag = (AbstractJaxb) element;
+        final Map<QName, String> attributeMap = tag.getOtherAttributes(); // data attributes are here
+        if (attributeMap != null && !attributeMap.isEmpty()) {
+            int[] path = null; // lazy
+            for (QName attributeName : attributeMap.keySet()) {
+                final String localPart = attributeName.getLocalPart();
+                if (localPart.startsWith(DATA_ATTR_PREFIX)) {
+                    if (path == null) {
+                        path = Mixer2TagUtil.toPathArray(pathList);
+                    }
+                    final String dataKey = localPart.substring(DATA_ATTR_PREFIX.length());
+                    dataPathMap.computeIfAbsent(dataKey, key -> new ArrayList<int[]>()).add(path);
+                }
+            }
+        }
+        if (!deepIncluded && Mixer2TagUtil.isDeepChildHolder(tag)) {
+            return;
+        }
+        final List<?> childList = Mixer2TagUtil.findChildList(tag);
+        if (childList == null) {
+            return;
+        }
+        for (int i = 0; i < childList.size(); i++) {
+            pathList.add(i);
+            indexData(childList.get(i), pathList, dataPathMap);
+            pathList.remove(pathList.size() - 1);
+        }
+    }
+
+    // ===================================================================================
+    //                                                                              Lookup
+    //                                                                              ======
+    /**
+     * @param html The HTML copied from the master of this index. (NotNull)
+     * @param dataKey The key of data attribute e.g. errors for data-errors. (NotNull)
+     * @return The list of tags that have the data attribute in document order.
+     * (NullAllowed: when the indexed tags are moved by views, so walk the tree, EmptyAllowed: not found in template)
+     */
+    public List<AbstractJaxb> findTagList(Html html, String dataKey) {
+        final List<int[]> pathList = dataPathMap.get(dataKey);
+        if (pathList == null) {
+            return Collections.emptyList();
+        }
+        final List<AbstractJaxb> tagList = new ArrayList<AbstractJaxb>(pathList.size());
+        for (int[] path : pathList) {
+            final Object found = Mixer2TagUtil.findByPath(html, path);
+            if (!(found instanceof AbstractJaxb) || ((AbstractJaxb) found).getData(dataKey) == null) { // moved
+                return null;
+            }
+            tagList.add((AbstractJaxb) found);
+        }
+        return tagList;
+    }
+
+    /**
+     * @param dataKey The key of data attribute e.g. errors for data-errors. (NotNull)
+     * @return Does the template have the data attribute? (false means no tag in template, except tags added by views)
+     */
+    public boolean hasData(String dataKey) {
+        return dataPathMap.containsKey(dataKey);
+    }
+
+    public Set<String> getDataKeySet() {
+        return dataPathMap.keySet();
+    }
+
+    @Override
+    public long estimateWeight() {
+        long weight = 0;
+        for (Entry<String, List<int[]>> entry : dataPathMap.entrySet()) {
+            weight += entry.getKey().length();
+            for (int[] path : entry.getValue()) {
+                weight += path.length * 2; // int is two characters
+            }
+        }
+        return weight;
+    }
+
+    // ===================================================================================
+    //                                                                      Basic Override
+    //                                                                      ==============
+    @Override
+    public String toString() {
+        return "dataIndex:{" + dataPathMap.keySet() + (deepIncluded ? ", deep" : "") + "}";
+    }
+}
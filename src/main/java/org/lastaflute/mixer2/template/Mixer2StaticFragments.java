@@ -0,0 +1,398 @@
+/*
+ * Copyright 2015-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.lastaflute.mixer2.template;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongConsumer;
+
+import org.dbflute.helper.message.ExceptionMessageBuilder;
+import org.lastaflute.mixer2.exception.Mixer2StaticFragmentDynamicDataException;
+import org.lastaflute.mixer2.util.Mixer2TagUtil;
+import org.mixer2.jaxb.xhtml.Html;
+import org.mixer2.jaxb.xhtml.Optgroup;
+import org.mixer2.xhtml.AbstractJaxb;
+
+/**
+ * The serialized fragments of static elements in a template, marked by data-static attribute. <br>
+ * The static element is serialized at the first rendering that does not change it from the master,
+ * and the text is spliced at later renderings instead of saving the element by engine. <br>
+ * If a view changes the static element (e.g. text, class, data attribute, child elements), it is not captured
+ * and saved by engine as normal element. The typed attributes (e.g. href) are not compared because
+ * they are resolved by rendering (e.g. context path) and the first resolved value is kept. <br>
+ * The static elements cannot contain per-request data attributes (data-cls, data-errors, data-cache)
+ * because the first text would be spliced for all requests. The resolved link URL (with context path) is kept,
+ * it is same in the application.
+ * <pre>
+ * &lt;nav data-static="globalNavi"&gt; // e.g. large menu that is same in all requests
+ *     ...
+ * &lt;/nav&gt;
+ * </pre>
+ * @author jflute
+ */
+public class Mixer2StaticFragments {
+
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    /** The key of data attribute to mark static element, e.g. data-static="globalNavi". */
+    public static final String STATIC_DATA_KEY = "static";
+
+    /** The prefix of token in saved HTML text, random per JVM to avoid conflict with real text. */
+    protected static final String TOKEN_PREFIX = "mixer2static" + Long.toHexString(new SecureRandom().nextLong() & Long.MAX_VALUE);
+
+    protected static final char PLACE_KIND = 'P'; // placeholder of cached fragment
+    protected static final char BEGIN_KIND = 'B'; // beginning of pending fragment
+    protected static final char END_KIND = 'E'; // end of pending fragment
+    protected static final char TOKEN_TERMINATOR = '.';
+
+    /** The list of data keys resolved per request, not allowed in static element. */
+    protected static final List<String> DYNAMIC_DATA_KEY_LIST = Collections.unmodifiableList(Arrays.asList("cls", "errors", "cache"));
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    protected final List<AbstractJaxb> masterStaticList; // to compare with rendering, only read
+    protected final int staticCount; // in master
+    protected final Map<Integer, String> fragmentMap = new ConcurrentHashMap<Integer, String>(); // key is index
+    protected final LongConsumer weightCharger; // null allowed: not charged
+    protected final List<String> foreignTokenPrefixList; // e.g. fragment cache, streaming table
+
+    // ===================================================================================
+    //                                                                         Constructor
+    //                                                                         ===========
+    /**
+     * @param masterHtml The master HTML of template, only read. (NotNull)
+     */
+    public Mixer2StaticFragments(Html masterHtml) {
+        this(masterHtml, null);
+    }
+
+    /**
+     * @param masterHtml The master HTML of template, only read. (NotNull)
+     * @param weightCharger The callback to charge the length of captured text e.g. to template cache. (NullAllowed)
+     */
+    public Mixer2StaticFragments(Html masterHtml, LongConsumer weightCharger) {
+        this(masterHtml, weightCharger, Collections.emptyList());
+    }
+
+    /**
+     * @param masterHtml The master HTML of template, only read. (NotNull)
+     * @param weightCharger The callback to charge the length of captured text e.g. to template cache. (NullAllowed)
+     * @param foreignTokenPrefixList The list of token prefix by other renderings, not captured as static text. (NotNull)
+     */
+    public Mixer2StaticFragments(Html masterHtml, LongConsumer weightCharger, List<String> foreignTokenPrefixList) {
+        this.weightCharger = weightCharger;
+        this.foreignTokenPrefixList = foreignTokenPrefixList;
+        final List<StaticPlace> placeList = new ArrayList<StaticPlace>();
+        collectStaticPlace(masterHtml, null, placeList);
+        final List<AbstractJaxb> masterStaticList = new ArrayList<AbstractJaxb>(placeList.size());
+        for (StaticPlace place : placeList) {
+            checkDynamicData(place.tag, place.tag); // also for shared static
+            masterStaticList.add(place.tag);
+        }
+        this.masterStaticList = Collections.unmodifiableList(masterStaticList);
+        this.staticCount = placeList.size();
+    }
+
+    protected static void checkDynamicData(AbstractJaxb staticTag, Object element) {
+        if (!(element instanceof AbstractJaxb)) {
+            return;
+        }
+        final AbstractJaxb tag = (AbstractJaxb) element;
+        for (String dataKey : DYNAMIC_DATA_KEY_LIST) {
+            if (tag.getData(dataKey) != null) {
+                throwMixer2StaticFragmentDynamicDataException(staticTag, tag, dataKey);
+            }
+        }
+        final List<?> childList = tag instanceof Optgroup ? ((Optgroup) tag).getOption() : Mixer2TagUtil.findChildList(tag);
+        if (childList != null) {
+            for (Object child : childList) {
+                checkDynamicData(staticTag, child);
+            }
+        }
+    }
+
+    protected static void throwMixer2StaticFragmentDynamicDataException(AbstractJaxb staticTag, AbstractJaxb dynamicTag,
+            String dataKey) {
+        final ExceptionMessageBuilder br = new ExceptionMessageBuilder();
+        br.addNotice("The static element has the data resolved per request.");
+        br.addItem("Advice");
+        br.addElement("The static element is serialized once and spliced for all requests,");
+        br.addElement("so it cannot contain data-cls, data-errors, data-cache. e.g.");
+        br.addElement("  (x):");
+        br.addElement("    <nav data-static=\"globalNavi\">");
+        br.addElement("        <select><option data-cls=\"MemberStatus\"/></select> // *Bad");
+        br.addElement("    </nav>");
+        br.addElement("  (o):");
+        br.addElement("    <nav data-static=\"globalNavi\">");
+        br.addElement("        ...");
+        br.addElement("    </nav>");
+        br.addElement("    <select><option data-cls=\"MemberStatus\"/></select> // Good");
+        br.addItem("Static Element");
+        br.addElement("data-static=\"" + staticTag.getData(STATIC_DATA_KEY) + "\"");
+        br.addItem("Dynamic Data");
+        br.addElement("data-" + dataKey + "=\"" + dynamicTag.getData(dataKey) + "\"");
+        br.addElement(dynamicTag.getClass().getSimpleName() + " id=" + dynamicTag.getId());
+        final String msg = br.buildExceptionMessage();
+        throw new Mixer2StaticFragmentDynamicDataException(msg);
+    }
+
+    // ===================================================================================
+    //                                                                           Rendering
+    //                                                                           =========
+    public boolean isEmpty() {
+        return staticCount == 0;
+    }
+
+    /**
+     * Prepare rendering for the HTML before it becomes dynamic. <br>
+     * The static elements that have been already serialized are replaced with placeholders here.
+     * @param html The HTML copied from master, not modified yet. (NotNull)
+     * @return The rendering of static fragments for the HTML. (NotNull)
+     */
+    public StaticFragmentRendering prepare(Html html) {
+        final List<StaticPlace> placeList = new ArrayList<StaticPlace>(staticCount);
+        collectStaticPlace(html, null, placeList);
+        final List<StaticPlace> pendingList = new ArrayList<StaticPlace>();
+        if (placeList.size() == staticCount) { // basically true, same structure as master
+            for (int index = 0; index < placeList.size(); index++) {
+                final StaticPlace place = placeList.get(index);
+                if (fragmentMap.containsKey(index)) {
+                    place.replaceWith(buildToken(PLACE_KIND, index));
+                } else {
+                    pendingList.add(place.withIndex(index));
+                }
+            }
+        }
+        return new StaticFragmentRendering(pendingList);
+    }
+
+    protected static void collectStaticPlace(Object element, List<Object> parentContent, List<StaticPlace> placeList) {
+        collectStaticPlace(element, parentContent, new ArrayList<Integer>(), placeList);
+    }
+
+    protected static void collectStaticPlace(Object element, List<Object> parentContent, List<Integer> pathList,
+            List<StaticPlace> placeList) {
+        if (!(element instanceof AbstractJaxb)) {
+            return;
+        }
+        final AbstractJaxb tag = (AbstractJaxb) element;
+        if (parentContent != null && tag.getData(STATIC_DATA_KEY) != null) { // outermost only
+            placeList.add(new StaticPlace(parentContent, tag, Mixer2TagUtil.toPathArray(pathList)));
+            return;
+        }
+        final List<?> childList = Mixer2TagUtil.findChildList(tag);
+        if (childList == null) {
+            return;
+        }
+        // nested list (e.g. li of ul) cannot be replaced with text, so only search inside
+        @SuppressWarnings("unchecked")
+        final List<Object> content = Mixer2TagUtil.isContentHolder(tag) ? (List<Object>) childList : null;
+        for (int i = 0; i < childList.size(); i++) {
+            pathList.add(i);
+            collectStaticPlace(childList.get(i), content, pathList, placeList);
+            pathList.remove(pathList.size() - 1);
+        }
+    }
+
+    protected String buildToken(char kind, int index) {
+        return TOKEN_PREFIX + kind + index + TOKEN_TERMINATOR;
+    }
+
+    protected boolean isForeignTokenIncluded(String fragment) { // e.g. cached fragment in static element by view
+        for (String tokenPrefix : foreignTokenPrefixList) {
+            if (fragment.contains(tokenPrefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ===================================================================================
+    //                                                                     Master Compare
+    //                                                                     ==============
+    /**
+     * @param master The element in master HTML. (NullAllowed)
+     * @param rendered The element in HTML of rendering, after view. (NullAllowed)
+     * @return Is the rendered element same as the master? (except typed attributes e.g. href)
+     */
+    protected static boolean isSameAsMaster(Object master, Object rendered) {
+        if (master == rendered) { // e.g. shared static
+            return true;
+        }
+        if (master == null || rendered == null || master.getClass() != rendered.getClass()) {
+            return false;
+        }
+        if (!(master instanceof AbstractJaxb)) {
+            return !(master instanceof String) || master.equals(rendered); // other types e.g. JAXB element by class
+        }
+        final AbstractJaxb masterTag = (AbstractJaxb) master;
+        final AbstractJaxb renderedTag = (AbstractJaxb) rendered;
+        if (!Objects.equals(masterTag.getId(), renderedTag.getId())
+                || !Objects.equals(masterTag.getCssClass(), renderedTag.getCssClass())
+                || !Objects.equals(masterTag.getOtherAttributes(), renderedTag.getOtherAttributes())) { // e.g. data attributes
+            return false;
+        }
+        final List<?> masterList = findCompareChildList(masterTag);
+        final List<?> renderedList = findCompareChildList(renderedTag);
+        if (masterList == null || renderedList == null) {
+            return masterList == renderedList;
+        }
+        if (masterList.size() != renderedList.size()) {
+            return false;
+        }
+        for (int i = 0; i < masterList.size(); i++) {
+            if (!isSameAsMaster(masterList.get(i), renderedList.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected static List<?> findCompareChildList(AbstractJaxb tag) {
+        return tag instanceof Optgroup ? ((Optgroup) tag).getOption() : Mixer2TagUtil.findChildList(tag);
+    }
+
+    // ===================================================================================
+    //                                                                        Static Place
+    //                                                                        ============
+    protected static class StaticPlace {
+
+        protected final List<Object> parentContent;
+        protected final AbstractJaxb tag;
+        protected final int[] path; // indexes of child list from root HTML
+        protected int index;
+
+        public StaticPlace(List<Object> parentContent, AbstractJaxb tag, int[] path) {
+            this.parentContent = parentContent;
+            this.tag = tag;
+            this.path = path;
+        }
+
+        public StaticPlace withIndex(int index) {
+            this.index = index;
+            return this;
+        }
+
+        public void replaceWith(String token) {
+            final int position = indexOfTag();
+            if (position >= 0) {
+                parentContent.set(position, token);
+            }
+        }
+
+        public void surroundWith(String beginToken, String endToken) {
+            final int position = indexOfTag();
+            if (position >= 0) { // may be removed by view
+                parentContent.add(position + 1, endToken);
+                parentContent.add(position, beginToken);
+            }
+        }
+
+        protected int indexOfTag() { // by identity, tag may not implement equals()
+            for (int i = 0; i < parentContent.size(); i++) {
+                if (parentContent.get(i) == tag) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    // ===================================================================================
+    //                                                                  Fragment Rendering
+    //                                                                  ==================
+    /**
+     * The rendering of static fragments for one request.
+     */
+    public class StaticFragmentRendering {
+
+        protected final List<StaticPlace> pendingList; // not serialized yet
+
+        public StaticFragmentRendering(List<StaticPlace> pendingList) {
+            this.pendingList = pendingList;
+        }
+
+        /**
+         * Mark the pending static elements to extract their text from saved HTML, after the HTML becomes dynamic. <br>
+         * The elements changed by view from the master are not marked, so captured at later rendering.
+         */
+        public void markPending() {
+            for (StaticPlace place : pendingList) {
+                if (isSameAsMaster(masterStaticList.get(place.index), place.tag)) {
+                    place.surroundWith(buildToken(BEGIN_KIND, place.index), buildToken(END_KIND, place.index));
+                }
+            }
+        }
+
+        /**
+         * Splice the cached fragments into placeholders and extract the pending fragments, in one scan.
+         * @param htmlText The HTML text saved by engine. (NotNull)
+         * @return The HTML text without tokens. (NotNull)
+         */
+        public String splice(String htmlText) {
+            int current = htmlText.indexOf(TOKEN_PREFIX);
+            if (current < 0) {
+                return htmlText;
+            }
+            final StringBuilder sb = new StringBuilder(htmlText.length() + 1024);
+            final Map<Integer, Integer> beginMap = new HashMap<Integer, Integer>();
+            int previous = 0;
+            while (current >= 0) {
+                sb.append(htmlText, previous, current);
+                final int kindIndex = current + TOKEN_PREFIX.length();
+                final int terminatorIndex = htmlText.indexOf(TOKEN_TERMINATOR, kindIndex);
+                final char kind = htmlText.charAt(kindIndex);
+                final Integer index = Integer.valueOf(htmlText.substring(kindIndex + 1, terminatorIndex));
+                if (kind == PLACE_KIND) {
+                    sb.append(fragmentMap.get(index));
+                } else if (kind == BEGIN_KIND) {
+                    beginMap.put(index, sb.length());
+                } else if (kind == END_KIND) {
+                    final Integer begin = beginMap.get(index);
+                    if (begin != null) {
+                        final String fragment = sb.substring(begin);
+                        if (!isForeignTokenIncluded(fragment)) { // e.g. cached fragment in static element by view
+                            if (fragmentMap.putIfAbsent(index, fragment) == null && weightCharger != null) {
+                                weightCharger.accept(fragment.length());
+                            }
+                        }
+                    }
+                }
+                previous = terminatorIndex + 1;
+                current = htmlText.indexOf(TOKEN_PREFIX, previous);
+            }
+            sb.append(htmlText, previous, htmlText.length());
+            return sb.toString();
+        }
+    }
+
+    // ===================================================================================
+    //                                                                      Basic Override
+    //                                                                      ==============
+    @Override
+    public String toString() {
+        return "staticFragments:{static=" + staticCount + ", serialized=" + fragmentMap.size() + "}";
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2015-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.lastaflute.mixer2.template;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dbflute.helper.message.ExceptionMessageBuilder;
+import org.lastaflute.mixer2.exception.Mixer2StaticFragmentDynamicDataException;
+import org.lastaflute.mixer2.template.Mixer2StaticFragments.StaticPlace;
+import org.lastaflute.mixer2.util.Mixer2TagUtil;
+import org.mixer2.jaxb.xhtml.Html;
+import org.mixer2.xhtml.AbstractJaxb;
+
+/**
+ * The copier of template HTML that shares static elements (marked by data-static attribute) with master. <br>
+ * Only the skeleton (master without static elements) is deep-copied per request,
+ * and the static elements of master are put into the copied skeleton as they are. <br>
+ * So views should not change (and should not find) the static elements, or the master is broken. <br>
+ * The walkers of supporter (e.g. pipeline, URL rewriter) skip the shared elements, so they cannot have data resolved
+ * per request (data-cls, data-errors, data-cache) and URL resolved per request (link URL @{/...}, relative path),
+ * which should be resolved by load-time transform e.g. useLoadTimeTransform() of style resolver.
+ * @author jflute
+ */
+public class Mixer2StaticSharedCopier {
+
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    protected static final String MARKER_PREFIX = "mixer2shared:";
+    protected static final String LINK_URL_MARK = "@{/"; // same as supporter
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    protected final Html skeletonHtml; // read-only, static elements are replaced with markers
+    protected final List<StaticPlace> masterPlaceList; // to share elements of master
+
+    // ===================================================================================
+    //                                                                         Constructor
+    //                                                                         ===========
+    /**
+     * @param masterHtml The master HTML of template (transformed at load time if needed), only read. (NotNull)
+     * @throws Mixer2StaticFragmentDynamicDataException When the static element has data or URL resolved per request.
+     */
+    public Mixer2StaticSharedCopier(Html masterHtml) {
+        final List<StaticPlace> placeList = new ArrayList<StaticPlace>();
+        Mixer2StaticFragments.collectStaticPlace(masterHtml, null, placeList);
+        for (StaticPlace place : placeList) {
+            Mixer2StaticFragments.checkDynamicData(place.tag, place.tag);
+            checkRequestUrl(place.tag, place.tag);
+        }
+        this.masterPlaceList = placeList;
+        this.skeletonHtml = placeList.isEmpty() ? masterHtml : buildSkeleton(masterHtml, placeList);
+    }
+
+    protected void checkRequestUrl(AbstractJaxb staticTag, Object element) {
+        if (!(element instanceof AbstractJaxb)) {
+            return;
+        }
+        final AbstractJaxb tag = (AbstractJaxb) element;
+        if (Mixer2TagUtil.hasUrlAttribute(tag)) {
+            final String url = Mixer2TagUtil.findUrl(tag);
+            if (url != null && (url.contains(LINK_URL_MARK) || url.startsWith("."))) { // not transformed
+                throwMixer2StaticSharedRequestUrlException(staticTag, tag, url);
+            }
+        }
+        final List<?> childList = Mixer2TagUtil.findChildList(tag);
+        if (childList != null) {
+            for (Object child : childList) {
+                checkRequestUrl(staticTag, child);
+            }
+        }
+    }
+
+    protected void throwMixer2StaticSharedRequestUrlException(AbstractJaxb staticTag, AbstractJaxb urlTag, String url) {
+        final ExceptionMessageBuilder br = new ExceptionMessageBuilder();
+        br.addNotice("The shared static element has the URL resolved per request.");
+        br.addItem("Advice");
+        br.addElement("The static element shared with cached master is not rewritten per request,");
+        br.addElement("so link URL (@{/...}) and relative path should not be in it.");
+        br.addElement("Use absolute path, or rewrite it at load time. e.g. style resolver:");
+        br.addElement("  (o):");
+        br.addElement("    resolver.useLoadTimeTransform(); // relative CSS/JS paths are rewritten in master");
+        br.addElement("Or don't share static elements (asStaticShared(false)).");
+        br.addItem("Static Element");
+        br.addElement("data-static=\"" + staticTag.getData(Mixer2StaticFragments.STATIC_DATA_KEY) + "\"");
+        br.addItem("URL");
+        br.addElement(url);
+        br.addElement(urlTag.getClass().getSimpleName() + " id=" + urlTag.getId());
+        final String msg = br.buildExceptionMessage();
+        throw new Mixer2StaticFragmentDynamicDataException(msg);
+    }
+
+    // ===================================================================================
+    //                                                                            Skeleton
+    //                                                                            ========
+    protected Html buildSkeleton(Html masterHtml, List<StaticPlace> placeList) {
+        final Html skeleton = masterHtml.copy(Html.class);
+        for (int index = 0; index < placeList.size(); index++) {
+            final int[] path = placeList.get(index).path;
+            findParentContent(skeleton, path).set(path[path.length - 1], buildMarker(index));
+        }
+        return skeleton;
+    }
+
+    protected String buildMarker(int index) {
+        return MARKER_PREFIX + index;
+    }
+
+    // ===================================================================================
+    //                                                                                Copy
+    //                                                                                ====
+    /**
+     * @return The new-created HTML that shares static elements with master. (NotNull)
+     */
+    public Html copy() {
+        final Html copied = skeletonHtml.copy(Html.class);
+        for (int index = 0; index < masterPlaceList.size(); index++) {
+            final StaticPlace place = masterPlaceList.get(index);
+            final int[] path = place.path;
+            final List<Object> parentContent = findParentContent(copied, path);
+            final int position = path[path.length - 1];
+            if (!buildMarker(index).equals(parentContent.get(position))) { // basically no way
+                throw new IllegalStateException("Not found the marker of static element: index=" + index + ", tag=" + place.tag);
+            }
+            parentContent.set(position, place.tag); // shared with master
+        }
+        return copied;
+    }
+
+    protected List<Object> findParentContent(Html html, int[] path) {
+        Object current = html;
+        for (int i = 0; i < path.length - 1; i++) {
+            current = Mixer2TagUtil.findChildList(current).get(path[i]);
+        }
+        @SuppressWarnings("unchecked")
+        final List<Object> parentContent = (List<Object>) Mixer2TagUtil.findChildList(current);
+        return parentContent;
+    }
+
+    public boolean isEmpty() {
+        return masterPlaceList.isEmpty();
+    }
+
+    // ===================================================================================
+    //                                                                      Basic Override
+    //                                                                      ==============
+    @Override
+    public String toString() {
+        return "staticSharedCopier:{shared=" + masterPlaceList.size() + "}";
+    }
+}
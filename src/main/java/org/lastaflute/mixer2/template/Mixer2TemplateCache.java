@@ -0,0 +1,370 @@
+/*
+ * Copyright 2015-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.lastaflute.mixer2.template;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.lastaflute.mixer2.template.Mixer2TemplateReader.LoadedHtml;
+
+/**
+ * The cache of parsed templates shared by all requests. <br>
+ * The cached HTML is master so don't modify it, use the copy of it. <br>
+ * If modified-checked (e.g. development), the template whose source file is changed is dropped and parsed again. <br>
+ * The cache is bounded by total weight (estimated by template size and data derived from it e.g. indexes, transformed copies),
+ * and the least recently used template is evicted. The rendered fragments are bounded by their own cache.
+ * @author jflute
+ */
+public class Mixer2TemplateCache {
+
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    /** The default max weight of cache, about count of characters in template files. */
+    public static final long DEFAULT_MAX_WEIGHT = 10L * 1024L * 1024L;
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    /** Does it check modification of source file when finding? (e.g. true in development) */
+    protected final boolean modifiedChecked;
+
+    /** The max weight of all cached templates, evicted over it. */
+    protected final long maxWeight;
+
+    /** The map of parsed template, keyed by template path, in access order. (NotNull: guarded by this) */
+    protected final LinkedHashMap<String, CachedTemplate> templateMap = new LinkedHashMap<String, CachedTemplate>(64, 0.75f, true);
+
+    /** The total weight of cached templates. (guarded by this) */
+    protected long totalWeight;
+
+    protected final LongAdder hitCount = new LongAdder();
+    protected final LongAdder missCount = new LongAdder();
+    protected final LongAdder loadCount = new LongAdder();
+    protected final LongAdder evictionCount = new LongAdder();
+    protected final LongAdder totalLoadTime = new LongAdder(); // nanoseconds
+
+    // ===================================================================================
+    //                                                                         Constructor
+    //                                                                         ===========
+    public Mixer2TemplateCache() {
+        this(false);
+    }
+
+    /**
+     * @param modifiedChecked Does it check modification of source file when finding? (e.g. true in development)
+     */
+    public Mixer2TemplateCache(boolean modifiedChecked) {
+        this(modifiedChecked, DEFAULT_MAX_WEIGHT);
+    }
+
+    /**
+     * @param modifiedChecked Does it check modification of source file when finding? (e.g. true in development)
+     * @param maxWeight The max weight of all cached templates, about count of characters in template files.
+     */
+    public Mixer2TemplateCache(boolean modifiedChecked, long maxWeight) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("The argument 'maxWeight' should be positive: " + maxWeight);
+        }
+        this.modifiedChecked = modifiedChecked;
+        this.maxWeight = maxWeight;
+    }
+
+    // ===================================================================================
+    //                                                                        Cache Access
+    //                                                                        ============
+    /**
+     * @param templatePath The path of template e.g. /member/member_list.html (NotNull)
+     * @return The master of loaded HTML. (NullAllowed: when not cached yet or source file is modified)
+     */
+    public LoadedHtml findCached(String templatePath) {
+        assertArgumentNotNull("templatePath", templatePath);
+        final CachedTemplate cached;
+        synchronized (this) {
+            cached = templateMap.get(templatePath); // also moves it to most-recently-used
+            if (cached != null && modifiedChecked && cached.isSourceModified()) {
+                removeCached(templatePath);
+                missCount.increment();
+                return null;
+            }
+        }
+        if (cached == null) {
+            missCount.increment();
+            return null;
+        }
+        hitCount.increment();
+        return cached.getLoaded();
+    }
+
+    /**
+     * @param templatePath The path of template e.g. /member/member_list.html (NotNull)
+     * @param loaded The loaded HTML as master, should not be modified after caching. (NotNull)
+     * @param sourceFile The source file of the template for modification check. (NullAllowed: e.g. in jar file)
+     * @param lastModified The last-modified time of the source file before parsing, zero if no source file.
+     * @return The cached master, may be other instance when other thread has already cached it. (NotNull)
+     */
+    public LoadedHtml cache(String templatePath, LoadedHtml loaded, File sourceFile, long lastModified) {
+        assertArgumentNotNull("templatePath", templatePath);
+        assertArgumentNotNull("loaded", loaded);
+        final CachedTemplate created = new CachedTemplate(loaded, sourceFile, lastModified, estimateWeight(loaded));
+        loadCount.increment();
+        if (created.getWeight() > maxWeight) { // too large to cache
+            return loaded;
+        }
+        synchronized (this) {
+            final CachedTemplate existing = templateMap.get(templatePath);
+            if (existing != null && !(modifiedChecked && existing.isSourceModified())) {
+                return existing.getLoaded(); // already cached by other thread
+            }
+            removeCached(templatePath); // if modified
+            templateMap.put(templatePath, created);
+            totalWeight += created.getWeight();
+            loaded.bindDerivedCharger(weight -> chargeDerived(created, weight));
+            evictIfNeeds();
+        }
+        return loaded;
+    }
+
+    protected long estimateWeight(LoadedHtml loaded) {
+        return Math.max(loaded.getTemplateSize(), 1) + loaded.getDerivedWeight(); // at least one
+    }
+
+    protected synchronized void chargeDerived(CachedTemplate cached, long weight) {
+        if (cached.isRemoved()) { // derived after eviction, not counted
+            return;
+        }
+        cached.addWeight(weight);
+        totalWeight += weight;
+        evictIfNeeds(); // may evict the charged template itself
+    }
+
+    protected void evictIfNeeds() { // under lock
+        final Iterator<Entry<String, CachedTemplate>> ite = templateMap.entrySet().iterator();
+        while (totalWeight > maxWeight && ite.hasNext()) { // from least-recently-used
+            final CachedTemplate eldest = ite.next().getValue();
+            ite.remove();
+            markRemoved(eldest);
+            evictionCount.increment();
+        }
+    }
+
+    protected void removeCached(String templatePath) { // under lock
+        final CachedTemplate removed = templateMap.remove(templatePath);
+        if (removed != null) {
+            markRemoved(removed);
+        }
+    }
+
+    protected void markRemoved(CachedTemplate removed) { // under lock
+        totalWeight -= removed.getWeight();
+        removed.markRemoved();
+        removed.getLoaded().bindDerivedCharger(null); // may be cached again later
+    }
+
+    /**
+     * @param loadTime The nano time to load the template, to be recorded in statistics.
+     */
+    public void recordLoadTime(long loadTime) {
+        totalLoadTime.add(loadTime);
+    }
+
+    public synchronized void clear() {
+        for (CachedTemplate cached : templateMap.values()) {
+            cached.markRemoved();
+            cached.getLoaded().bindDerivedCharger(null);
+        }
+        templateMap.clear();
+        totalWeight = 0;
+    }
+
+    public synchronized int size() {
+        return templateMap.size();
+    }
+
+    public boolean isModifiedChecked() {
+        return modifiedChecked;
+    }
+
+    // ===================================================================================
+    //                                                                     Cached Template
+    //                                                                     ===============
+    protected static class CachedTemplate {
+
+        protected final LoadedHtml loaded;
+        protected final File sourceFile; // null allowed
+        protected final long lastModified; // zero if no source file
+        protected long weight; // guarded by cache, increased by derived data
+        protected boolean removed; // guarded by cache
+
+        public CachedTemplate(LoadedHtml loaded, File sourceFile, long lastModified, long weight) {
+            this.loaded = loaded;
+            this.sourceFile = sourceFile;
+            this.lastModified = lastModified;
+            this.weight = weight;
+        }
+
+        public boolean isSourceModified() {
+            return sourceFile != null && sourceFile.lastModified() != lastModified; // also deleted (returns zero)
+        }
+
+        public LoadedHtml getLoaded() {
+            return loaded;
+        }
+
+        public File getSourceFile() {
+            return sourceFile;
+        }
+
+        public long getWeight() {
+            return weight;
+        }
+
+        public void addWeight(long added) {
+            weight += added;
+        }
+
+        public boolean isRemoved() {
+            return removed;
+        }
+
+        public void markRemoved() {
+            removed = true;
+        }
+    }
+
+    /**
+     * The data derived from cached template that tells its weight, charged to the template. <br>
+     * The other derived data is estimated roughly, e.g. collection by its size.
+     */
+    public interface WeightedDerived {
+
+        /**
+         * @return The estimated weight of the data, about count of characters.
+         */
+        long estimateWeight();
+    }
+
+    // ===================================================================================
+    //                                                                          Statistics
+    //                                                                          ==========
+    /**
+     * @return The snapshot of cache statistics, e.g. for logging to size the cache. (NotNull)
+     */
+    public CacheStatistics getStatistics() {
+        final int size;
+        final long weight;
+        synchronized (this) {
+            size = templateMap.size();
+            weight = totalWeight;
+        }
+        return new CacheStatistics(size, weight, maxWeight, hitCount.sum(), missCount.sum(), loadCount.sum(), evictionCount.sum(),
+                totalLoadTime.sum());
+    }
+
+    public static class CacheStatistics {
+
+        protected final int size;
+        protected final long weight;
+        protected final long maxWeight;
+        protected final long hitCount;
+        protected final long missCount;
+        protected final long loadCount;
+        protected final long evictionCount;
+        protected final long totalLoadTime; // nanoseconds
+
+        public CacheStatistics(int size, long weight, long maxWeight, long hitCount, long missCount, long loadCount,
+                long evictionCount, long totalLoadTime) {
+            this.size = size;
+            this.weight = weight;
+            this.maxWeight = maxWeight;
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.loadCount = loadCount;
+            this.evictionCount = evictionCount;
+            this.totalLoadTime = totalLoadTime;
+        }
+
+        public double getHitRate() {
+            final long requestCount = hitCount + missCount;
+            return requestCount > 0 ? (double) hitCount / requestCount : 1.0;
+        }
+
+        public long getAverageLoadMillis() {
+            return loadCount > 0 ? totalLoadTime / loadCount / 1000000L : 0L;
+        }
+
+        @Override
+        public String toString() {
+            return "{size=" + size + ", weight=" + weight + "/" + maxWeight + ", hit=" + hitCount + ", miss=" + missCount + ", load="
+                    + loadCount + ", eviction=" + evictionCount + ", avgLoad=" + getAverageLoadMillis() + "ms}";
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public long getWeight() {
+            return weight;
+        }
+
+        public long getMaxWeight() {
+            return maxWeight;
+        }
+
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        public long getMissCount() {
+            return missCount;
+        }
+
+        public long getLoadCount() {
+            return loadCount;
+        }
+
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        public long getTotalLoadTime() {
+            return totalLoadTime;
+        }
+    }
+
+    // ===================================================================================
+    //                                                                      General Helper
+    //                                                                      ==============
+    protected void assertArgumentNotNull(String variableName, Object value) {
+        if (variableName == null) {
+            throw new IllegalArgumentException("The argument 'variableName' should not be null.");
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("The argument '" + variableName + "' should not be null.");
+        }
+    }
+
+    // ===================================================================================
+    //                                                                      Basic Override
+    //                                                                      ==============
+    @Override
+    public String toString() {
+        return "templateCache:{modifiedChecked=" + modifiedChecked + ", statistics=" + getStatistics() + "}";
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2015-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.lastaflute.mixer2.template;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+
+import org.lastaflute.mixer2.util.Mixer2TagUtil;
+import org.mixer2.jaxb.xhtml.Footer;
+import org.mixer2.jaxb.xhtml.Header;
+import org.mixer2.jaxb.xhtml.Html;
+import org.mixer2.xhtml.AbstractJaxb;
+
+/**
+ * The summary of features in template, built once from master HTML when the template is loaded. <br>
+ * It tells which resolver stages the template needs, e.g. no link URL means no rewriting of link URL.
+ * The tags added by views are not summarized, so the caller should consider them.
+ * @author jflute
+ */
+public class Mixer2TemplateFeatures {
+
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    protected static final String DATA_ATTR_PREFIX = "data-";
+    protected static final String LINK_URL_MARK = "@{/"; // same as supporter
+    protected static final String CSS_SUFFIX = ".css";
+    protected static final String JS_SUFFIX = ".js";
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    protected final Set<String> dataKeySet; // e.g. errors for data-errors
+    protected boolean linkUrlUsed; // e.g. @{/sea/land/}
+    protected boolean relativeUrlUsed; // e.g. ../css/sea.css
+    protected boolean assetUrlUsed; // e.g. /harbor/css/sea.css, /harbor/js/land.js
+    protected boolean headerExisting;
+    protected boolean footerExisting;
+
+    // ===================================================================================
+    //                                                                         Constructor
+    //                                                                         ===========
+    /**
+     * @param masterHtml The master HTML of template, only read, also head is summarized. (NotNull)
+     */
+    public Mixer2TemplateFeatures(Html masterHtml) {
+        final Set<String> dataKeySet = new HashSet<String>();
+        if (masterHtml.getHead() != null) { // head is out of child list of html
+            summarize(masterHtml.getHead(), dataKeySet);
+        }
+        summarize(masterHtml, dataKeySet);
+        this.dataKeySet = Collections.unmodifiableSet(dataKeySet);
+    }
+
+    protected void summarize(Object element, Set<String> dataKeySet) {
+        if (!(element instanceof AbstractJaxb)) {
+            return;
+        }
+        summarizeTag((AbstractJaxb) element, dataKeySet);
+        final List<?> childList = Mixer2TagUtil.findChildList(element);
+        if (childList == null) {
+            return;
+        }
+        for (Object child : childList) {
+            summarize(child, dataKeySet);
+        }
+    }
+
+    protected void summarizeTag(AbstractJaxb tag, Set<String> dataKeySet) {
+        final Map<QName, String> attributeMap = tag.getOtherAttributes(); // data attributes are here
+        if (attributeMap != null && !attributeMap.isEmpty()) {
+            for (QName attributeName : attributeMap.keySet()) {
+                final String localPart = attributeName.getLocalPart();
+                if (localPart.startsWith(DATA_ATTR_PREFIX)) {
+                    dataKeySet.add(localPart.substring(DATA_ATTR_PREFIX.length()));
+                }
+            }
+        }
+        if (tag instanceof Header) {
+            headerExisting = true;
+        } else if (tag instanceof Footer) {
+            footerExisting = true;
+        }
+        if (Mixer2TagUtil.hasUrlAttribute(tag)) {
+            final String url = Mixer2TagUtil.findUrl(tag);
+            if (url != null) {
+                summarizeUrl(url);
+            }
+        }
+    }
+
+    protected void summarizeUrl(String url) {
+        if (url.contains(LINK_URL_MARK)) {
+            linkUrlUsed = true;
+        }
+        if (url.startsWith(".")) {
+            relativeUrlUsed = true;
+        }
+        if (url.endsWith(CSS_SUFFIX) || url.endsWith(JS_SUFFIX)) {
+            assetUrlUsed = true;
+        }
+    }
+
+    // ===================================================================================
+    //                                                                            Features
+    //                                                                            ========
+    /**
+     * @param dataKey The key of data attribute e.g. errors for data-errors. (NotNull)
+     * @return Does the template have the data attribute?
+     */
+    public boolean hasData(String dataKey) {
+        return dataKeySet.contains(dataKey);
+    }
+
+    /**
+     * @return Does the template have the URL of link placeholder? e.g. @{/sea/land/}
+     */
+    public boolean isLinkUrlUsed() {
+        return linkUrlUsed;
+    }
+
+    /**
+     * @return Does the template have the relative URL? e.g. ../css/sea.css
+     */
+    public boolean isRelativeUrlUsed() {
+        return relativeUrlUsed;
+    }
+
+    /**
+     * @return Does the template have the URL of CSS or JS? e.g. /harbor/css/sea.css
+     */
+    public boolean isAssetUrlUsed() {
+        return assetUrlUsed;
+    }
+
+    public boolean isHeaderExisting() {
+        return headerExisting;
+    }
+
+    public boolean isFooterExisting() {
+        return footerExisting;
+    }
+
+    public Set<String> getDataKeySet() {
+        return dataKeySet;
+    }
+
+    // ===================================================================================
+    //                                                                      Basic Override
+    //                                                                      ==============
+    @Override
+    public String toString() {
+        return "templateFeatures:{data=" + dataKeySet + ", link=" + linkUrlUsed + ", relative=" + relativeUrlUsed + ", asset="
+                + assetUrlUsed + ", header=" + headerExisting + ", footer=" + footerExisting + "}";
+    }
+}
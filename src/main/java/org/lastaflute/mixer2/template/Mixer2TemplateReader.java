@@ -15,16 +15,35 @@
  */
 package org.lastaflute.mixer2.template;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+
+import javax.servlet.ServletContext;
 
 import org.dbflute.helper.message.ExceptionMessageBuilder;
 import org.dbflute.optional.OptionalThing;
 import org.dbflute.util.DfResourceUtil;
+import org.dbflute.util.Srl;
 import org.lastaflute.mixer2.exception.Mixer2TemplateHtmlNofFoundException;
 import org.lastaflute.mixer2.exception.Mixer2TemplateHtmlParseFailureException;
+import org.lastaflute.mixer2.template.Mixer2TemplateCache.WeightedDerived;
 import org.lastaflute.web.ruts.process.ActionRuntime;
 import org.lastaflute.web.servlet.request.RequestManager;
 import org.lastaflute.web.util.LaServletContextUtil;
@@ -44,19 +63,38 @@ public class Mixer2TemplateReader {
     protected static final String HTML_PREFIX = "<html";
     protected static final String HTML_XMLNS_PREFIX = "<html xmlns=\"http://www.w3.org/1999/xhtml\"";
     protected static final String LF = "\n";
+    protected static final Charset UTF_8 = StandardCharsets.UTF_8; // fixedly
+    protected static final byte[] UTF8_BOM = new byte[] { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+    protected static final String DERIVED_SHARED_COPIER_KEY = Mixer2StaticSharedCopier.class.getName();
+    protected static final String DERIVED_TRANSFORMED_KEY_PREFIX = Mixer2TemplateTransformer.class.getName() + ":";
+    protected static final long DEFAULT_DERIVED_WEIGHT = 64L; // e.g. small summary
+    protected static final long PATH_ENTRY_WEIGHT = 16L; // e.g. path list of selector
 
     // ===================================================================================
     //                                                                           Attribute
     //                                                                           =========
     protected final Mixer2Engine engine;
+    protected final Mixer2TemplateCache templateCache; // null allowed: no cache
     protected final RequestManager requestManager;
-    protected final ActionRuntime runtime;
+    protected final ActionRuntime runtime; // null allowed: out of action e.g. warmup
 
     // ===================================================================================
     //                                                                         Constructor
     //                                                                         ===========
     public Mixer2TemplateReader(Mixer2Engine engine, RequestManager requestManager, ActionRuntime runtime) {
+        this(engine, null, requestManager, runtime);
+    }
+
+    /**
+     * @param engine The engine of Mixer2. (NotNull)
+     * @param templateCache The cache of parsed templates. (NullAllowed: if null, parse every time)
+     * @param requestManager The manager of request. (NotNull)
+     * @param runtime The runtime of current requested action, used only for exception message. (NullAllowed: e.g. warmup)
+     */
+    public Mixer2TemplateReader(Mixer2Engine engine, Mixer2TemplateCache templateCache, RequestManager requestManager,
+            ActionRuntime runtime) {
         this.engine = engine;
+        this.templateCache = templateCache;
         this.requestManager = requestManager;
         this.runtime = runtime;
     }
@@ -64,76 +102,270 @@ public class Mixer2TemplateReader {
     // ===================================================================================
     //                                                                           Load Html
     //                                                                           =========
+    /**
+     * @param templatePath The path of template e.g. /member/member_list.html (NotNull)
+     * @return The optional loaded HTML, which is private instance for the caller. (NotNull, EmptyAllowed: when not found)
+     */
     public OptionalThing<LoadedHtml> loadHtml(String templatePath) {
+        return loadHtml(templatePath, null);
+    }
+
+    /**
+     * Load the HTML transformed at load time, the transformed master is cached with the template.
+     * @param templatePath The path of template e.g. /member/member_list.html (NotNull)
+     * @param transformer The transformer of template applied once. (NullAllowed: if null, no transformation)
+     * @return The optional loaded HTML, which is private instance for the caller. (NotNull, EmptyAllowed: when not found)
+     */
+    public OptionalThing<LoadedHtml> loadHtml(String templatePath, Mixer2TemplateTransformer transformer) {
+        if (templateCache == null) {
+            return parseHtml(templatePath).map(loaded -> transformer != null ? loaded.transform(transformer) : loaded);
+        }
+        return loadCachedMaster(templatePath, transformer).map(master -> master.copy()); // master is shared so copy it
+    }
+
+    /**
+     * Load the HTML that shares static elements (marked by data-static attribute) with cached master. <br>
+     * The static elements are not copied so views should not change them.
+     * @param templatePath The path of template e.g. /member/member_list.html (NotNull)
+     * @return The optional loaded HTML, which is private instance except static elements. (NotNull, EmptyAllowed: when not found)
+     */
+    public OptionalThing<LoadedHtml> loadStaticSharedHtml(String templatePath) {
+        return loadStaticSharedHtml(templatePath, null);
+    }
+
+    /**
+     * Load the HTML that shares static elements with cached master transformed at load time.
+     * @param templatePath The path of template e.g. /member/member_list.html (NotNull)
+     * @param transformer The transformer of template applied once. (NullAllowed: if null, no transformation)
+     * @return The optional loaded HTML, which is private instance except static elements. (NotNull, EmptyAllowed: when not found)
+     */
+    public OptionalThing<LoadedHtml> loadStaticSharedHtml(String templatePath, Mixer2TemplateTransformer transformer) {
+        if (templateCache == null) {
+            return loadHtml(templatePath, transformer); // already private
+        }
+        return loadCachedMaster(templatePath, transformer).map(master -> master.copyStaticShared());
+    }
+
+    /**
+     * Parse the template and cache it without copy, e.g. for warming up.
+     * @param templatePath The path of template e.g. /member/member_list.html (NotNull)
+     */
+    public void prepareCachedHtml(String templatePath) {
+        if (templateCache == null) {
+            throw new IllegalStateException("Cannot prepare cached HTML without template cache: " + templatePath);
+        }
+        loadCachedHtml(templatePath).get(); // throws if not found
+    }
+
+    /**
+     * Derive the data from the template only once while cached, e.g. parts of layout.
+     * @param <RESULT> The type of derived data.
+     * @param templatePath The path of template e.g. /common/layout.html (NotNull)
+     * @param derivedKey The key of derived data, unique per derivation e.g. resolver class name. (NotNull)
+     * @param deriver The callback to derive the data from master HTML, should not modify it. (NotNull)
+     * @return The optional derived data, which should be read-only. (NotNull, EmptyAllowed: when not found)
+     */
+    public <RESULT> OptionalThing<RESULT> deriveHtml(String templatePath, String derivedKey, Function<Html, RESULT> deriver) {
+        return deriveHtml(templatePath, null, derivedKey, deriver);
+    }
+
+    /**
+     * Derive the data from the template transformed at load time, only once while cached.
+     * @param <RESULT> The type of derived data.
+     * @param templatePath The path of template e.g. /common/layout.html (NotNull)
+     * @param transformer The transformer of template applied once. (NullAllowed: if null, no transformation)
+     * @param derivedKey The key of derived data, unique per derivation e.g. resolver class name. (NotNull)
+     * @param deriver The callback to derive the data from (transformed) master HTML, should not modify it. (NotNull)
+     * @return The optional derived data, which should be read-only. (NotNull, EmptyAllowed: when not found)
+     */
+    public <RESULT> OptionalThing<RESULT> deriveHtml(String templatePath, Mixer2TemplateTransformer transformer, String derivedKey,
+            Function<Html, RESULT> deriver) {
+        final OptionalThing<LoadedHtml> optLoaded;
+        if (templateCache != null) {
+            optLoaded = loadCachedMaster(templatePath, transformer);
+        } else {
+            optLoaded = parseHtml(templatePath).map(loaded -> transformer != null ? loaded.transform(transformer) : loaded);
+        }
+        return optLoaded.map(loaded -> loaded.deriveFromMaster(derivedKey, deriver));
+    }
+
+    protected OptionalThing<LoadedHtml> loadCachedMaster(String templatePath, Mixer2TemplateTransformer transformer) {
+        final OptionalThing<LoadedHtml> optMaster = loadCachedHtml(templatePath);
+        return transformer != null ? optMaster.map(master -> master.transform(transformer)) : optMaster;
+    }
+
+    protected OptionalThing<LoadedHtml> loadCachedHtml(String templatePath) { // returns master
+        final LoadedHtml cached = templateCache.findCached(templatePath);
+        if (cached != null) {
+            return OptionalThing.of(cached);
+        }
+        final File sourceFile = findSourceFile(templatePath);
+        final long lastModified = sourceFile != null ? sourceFile.lastModified() : 0L; // before parse
+        final long before = System.nanoTime();
+        return parseHtml(templatePath, sourceFile).map(loaded -> {
+            templateCache.recordLoadTime(System.nanoTime() - before);
+            return templateCache.cache(templatePath, loaded, sourceFile, lastModified);
+        });
+    }
+
+    protected OptionalThing<LoadedHtml> parseHtml(String templatePath) {
+        return parseHtml(templatePath, findSourceFile(templatePath));
+    }
+
+    protected OptionalThing<LoadedHtml> parseHtml(String templatePath, File sourceFile) {
+        if (sourceFile != null) { // read by channel directly
+            return OptionalThing.of(loadHtmlText(templatePath, readHtmlText(sourceFile, templatePath)));
+        }
         return prepareStream(requestManager, runtime, templatePath).map(ins -> {
-            final ReadHtmlText htmlText = readHtmlText(ins, templatePath);
-            final Html staticHtml;
-            try {
-                staticHtml = engine.checkAndLoadHtmlTemplate(htmlText.getReadHtml());
-            } catch (Mixer2JAXBException e) {
-                throwMixer2TemplateHtmlParseFailureException(runtime, templatePath, e);
-                return null; // unreachable
-            }
-            return new LoadedHtml(staticHtml, htmlText.isDocTypeDefined(), htmlText.isXmlnsFiltered());
+            return loadHtmlText(templatePath, readHtmlText(ins, templatePath));
         });
     }
 
-    protected ReadHtmlText readHtmlText(InputStream ins, String templatePath) {
-        final String encoding = "UTF-8"; // fixedly
-        final StringBuilder sb = new StringBuilder();
-        boolean docTypeDefined = false;
-        boolean xmlnsFiltered = false;
-        BufferedReader br = null;
+    protected LoadedHtml loadHtmlText(String templatePath, ReadHtmlText htmlText) {
+        final Html staticHtml;
         try {
-            br = new BufferedReader(new InputStreamReader(ins, encoding));
-            int index = 0;
-            String line;
+            staticHtml = engine.checkAndLoadHtmlTemplate(htmlText.getReadHtml());
+        } catch (Mixer2JAXBException e) {
+            throwMixer2TemplateHtmlParseFailureException(runtime, templatePath, e);
+            return null; // unreachable
+        }
+        final String readHtml = htmlText.getReadHtml();
+        return new LoadedHtml(staticHtml, htmlText.isDocTypeDefined(), htmlText.isXmlnsFiltered(), readHtml.length());
+    }
+
+    // -----------------------------------------------------
+    //                                        Read HTML Text
+    //                                        --------------
+    protected ReadHtmlText readHtmlText(File sourceFile, String templatePath) {
+        try (FileChannel channel = FileChannel.open(sourceFile.toPath(), StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Too large html file: " + templatePath + ", size=" + size);
+            }
+            final ByteBuffer buffer = ByteBuffer.allocate((int) size); // templates are small enough for heap
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {}
+            return readHtmlText(buffer.array(), buffer.position(), templatePath);
+        } catch (IOException e) {
+            String msg = "Failed to read the html file: " + templatePath;
+            throw new IllegalStateException(msg, e);
+        }
+    }
+
+    protected ReadHtmlText readHtmlText(InputStream ins, String templatePath) {
+        try (InputStream closedIns = ins) {
+            byte[] bytes = new byte[8192];
+            int length = 0;
             while (true) {
-                line = br.readLine();
-                if (line == null) {
-                    break;
+                if (length == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, bytes.length * 2);
                 }
-                if (index == 0) {
-                    line = removeInitialUnicodeBomIfNeeds(encoding, line);
-                    docTypeDefined = line.equals(DOCTYPE_DEF);
-                    if (!docTypeDefined) {
-                        handleNonDocTypeFirstLine(templatePath, line);
-                    }
-                } else { // second or more lines
-                    if (index == 1) {
-                        if (line.startsWith(HTML_PREFIX) && line.endsWith(">")) {
-                            if (line.endsWith(">") && !line.contains("xmlns")) {
-                                line = line.replace(HTML_PREFIX, HTML_XMLNS_PREFIX);
-                                xmlnsFiltered = true;
-                            }
-                        } else {
-                            handleNonHtmlTagSecondLine(templatePath, line);
-                        }
-                    }
-                    sb.append(LF); // LF fixedly
+                final int read = closedIns.read(bytes, length, bytes.length - length);
+                if (read < 0) {
+                    break;
                 }
-                sb.append(line);
-                ++index;
+                length += read;
             }
+            return readHtmlText(bytes, length, templatePath);
         } catch (IOException e) {
             String msg = "Failed to read the html file: " + templatePath;
             throw new IllegalStateException(msg, e);
-        } finally {
-            if (br != null) {
-                try {
-                    br.close();
-                } catch (IOException ignored) {}
+        }
+    }
+
+    /**
+     * Read the HTML text from UTF-8 bytes, checking the first and second lines without line splitting. <br>
+     * The line separator is CR, LF or CRLF (same as readLine()), and it is not normalized here because XML parser handles it.
+     * @param bytes The bytes of template file, which may have extra capacity. (NotNull)
+     * @param length The valid length of the bytes.
+     * @param templatePath The path of template for message. (NotNull)
+     * @return The read HTML text. (NotNull)
+     */
+    protected ReadHtmlText readHtmlText(byte[] bytes, int length, String templatePath) {
+        if (length == 0) {
+            return new ReadHtmlText("", false, false);
+        }
+        final int begin = hasUnicodeBom(bytes, length) ? UTF8_BOM.length : 0;
+        final int firstEnd = indexOfLineEnd(bytes, begin, length);
+        final boolean docTypeDefined = equalsAscii(bytes, begin, firstEnd, DOCTYPE_DEF);
+        if (!docTypeDefined) {
+            handleNonDocTypeFirstLine(templatePath, new String(bytes, begin, firstEnd - begin, UTF_8));
+        }
+        int xmlnsIndex = -1; // index to insert xmlns
+        if (firstEnd < length) { // has second line
+            final int secondBegin = skipLineSeparator(bytes, firstEnd, length);
+            final int secondEnd = indexOfLineEnd(bytes, secondBegin, length);
+            if (startsWithAscii(bytes, secondBegin, secondEnd, HTML_PREFIX) && secondEnd > secondBegin && bytes[secondEnd - 1] == '>') {
+                if (indexOfAscii(bytes, secondBegin, secondEnd, "xmlns") < 0) {
+                    xmlnsIndex = secondBegin + HTML_PREFIX.length();
+                }
+            } else {
+                handleNonHtmlTagSecondLine(templatePath, new String(bytes, secondBegin, secondEnd - secondBegin, UTF_8));
             }
         }
-        return new ReadHtmlText(sb.toString(), docTypeDefined, xmlnsFiltered);
+        if (xmlnsIndex < 0) { // decode once from the read buffer
+            return new ReadHtmlText(new String(bytes, begin, length - begin, UTF_8), docTypeDefined, false);
+        }
+        final byte[] xmlnsBytes = HTML_XMLNS_PREFIX.substring(HTML_PREFIX.length()).getBytes(UTF_8);
+        final byte[] filtered = new byte[length - begin + xmlnsBytes.length];
+        final int frontLength = xmlnsIndex - begin;
+        System.arraycopy(bytes, begin, filtered, 0, frontLength);
+        System.arraycopy(xmlnsBytes, 0, filtered, frontLength, xmlnsBytes.length);
+        System.arraycopy(bytes, xmlnsIndex, filtered, frontLength + xmlnsBytes.length, length - xmlnsIndex);
+        return new ReadHtmlText(new String(filtered, UTF_8), docTypeDefined, true);
     }
 
-    protected String removeInitialUnicodeBomIfNeeds(String encoding, String line) {
-        if ("UTF-8".equalsIgnoreCase(encoding) && line.length() > 0 && line.charAt(0) == '\uFEFF') {
-            return line.substring(1);
-        } else {
-            return line;
+    protected boolean hasUnicodeBom(byte[] bytes, int length) {
+        return startsWithBytes(bytes, 0, length, UTF8_BOM);
+    }
+
+    protected int indexOfLineEnd(byte[] bytes, int from, int to) { // CR, LF or CRLF like readLine(), returns 'to' if no end
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == '\n' || bytes[i] == '\r') {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    protected int skipLineSeparator(byte[] bytes, int lineEnd, int to) { // returns begin of next line
+        return bytes[lineEnd] == '\r' && lineEnd + 1 < to && bytes[lineEnd + 1] == '\n' ? lineEnd + 2 : lineEnd + 1;
+    }
+
+    protected boolean equalsAscii(byte[] bytes, int begin, int end, String ascii) {
+        return end - begin == ascii.length() && startsWithAscii(bytes, begin, end, ascii);
+    }
+
+    protected boolean startsWithAscii(byte[] bytes, int begin, int end, String ascii) {
+        if (end - begin < ascii.length()) {
+            return false;
+        }
+        for (int i = 0; i < ascii.length(); i++) {
+            if (bytes[begin + i] != ascii.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected int indexOfAscii(byte[] bytes, int begin, int end, String ascii) {
+        for (int i = begin; i <= end - ascii.length(); i++) {
+            if (startsWithAscii(bytes, i, end, ascii)) {
+                return i;
+            }
         }
+        return -1;
+    }
+
+    protected boolean startsWithBytes(byte[] bytes, int begin, int end, byte[] prefix) {
+        if (end - begin < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[begin + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
     }
 
     protected void handleNonDocTypeFirstLine(String templatePath, String line) {
@@ -155,7 +387,7 @@ public class Mixer2TemplateReader {
         br.addElement("    <head>");
         br.addElement("    ...");
         br.addItem("Action");
-        br.addElement(runtime);
+        br.addElement(toActionDisp(runtime));
         br.addItem("Template");
         br.addElement(templatePath);
         br.addItem("First Line");
@@ -185,7 +417,7 @@ public class Mixer2TemplateReader {
         br.addElement("    <head>");
         br.addElement("    ...");
         br.addItem("Action");
-        br.addElement(runtime);
+        br.addElement(toActionDisp(runtime));
         br.addItem("Template");
         br.addElement(templatePath);
         br.addItem("Second Line");
@@ -198,7 +430,7 @@ public class Mixer2TemplateReader {
         final ExceptionMessageBuilder br = new ExceptionMessageBuilder();
         br.addNotice("Failed to parse the template html.");
         br.addItem("Action");
-        br.addElement(runtime);
+        br.addElement(toActionDisp(runtime));
         br.addItem("Template");
         br.addElement(templatePath);
         final String saxMsg = cause.getSAXParseExceptionMessage(); // #thinking how to get line number?
@@ -240,11 +472,141 @@ public class Mixer2TemplateReader {
         protected final Html html;
         protected final boolean docTypeDefined;
         protected final boolean xmlnsFiltered;
+        protected final int templateSize; // length of template text, used as weight of cache
+        protected final Html masterHtml; // read-only, same as html if this is master
+        protected final Map<String, Object> derivedMap; // shared with copies
+        protected final DerivedCharge derivedCharge; // shared with copies and transformed masters
+        protected final Mixer2TemplateTransformer transformer; // null allowed: not transformed
+        protected boolean staticShared; // static elements are shared with master
 
         public LoadedHtml(Html html, boolean docTypeDefined, boolean xmlnsFiltered) {
+            this(html, docTypeDefined, xmlnsFiltered, 0);
+        }
+
+        public LoadedHtml(Html html, boolean docTypeDefined, boolean xmlnsFiltered, int templateSize) {
+            this(html, docTypeDefined, xmlnsFiltered, templateSize, html, new ConcurrentHashMap<String, Object>(), new DerivedCharge(),
+                    null);
+        }
+
+        protected LoadedHtml(Html html, boolean docTypeDefined, boolean xmlnsFiltered, int templateSize, Html masterHtml,
+                Map<String, Object> derivedMap, DerivedCharge derivedCharge, Mixer2TemplateTransformer transformer) {
             this.html = html;
             this.docTypeDefined = docTypeDefined;
             this.xmlnsFiltered = xmlnsFiltered;
+            this.templateSize = templateSize;
+            this.masterHtml = masterHtml;
+            this.derivedMap = derivedMap;
+            this.derivedCharge = derivedCharge;
+            this.transformer = transformer;
+        }
+
+        /**
+         * @return The new-created instance that has deep-copied HTML, sharing derived data with this. (NotNull)
+         */
+        public LoadedHtml copy() {
+            return new LoadedHtml(html.copy(Html.class), docTypeDefined, xmlnsFiltered, templateSize, masterHtml, derivedMap,
+                    derivedCharge, transformer);
+        }
+
+        /**
+         * Copy the master HTML except static elements, which are shared with master. <br>
+         * The changes of this HTML are not copied (the master is always used), so basically call it for master.
+         * @return The new-created instance that has copied HTML sharing static elements with master. (NotNull)
+         */
+        public LoadedHtml copyStaticShared() {
+            final Mixer2StaticSharedCopier copier = deriveFromMaster(DERIVED_SHARED_COPIER_KEY, master -> {
+                return new Mixer2StaticSharedCopier(master);
+            });
+            final Html copied = copier.isEmpty() ? html.copy(Html.class) : copier.copy();
+            final LoadedHtml loaded = new LoadedHtml(copied, docTypeDefined, xmlnsFiltered, templateSize, masterHtml, derivedMap,
+                    derivedCharge, transformer);
+            loaded.staticShared = !copier.isEmpty();
+            return loaded;
+        }
+
+        /**
+         * Transform the copy of master HTML only once per template and transform key (while cached). <br>
+         * The transformed one is new master that has its own derived data, so basically call it for master. <br>
+         * The weight of the transformed master and its derived data is charged to this template.
+         * @param transformer The transformer of template. (NotNull)
+         * @return The transformed master, should be copied to change. (NotNull)
+         */
+        public LoadedHtml transform(Mixer2TemplateTransformer transformer) {
+            return deriveFromMaster(DERIVED_TRANSFORMED_KEY_PREFIX + transformer.getTransformKey(), master -> {
+                final Html transformed = master.copy(Html.class);
+                transformer.transform(transformed);
+                return new LoadedHtml(transformed, docTypeDefined, xmlnsFiltered, templateSize, transformed,
+                        new ConcurrentHashMap<String, Object>(), derivedCharge, transformer);
+            });
+        }
+
+        /**
+         * Derive the data from the master HTML only once per template (while cached). <br>
+         * The deriver should not modify the master HTML, and the result should be read-only. <br>
+         * The weight of derived data is charged to the template in cache, see {@link WeightedDerived}.
+         * @param <RESULT> The type of derived data.
+         * @param derivedKey The key of derived data, unique per derivation e.g. resolver class name. (NotNull)
+         * @param deriver The callback to derive the data from master HTML, may be called twice in race. (NotNull)
+         * @return The derived data. (NotNull)
+         */
+        public <RESULT> RESULT deriveFromMaster(String derivedKey, Function<Html, RESULT> deriver) {
+            @SuppressWarnings("unchecked")
+            final RESULT cached = (RESULT) derivedMap.get(derivedKey);
+            if (cached != null) {
+                return cached;
+            }
+            final RESULT derived = deriver.apply(masterHtml); // not computeIfAbsent() for nested derivation
+            if (derived == null) {
+                throw new IllegalStateException("The deriver should not return null: " + derivedKey);
+            }
+            @SuppressWarnings("unchecked")
+            final RESULT existing = (RESULT) derivedMap.putIfAbsent(derivedKey, derived);
+            if (existing != null) {
+                return existing;
+            }
+            chargeDerivedWeight(estimateDerivedWeight(derived));
+            return derived;
+        }
+
+        protected long estimateDerivedWeight(Object derived) {
+            if (derived instanceof WeightedDerived) {
+                return ((WeightedDerived) derived).estimateWeight();
+            } else if (derived instanceof LoadedHtml || derived instanceof Mixer2StaticSharedCopier) {
+                return templateSize; // copy of HTML (its derived data is charged by itself)
+            } else if (derived instanceof Collection<?>) {
+                return ((Collection<?>) derived).size() * PATH_ENTRY_WEIGHT; // e.g. path list
+            }
+            return DEFAULT_DERIVED_WEIGHT;
+        }
+
+        /**
+         * Charge the weight of derived data to the template in cache, e.g. text captured after derivation.
+         * @param weight The weight to be added, about count of characters.
+         */
+        public void chargeDerivedWeight(long weight) {
+            derivedCharge.charge(weight);
+        }
+
+        /**
+         * @return The callback to charge weight of derived data, not holding this HTML. (NotNull)
+         */
+        public LongConsumer newDerivedCharger() {
+            final DerivedCharge charge = derivedCharge; // not this to release copied HTML
+            return weight -> charge.charge(weight);
+        }
+
+        /**
+         * @return The total weight of derived data of this template (and transformed masters).
+         */
+        public long getDerivedWeight() {
+            return derivedCharge.getWeight();
+        }
+
+        /**
+         * @param charger The callback to receive weight charged after caching, called by template cache. (NullAllowed: unbind)
+         */
+        public void bindDerivedCharger(LongConsumer charger) {
+            derivedCharge.bind(charger);
         }
 
         public Html getHtml() {
@@ -258,6 +620,46 @@ public class Mixer2TemplateReader {
         public boolean isXmlnsFiltered() {
             return xmlnsFiltered;
         }
+
+        public int getTemplateSize() {
+            return templateSize;
+        }
+
+        /**
+         * @return Does the HTML share static elements with master? (then they should not be changed)
+         */
+        public boolean isStaticShared() {
+            return staticShared;
+        }
+
+        /**
+         * @return The transformer applied to this template at load time. (NullAllowed: not transformed)
+         */
+        public Mixer2TemplateTransformer getTransformer() {
+            return transformer;
+        }
+    }
+
+    protected static class DerivedCharge {
+
+        protected final AtomicLong weight = new AtomicLong();
+        protected volatile LongConsumer charger; // null allowed: not cached
+
+        public void charge(long added) {
+            weight.addAndGet(added);
+            final LongConsumer current = charger;
+            if (current != null) {
+                current.accept(added);
+            }
+        }
+
+        public long getWeight() {
+            return weight.get();
+        }
+
+        public void bind(LongConsumer charger) {
+            this.charger = charger;
+        }
     }
 
     // ===================================================================================
@@ -274,6 +676,40 @@ public class Mixer2TemplateReader {
         });
     }
 
+    /**
+     * Find the source file of the template in the same order as stream, servlet context first, next classpath.
+     * @param templatePath The path of template e.g. /member/member_list.html (NotNull)
+     * @return The file of the template source. (NullAllowed: when not found or not file e.g. in jar file)
+     */
+    protected File findSourceFile(String templatePath) {
+        final String webPath = buildWebPath(templatePath);
+        final ServletContext servletContext = requestManager.getServletContext();
+        final String realPath = servletContext.getRealPath(webPath);
+        if (realPath != null) {
+            final File realFile = new File(realPath);
+            if (realFile.exists()) {
+                return realFile;
+            }
+        }
+        try {
+            if (servletContext.getResource(webPath) != null) { // exists but not file e.g. in war
+                return null;
+            }
+        } catch (MalformedURLException ignored) {}
+        final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        final URL url = loader != null ? loader.getResource(Srl.ltrim(templatePath, "/")) : null;
+        if (url != null && "file".equals(url.getProtocol())) {
+            try {
+                return new File(url.toURI());
+            } catch (URISyntaxException ignored) {}
+        }
+        return null;
+    }
+
+    protected Object toActionDisp(ActionRuntime runtime) { // for exception message
+        return runtime != null ? runtime : "(no action: e.g. warmup)";
+    }
+
     protected String buildWebPath(String routingPath) {
         return LaServletContextUtil.getHtmlViewPrefix() + routingPath;
     }
@@ -282,7 +718,7 @@ public class Mixer2TemplateReader {
         final ExceptionMessageBuilder br = new ExceptionMessageBuilder();
         br.addNotice("Not found the Mixer2 template HTML file.");
         br.addItem("Action");
-        br.addElement(runtime);
+        br.addElement(toActionDisp(runtime));
         br.addItem("Template");
         br.addElement(templatePath);
         br.addItem("Web Path");
@@ -294,6 +730,36 @@ public class Mixer2TemplateReader {
     // ===================================================================================
     //                                                                     HTML Definition
     //                                                                     ===============
+    /**
+     * Write the HTML text with resolved definition to the writer, without copying the whole text. <br>
+     * It is same as resolveHtmlDef() but streaming, DOCTYPE is written first and the injected xmlns is skipped.
+     * @param htmlText The HTML text saved by engine. (NotNull)
+     * @param loaded The loaded HTML to determine definition. (NotNull)
+     * @param writer The writer to output the HTML text e.g. response writer. (NotNull)
+     * @throws IOException When it fails to write.
+     */
+    public void writeHtmlDef(String htmlText, LoadedHtml loaded, Writer writer) throws IOException {
+        if (loaded.isDocTypeDefined()) {
+            writer.write(DOCTYPE_DEF);
+            writer.write(LF);
+        }
+        if (!loaded.isXmlnsFiltered()) {
+            writer.write(htmlText);
+            return;
+        }
+        int current = 0;
+        while (true) {
+            final int xmlnsIndex = htmlText.indexOf(HTML_XMLNS_PREFIX, current);
+            if (xmlnsIndex < 0) {
+                break;
+            }
+            writer.write(htmlText, current, xmlnsIndex - current);
+            writer.write(HTML_PREFIX);
+            current = xmlnsIndex + HTML_XMLNS_PREFIX.length();
+        }
+        writer.write(htmlText, current, htmlText.length() - current);
+    }
+
     public String resolveHtmlDef(String htmlText, LoadedHtml loaded) {
         String resolved = htmlText;
         if (loaded.isDocTypeDefined()) {
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2015-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.lastaflute.mixer2.template;
+
+import org.mixer2.jaxb.xhtml.Html;
+
+/**
+ * The transformer of template applied once at load time, and the transformed template is cached. <br>
+ * The transformation should depend only on the template and the key,
+ * e.g. context path and asset version, not on request parameters.
+ * @author jflute
+ */
+public interface Mixer2TemplateTransformer {
+
+    /**
+     * @return The key of transformation result, same key means same result for same template. (NotNull)
+     */
+    String getTransformKey();
+
+    /**
+     * @param html The HTML copied from master of template, can be changed. (NotNull)
+     */
+    void transform(Html html);
+}
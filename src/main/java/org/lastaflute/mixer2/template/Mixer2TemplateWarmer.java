@@ -0,0 +1,173 @@
+/*
+ * Copyright 2015-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.lastaflute.mixer2.template;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.servlet.ServletContext;
+
+import org.dbflute.helper.message.ExceptionMessageBuilder;
+import org.lastaflute.mixer2.exception.Mixer2TemplateWarmupFailureException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The warmer of templates, parses all templates under the view prefix and caches them. <br>
+ * All parse failures are reported at once after all templates are parsed.
+ * @author jflute
+ */
+public class Mixer2TemplateWarmer {
+
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    private static final Logger logger = LoggerFactory.getLogger(Mixer2TemplateWarmer.class);
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    protected final Mixer2TemplateReader reader;
+    protected final ServletContext servletContext;
+    protected final String htmlViewPrefix;
+    protected final int threadCount;
+
+    // ===================================================================================
+    //                                                                         Constructor
+    //                                                                         ===========
+    /**
+     * @param reader The reader of template, which should have template cache. (NotNull)
+     * @param servletContext The context of servlet to search templates. (NotNull)
+     * @param htmlViewPrefix The prefix of HTML view e.g. /WEB-INF/view (NotNull)
+     * @param threadCount The count of threads to parse templates in parallel. (one means single thread)
+     */
+    public Mixer2TemplateWarmer(Mixer2TemplateReader reader, ServletContext servletContext, String htmlViewPrefix, int threadCount) {
+        this.reader = reader;
+        this.servletContext = servletContext;
+        this.htmlViewPrefix = htmlViewPrefix;
+        this.threadCount = threadCount;
+    }
+
+    // ===================================================================================
+    //                                                                              Warmup
+    //                                                                              ======
+    /**
+     * @param additionalPathList The list of template path to be added e.g. parts outside the view prefix (NotNull: empty allowed)
+     * @return The count of warmed-up templates.
+     * @throws Mixer2TemplateWarmupFailureException When the templates contain parse failure.
+     */
+    public int warmup(List<String> additionalPathList) {
+        final long before = System.currentTimeMillis();
+        final Set<String> templatePathSet = new LinkedHashSet<String>();
+        collectTemplatePath(htmlViewPrefix + "/", templatePathSet);
+        templatePathSet.addAll(additionalPathList);
+        final Map<String, Throwable> failureMap = parseAll(templatePathSet);
+        if (!failureMap.isEmpty()) {
+            throwMixer2TemplateWarmupFailureException(templatePathSet, failureMap);
+        }
+        if (logger.isInfoEnabled()) {
+            final long cost = System.currentTimeMillis() - before;
+            logger.info("...Warming up #mixer2 templates: count={}, threads={}, cost={}ms", templatePathSet.size(), threadCount, cost);
+        }
+        return templatePathSet.size();
+    }
+
+    protected void collectTemplatePath(String resourceDir, Set<String> templatePathSet) {
+        final Set<String> resourcePaths = servletContext.getResourcePaths(resourceDir);
+        if (resourcePaths == null) {
+            return;
+        }
+        for (String resourcePath : resourcePaths) {
+            if (resourcePath.endsWith("/")) { // directory
+                collectTemplatePath(resourcePath, templatePathSet);
+            } else if (isTemplateResource(resourcePath)) {
+                templatePathSet.add(resourcePath.substring(htmlViewPrefix.length())); // e.g. /member/member_list.html
+            }
+        }
+    }
+
+    protected boolean isTemplateResource(String resourcePath) {
+        return resourcePath.endsWith(".html");
+    }
+
+    // ===================================================================================
+    //                                                                               Parse
+    //                                                                               =====
+    protected Map<String, Throwable> parseAll(Set<String> templatePathSet) {
+        final Map<String, Throwable> failureMap = new LinkedHashMap<String, Throwable>();
+        if (threadCount <= 1 || templatePathSet.size() <= 1) {
+            for (String templatePath : templatePathSet) {
+                try {
+                    reader.prepareCachedHtml(templatePath);
+                } catch (RuntimeException e) {
+                    failureMap.put(templatePath, e);
+                }
+            }
+            return failureMap;
+        }
+        final ExecutorService service = Executors.newFixedThreadPool(Math.min(threadCount, templatePathSet.size()));
+        try {
+            final Map<String, Future<?>> futureMap = new LinkedHashMap<String, Future<?>>();
+            for (String templatePath : templatePathSet) {
+                futureMap.put(templatePath, service.submit(() -> reader.prepareCachedHtml(templatePath)));
+            }
+            for (Entry<String, Future<?>> entry : futureMap.entrySet()) {
+                try {
+                    entry.getValue().get();
+                } catch (ExecutionException e) {
+                    failureMap.put(entry.getKey(), e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while warming up the template: " + entry.getKey(), e);
+                }
+            }
+        } finally {
+            service.shutdownNow();
+        }
+        return failureMap;
+    }
+
+    protected void throwMixer2TemplateWarmupFailureException(Set<String> templatePathSet, Map<String, Throwable> failureMap) {
+        final ExceptionMessageBuilder br = new ExceptionMessageBuilder();
+        br.addNotice("Failed to parse the templates in warming up.");
+        br.addItem("Advice");
+        br.addElement("Fix the templates below, the parse failures are listed at once.");
+        br.addElement("(see the each failure message for the detail)");
+        br.addItem("HTML View Prefix");
+        br.addElement(htmlViewPrefix);
+        br.addItem("Template Count");
+        br.addElement(templatePathSet.size());
+        br.addItem("Failure Template");
+        for (Entry<String, Throwable> entry : failureMap.entrySet()) {
+            br.addElement(entry.getKey());
+            br.addElement("  " + entry.getValue().getMessage());
+        }
+        final String msg = br.buildExceptionMessage();
+        final List<Throwable> causeList = new ArrayList<Throwable>(failureMap.values());
+        final Mixer2TemplateWarmupFailureException ex = new Mixer2TemplateWarmupFailureException(msg, causeList.get(0));
+        causeList.stream().skip(1).forEach(cause -> ex.addSuppressed(cause));
+        throw ex;
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2015-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.lastaflute.mixer2.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.mixer2.jaxb.xhtml.A;
+import org.mixer2.jaxb.xhtml.Area;
+import org.mixer2.jaxb.xhtml.Audio;
+import org.mixer2.jaxb.xhtml.Dl;
+import org.mixer2.jaxb.xhtml.Embed;
+import org.mixer2.jaxb.xhtml.Flow;
+import org.mixer2.jaxb.xhtml.Form;
+import org.mixer2.jaxb.xhtml.Head;
+import org.mixer2.jaxb.xhtml.Html;
+import org.mixer2.jaxb.xhtml.Iframe;
+import org.mixer2.jaxb.xhtml.Img;
+import org.mixer2.jaxb.xhtml.Inline;
+import org.mixer2.jaxb.xhtml.Input;
+import org.mixer2.jaxb.xhtml.Link;
+import org.mixer2.jaxb.xhtml.Ol;
+import org.mixer2.jaxb.xhtml.Script;
+import org.mixer2.jaxb.xhtml.Select;
+import org.mixer2.jaxb.xhtml.Source;
+import org.mixer2.jaxb.xhtml.Table;
+import org.mixer2.jaxb.xhtml.Tbody;
+import org.mixer2.jaxb.xhtml.Tfoot;
+import org.mixer2.jaxb.xhtml.Thead;
+import org.mixer2.jaxb.xhtml.Tr;
+import org.mixer2.jaxb.xhtml.Track;
+import org.mixer2.jaxb.xhtml.Ul;
+import org.mixer2.jaxb.xhtml.Video;
+import org.mixer2.xhtml.AbstractJaxb;
+
+/**
+ * The utility of tag tree, defines children of tags for traversal in one place. <br>
+ * The child list of tag is the list of nested elements (e.g. content of div, li of ul, tr of tbody),
+ * and the path of tag is the indexes of child lists from a base tag.
+ * @author jflute
+ */
+public abstract class Mixer2TagUtil {
+
+    // ===================================================================================
+    //                                                                          Child List
+    //                                                                          ==========
+    /**
+     * @param element The element in tag tree, may be text. (NullAllowed)
+     * @return The list of children, live list if content holder. (NullAllowed: when no child e.g. text, input)
+     */
+    public static List<?> findChildList(Object element) {
+        if (element instanceof Html) {
+            return Collections.singletonList(((Html) element).getBody()); // head is out of target for paths
+        } else if (element instanceof Head) { // reached only when visited explicitly
+            return ((Head) element).getContent();
+        } else if (element instanceof Flow) {
+            return ((Flow) element).getContent();
+        } else if (element instanceof Inline) {
+            return ((Inline) element).getContent();
+        } else if (element instanceof Form) {
+            return ((Form) element).getContent();
+        } else if (element instanceof Ul) {
+            return ((Ul) element).getLi();
+        } else if (element instanceof Ol) {
+            return ((Ol) element).getLi();
+        } else if (element instanceof Dl) {
+            return ((Dl) element).getDtOrDd();
+        } else if (element instanceof Select) {
+            return ((Select) element).getOptgroupOrOption();
+        } else if (element instanceof Table) {
+            return extractTableChildList((Table) element);
+        } else if (element instanceof Thead) {
+            return ((Thead) element).getTr();
+        } else if (element instanceof Tbody) {
+            return ((Tbody) element).getTr();
+        } else if (element instanceof Tfoot) {
+            return ((Tfoot) element).getTr();
+        } else if (element instanceof Tr) {
+            return ((Tr) element).getThOrTd();
+        }
+        return null;
+    }
+
+    protected static List<Object> extractTableChildList(Table table) { // not live list
+        final List<Object> childList = new ArrayList<Object>();
+        if (table.getThead() != null) {
+            childList.add(table.getThead());
+        }
+        if (table.getTfoot() != null) {
+            childList.add(table.getTfoot());
+        }
+        childList.addAll(table.getTbody());
+        childList.addAll(table.getTr());
+        return childList;
+    }
+
+    /**
+     * @param element The element in tag tree, may be text. (NullAllowed)
+     * @return Is the child list of the element out of compatible search scope? (e.g. table, tr, head)
+     */
+    public static boolean isDeepChildHolder(Object element) { // searchTagList() of old versions did not walk them
+        return element instanceof Table || element instanceof Thead || element instanceof Tbody || element instanceof Tfoot
+                || element instanceof Tr || element instanceof Head;
+    }
+
+    /**
+     * @param element The element in tag tree, may be text. (NullAllowed)
+     * @return Is the child list of the element content that can contain any element and text? (e.g. div, span, form)
+     */
+    public static boolean isContentHolder(Object element) {
+        return element instanceof Flow || element instanceof Inline || element instanceof Form;
+    }
+
+    // ===================================================================================
+    //                                                                       URL Attribute
+    //                                                                       =============
+    /**
+     * @param tag The tag to be determined. (NotNull)
+     * @return Does the tag have URL attribute? (same tags as PathAdjuster of Mixer2)
+     * <pre>
+     * href   : a, area, link
+     * src    : img, script, iframe, input, embed, audio, video, source, track
+     * action : form
+     * data   : object
+     * </pre>
+     */
+    public static boolean hasUrlAttribute(AbstractJaxb tag) {
+        return tag instanceof A || tag instanceof Area || tag instanceof Link // href
+                || tag instanceof Img || tag instanceof Script || tag instanceof Iframe || tag instanceof Input // src
+                || tag instanceof Embed || tag instanceof Audio || tag instanceof Video || tag instanceof Source || tag instanceof Track
+                || tag instanceof Form // action
+                || tag instanceof org.mixer2.jaxb.xhtml.Object; // data
+    }
+
+    /**
+     * @param tag The tag that may have URL attribute. (NotNull)
+     * @return The value of URL attribute. (NullAllowed: when no attribute or not URL tag)
+     */
+    public static String findUrl(AbstractJaxb tag) {
+        if (tag instanceof A) {
+            return ((A) tag).getHref();
+        } else if (tag instanceof Area) {
+            return ((Area) tag).getHref();
+        } else if (tag instanceof Link) {
+            return ((Link) tag).getHref();
+        } else if (tag instanceof Img) {
+            return ((Img) tag).getSrc();
+        } else if (tag instanceof Script) {
+            return ((Script) tag).getSrc();
+        } else if (tag instanceof Iframe) {
+            return ((Iframe) tag).getSrc();
+        } else if (tag instanceof Input) { // e.g. type="image"
+            return ((Input) tag).getSrc();
+        } else if (tag instanceof Embed) {
+            return ((Embed) tag).getSrc();
+        } else if (tag instanceof Audio) {
+            return ((Audio) tag).getSrc();
+        } else if (tag instanceof Video) {
+            return ((Video) tag).getSrc();
+        } else if (tag instanceof Source) {
+            return ((Source) tag).getSrc();
+        } else if (tag instanceof Track) {
+            return ((Track) tag).getSrc();
+        } else if (tag instanceof Form) {
+            return ((Form) tag).getAction();
+        } else if (tag instanceof org.mixer2.jaxb.xhtml.Object) {
+            return ((org.mixer2.jaxb.xhtml.Object) tag).getData();
+        }
+        return null;
+    }
+
+    /**
+     * @param tag The tag that has URL attribute, determined by hasUrlAttribute(). (NotNull)
+     * @param url The value of URL attribute. (NullAllowed)
+     */
+    public static void setUrl(AbstractJaxb tag, String url) {
+        if (tag instanceof A) {
+            ((A) tag).setHref(url);
+        } else if (tag instanceof Area) {
+            ((Area) tag).setHref(url);
+        } else if (tag instanceof Link) {
+            ((Link) tag).setHref(url);
+        } else if (tag instanceof Img) {
+            ((Img) tag).setSrc(url);
+        } else if (tag instanceof Script) {
+            ((Script) tag).setSrc(url);
+        } else if (tag instanceof Iframe) {
+            ((Iframe) tag).setSrc(url);
+        } else if (tag instanceof Input) {
+            ((Input) tag).setSrc(url);
+        } else if (tag instanceof Embed) {
+            ((Embed) tag).setSrc(url);
+        } else if (tag instanceof Audio) {
+            ((Audio) tag).setSrc(url);
+        } else if (tag instanceof Video) {
+            ((Video) tag).setSrc(url);
+        } else if (tag instanceof Source) {
+            ((Source) tag).setSrc(url);
+        } else if (tag instanceof Track) {
+            ((Track) tag).setSrc(url);
+        } else if (tag instanceof Form) {
+            ((Form) tag).setAction(url);
+        } else if (tag instanceof org.mixer2.jaxb.xhtml.Object) {
+            ((org.mixer2.jaxb.xhtml.Object) tag).setData(url);
+        } else {
+            throw new IllegalArgumentException("The tag does not have URL attribute: " + tag);
+        }
+    }
+
+    // ===================================================================================
+    //                                                                                Path
+    //                                                                                ====
+    /**
+     * @param baseTag The base tag of the path. (NotNull)
+     * @param path The indexes of child lists from the base tag. (NotNull)
+     * @return The found element at the path. (NullAllowed: when the structure is changed so not found)
+     */
+    public static Object findByPath(Object baseTag, int[] path) {
+        Object current = baseTag;
+        for (int index : path) {
+            final List<?> childList = findChildList(current);
+            if (childList == null || index >= childList.size()) {
+                return null;
+            }
+            current = childList.get(index);
+        }
+        return current;
+    }
+
+    /**
+     * @param pathList The list of index as path. (NotNull)
+     * @return The array of index as path. (NotNull)
+     */
+    public static int[] toPathArray(List<Integer> pathList) {
+        final int[] path = new int[pathList.size()];
+        for (int i = 0; i < path.length; i++) {
+            path[i] = pathList.get(i);
+        }
+        return path;
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2015-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.lastaflute.mixer2.view;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import javax.servlet.ServletContext;
+
+/**
+ * The fingerprinter of assets (e.g. CSS, JS) by hash of their content. <br>
+ * The fingerprint is same across nodes and restarts while the content is same,
+ * so it can be used as version query for long-term cache of browsers and CDN.
+ * <pre>
+ * /harbor/css/sea.css to /harbor/css/sea.css?v=3f2a9c01d4e5b6a7
+ * </pre>
+ * The fingerprints are cached per resource path in the instance, also not-found assets (no fingerprint),
+ * and computed again only when the file is modified (or created) if modified check is enabled (e.g. development).
+ * The least recently used one is evicted over the cache limit. Use one instance per servlet context (application)
+ * because the path is in the application.
+ * @author jflute
+ */
+public class Mixer2AssetFingerprinter {
+
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    protected static final String HASH_ALGORITHM = "SHA-256";
+    protected static final int FINGERPRINT_LENGTH = 16; // hex characters, enough to identify content
+    protected static final int CACHE_LIMIT = 4096; // evicted over the limit (assets are not so many)
+    protected static final char[] HEX_CHARS = "0123456789abcdef".toCharArray();
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    protected final ServletContext servletContext;
+    protected final boolean modifiedChecked;
+
+    /** The map of fingerprint keyed by resource path, in access order. (NotNull: guarded by this) */
+    protected final LinkedHashMap<String, Fingerprint> fingerprintMap = new LinkedHashMap<String, Fingerprint>(64, 0.75f, true);
+
+    // ===================================================================================
+    //                                                                         Constructor
+    //                                                                         ===========
+    /**
+     * @param servletContext The context of servlet to read assets. (NotNull)
+     * @param modifiedChecked Does it compute again when the file of asset is modified? (e.g. true in development)
+     */
+    public Mixer2AssetFingerprinter(ServletContext servletContext, boolean modifiedChecked) {
+        if (servletContext == null) {
+            throw new IllegalArgumentException("The argument 'servletContext' should not be null.");
+        }
+        this.servletContext = servletContext;
+        this.modifiedChecked = modifiedChecked;
+    }
+
+    // ===================================================================================
+    //                                                                         Fingerprint
+    //                                                                         ===========
+    /**
+     * @param resourcePath The path of asset in web application, without context path e.g. /css/sea.css (NotNull)
+     * @return The fingerprint of the asset content as hex string. (NullAllowed: when the asset is not found)
+     */
+    public String findFingerprint(String resourcePath) {
+        if (resourcePath == null) {
+            throw new IllegalArgumentException("The argument 'resourcePath' should not be null.");
+        }
+        final Fingerprint cached;
+        synchronized (this) {
+            cached = fingerprintMap.get(resourcePath);
+        }
+        if (cached != null && (!modifiedChecked || !cached.isModified())) {
+            return cached.getHash(); // null if not found, not read again
+        }
+        final Fingerprint computed = computeFingerprint(resourcePath); // outside lock, same result if concurrent
+        synchronized (this) {
+            fingerprintMap.put(resourcePath, computed);
+            evictOverLimit();
+        }
+        return computed.getHash();
+    }
+
+    protected void evictOverLimit() { // guarded by this
+        final int limit = getCacheLimit();
+        final Iterator<Fingerprint> ite = fingerprintMap.values().iterator();
+        while (fingerprintMap.size() > limit && ite.hasNext()) { // least recently used first
+            ite.next();
+            ite.remove();
+        }
+    }
+
+    protected int getCacheLimit() {
+        return CACHE_LIMIT;
+    }
+
+    protected Fingerprint computeFingerprint(String resourcePath) { // not null, no hash if not found
+        final File file = findRealFile(resourcePath); // null allowed e.g. in war
+        final long lastModified = file != null ? file.lastModified() : 0L; // before read, zero if not exists
+        final MessageDigest digest = createMessageDigest();
+        try (InputStream ins = servletContext.getResourceAsStream(resourcePath)) {
+            if (ins == null) { // deployed later is detected by modified check (or clear the cache)
+                return new Fingerprint(null, file, lastModified);
+            }
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = ins.read(buffer)) >= 0) {
+                digest.update(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            String msg = "Failed to read the asset for fingerprint: " + resourcePath;
+            throw new IllegalStateException(msg, e);
+        }
+        return new Fingerprint(toHex(digest.digest(), FINGERPRINT_LENGTH), file, lastModified);
+    }
+
+    protected File findRealFile(String resourcePath) { // may not exist, to check creation
+        final String realPath = servletContext.getRealPath(resourcePath);
+        return realPath != null ? new File(realPath) : null;
+    }
+
+    protected MessageDigest createMessageDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) { // basically no way
+            throw new IllegalStateException("Not found the hash algorithm: " + HASH_ALGORITHM, e);
+        }
+    }
+
+    protected String toHex(byte[] bytes, int length) {
+        final char[] chars = new char[Math.min(length, bytes.length * 2)];
+        for (int i = 0; i < chars.length; i++) {
+            final int value = bytes[i / 2] & 0xFF;
+            chars[i] = HEX_CHARS[i % 2 == 0 ? value >>> 4 : value & 0x0F];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Clear the cached fingerprints, e.g. when assets are deployed without restart.
+     */
+    public synchronized void clearCache() {
+        fingerprintMap.clear();
+    }
+
+    // ===================================================================================
+    //                                                                  Fingerprint Entity
+    //                                                                  ==================
+    protected static class Fingerprint {
+
+        protected final String hash; // null allowed: not found
+        protected final File file; // null allowed: not file e.g. in war
+        protected final long lastModified;
+
+        public Fingerprint(String hash, File file, long lastModified) {
+            this.hash = hash;
+            this.file = file;
+            this.lastModified = lastModified;
+        }
+
+        public boolean isModified() { // cannot check if not file, also created or deleted
+            return file != null && file.lastModified() != lastModified;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+    }
+}
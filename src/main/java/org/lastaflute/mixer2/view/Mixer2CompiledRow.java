@@ -0,0 +1,171 @@
+/*
+ * Copyright 2015-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.lastaflute.mixer2.view;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import org.mixer2.jaxb.xhtml.Flow;
+import org.mixer2.jaxb.xhtml.Tr;
+
+/**
+ * The row template compiled to text segments and slots of cell content. <br>
+ * The row is serialized once with marks around the content of each cell,
+ * and rows are written by filling the slots, without JAXB objects per row and cell.
+ * <pre>
+ * &lt;tr class="row"&gt;&lt;td&gt;[slot0]&lt;/td&gt;&lt;td class="num"&gt;[slot1]&lt;/td&gt;&lt;/tr&gt;
+ * </pre>
+ * The text of slot is HTML-escaped when it is written,
+ * and the slot that is not filled is written as the original content of the cell.
+ * @author jflute
+ */
+public class Mixer2CompiledRow {
+
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    protected static final char BEGIN_KIND = 'B'; // beginning of cell content
+    protected static final char END_KIND = 'E'; // end of cell content
+    protected static final char TOKEN_TERMINATOR = '.';
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    protected final int slotCount;
+    protected final String[] segments; // static text around slots, slotCount + 1 (null if not available)
+    protected final String[] defaultContents; // serialized original content of cells (null if not available)
+
+    // ===================================================================================
+    //                                                                         Constructor
+    //                                                                         ===========
+    /**
+     * @param markedRowText The serialized text of row marked by markSlots(). (NotNull)
+     * @param tokenPrefix The prefix of token used by markSlots(). (NotNull)
+     * @param slotCount The count of cells in the row.
+     */
+    public Mixer2CompiledRow(String markedRowText, String tokenPrefix, int slotCount) {
+        this.slotCount = slotCount;
+        final String[] segments = new String[slotCount + 1];
+        final String[] defaultContents = new String[slotCount];
+        int current = 0;
+        boolean available = true;
+        for (int i = 0; i < slotCount; i++) {
+            final String beginToken = buildToken(tokenPrefix, BEGIN_KIND, i);
+            final String endToken = buildToken(tokenPrefix, END_KIND, i);
+            final int beginIndex = markedRowText.indexOf(beginToken, current);
+            final int endIndex = beginIndex >= 0 ? markedRowText.indexOf(endToken, beginIndex) : -1;
+            if (endIndex < 0) { // basically no way, but e.g. serialized in unexpected way
+                available = false;
+                break;
+            }
+            segments[i] = markedRowText.substring(current, beginIndex);
+            defaultContents[i] = markedRowText.substring(beginIndex + beginToken.length(), endIndex);
+            current = endIndex + endToken.length();
+        }
+        segments[slotCount] = markedRowText.substring(current);
+        this.segments = available ? segments : null;
+        this.defaultContents = available ? defaultContents : null;
+    }
+
+    /**
+     * Mark the content of each cell by tokens to compile the row after serialization.
+     * @param markedTr The row copied from row template, its cells are marked here. (NotNull)
+     * @param tokenPrefix The prefix of token, unique in serialized text. (NotNull)
+     * @return The count of cells as slots.
+     */
+    public static int markSlots(Tr markedTr, String tokenPrefix) {
+        final List<Flow> cellList = markedTr.getThOrTd();
+        for (int i = 0; i < cellList.size(); i++) {
+            final List<Object> content = cellList.get(i).getContent();
+            content.add(0, buildToken(tokenPrefix, BEGIN_KIND, i));
+            content.add(buildToken(tokenPrefix, END_KIND, i));
+        }
+        return cellList.size();
+    }
+
+    protected static String buildToken(String tokenPrefix, char kind, int index) {
+        return tokenPrefix + kind + index + TOKEN_TERMINATOR;
+    }
+
+    // ===================================================================================
+    //                                                                           Write Row
+    //                                                                           =========
+    /**
+     * @return Is the compiled row available? (false if the marks are not found in serialized text)
+     */
+    public boolean isAvailable() {
+        return segments != null;
+    }
+
+    /**
+     * @param slotTexts The plain texts of slots, escaped here. (NotNull, ElementNullAllowed: original content)
+     * @param writer The writer of response. (NotNull)
+     * @throws IOException When it fails to write.
+     */
+    public void writeRow(String[] slotTexts, Writer writer) throws IOException {
+        for (int i = 0; i < slotCount; i++) {
+            writer.write(segments[i]);
+            final String text = i < slotTexts.length ? slotTexts[i] : null;
+            if (text != null) {
+                writeEscaped(text, writer);
+            } else {
+                writer.write(defaultContents[i]);
+            }
+        }
+        writer.write(segments[slotCount]);
+    }
+
+    protected void writeEscaped(String text, Writer writer) throws IOException {
+        int previous = 0;
+        for (int i = 0; i < text.length(); i++) {
+            final String escaped = escapeChar(text.charAt(i));
+            if (escaped != null) {
+                writer.write(text, previous, i - previous);
+                writer.write(escaped);
+                previous = i + 1;
+            }
+        }
+        writer.write(text, previous, text.length() - previous);
+    }
+
+    protected String escapeChar(char ch) { // same as text content of engine, and quote for safety
+        switch (ch) {
+        case '&':
+            return "&amp;";
+        case '<':
+            return "&lt;";
+        case '>':
+            return "&gt;";
+        case '"':
+            return "&quot;";
+        default:
+            return null;
+        }
+    }
+
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    // ===================================================================================
+    //                                                                      Basic Override
+    //                                                                      ==============
+    @Override
+    public String toString() {
+        return "compiledRow:{slots=" + slotCount + ", available=" + isAvailable() + "}";
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright 2015-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.lastaflute.mixer2.view;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * The cache of rendered fragments (inner content of element) shared by all requests, e.g. navigation menu. <br>
+ * The fragment is serialized at the rendering of cache miss, and the text is spliced at later renderings
+ * instead of running the view code for the element, until the time-to-live is expired. <br>
+ * The cache is bounded by total weight (count of characters), and the least recently used fragment is evicted.
+ * @author jflute
+ */
+public class Mixer2FragmentCache {
+
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    /** The default max weight of cache, about count of characters in fragments. */
+    public static final long DEFAULT_MAX_WEIGHT = 4L * 1024L * 1024L;
+
+    /** The prefix of token in saved HTML text, random per JVM to avoid conflict with real text. */
+    protected static final String TOKEN_PREFIX = "mixer2cache" + Long.toHexString(new SecureRandom().nextLong() & Long.MAX_VALUE);
+
+    protected static final char PLACE_KIND = 'P'; // placeholder of cached fragment
+    protected static final char BEGIN_KIND = 'B'; // beginning of pending fragment
+    protected static final char END_KIND = 'E'; // end of pending fragment
+    protected static final char TOKEN_TERMINATOR = '.';
+
+    /**
+     * @return The prefix of token in saved HTML text, e.g. for static fragments not to capture it. (NotNull)
+     */
+    public static String getTokenPrefix() {
+        return TOKEN_PREFIX;
+    }
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    /** The max weight of all cached fragments, evicted over it. */
+    protected final long maxWeight;
+
+    /** The map of rendered fragment, keyed by cache key, in access order. (NotNull: guarded by this) */
+    protected final LinkedHashMap<String, CachedFragment> fragmentMap = new LinkedHashMap<String, CachedFragment>(64, 0.75f, true);
+
+    /** The total weight of cached fragments. (guarded by this) */
+    protected long totalWeight;
+
+    // ===================================================================================
+    //                                                                         Constructor
+    //                                                                         ===========
+    public Mixer2FragmentCache() {
+        this(DEFAULT_MAX_WEIGHT);
+    }
+
+    /**
+     * @param maxWeight The max weight of all cached fragments, about count of characters in fragments.
+     */
+    public Mixer2FragmentCache(long maxWeight) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("The argument 'maxWeight' should be positive: " + maxWeight);
+        }
+        this.maxWeight = maxWeight;
+    }
+
+    // ===================================================================================
+    //                                                                        Cache Access
+    //                                                                        ============
+    /**
+     * @param cacheKey The key of fragment e.g. globalMenu:admin (NotNull)
+     * @return The text of cached fragment. (NullAllowed: when not cached yet or expired)
+     */
+    public synchronized String findCached(String cacheKey) {
+        assertArgumentNotNull("cacheKey", cacheKey);
+        final CachedFragment cached = fragmentMap.get(cacheKey); // also moves it to most-recently-used
+        if (cached == null) {
+            return null;
+        }
+        if (cached.isExpired(System.currentTimeMillis())) {
+            removeCached(cacheKey);
+            return null;
+        }
+        return cached.getText();
+    }
+
+    /**
+     * @param cacheKey The key of fragment e.g. globalMenu:admin (NotNull)
+     * @param text The serialized text of fragment. (NotNull)
+     * @param ttlMillis The time-to-live of the fragment in milliseconds, should be positive.
+     */
+    public void cache(String cacheKey, String text, long ttlMillis) {
+        assertArgumentNotNull("cacheKey", cacheKey);
+        assertArgumentNotNull("text", text);
+        final CachedFragment created = new CachedFragment(text, System.currentTimeMillis() + ttlMillis);
+        if (created.getWeight() > maxWeight) { // too large to cache
+            return;
+        }
+        synchronized (this) {
+            removeCached(cacheKey); // if expired or rendered by other thread
+            fragmentMap.put(cacheKey, created);
+            totalWeight += created.getWeight();
+            evictIfNeeds();
+        }
+    }
+
+    public synchronized void clear() {
+        fragmentMap.clear();
+        totalWeight = 0;
+    }
+
+    public synchronized int size() {
+        return fragmentMap.size();
+    }
+
+    // ===================================================================================
+    //                                                                            Eviction
+    //                                                                            ========
+    protected void evictIfNeeds() { // under lock
+        final Iterator<Entry<String, CachedFragment>> ite = fragmentMap.entrySet().iterator();
+        while (totalWeight > maxWeight && ite.hasNext()) { // from least-recently-used
+            final CachedFragment eldest = ite.next().getValue();
+            ite.remove();
+            totalWeight -= eldest.getWeight();
+        }
+    }
+
+    protected void removeCached(String cacheKey) { // under lock
+        final CachedFragment removed = fragmentMap.remove(cacheKey);
+        if (removed != null) {
+            totalWeight -= removed.getWeight();
+        }
+    }
+
+    // ===================================================================================
+    //                                                                     Cached Fragment
+    //                                                                     ===============
+    protected static class CachedFragment {
+
+        protected final String text;
+        protected final long expireTime; // epoch milliseconds
+
+        public CachedFragment(String text, long expireTime) {
+            this.text = text;
+            this.expireTime = expireTime;
+        }
+
+        public boolean isExpired(long currentTime) {
+            return currentTime >= expireTime;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public long getWeight() {
+            return Math.max(text.length(), 1); // at least one
+        }
+    }
+
+    // ===================================================================================
+    //                                                                  Fragment Rendering
+    //                                                                  ==================
+    /**
+     * @return The new-created rendering of fragments for one request. (NotNull)
+     */
+    public FragmentRendering newRendering() {
+        return new FragmentRendering();
+    }
+
+    /**
+     * The rendering of cached fragments for one request, one request uses one thread.
+     */
+    public class FragmentRendering {
+
+        protected final List<String> placedList = new ArrayList<String>(); // cached text, index is in token
+        protected final List<PendingFragment> pendingList = new ArrayList<PendingFragment>(); // not cached yet
+
+        /**
+         * @param cachedText The text of cached fragment found at the rendering. (NotNull)
+         * @return The token of placeholder to be put as content of the element. (NotNull)
+         */
+        public String place(String cachedText) {
+            placedList.add(cachedText);
+            return buildToken(PLACE_KIND, placedList.size() - 1);
+        }
+
+        /**
+         * Mark the content of rendered element to extract its text from saved HTML.
+         * @param content The content list of the element, tokens are added at the beginning and end. (NotNull)
+         * @param cacheKey The key of fragment. (NotNull)
+         * @param ttlMillis The time-to-live of the fragment in milliseconds.
+         */
+        public void markPending(List<Object> content, String cacheKey, long ttlMillis) {
+            final int index = pendingList.size();
+            pendingList.add(new PendingFragment(cacheKey, ttlMillis));
+            content.add(0, buildToken(BEGIN_KIND, index));
+            content.add(buildToken(END_KIND, index));
+        }
+
+        public boolean isEmpty() {
+            return placedList.isEmpty() && pendingList.isEmpty();
+        }
+
+        /**
+         * Splice the cached fragments into placeholders and cache the pending fragments, in one scan.
+         * @param htmlText The HTML text saved by engine. (NotNull)
+         * @return The HTML text without tokens. (NotNull)
+         */
+        public String splice(String htmlText) {
+            int current = htmlText.indexOf(TOKEN_PREFIX);
+            if (current < 0) {
+                return htmlText;
+            }
+            final StringBuilder sb = new StringBuilder(htmlText.length() + 1024);
+            final Map<Integer, Integer> beginMap = new HashMap<Integer, Integer>();
+            int previous = 0;
+            while (current >= 0) {
+                sb.append(htmlText, previous, current);
+                final int kindIndex = current + TOKEN_PREFIX.length();
+                final int terminatorIndex = htmlText.indexOf(TOKEN_TERMINATOR, kindIndex);
+                final char kind = htmlText.charAt(kindIndex);
+                final int index = Integer.parseInt(htmlText.substring(kindIndex + 1, terminatorIndex));
+                if (kind == PLACE_KIND) {
+                    sb.append(placedList.get(index));
+                } else if (kind == BEGIN_KIND) {
+                    beginMap.put(index, sb.length());
+                } else if (kind == END_KIND) {
+                    final Integer begin = beginMap.get(index);
+                    if (begin != null) {
+                        final PendingFragment pending = pendingList.get(index);
+                        cache(pending.cacheKey, sb.substring(begin), pending.ttlMillis);
+                    }
+                }
+                previous = terminatorIndex + 1;
+                current = htmlText.indexOf(TOKEN_PREFIX, previous);
+            }
+            sb.append(htmlText, previous, htmlText.length());
+            return sb.toString();
+        }
+    }
+
+    protected static class PendingFragment {
+
+        protected final String cacheKey;
+        protected final long ttlMillis;
+
+        public PendingFragment(String cacheKey, long ttlMillis) {
+            this.cacheKey = cacheKey;
+            this.ttlMillis = ttlMillis;
+        }
+    }
+
+    protected String buildToken(char kind, int index) {
+        return TOKEN_PREFIX + kind + index + TOKEN_TERMINATOR;
+    }
+
+    // ===================================================================================
+    //                                                                      General Helper
+    //                                                                      ==============
+    protected void assertArgumentNotNull(String variableName, Object value) {
+        if (variableName == null) {
+            throw new IllegalArgumentException("The argument 'variableName' should not be null.");
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("The argument '" + variableName + "' should not be null.");
+        }
+    }
+
+    // ===================================================================================
+    //                                                                      Basic Override
+    //                                                                      ==============
+    @Override
+    public String toString() {
+        return "fragmentCache:{size=" + size() + ", maxWeight=" + maxWeight + "}";
+    }
+}
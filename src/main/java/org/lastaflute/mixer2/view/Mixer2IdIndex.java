@@ -0,0 +1,176 @@
+/*
+ * Copyright 2015-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.lastaflute.mixer2.view;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.lastaflute.mixer2.util.Mixer2TagUtil;
+import org.mixer2.xhtml.AbstractJaxb;
+
+/**
+ * The index of tags by ID under the base tag, built at the first lookup in one rendering. <br>
+ * The indexed tag is verified by its path from the base tag and its ID so the changes by views are detected,
+ * then the lookup is not answered here (the caller walks the tree once) and the index is rebuilt at the next lookup. <br>
+ * The tag not indexed (e.g. added by views, in head) and the duplicate ID (e.g. in template, by replacement)
+ * are not found here, so the caller should search it by walking the tree like getById(). <br>
+ * The duplicate ID added directly by views into other branches is not detected, HTML ID should be unique.
+ * @author jflute
+ */
+public class Mixer2IdIndex {
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    protected final AbstractJaxb baseTag;
+    protected Map<String, IndexedTag> idMap; // null allowed: lazy-loaded, cleared when changed by view
+    protected Set<String> duplicateIdSet; // null allowed: lazy-loaded with ID map, not answered here
+
+    // ===================================================================================
+    //                                                                         Constructor
+    //                                                                         ===========
+    /**
+     * @param baseTag The base tag of index e.g. html. (NotNull)
+     */
+    public Mixer2IdIndex(AbstractJaxb baseTag) {
+        this.baseTag = baseTag;
+    }
+
+    // ===================================================================================
+    //                                                                                Find
+    //                                                                                ====
+    /**
+     * @param id The ID of the tag. (NotNull)
+     * @return The found tag under the base tag. (NullAllowed: when not indexed, so walk the tree)
+     */
+    public AbstractJaxb find(String id) {
+        final IndexedTag indexed = findIndexed(id);
+        return indexed != null ? indexed.tag : null;
+    }
+
+    protected IndexedTag findIndexed(String id) {
+        if (idMap == null) {
+            buildIndex();
+        }
+        final IndexedTag indexed = idMap.get(id);
+        if (indexed == null) { // not indexed or duplicate, walking once by caller
+            return null;
+        }
+        if (!indexed.isAlive(baseTag, id)) { // changed by view, walking once by caller instead of rebuilding now
+            idMap = null;
+            duplicateIdSet = null;
+            return null;
+        }
+        return indexed;
+    }
+
+    // ===================================================================================
+    //                                                                             Replace
+    //                                                                             =======
+    /**
+     * Replace the indexed tag with the replacement, and index the replacement.
+     * @param id The ID of the tag to be replaced. (NotNull)
+     * @param replacement The tag to replace it. (NotNull)
+     * @return Is it replaced? (false if not indexed or not in content, so replace it by walking the tree)
+     */
+    public boolean replace(String id, AbstractJaxb replacement) {
+        final IndexedTag indexed = findIndexed(id);
+        if (indexed == null || indexed.path.length == 0) { // not found or base tag itself
+            return false;
+        }
+        final int[] path = indexed.path;
+        final Object parent = Mixer2TagUtil.findByPath(baseTag, Arrays.copyOf(path, path.length - 1));
+        if (!Mixer2TagUtil.isContentHolder(parent)) { // e.g. tbody of table, cannot be replaced with other type
+            return false;
+        }
+        @SuppressWarnings("unchecked")
+        final List<Object> parentContent = (List<Object>) Mixer2TagUtil.findChildList(parent);
+        parentContent.set(path[path.length - 1], replacement);
+        idMap.remove(id);
+        final List<Integer> pathList = new ArrayList<Integer>(path.length);
+        for (int index : path) {
+            pathList.add(index);
+        }
+        indexTag(replacement, pathList); // tags in the replaced tag are detected as not-alive later
+        return true;
+    }
+
+    // ===================================================================================
+    //                                                                               Index
+    //                                                                               =====
+    protected void buildIndex() {
+        idMap = new HashMap<String, IndexedTag>();
+        duplicateIdSet = new HashSet<String>();
+        indexTag(baseTag, new ArrayList<Integer>());
+    }
+
+    protected void indexTag(Object element, List<Integer> pathList) {
+        if (!(element instanceof AbstractJaxb)) {
+            return;
+        }
+        final AbstractJaxb tag = (AbstractJaxb) element;
+        final String id = tag.getId();
+        if (id != null && !duplicateIdSet.contains(id)) {
+            final IndexedTag existing = idMap.get(id);
+            if (existing == null || !existing.isAlive(baseTag, id)) {
+                idMap.put(id, new IndexedTag(tag, Mixer2TagUtil.toPathArray(pathList)));
+            } else { // which one is first depends on traversal of getById(), so walk it
+                idMap.remove(id);
+                duplicateIdSet.add(id);
+            }
+        }
+        final List<?> childList = Mixer2TagUtil.findChildList(tag);
+        if (childList == null) {
+            return;
+        }
+        for (int i = 0; i < childList.size(); i++) {
+            pathList.add(i);
+            indexTag(childList.get(i), pathList);
+            pathList.remove(pathList.size() - 1);
+        }
+    }
+
+    // ===================================================================================
+    //                                                                         Indexed Tag
+    //                                                                         ===========
+    protected static class IndexedTag {
+
+        protected final AbstractJaxb tag;
+        protected final int[] path; // indexes of child list from base tag
+
+        public IndexedTag(AbstractJaxb tag, int[] path) {
+            this.tag = tag;
+            this.path = path;
+        }
+
+        public boolean isAlive(AbstractJaxb baseTag, String id) { // still at the path by identity, and ID is not changed
+            return Mixer2TagUtil.findByPath(baseTag, path) == tag && id.equals(tag.getId());
+        }
+    }
+
+    // ===================================================================================
+    //                                                                      Basic Override
+    //                                                                      ==============
+    @Override
+    public String toString() {
+        return "idIndex:{" + (idMap != null ? idMap.keySet() + ", duplicate=" + duplicateIdSet : "not built") + "}";
+    }
+}
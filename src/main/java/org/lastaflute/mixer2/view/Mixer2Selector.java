@@ -0,0 +1,480 @@
+/*
+ * Copyright 2015-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.lastaflute.mixer2.view;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.namespace.QName;
+
+import org.dbflute.helper.message.ExceptionMessageBuilder;
+import org.lastaflute.mixer2.exception.Mixer2SelectorIllegalFormatException;
+import org.lastaflute.mixer2.util.Mixer2TagUtil;
+import org.mixer2.xhtml.AbstractJaxb;
+
+/**
+ * The compiled selector of tags, supports simple subset of CSS selector.
+ * <pre>
+ * div          // tag name
+ * #sea         // ID
+ * .land        // CSS class
+ * [data-item]  // having attribute (data attribute, attribute property of tag or other attribute)
+ * [name=piari] // attribute value, also [name="piari"]
+ * form .land input[name=piari] // descendant combinator
+ * </pre>
+ * The selector is compiled once and cached, so compile() it with same expression many times.
+ * @author jflute
+ */
+public class Mixer2Selector {
+
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    protected static final int COMPILED_CACHE_LIMIT = 1024; // expressions are basically written in code
+    protected static final Map<String, Mixer2Selector> compiledMap = new ConcurrentHashMap<String, Mixer2Selector>();
+    protected static final Map<String, Method> attributeGetterMap = new ConcurrentHashMap<String, Method>(); // key is class#attribute
+    protected static final Method NO_GETTER; // as null in concurrent map
+
+    static {
+        try {
+            NO_GETTER = Object.class.getMethod("toString");
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Not found the toString() of Object.", e);
+        }
+    }
+
+    protected static final String DATA_ATTR_PREFIX = "data-";
+    protected static final String JAXB_DEFAULT_NAME = "##default"; // name of XmlAttribute when same as field
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    protected final String expression;
+    protected final List<SelectorStep> stepList; // separated by descendant combinator
+
+    // ===================================================================================
+    //                                                                             Compile
+    //                                                                             =======
+    /**
+     * @param expression The expression of selector e.g. "form .land input[name=piari]" (NotNull)
+     * @return The compiled selector, cached by the expression. (NotNull)
+     * @throws Mixer2SelectorIllegalFormatException When the expression is illegal format.
+     */
+    public static Mixer2Selector compile(String expression) {
+        if (expression == null) {
+            throw new IllegalArgumentException("The argument 'expression' should not be null.");
+        }
+        final Mixer2Selector cached = compiledMap.get(expression);
+        if (cached != null) {
+            return cached;
+        }
+        final Mixer2Selector compiled = new Mixer2Selector(expression);
+        if (compiledMap.size() < COMPILED_CACHE_LIMIT) { // just in case of dynamic expressions
+            compiledMap.putIfAbsent(expression, compiled);
+        }
+        return compiled;
+    }
+
+    protected Mixer2Selector(String expression) {
+        this.expression = expression;
+        this.stepList = Collections.unmodifiableList(parseStepList(expression));
+    }
+
+    // ===================================================================================
+    //                                                                               Parse
+    //                                                                               =====
+    protected List<SelectorStep> parseStepList(String expression) {
+        final List<SelectorStep> stepList = new ArrayList<SelectorStep>();
+        final int length = expression.length();
+        int index = 0;
+        while (index < length) {
+            while (index < length && Character.isWhitespace(expression.charAt(index))) {
+                ++index;
+            }
+            if (index >= length) {
+                break;
+            }
+            final SelectorStep step = new SelectorStep();
+            index = parseStep(expression, index, step);
+            stepList.add(step);
+        }
+        if (stepList.isEmpty()) {
+            throwMixer2SelectorIllegalFormatException(expression, "The selector is empty.");
+        }
+        return stepList;
+    }
+
+    protected int parseStep(String expression, int beginIndex, SelectorStep step) { // returns next index
+        final int length = expression.length();
+        int index = beginIndex;
+        while (index < length && !Character.isWhitespace(expression.charAt(index))) {
+            final char ch = expression.charAt(index);
+            if (ch == '#' || ch == '.') {
+                final int end = indexOfNameEnd(expression, index + 1);
+                final String name = expression.substring(index + 1, end);
+                if (name.isEmpty()) {
+                    throwMixer2SelectorIllegalFormatException(expression, "The name after '" + ch + "' is empty.");
+                }
+                if (ch == '#') {
+                    step.id = name;
+                } else {
+                    step.cssClassList.add(name);
+                }
+                index = end;
+            } else if (ch == '[') {
+                final int end = indexOfAttributeEnd(expression, index + 1);
+                if (end < 0) {
+                    throwMixer2SelectorIllegalFormatException(expression, "Not found the end of attribute ']'.");
+                }
+                step.attributeList.add(parseAttribute(expression, expression.substring(index + 1, end)));
+                index = end + 1;
+            } else if (index == beginIndex) { // tag name
+                final int end = indexOfNameEnd(expression, index);
+                if (end == index) {
+                    throwMixer2SelectorIllegalFormatException(expression, "Unknown character: " + ch);
+                }
+                final String tagName = expression.substring(index, end);
+                step.tagName = "*".equals(tagName) ? null : tagName.toLowerCase();
+                index = end;
+            } else {
+                throwMixer2SelectorIllegalFormatException(expression, "Unknown character: " + ch);
+            }
+        }
+        return index;
+    }
+
+    protected int indexOfNameEnd(String expression, int beginIndex) {
+        int index = beginIndex;
+        while (index < expression.length()) {
+            final char ch = expression.charAt(index);
+            if (!(Character.isLetterOrDigit(ch) || ch == '-' || ch == '_' || ch == '*')) {
+                break;
+            }
+            ++index;
+        }
+        return index;
+    }
+
+    protected int indexOfAttributeEnd(String expression, int beginIndex) { // considering quoted value
+        char quote = 0;
+        for (int index = beginIndex; index < expression.length(); index++) {
+            final char ch = expression.charAt(index);
+            if (quote != 0) {
+                if (ch == quote) {
+                    quote = 0;
+                }
+            } else if (ch == '"' || ch == '\'') {
+                quote = ch;
+            } else if (ch == ']') {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    protected SelectorAttribute parseAttribute(String expression, String attributeExp) {
+        final int equalIndex = attributeExp.indexOf('=');
+        final String name = (equalIndex >= 0 ? attributeExp.substring(0, equalIndex) : attributeExp).trim();
+        if (name.isEmpty()) {
+            throwMixer2SelectorIllegalFormatException(expression, "The attribute name is empty: [" + attributeExp + "]");
+        }
+        String value = equalIndex >= 0 ? attributeExp.substring(equalIndex + 1).trim() : null;
+        if (value != null && value.length() >= 2) {
+            final char first = value.charAt(0);
+            if ((first == '"' || first == '\'') && value.charAt(value.length() - 1) == first) {
+                value = value.substring(1, value.length() - 1);
+            }
+        }
+        return new SelectorAttribute(name, value);
+    }
+
+    protected void throwMixer2SelectorIllegalFormatException(String expression, String reason) {
+        final ExceptionMessageBuilder br = new ExceptionMessageBuilder();
+        br.addNotice("Illegal format of the selector.");
+        br.addItem("Advice");
+        br.addElement("The selector supports tag name, #id, .class, [attr], [attr=value] and descendant combinator.");
+        br.addElement("For example:");
+        br.addElement("  (o): form .land input[name=piari]");
+        br.addElement("  (o): #sea [data-item=\"land\"]");
+        br.addElement("  (x): ul > li // child combinator is unsupported");
+        br.addItem("Selector");
+        br.addElement(expression);
+        br.addItem("Reason");
+        br.addElement(reason);
+        final String msg = br.buildExceptionMessage();
+        throw new Mixer2SelectorIllegalFormatException(msg);
+    }
+
+    // ===================================================================================
+    //                                                                               Match
+    //                                                                               =====
+    /**
+     * @param tag The tag to be determined. (NotNull)
+     * @param ancestorList The list of ancestors of the tag, from base tag to parent. (NotNull)
+     * @return Does the tag match with the selector?
+     */
+    public boolean matches(AbstractJaxb tag, List<AbstractJaxb> ancestorList) {
+        final int lastIndex = stepList.size() - 1;
+        if (!stepList.get(lastIndex).matches(tag)) {
+            return false;
+        }
+        int ancestorIndex = ancestorList.size() - 1;
+        for (int stepIndex = lastIndex - 1; stepIndex >= 0; stepIndex--) { // greedy is enough for descendant only
+            final SelectorStep step = stepList.get(stepIndex);
+            while (ancestorIndex >= 0 && !step.matches(ancestorList.get(ancestorIndex))) {
+                --ancestorIndex;
+            }
+            if (ancestorIndex < 0) {
+                return false;
+            }
+            --ancestorIndex;
+        }
+        return true;
+    }
+
+    /**
+     * @param tag The tag to be determined. (NotNull)
+     * @return Does the tag itself match with the last step of the selector? (ancestors are not determined)
+     */
+    public boolean matchesSelf(AbstractJaxb tag) {
+        return stepList.get(stepList.size() - 1).matches(tag);
+    }
+
+    /**
+     * @param baseTag The base tag of the path, also the root of ancestors like select(). (NotNull)
+     * @param path The indexes of child lists from the base tag, e.g. selected from template. (NotNull)
+     * @return The tag at the path if it matches with the selector. (NullAllowed: when not found or not matched)
+     */
+    public AbstractJaxb findMatchedByPath(AbstractJaxb baseTag, int[] path) {
+        final List<AbstractJaxb> ancestorList = new ArrayList<AbstractJaxb>(path.length);
+        Object current = baseTag;
+        for (int index : path) {
+            final List<?> childList = Mixer2TagUtil.findChildList(current);
+            if (childList == null || index >= childList.size()) {
+                return null;
+            }
+            ancestorList.add((AbstractJaxb) current); // has child list so tag
+            current = childList.get(index);
+        }
+        if (!(current instanceof AbstractJaxb)) {
+            return null;
+        }
+        final AbstractJaxb tag = (AbstractJaxb) current;
+        return matches(tag, ancestorList) ? tag : null;
+    }
+
+    // ===================================================================================
+    //                                                                              Select
+    //                                                                              ======
+    /**
+     * Select the tags by walking the tree under the base tag (the base tag itself is also determined).
+     * @param baseTag The base tag to search. (NotNull)
+     * @return The list of matched tags in document order. (NotNull, EmptyAllowed)
+     */
+    public List<AbstractJaxb> select(AbstractJaxb baseTag) {
+        final List<AbstractJaxb> tagList = new ArrayList<AbstractJaxb>();
+        doSelect(baseTag, new ArrayList<AbstractJaxb>(), null, tagList, null);
+        return tagList;
+    }
+
+    /**
+     * Select the paths of tags by walking the tree under the base tag, e.g. to be cached with template.
+     * @param baseTag The base tag to search. (NotNull)
+     * @return The list of paths (indexes of child list) from the base tag in document order. (NotNull, EmptyAllowed)
+     */
+    public List<int[]> selectPathList(AbstractJaxb baseTag) {
+        final List<int[]> pathList = new ArrayList<int[]>();
+        doSelect(baseTag, new ArrayList<AbstractJaxb>(), new ArrayList<Integer>(), null, pathList);
+        return pathList;
+    }
+
+    protected void doSelect(Object element, List<AbstractJaxb> ancestorList, List<Integer> currentPath, List<AbstractJaxb> tagList,
+            List<int[]> pathList) {
+        if (!(element instanceof AbstractJaxb)) {
+            return;
+        }
+        final AbstractJaxb tag = (AbstractJaxb) element;
+        if (matches(tag, ancestorList)) {
+            if (tagList != null) {
+                tagList.add(tag);
+            }
+            if (pathList != null) {
+                pathList.add(Mixer2TagUtil.toPathArray(currentPath));
+            }
+        }
+        final List<?> childList = Mixer2TagUtil.findChildList(tag);
+        if (childList == null) {
+            return;
+        }
+        ancestorList.add(tag);
+        for (int i = 0; i < childList.size(); i++) {
+            if (currentPath != null) {
+                currentPath.add(i);
+            }
+            doSelect(childList.get(i), ancestorList, currentPath, tagList, pathList);
+            if (currentPath != null) {
+                currentPath.remove(currentPath.size() - 1);
+            }
+        }
+        ancestorList.remove(ancestorList.size() - 1);
+    }
+
+    // ===================================================================================
+    //                                                                       Selector Step
+    //                                                                       =============
+    protected static class SelectorStep {
+
+        protected String tagName; // null allowed: any tag, lower case
+        protected String id; // null allowed
+        protected final List<String> cssClassList = new ArrayList<String>(2);
+        protected final List<SelectorAttribute> attributeList = new ArrayList<SelectorAttribute>(2);
+
+        public boolean matches(AbstractJaxb tag) {
+            if (tagName != null && !tagName.equals(tag.getClass().getSimpleName().toLowerCase())) { // e.g. Div to div
+                return false;
+            }
+            if (id != null && !id.equals(tag.getId())) {
+                return false;
+            }
+            if (!cssClassList.isEmpty()) {
+                final List<String> tagClassList = tag.getCssClass();
+                if (tagClassList == null || !tagClassList.containsAll(cssClassList)) {
+                    return false;
+                }
+            }
+            for (SelectorAttribute attribute : attributeList) {
+                if (!attribute.matches(tag)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return (tagName != null ? tagName : "*") + (id != null ? "#" + id : "") + cssClassList + attributeList;
+        }
+    }
+
+    protected static class SelectorAttribute {
+
+        protected final String name;
+        protected final String value; // null allowed: only existence
+
+        public SelectorAttribute(String name, String value) {
+            this.name = name;
+            this.value = value;
+        }
+
+        public boolean matches(AbstractJaxb tag) {
+            final String actual = findAttributeValue(tag, name);
+            return actual != null && (value == null || value.equals(actual));
+        }
+
+        @Override
+        public String toString() {
+            return "[" + name + (value != null ? "=" + value : "") + "]";
+        }
+    }
+
+    // -----------------------------------------------------
+    //                                             Attribute
+    //                                             ---------
+    protected static String findAttributeValue(AbstractJaxb tag, String attributeName) { // null if no attribute
+        if (attributeName.startsWith(DATA_ATTR_PREFIX)) {
+            return tag.getData(attributeName.substring(DATA_ATTR_PREFIX.length()));
+        } else if ("id".equals(attributeName)) {
+            return tag.getId();
+        } else if ("class".equals(attributeName)) { // not getClass()
+            final List<String> cssClassList = tag.getCssClass();
+            return cssClassList != null && !cssClassList.isEmpty() ? String.join(" ", cssClassList) : null;
+        }
+        final Method getter = findAttributeGetter(tag.getClass(), attributeName);
+        if (getter == null) { // not attribute property e.g. content, so other attribute
+            final Map<QName, String> otherAttributes = tag.getOtherAttributes();
+            return otherAttributes != null ? otherAttributes.get(new QName(attributeName)) : null;
+        }
+        final Object value;
+        try {
+            value = getter.invoke(tag);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Failed to get the attribute: " + attributeName + " of " + tag.getClass(), e);
+        }
+        return value != null ? value.toString() : null;
+    }
+
+    protected static Method findAttributeGetter(Class<?> tagType, String attributeName) { // only attribute property of tag
+        final String key = tagType.getName() + "#" + attributeName;
+        Method getter = attributeGetterMap.get(key);
+        if (getter == null) {
+            final Field field = findAttributeField(tagType, attributeName);
+            getter = field != null ? findPropertyGetter(tagType, field.getName()) : null;
+            if (getter == null) {
+                getter = NO_GETTER;
+            }
+            attributeGetterMap.put(key, getter);
+        }
+        return getter != NO_GETTER ? getter : null;
+    }
+
+    protected static Field findAttributeField(Class<?> tagType, String attributeName) { // null if not attribute
+        for (Class<?> current = tagType; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                final XmlAttribute attribute = field.getAnnotation(XmlAttribute.class); // e.g. name of input
+                if (attribute == null) { // e.g. content
+                    continue;
+                }
+                final String name = JAXB_DEFAULT_NAME.equals(attribute.name()) ? field.getName() : attribute.name();
+                if (name.equalsIgnoreCase(attributeName)) { // e.g. accept-charset
+                    return field;
+                }
+            }
+        }
+        return null;
+    }
+
+    protected static Method findPropertyGetter(Class<?> tagType, String fieldName) { // null if not found
+        final String capitalized = Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+        for (String prefix : new String[] { "get", "is" }) { // is for boolean
+            try {
+                return tagType.getMethod(prefix + capitalized);
+            } catch (NoSuchMethodException ignored) {}
+        }
+        return null;
+    }
+
+    // ===================================================================================
+    //                                                                      Basic Override
+    //                                                                      ==============
+    @Override
+    public String toString() {
+        return "selector:{" + expression + "}";
+    }
+
+    // ===================================================================================
+    //                                                                            Accessor
+    //                                                                            ========
+    public String getExpression() {
+        return expression;
+    }
+}
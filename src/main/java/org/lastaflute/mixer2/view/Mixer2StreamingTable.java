@@ -0,0 +1,314 @@
+/*
+ * Copyright 2015-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.lastaflute.mixer2.view;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.lastaflute.mixer2.view.Mixer2Supporter.TableDataResource;
+import org.mixer2.Mixer2Engine;
+import org.mixer2.jaxb.xhtml.Html;
+import org.mixer2.jaxb.xhtml.Tbody;
+import org.mixer2.jaxb.xhtml.Td;
+import org.mixer2.jaxb.xhtml.Tr;
+
+/**
+ * The table body whose rows are written to response per chunk while the entities are iterated. <br>
+ * A placeholder row is put in the tbody at rendering, and the rows are written there when the page is written,
+ * so the rows of whole list do not exist as JAXB objects at the same time (only one chunk).
+ * <pre>
+ * supporter.streamToTBody(memberCursor, html, "members", res -&gt; {
+ *     res.register(res.getEntity().getMemberName());
+ * }); // rows are made when the page is written
+ * </pre>
+ * The rows are made after the view returns, so the entities should be available until the page is written,
+ * and the failure in rows is thrown after some of the page is written. <br>
+ * The URL rewriting after rendering (e.g. link URL) does not see the rows, so the rewriter is given by rewriteRows().
+ * @author jflute
+ */
+public class Mixer2StreamingTable<ENTITY> {
+
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    /** The prefix of token in saved HTML text, random per JVM to avoid conflict with real text. */
+    protected static final String TOKEN_PREFIX = "mixer2stream" + Long.toHexString(new SecureRandom().nextLong() & Long.MAX_VALUE);
+    protected static final char TOKEN_TERMINATOR = '.';
+    protected static final String ROW_BEGIN = "<tr";
+    protected static final String ROW_END = "</tr>";
+    protected static final String SCRATCH_TBODY_ID = "mixer2streamScratch";
+    protected static final String SCRATCH_HTML = "<html xmlns=\"http://www.w3.org/1999/xhtml\"><head><title></title></head><body>"
+            + "<table><tbody id=\"" + SCRATCH_TBODY_ID + "\"></tbody></table></body></html>";
+
+    /**
+     * @return The prefix of token in saved HTML text, e.g. for static fragments not to capture it. (NotNull)
+     */
+    public static String getTokenPrefix() {
+        return TOKEN_PREFIX;
+    }
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    protected final Mixer2Engine engine;
+    protected final Tbody tbody; // in rendering HTML, has only placeholder row
+    protected final Tr baseTr; // row template, copied per entity
+    protected final Iterable<ENTITY> entityIterable;
+    protected final Consumer<TableDataResource<ENTITY>> rowLambda;
+    protected final int chunkSize;
+    protected final String token; // unique in rendering
+    protected Mixer2UrlRewriter rowRewriter; // null allowed: rows are not rewritten
+
+    // ===================================================================================
+    //                                                                         Constructor
+    //                                                                         ===========
+    /**
+     * @param engine The engine of Mixer2 to serialize rows. (NotNull)
+     * @param tbody The tbody of rendering HTML, its rows are replaced with placeholder. (NotNull)
+     * @param baseTr The row template copied from first row. (NotNull)
+     * @param entityIterable The iterable of entities, iterated once when the page is written. (NotNull)
+     * @param rowLambda The callback to reflect entity to row. (NotNull)
+     * @param chunkSize The count of rows serialized at once, should be positive.
+     * @param tableIndex The index of streaming table in rendering to identify placeholder.
+     */
+    public Mixer2StreamingTable(Mixer2Engine engine, Tbody tbody, Tr baseTr, Iterable<ENTITY> entityIterable,
+            Consumer<TableDataResource<ENTITY>> rowLambda, int chunkSize, int tableIndex) {
+        this.engine = engine;
+        this.tbody = tbody;
+        this.baseTr = baseTr;
+        this.entityIterable = entityIterable;
+        this.rowLambda = rowLambda;
+        this.chunkSize = chunkSize;
+        this.token = TOKEN_PREFIX + tableIndex + TOKEN_TERMINATOR;
+    }
+
+    // ===================================================================================
+    //                                                                         Placeholder
+    //                                                                         ===========
+    /**
+     * Replace the rows of tbody with placeholder row, called at rendering.
+     */
+    public void placeHolder() {
+        final Tr placeholderTr = new Tr();
+        final Td placeholderTd = new Td();
+        placeholderTd.getContent().add(token);
+        placeholderTr.getThOrTd().add(placeholderTd);
+        tbody.unsetTr();
+        tbody.getTr().add(placeholderTr);
+    }
+
+    /**
+     * @param htmlText The HTML text saved by engine. (NotNull)
+     * @param from The index to start searching.
+     * @return The range of placeholder row in the text, [begin, end). (NullAllowed: when not found e.g. removed by view)
+     */
+    public int[] findPlaceholder(String htmlText, int from) {
+        final int tokenIndex = htmlText.indexOf(token, from);
+        if (tokenIndex < 0) {
+            return null;
+        }
+        final int begin = htmlText.lastIndexOf(ROW_BEGIN, tokenIndex);
+        final int endIndex = htmlText.indexOf(ROW_END, tokenIndex);
+        if (begin < from || endIndex < 0) { // basically no way
+            return null;
+        }
+        return new int[] { begin, endIndex + ROW_END.length() };
+    }
+
+    // ===================================================================================
+    //                                                                         Rewrite URL
+    //                                                                         ===========
+    /**
+     * Rewrite the URL attributes of rows by the rewriter that rewrites the HTML after rendering. <br>
+     * The compiled row is rewritten once, and only the rows made as JAXB objects are rewritten per row.
+     * @param rowRewriter The rewriter of URL attributes, which has rules for the HTML. (NotNull)
+     */
+    public void rewriteRows(Mixer2UrlRewriter rowRewriter) {
+        this.rowRewriter = rowRewriter;
+    }
+
+    protected void rewriteRow(Tr tr) {
+        if (rowRewriter != null) {
+            rowRewriter.rewrite(tr);
+        }
+    }
+
+    // ===================================================================================
+    //                                                                          Write Rows
+    //                                                                          ==========
+    /**
+     * Write the rows of all entities to the writer, iterating the entities here.
+     * @param writer The writer of response. (NotNull)
+     * @throws IOException When it fails to write.
+     */
+    public void writeRows(Writer writer) throws IOException {
+        final Html scratchHtml = engine.loadHtmlTemplate(SCRATCH_HTML); // only once per table
+        final Tbody scratchTbody = scratchHtml.getById(SCRATCH_TBODY_ID, Tbody.class);
+        final List<Tr> chunkList = scratchTbody.getTr();
+        final Mixer2CompiledRow compiledRow = compileRow(scratchHtml, chunkList); // null allowed
+        final Iterator<ENTITY> iterator = entityIterable.iterator();
+        while (iterator.hasNext()) {
+            final ENTITY entity = iterator.next();
+            if (compiledRow != null) {
+                final CompiledTableDataResource<ENTITY> resource = newCompiledResource(entity, compiledRow);
+                rowLambda.accept(resource);
+                if (!resource.isMaterialized()) { // only slots are filled
+                    if (!chunkList.isEmpty()) { // keep the order of rows
+                        writeChunk(scratchHtml, chunkList, writer);
+                    }
+                    compiledRow.writeRow(resource.getSlotTexts(), writer);
+                    continue;
+                }
+                final Tr tr = resource.getTr();
+                rewriteRow(tr); // may have link URL made by your lambda
+                chunkList.add(tr);
+            } else {
+                final Tr tr = baseTr.copy(Tr.class);
+                rowLambda.accept(new TableDataResource<ENTITY>(tbody, tr, Mixer2Supporter.extractTdList(tr), entity));
+                rewriteRow(tr);
+                chunkList.add(tr);
+            }
+            if (chunkList.size() >= chunkSize) {
+                writeChunk(scratchHtml, chunkList, writer);
+            }
+        }
+        if (!chunkList.isEmpty()) {
+            writeChunk(scratchHtml, chunkList, writer);
+        }
+    }
+
+    protected void writeChunk(Html scratchHtml, List<Tr> chunkList, Writer writer) throws IOException {
+        final String rowsText = saveRows(scratchHtml);
+        if (rowsText != null) {
+            writer.write(rowsText);
+        }
+        chunkList.clear(); // for next chunk
+    }
+
+    protected String saveRows(Html scratchHtml) { // null if not found
+        final String scratchText = engine.saveToString(scratchHtml);
+        final int tbodyBegin = scratchText.indexOf("<tbody");
+        final int rowsBegin = scratchText.indexOf('>', tbodyBegin) + 1;
+        final int rowsEnd = scratchText.lastIndexOf("</tbody>");
+        if (tbodyBegin < 0 || rowsEnd < rowsBegin) { // basically no way
+            return null;
+        }
+        return scratchText.substring(rowsBegin, rowsEnd);
+    }
+
+    // ===================================================================================
+    //                                                                        Compiled Row
+    //                                                                        ============
+    protected Mixer2CompiledRow compileRow(Html scratchHtml, List<Tr> chunkList) { // null if cannot compile
+        final Tr markedTr = baseTr.copy(Tr.class);
+        rewriteRow(markedTr); // once for all compiled rows
+        final String slotPrefix = token + "slot";
+        final int slotCount = Mixer2CompiledRow.markSlots(markedTr, slotPrefix);
+        chunkList.add(markedTr);
+        final String rowText = saveRows(scratchHtml);
+        chunkList.clear();
+        if (rowText == null) {
+            return null;
+        }
+        final Mixer2CompiledRow compiledRow = new Mixer2CompiledRow(rowText.trim(), slotPrefix, slotCount);
+        return compiledRow.isAvailable() ? compiledRow : null; // if not, rows are made as JAXB objects
+    }
+
+    protected CompiledTableDataResource<ENTITY> newCompiledResource(ENTITY entity, Mixer2CompiledRow compiledRow) {
+        return new CompiledTableDataResource<ENTITY>(tbody, baseTr, entity, compiledRow);
+    }
+
+    /**
+     * The resource of row that fills slots of compiled row by register(), without JAXB objects. <br>
+     * If the other operations (e.g. registerTag(), getTr()) are called, the row is made as JAXB objects
+     * from the row template with the registered texts, and it works as plain resource after that.
+     * @param <ENTITY> The type of entity.
+     */
+    public static class CompiledTableDataResource<ENTITY> extends TableDataResource<ENTITY> {
+
+        protected final Tr baseTr;
+        protected final String[] slotTexts;
+        protected Tr materializedTr; // null allowed: not materialized
+        protected List<Td> materializedTdList; // null allowed: not materialized
+
+        public CompiledTableDataResource(Tbody tbody, Tr baseTr, ENTITY entity, Mixer2CompiledRow compiledRow) {
+            super(tbody, null, null, entity);
+            this.baseTr = baseTr;
+            this.slotTexts = new String[compiledRow.getSlotCount()];
+        }
+
+        @Override
+        public void register(Object text) {
+            if (materializedTr != null) {
+                super.register(text);
+                return;
+            }
+            slotTexts[index] = text.toString(); // #pending check out of bounds
+            next();
+        }
+
+        protected void materialize() {
+            if (materializedTr != null) {
+                return;
+            }
+            materializedTr = baseTr.copy(Tr.class);
+            materializedTdList = Mixer2Supporter.extractTdList(materializedTr);
+            for (int i = 0; i < slotTexts.length; i++) {
+                if (slotTexts[i] != null) {
+                    materializedTdList.get(i).replaceInner(slotTexts[i]);
+                }
+            }
+        }
+
+        public boolean isMaterialized() {
+            return materializedTr != null;
+        }
+
+        public String[] getSlotTexts() {
+            return slotTexts;
+        }
+
+        @Override
+        public Tr getTr() {
+            materialize();
+            return materializedTr;
+        }
+
+        @Override
+        public Td getCurrentTd() {
+            materialize();
+            return materializedTdList.get(index); // #pending check out of bounds
+        }
+
+        @Override
+        public List<Td> getTdList() {
+            materialize();
+            return materializedTdList;
+        }
+    }
+
+    // ===================================================================================
+    //                                                                      Basic Override
+    //                                                                      ==============
+    @Override
+    public String toString() {
+        return "streamingTable:{" + tbody.getId() + ", chunk=" + chunkSize + "}";
+    }
+}
@@ -17,47 +17,73 @@ package org.lastaflute.mixer2.view;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import org.dbflute.helper.message.ExceptionMessageBuilder;
 import org.dbflute.optional.OptionalThing;
+import org.lastaflute.mixer2.exception.Mixer2GetByDataItemDuplicateException;
+import org.lastaflute.mixer2.exception.Mixer2GetByDataItemNotFoundException;
 import org.lastaflute.mixer2.exception.Mixer2GetByIDFailureException;
 import org.lastaflute.mixer2.exception.Mixer2GetByIDNotFoundException;
 import org.lastaflute.mixer2.exception.Mixer2ReplaceByIDFailureException;
 import org.lastaflute.mixer2.exception.Mixer2ReplaceByIDNotFoundException;
+import org.lastaflute.mixer2.template.Mixer2DataIndex;
+import org.lastaflute.mixer2.template.Mixer2StaticFragments;
+import org.lastaflute.mixer2.template.Mixer2TemplateFeatures;
 import org.lastaflute.mixer2.template.Mixer2TemplateReader;
+import org.lastaflute.mixer2.template.Mixer2TemplateReader.LoadedHtml;
+import org.lastaflute.mixer2.template.Mixer2TemplateTransformer;
+import org.lastaflute.mixer2.util.Mixer2TagUtil;
+import org.lastaflute.mixer2.view.Mixer2FragmentCache.FragmentRendering;
 import org.lastaflute.web.UrlChain;
 import org.lastaflute.web.path.ActionPathResolver;
 import org.lastaflute.web.servlet.request.RequestManager;
 import org.mixer2.Mixer2Engine;
 import org.mixer2.jaxb.xhtml.A;
-import org.mixer2.jaxb.xhtml.Dl;
-import org.mixer2.jaxb.xhtml.Flow;
 import org.mixer2.jaxb.xhtml.Footer;
-import org.mixer2.jaxb.xhtml.Form;
 import org.mixer2.jaxb.xhtml.Header;
 import org.mixer2.jaxb.xhtml.Html;
-import org.mixer2.jaxb.xhtml.Inline;
 import org.mixer2.jaxb.xhtml.Input;
-import org.mixer2.jaxb.xhtml.Ol;
 import org.mixer2.jaxb.xhtml.Option;
 import org.mixer2.jaxb.xhtml.Script;
 import org.mixer2.jaxb.xhtml.Select;
 import org.mixer2.jaxb.xhtml.Tbody;
 import org.mixer2.jaxb.xhtml.Td;
 import org.mixer2.jaxb.xhtml.Tr;
-import org.mixer2.jaxb.xhtml.Ul;
 import org.mixer2.xhtml.AbstractJaxb;
-import org.mixer2.xhtml.PathAdjuster;
 
 /**
  * @author jflute
  */
 public class Mixer2Supporter {
 
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    protected static final String DERIVED_DATA_INDEX_KEY = Mixer2DataIndex.class.getName();
+    protected static final String DERIVED_SCOPED_DATA_INDEX_KEY = Mixer2DataIndex.class.getName() + ":scoped";
+    protected static final String DERIVED_FEATURES_KEY = Mixer2TemplateFeatures.class.getName();
+    protected static final String DERIVED_SELECTOR_KEY_PREFIX = Mixer2Selector.class.getName() + ":";
+    protected static final String LINK_URL_BEGIN_MARK = "@{/";
+    protected static final String LINK_URL_END_MARK = "}";
+    protected static final Pattern LINK_URL_BEGIN_PATTERN = Pattern.compile(Pattern.quote(LINK_URL_BEGIN_MARK));
+    protected static final Pattern LINK_URL_END_PATTERN = Pattern.compile(Pattern.quote(LINK_URL_END_MARK) + "$");
+    protected static final int DUPLICATE_CHECK_LIMIT = 3; // duplicate if over two (as before)
+    protected static final String CACHE_DATA_KEY = "cache"; // e.g. data-cache="globalMenu"
+
     // ===================================================================================
     //                                                                           Attribute
     //                                                                           =========
@@ -65,12 +91,53 @@ public class Mixer2Supporter {
     protected final RequestManager requestManager;
     protected final Mixer2TemplateReader templateReader;
     protected final ActionPathResolver actionPathResolver;
+    protected final LoadedHtml loadedHtml; // null allowed: no index of template, search by walking
+    protected final Mixer2FragmentCache fragmentCache; // null allowed: no fragment cache e.g. development
+    protected FragmentRendering fragmentRendering; // null allowed: lazy-loaded
+    protected Mixer2DataIndex dataIndex; // null allowed: lazy-loaded, whole tree
+    protected Mixer2DataIndex scopedDataIndex; // null allowed: lazy-loaded, compatible search scope
+    protected Mixer2TemplateFeatures templateFeatures; // null allowed: lazy-loaded
+    protected final List<Mixer2TemplateFeatures> partsFeaturesList = new ArrayList<Mixer2TemplateFeatures>(2); // e.g. layout
+    protected boolean linkUrlProduced; // by toLinkUrl() in view
+    protected boolean featuresUnknown; // marked by view
+    protected final Map<AbstractJaxb, Mixer2IdIndex> idIndexMap = new IdentityHashMap<AbstractJaxb, Mixer2IdIndex>(); // key is base tag
+    protected final List<Mixer2StreamingTable<?>> streamingTableList = new ArrayList<Mixer2StreamingTable<?>>(2);
+    protected Mixer2TagPipeline sharedTagPipeline; // null allowed: only while shared by view e.g. typical view
+    protected Mixer2UrlRewriter sharedUrlRewriter; // null allowed: same
+    protected boolean wholeHtmlSearch; // searches all tags in body from html, not only header, footer and script
+    protected boolean featureSkipped; // skips resolver stages by template features, tags added by view may be missed
+    protected boolean deepSearch; // searches also in content of table and head
 
     // ===================================================================================
     //                                                                         Constructor
     //                                                                         ===========
     public Mixer2Supporter(Mixer2Engine engine, RequestManager requestManager, Mixer2TemplateReader templateReader,
             ActionPathResolver actionPathResolver) {
+        this(engine, requestManager, templateReader, actionPathResolver, null);
+    }
+
+    /**
+     * @param engine The engine of Mixer2. (NotNull)
+     * @param requestManager The manager of request. (NotNull)
+     * @param templateReader The reader of template for parts. (NotNull)
+     * @param actionPathResolver The resolver of action path for link URL. (NotNull)
+     * @param loadedHtml The loaded HTML of rendering to use indexes derived from its template. (NullAllowed: if null, no index)
+     */
+    public Mixer2Supporter(Mixer2Engine engine, RequestManager requestManager, Mixer2TemplateReader templateReader,
+            ActionPathResolver actionPathResolver, LoadedHtml loadedHtml) {
+        this(engine, requestManager, templateReader, actionPathResolver, loadedHtml, null);
+    }
+
+    /**
+     * @param engine The engine of Mixer2. (NotNull)
+     * @param requestManager The manager of request. (NotNull)
+     * @param templateReader The reader of template for parts. (NotNull)
+     * @param actionPathResolver The resolver of action path for link URL. (NotNull)
+     * @param loadedHtml The loaded HTML of rendering to use indexes derived from its template. (NullAllowed: if null, no index)
+     * @param fragmentCache The cache of rendered fragments shared by requests. (NullAllowed: if null, always rendered)
+     */
+    public Mixer2Supporter(Mixer2Engine engine, RequestManager requestManager, Mixer2TemplateReader templateReader,
+            ActionPathResolver actionPathResolver, LoadedHtml loadedHtml, Mixer2FragmentCache fragmentCache) {
         assertArgumentNotNull("engine", engine);
         assertArgumentNotNull("requestManager", requestManager);
         assertArgumentNotNull("templateReader", templateReader);
@@ -79,37 +146,61 @@ public class Mixer2Supporter {
         this.requestManager = requestManager;
         this.templateReader = templateReader;
         this.actionPathResolver = actionPathResolver;
+        this.loadedHtml = loadedHtml;
+        this.fragmentCache = fragmentCache;
+    }
+
+    // ===================================================================================
+    //                                                                              Option
+    //                                                                              ======
+    /**
+     * Search all tags in body when the base tag is html, for searchTagList(), findInput() and so on. <br>
+     * As default (compatible), the search from html is in head and header, footer and script elements in body,
+     * so search from body for other tags, or use this option.
+     * @param wholeHtmlSearch Does it search all tags in body from html?
+     * @return this. (NotNull)
+     */
+    public Mixer2Supporter asWholeHtmlSearch(boolean wholeHtmlSearch) {
+        this.wholeHtmlSearch = wholeHtmlSearch;
+        return this;
+    }
+
+    /**
+     * Search also in content of table and head (e.g. input in td), for searchTagList(), findInput(), data-errors and so on. <br>
+     * As default (compatible), the content of table and head is not searched (the table and head tags themselves are),
+     * so search from the td tag for the tags in it, or use this option.
+     * @param deepSearch Does it search also in content of table and head?
+     * @return this. (NotNull)
+     */
+    public Mixer2Supporter asDeepSearch(boolean deepSearch) {
+        this.deepSearch = deepSearch;
+        return this;
+    }
+
+    /**
+     * Skip the resolver stages that the template does not need, by features summarized when the template is loaded. <br>
+     * As default (compatible), the stages are not skipped, e.g. link URL set by your view is always resolved.
+     * If you use this option, call markFeaturesUnknown() when your view adds tags that need the stages,
+     * e.g. setHref("@{/sea/}") without toLinkUrl(), relative CSS path, header not in template.
+     * @param featureSkipped Does it skip the stages by template features?
+     * @return this. (NotNull)
+     */
+    public Mixer2Supporter asFeatureSkipped(boolean featureSkipped) {
+        this.featureSkipped = featureSkipped;
+        return this;
     }
 
     // ===================================================================================
     //                                                                            Find Tag
     //                                                                            ========
-    // #pending now design
-    //public <TAG extends AbstractJaxb> OptionalThing<TAG> findByDataItem(AbstractJaxb baseTag, String dataKey, Class<TAG> tagType) {
-    //    final List<AbstractJaxb> tagList = new ArrayList<AbstractJaxb>();
-    //    collectBy(Arrays.asList(baseTag), tag -> {
-    //        // #pending tagType check
-    //        final String data = tag.getData("item");
-    //        return data != null && data.equals(dataKey); // e.g. data-item="sea"
-    //    } , tagList); // #pending performance tuning as-one
-    //    if (tagList.size() > 2) { // #pending rich message
-    //        throw new IllegalStateException("Duplicate name for header tag: found=" + tagList);
-    //    }
-    //    @SuppressWarnings("unchecked")
-    //    final TAG foundTag = (TAG) (!tagList.isEmpty() ? tagList.get(0) : null);
-    //    return OptionalThing.ofNullable(foundTag, () -> {
-    //        // #pending rich message
-    //        throw new IllegalStateException("Not found the data tag by the key: " + dataKey);
-    //    });
-    //}
-
     public <TAG extends AbstractJaxb> OptionalThing<TAG> findById(AbstractJaxb baseTag, String id, Class<TAG> tagType) {
         assertArgumentNotNull("baseTag", baseTag);
         assertArgumentNotNull("id", id);
         assertArgumentNotNull("tagType", tagType);
         final TAG found;
         try {
-            found = baseTag.getById(id, tagType);
+            final TAG indexed = findIndexedTag(baseTag, id, tagType);
+            found = indexed != null ? indexed : baseTag.getById(id, tagType); // walk if not indexed
         } catch (RuntimeException e) {
             throwMixer2GetByIDFailureException(baseTag, id, tagType, e);
             return null; // unreachable
@@ -117,6 +208,20 @@ public class Mixer2Supporter {
         return OptionalThing.ofNullable(found, () -> throwMixer2GetByIDNotFoundException(baseTag, id, tagType));
     }
 
+    protected <TAG extends AbstractJaxb> TAG findIndexedTag(AbstractJaxb baseTag, String id, Class<TAG> tagType) {
+        final AbstractJaxb indexed = getIdIndex(baseTag).find(id);
+        if (indexed == null || !tagType.isAssignableFrom(indexed.getClass())) { // type mismatch is handled by getById()
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        final TAG found = (TAG) indexed;
+        return found;
+    }
+
+    protected Mixer2IdIndex getIdIndex(AbstractJaxb baseTag) { // one rendering uses one thread
+        return idIndexMap.computeIfAbsent(baseTag, key -> new Mixer2IdIndex(key));
+    }
+
     protected <TAG extends AbstractJaxb> void throwMixer2GetByIDFailureException(AbstractJaxb baseTag, String id, Class<TAG> tagType,
             RuntimeException cause) {
         final ExceptionMessageBuilder br = new ExceptionMessageBuilder();
@@ -145,10 +250,9 @@ public class Mixer2Supporter {
     }
 
     public OptionalThing<Header> findHeader(AbstractJaxb baseTag) {
-        final List<AbstractJaxb> tagList = new ArrayList<AbstractJaxb>();
-        collectBy(Arrays.asList(baseTag), tag -> {
+        final List<AbstractJaxb> tagList = searchTagList(baseTag, tag -> {
             return Header.class.isAssignableFrom(tag.getClass());
-        } , tagList); // #pending performance tuning as-one
+        } , DUPLICATE_CHECK_LIMIT); // stops when determined
         if (tagList.size() > 2) { // #pending rich message
             throw new IllegalStateException("Duplicate name for header tag: found=" + tagList);
         }
@@ -160,10 +264,9 @@ public class Mixer2Supporter {
     }
 
     public OptionalThing<Footer> findFooter(AbstractJaxb baseTag) {
-        final List<AbstractJaxb> tagList = new ArrayList<AbstractJaxb>();
-        collectBy(Arrays.asList(baseTag), tag -> {
+        final List<AbstractJaxb> tagList = searchTagList(baseTag, tag -> {
             return Footer.class.isAssignableFrom(tag.getClass());
-        } , tagList); // #pending performance tuning as-one
+        } , DUPLICATE_CHECK_LIMIT); // stops when determined
         if (tagList.size() > 2) { // #pending rich message
             throw new IllegalStateException("Duplicate name for footer tag: found=" + tagList);
         }
@@ -175,10 +278,9 @@ public class Mixer2Supporter {
     }
 
     public OptionalThing<Input> findInput(AbstractJaxb baseTag, String name) {
-        final List<AbstractJaxb> tagList = new ArrayList<AbstractJaxb>();
-        collectBy(Arrays.asList(baseTag), tag -> {
+        final List<AbstractJaxb> tagList = searchTagList(baseTag, tag -> {
             return Input.class.isAssignableFrom(tag.getClass()) && name.equals(((Input) tag).getName());
-        } , tagList); // #pending performance tuning as-one
+        } , DUPLICATE_CHECK_LIMIT); // stops when determined
         if (tagList.size() > 2) { // #pending rich message
             throw new IllegalStateException("Duplicate name for input tag: " + name + ", found=" + tagList);
         }
@@ -190,10 +292,9 @@ public class Mixer2Supporter {
     }
 
     public OptionalThing<Select> findSelect(AbstractJaxb baseTag, String name) {
-        final List<AbstractJaxb> tagList = new ArrayList<AbstractJaxb>();
-        collectBy(Arrays.asList(baseTag), tag -> {
+        final List<AbstractJaxb> tagList = searchTagList(baseTag, tag -> {
             return Select.class.isAssignableFrom(tag.getClass()) && name.equals(((Select) tag).getName());
-        } , tagList); // #pending performance tuning as-one
+        } , DUPLICATE_CHECK_LIMIT); // stops when determined
         if (tagList.size() > 2) { // #pending rich message
             throw new IllegalStateException("Duplicate name for select tag: " + name + ", found=" + tagList);
         }
@@ -205,59 +306,355 @@ public class Mixer2Supporter {
     }
 
     // ===================================================================================
-    //                                                                              Search
+    //                                                                        Find by Data
+    //                                                                        ============
+    /**
+     * Find the tag by data-item attribute e.g. data-item="sea". <br>
+     * The data attributes in template are indexed so it does not walk the tree basically.
+     * @param <TAG> The type of tag.
+     * @param baseTag The base tag to search the item e.g. html, body. (NotNull)
+     * @param itemName The name of item as value of data-item attribute e.g. sea. (NotNull)
+     * @param tagType The type of tag. (NotNull)
+     * @return The optional tag found by the item. (NotNull, EmptyAllowed: when not found)
+     */
+    public <TAG extends AbstractJaxb> OptionalThing<TAG> findByDataItem(AbstractJaxb baseTag, String itemName, Class<TAG> tagType) {
+        assertArgumentNotNull("baseTag", baseTag);
+        assertArgumentNotNull("itemName", itemName);
+        assertArgumentNotNull("tagType", tagType);
+        final List<TAG> tagList = searchByDataItem(baseTag, itemName, tagType);
+        if (tagList.size() > 1) {
+            throwMixer2GetByDataItemDuplicateException(baseTag, itemName, tagType, tagList);
+        }
+        final TAG found = !tagList.isEmpty() ? tagList.get(0) : null;
+        return OptionalThing.ofNullable(found, () -> throwMixer2GetByDataItemNotFoundException(baseTag, itemName, tagType));
+    }
+
+    /**
+     * Search the tags by data-item attribute e.g. data-item="sea".
+     * @param <TAG> The type of tag.
+     * @param baseTag The base tag to search the item e.g. html, body. (NotNull)
+     * @param itemName The name of item as value of data-item attribute e.g. sea. (NotNull)
+     * @param tagType The type of tag, other types are ignored. (NotNull)
+     * @return The list of found tags in document order. (NotNull, EmptyAllowed: when not found)
+     */
+    public <TAG extends AbstractJaxb> List<TAG> searchByDataItem(AbstractJaxb baseTag, String itemName, Class<TAG> tagType) {
+        assertArgumentNotNull("baseTag", baseTag);
+        assertArgumentNotNull("itemName", itemName);
+        assertArgumentNotNull("tagType", tagType);
+        final List<AbstractJaxb> dataTagList = searchByData(baseTag, "item");
+        final List<TAG> tagList = new ArrayList<TAG>(2);
+        for (AbstractJaxb tag : dataTagList) {
+            if (itemName.equals(tag.getData("item")) && tagType.isAssignableFrom(tag.getClass())) {
+                @SuppressWarnings("unchecked")
+                final TAG castTag = (TAG) tag;
+                tagList.add(castTag);
+            }
+        }
+        return tagList;
+    }
+
+    /**
+     * Search the tags that have the data attribute e.g. data-errors. <br>
+     * The data attributes in template are indexed, and it walks the tree only if the index cannot be used
+     * (e.g. the base tag is not html or body, the indexed tags are moved). <br>
+     * The tags added by your view (not in template) may not be found, so use searchTagList() for them.
+     * @param <TAG> The type of tag.
+     * @param baseTag The base tag to search e.g. html, body. (NotNull)
+     * @param dataKey The key of data attribute e.g. errors for data-errors. (NotNull)
+     * @return The list of found tags in document order. (NotNull, EmptyAllowed: when not found)
+     */
+    public <TAG extends AbstractJaxb> List<TAG> searchByData(AbstractJaxb baseTag, String dataKey) {
+        assertArgumentNotNull("baseTag", baseTag);
+        assertArgumentNotNull("dataKey", dataKey);
+        return doSearchByData(baseTag, dataKey, deepSearch);
+    }
+
+    protected <TAG extends AbstractJaxb> List<TAG> doSearchByData(AbstractJaxb baseTag, String dataKey, boolean deep) {
+        final List<AbstractJaxb> indexedList = findIndexedDataList(baseTag, dataKey, deep);
+        final Mixer2TagWalker walker = deep ? newTagWalker() : newTagWalker().compatibleScope();
+        final List<AbstractJaxb> tagList = indexedList != null ? indexedList : walker.search(baseTag, tag -> {
+            return tag.getData(dataKey) != null; // whole body like index even if html
+        });
+        @SuppressWarnings("unchecked")
+        final List<TAG> castList = (List<TAG>) tagList;
+        return castList;
+    }
+
+    protected List<AbstractJaxb> findIndexedDataList(AbstractJaxb baseTag, String dataKey, boolean deep) { // null if cannot use
+        if (!isTemplateIndexAvailable(baseTag)) {
+            return null;
+        }
+        return getDataIndex(deep).findTagList(loadedHtml.getHtml(), dataKey);
+    }
+
+    /**
+     * @param dataKey The key of data attribute e.g. errors for data-errors. (NotNull)
+     * @return Does the rendering HTML might have the data attribute? (true if not skipped by features)
+     */
+    public boolean mightHaveData(String dataKey) {
+        assertArgumentNotNull("dataKey", dataKey);
+        return mightHaveFeature(features -> features.hasData(dataKey));
+    }
+
+    /**
+     * Derive the data from the template of the rendering only once while the template is cached. <br>
+     * The derived data is for the tree in template, e.g. paths of tags, so it cannot be used for other base tags.
+     * @param <RESULT> The type of derived data.
+     * @param baseTag The base tag to use the derived data e.g. html, body. (NotNull)
+     * @param derivedKey The key of derived data, unique per derivation e.g. resolver class name. (NotNull)
+     * @param deriver The callback to derive the data from master HTML, should not modify it. (NotNull)
+     * @return The optional derived data. (NotNull, EmptyAllowed: when no template of rendering or other base tag)
+     */
+    public <RESULT> OptionalThing<RESULT> deriveFromTemplate(AbstractJaxb baseTag, String derivedKey, Function<Html, RESULT> deriver) {
+        assertArgumentNotNull("baseTag", baseTag);
+        assertArgumentNotNull("derivedKey", derivedKey);
+        assertArgumentNotNull("deriver", deriver);
+        final RESULT derived = isTemplateIndexAvailable(baseTag) ? loadedHtml.deriveFromMaster(derivedKey, deriver) : null;
+        return OptionalThing.ofNullable(derived, () -> {
+            throw new IllegalStateException("Cannot derive from the template for the base tag: " + derivedKey + ", " + baseTag);
+        });
+    }
+
+    protected Mixer2DataIndex getDataIndex(boolean deep) { // built once per cached template
+        if (deep) {
+            if (dataIndex == null) {
+                dataIndex = loadedHtml.deriveFromMaster(DERIVED_DATA_INDEX_KEY, master -> new Mixer2DataIndex(master, true));
+            }
+            return dataIndex;
+        }
+        if (scopedDataIndex == null) {
+            scopedDataIndex = loadedHtml.deriveFromMaster(DERIVED_SCOPED_DATA_INDEX_KEY, master -> new Mixer2DataIndex(master, false));
+        }
+        return scopedDataIndex;
+    }
+
+    protected boolean isTemplateIndexAvailable(AbstractJaxb baseTag) { // index paths are from html, and body has all
+        if (loadedHtml == null) {
+            return false;
+        }
+        final Html html = loadedHtml.getHtml();
+        return baseTag == html || baseTag == html.getBody();
+    }
+
+    protected <TAG extends AbstractJaxb> void throwMixer2GetByDataItemDuplicateException(AbstractJaxb baseTag, String itemName,
+            Class<TAG> tagType, List<TAG> tagList) {
+        final ExceptionMessageBuilder br = new ExceptionMessageBuilder();
+        br.addNotice("Duplicate tags by the data item.");
+        br.addItem("Advice");
+        br.addElement("The data item should be unique in the base tag.");
+        br.addItem("Duplicate Item");
+        br.addElement(itemName);
+        br.addItem("Tag Type");
+        br.addElement(tagType);
+        br.addItem("Found Tag");
+        for (TAG tag : tagList) {
+            br.addElement(tag);
+        }
+        br.addItem("Base Tag");
+        br.addElement(baseTag);
+        final String msg = br.buildExceptionMessage();
+        throw new Mixer2GetByDataItemDuplicateException(msg);
+    }
+
+    protected <TAG extends AbstractJaxb> void throwMixer2GetByDataItemNotFoundException(AbstractJaxb baseTag, String itemName,
+            Class<TAG> tagType) {
+        final ExceptionMessageBuilder br = new ExceptionMessageBuilder();
+        br.addNotice("Not found the data item in the tag.");
+        br.addItem("NotFound Item");
+        br.addElement(itemName);
+        br.addItem("Tag Type");
+        br.addElement(tagType);
+        br.addItem("Base Tag");
+        br.addElement(baseTag);
+        final String msg = br.buildExceptionMessage();
+        throw new Mixer2GetByDataItemNotFoundException(msg);
+    }
+
+    // ===================================================================================
+    //                                                                              Select
     //                                                                              ======
-    public <TAG extends AbstractJaxb> List<TAG> searchTagList(AbstractJaxb baseTag, TagDeterminer oneArgLambda) {
-        final List<AbstractJaxb> tagList = new ArrayList<AbstractJaxb>();
-        collectBy(Arrays.asList(baseTag), oneArgLambda, tagList);
+    /**
+     * Select the tags by the selector e.g. "form .land input[name=piari]". <br>
+     * The selector is compiled once, and the matched paths are cached with template
+     * so the tree is not walked basically if the base tag is html or body. <br>
+     * The tags added by your view (not in template) may not be found, so use searchTagList() for them.
+     * @param <TAG> The type of tag.
+     * @param baseTag The base tag to search e.g. html, body. (NotNull)
+     * @param selector The expression of selector, see {@link Mixer2Selector}. (NotNull)
+     * @return The list of selected tags in document order. (NotNull, EmptyAllowed: when not found)
+     */
+    public <TAG extends AbstractJaxb> List<TAG> select(AbstractJaxb baseTag, String selector) {
+        assertArgumentNotNull("baseTag", baseTag);
+        assertArgumentNotNull("selector", selector);
+        final Mixer2Selector compiled = Mixer2Selector.compile(selector);
+        final List<AbstractJaxb> indexedList = findIndexedSelectedList(baseTag, compiled);
+        final List<AbstractJaxb> tagList = indexedList != null ? indexedList : compiled.select(baseTag);
         @SuppressWarnings("unchecked")
         final List<TAG> castList = (List<TAG>) tagList;
         return castList;
     }
 
-    @FunctionalInterface
-    public static interface TagDeterminer {
+    /**
+     * Select the first tag by the selector e.g. "#sea .land".
+     * @param <TAG> The type of tag.
+     * @param baseTag The base tag to search e.g. html, body. (NotNull)
+     * @param selector The expression of selector, see {@link Mixer2Selector}. (NotNull)
+     * @return The optional first tag in document order. (NotNull, EmptyAllowed: when not found)
+     */
+    public <TAG extends AbstractJaxb> OptionalThing<TAG> selectFirst(AbstractJaxb baseTag, String selector) {
+        final List<TAG> tagList = select(baseTag, selector);
+        final TAG found = !tagList.isEmpty() ? tagList.get(0) : null;
+        return OptionalThing.ofNullable(found, () -> { // #pending rich message
+            throw new IllegalStateException("Not found the tag by the selector: " + selector + " in " + baseTag);
+        });
+    }
 
-        boolean isTarget(AbstractJaxb tag);
+    protected List<AbstractJaxb> findIndexedSelectedList(AbstractJaxb baseTag, Mixer2Selector selector) { // null if cannot
+        if (!isTemplateIndexAvailable(baseTag)) {
+            return null;
+        }
+        final boolean fromBody = baseTag != loadedHtml.getHtml(); // ancestors are from base tag as walking
+        final String derivedKey = DERIVED_SELECTOR_KEY_PREFIX + (fromBody ? "body:" : "html:") + selector.getExpression();
+        final List<int[]> pathList = loadedHtml.deriveFromMaster(derivedKey, master -> {
+            return selector.selectPathList(fromBody ? master.getBody() : master);
+        });
+        final List<AbstractJaxb> tagList = new ArrayList<AbstractJaxb>(pathList.size());
+        for (int[] path : pathList) {
+            final AbstractJaxb found = selector.findMatchedByPath(baseTag, path);
+            if (found == null) { // moved or changed by view
+                return null;
+            }
+            tagList.add(found);
+        }
+        return tagList;
     }
 
-    protected void collectBy(List<? extends Object> content, TagDeterminer determiner, List<AbstractJaxb> tagList) {
-        for (Object element : content) {
-            if (element instanceof AbstractJaxb) {
-                final AbstractJaxb tag = (AbstractJaxb) element;
-                if (determiner.isTarget(tag)) {
-                    tagList.add(tag);
-                }
-                if (element instanceof Html) {
-                    final Html html = (Html) tag;
-                    collectBy(Arrays.asList(html.getHead()), determiner, tagList);
-                    collectBy(html.getDescendants(Header.class), determiner, tagList);
-                    collectBy(html.getDescendants(Footer.class), determiner, tagList);
-                    collectBy(html.getDescendants(Script.class), determiner, tagList);
-                }
-                if (element instanceof Flow) {
-                    collectBy(((Flow) tag).getContent(), determiner, tagList);
-                }
-                if (element instanceof Inline) {
-                    collectBy(((Inline) tag).getContent(), determiner, tagList);
-                }
-                if (element instanceof Form) {
-                    collectBy(((Form) element).getContent(), determiner, tagList);
-                }
-                if (element instanceof Ul) {
-                    collectBy(((Ul) element).getLi(), determiner, tagList);
-                }
-                if (element instanceof Ol) {
-                    collectBy(((Ol) element).getLi(), determiner, tagList);
-                }
-                if (element instanceof Dl) {
-                    collectBy(((Dl) element).getDtOrDd(), determiner, tagList);
-                }
-                if (element instanceof Select) {
-                    collectBy(((Select) element).getOptgroupOrOption(), determiner, tagList);
+    // ===================================================================================
+    //                                                                              Search
+    //                                                                              ======
+    /**
+     * Search the tags by walking the tree under the base tag. <br>
+     * If the base tag is html, head and header, footer and script elements in body are searched (and html itself)
+     * as default, see {@link #asWholeHtmlSearch(boolean)}.
+     * @param <TAG> The type of tag.
+     * @param baseTag The base tag to search e.g. html, body. (NotNull)
+     * @param oneArgLambda The determiner of target tag. (NotNull)
+     * @return The list of found tags in document order. (NotNull, EmptyAllowed: when not found)
+     */
+    public <TAG extends AbstractJaxb> List<TAG> searchTagList(AbstractJaxb baseTag, TagDeterminer oneArgLambda) {
+        assertArgumentNotNull("baseTag", baseTag);
+        assertArgumentNotNull("oneArgLambda", oneArgLambda);
+        return doSearchTagList(baseTag, oneArgLambda, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Search the tags by walking the tree, and stop walking when the count of found tags reaches the limit.
+     * @param <TAG> The type of tag.
+     * @param baseTag The base tag to search e.g. html, body. (NotNull)
+     * @param oneArgLambda The determiner of target tag. (NotNull)
+     * @param limit The max count of found tags, should be positive.
+     * @return The list of found tags in document order, up to limit. (NotNull, EmptyAllowed: when not found)
+     */
+    public <TAG extends AbstractJaxb> List<TAG> searchTagList(AbstractJaxb baseTag, TagDeterminer oneArgLambda, int limit) {
+        assertArgumentNotNull("baseTag", baseTag);
+        assertArgumentNotNull("oneArgLambda", oneArgLambda);
+        if (limit <= 0) {
+            throw new IllegalArgumentException("The argument 'limit' should be positive: " + limit);
+        }
+        return doSearchTagList(baseTag, oneArgLambda, limit);
+    }
+
+    /**
+     * Find the first tag by walking the tree, and stop walking there.
+     * @param <TAG> The type of tag.
+     * @param baseTag The base tag to search e.g. html, body. (NotNull)
+     * @param oneArgLambda The determiner of target tag. (NotNull)
+     * @return The optional first tag in document order. (NotNull, EmptyAllowed: when not found)
+     */
+    public <TAG extends AbstractJaxb> OptionalThing<TAG> findFirstTag(AbstractJaxb baseTag, TagDeterminer oneArgLambda) {
+        assertArgumentNotNull("baseTag", baseTag);
+        assertArgumentNotNull("oneArgLambda", oneArgLambda);
+        final List<TAG> tagList = doSearchTagList(baseTag, oneArgLambda, 1);
+        final TAG found = !tagList.isEmpty() ? tagList.get(0) : null;
+        return OptionalThing.ofNullable(found, () -> { // #pending rich message
+            throw new IllegalStateException("Not found the tag by the determiner in the tag: " + baseTag);
+        });
+    }
+
+    protected <TAG extends AbstractJaxb> List<TAG> doSearchTagList(AbstractJaxb baseTag, TagDeterminer determiner, int limit) {
+        if (baseTag instanceof Html && !wholeHtmlSearch) {
+            return searchHtmlScope((Html) baseTag, determiner, limit);
+        }
+        return newSearchWalker().limit(limit).search(baseTag, determiner);
+    }
+
+    protected <TAG extends AbstractJaxb> List<TAG> searchHtmlScope(Html html, TagDeterminer determiner, int limit) {
+        final List<AbstractJaxb> scopeList = new ArrayList<AbstractJaxb>(); // in order of head, header, footer, script
+        if (html.getHead() != null) {
+            scopeList.add(html.getHead());
+        }
+        final List<AbstractJaxb> footerList = new ArrayList<AbstractJaxb>(1);
+        final List<AbstractJaxb> scriptList = new ArrayList<AbstractJaxb>();
+        if (html.getBody() != null) {
+            newTagWalker().walk(html.getBody(), tag -> { // locates them in one walk, also in table as before
+                if (tag instanceof Header) {
+                    scopeList.add(tag);
+                } else if (tag instanceof Footer) {
+                    footerList.add(tag);
+                } else if (tag instanceof Script) {
+                    scriptList.add(tag);
                 }
+                return true; // nested ones are also searched
+            });
+        }
+        scopeList.addAll(footerList);
+        scopeList.addAll(scriptList);
+        final List<TAG> tagList = new ArrayList<TAG>();
+        if (determiner.isTarget(html)) {
+            @SuppressWarnings("unchecked")
+            final TAG castTag = (TAG) html;
+            tagList.add(castTag);
+        }
+        for (AbstractJaxb scope : scopeList) {
+            if (tagList.size() >= limit) {
+                break;
             }
+            tagList.addAll(newSearchWalker().limit(limit - tagList.size()).search(scope, determiner));
         }
+        return tagList;
+    }
+
+    @FunctionalInterface
+    public static interface TagDeterminer {
+
+        boolean isTarget(AbstractJaxb tag);
+    }
+
+    /**
+     * @return The new walker of tag tree, not thread-safe so one walker per thread. (NotNull)
+     */
+    public Mixer2TagWalker newTagWalker() {
+        final Mixer2TagWalker walker = new Mixer2TagWalker();
+        return isStaticShared() ? walker.skip(tag -> isSharedStatic(tag)) : walker;
+    }
+
+    protected Mixer2TagWalker newSearchWalker() { // e.g. for searchTagList()
+        final Mixer2TagWalker walker = newTagWalker();
+        return deepSearch ? walker : walker.compatibleScope(); // not in table and head as before
+    }
+
+    // -----------------------------------------------------
+    //                                         Static Shared
+    //                                         -------------
+    /**
+     * @return Does the HTML of rendering share static elements with cached master? (then they are not walked)
+     */
+    public boolean isStaticShared() {
+        return loadedHtml != null && loadedHtml.isStaticShared();
+    }
+
+    protected boolean isSharedStatic(AbstractJaxb tag) { // outermost static element is shared
+        return tag.getData(Mixer2StaticFragments.STATIC_DATA_KEY) != null;
     }
 
     // ===================================================================================
@@ -274,14 +671,144 @@ public class Mixer2Supporter {
         tbody.unsetTr();
         entityList.forEach(entity -> {
             final Tr tr = baseTr.copy(Tr.class);
-            final List<Td> tdList = tr.getThOrTd().stream().map(flow -> {
-                return (Td) flow; // #pending check class cast
-            }).collect(Collectors.toList());
-            oneArgLambda.accept(new TableDataResource<ENTITY>(tbody, tr, tdList, entity));
+            oneArgLambda.accept(new TableDataResource<ENTITY>(tbody, tr, extractTdList(tr), entity));
             tbody.getTr().add(tr);
         });
     }
 
+    /**
+     * Reflect the entities to the tbody in parallel by the executor, for large list with heavy row lambda. <br>
+     * Each worker makes rows from its private copy of row template, and the rows are appended in the order of the list
+     * by the current thread. The list smaller than threshold is reflected sequentially. <br>
+     * The row lambda is called by other threads, so it should not use thread-bound resources (e.g. request attributes)
+     * and should not change the tbody. <br>
+     * The executor is given by you (e.g. managed by your application) not to block shared pools like common fork-join pool.
+     * @param <ENTITY> The type of entity.
+     * @param entityList The list of entities. (NotNull)
+     * @param baseTag The base tag to find the tbody. (NotNull)
+     * @param tbodyId The ID of tbody that has the row template as first row. (NotNull)
+     * @param executor The executor to run the workers, bounded and owned by your application. (NotNull)
+     * @param oneArgLambda The callback to reflect entity to row, called by several threads so should be thread-safe. (NotNull)
+     */
+    public <ENTITY> void reflectListToTBodyInParallel(List<ENTITY> entityList, AbstractJaxb baseTag, String tbodyId, Executor executor,
+            Consumer<TableDataResource<ENTITY>> oneArgLambda) {
+        assertArgumentNotNull("entityList", entityList);
+        assertArgumentNotNull("baseTag", baseTag);
+        assertArgumentNotNull("tbodyId", tbodyId);
+        assertArgumentNotNull("executor", executor);
+        assertArgumentNotNull("oneArgLambda", oneArgLambda);
+        final int workerCount = Math.min(getParallelRowWorkerCount(), entityList.size() / getParallelRowThreshold());
+        if (workerCount <= 1) { // small list, parallel costs more
+            reflectListToTBody(entityList, baseTag, tbodyId, oneArgLambda);
+            return;
+        }
+        final Tbody tbody = findById(baseTag, tbodyId, Tbody.class).get();
+        final Tr baseTr = tbody.getTr().get(0); // #pending check out of bounds
+        final List<ENTITY> entities = toRandomAccessList(entityList); // workers get entities by index
+        final Tr[] rows = new Tr[entities.size()]; // put back in the list order
+        final int chunkSize = (entities.size() + workerCount - 1) / workerCount;
+        final List<CompletableFuture<Void>> futureList = new ArrayList<CompletableFuture<Void>>(workerCount);
+        for (int begin = 0; begin < rows.length; begin += chunkSize) {
+            final int from = begin;
+            final int to = Math.min(begin + chunkSize, rows.length);
+            final Tr workerTr = baseTr.copy(Tr.class); // private template per worker, copied by current thread
+            futureList.add(CompletableFuture.runAsync(() -> {
+                for (int i = from; i < to; i++) {
+                    final Tr tr = workerTr.copy(Tr.class);
+                    oneArgLambda.accept(new TableDataResource<ENTITY>(tbody, tr, extractTdList(tr), entities.get(i)));
+                    rows[i] = tr;
+                }
+            } , executor));
+        }
+        try {
+            CompletableFuture.allOf(futureList.toArray(new CompletableFuture<?>[futureList.size()])).join();
+        } catch (CompletionException e) { // unwrap to throw the failure in row lambda as it is
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+        tbody.unsetTr();
+        tbody.getTr().addAll(Arrays.asList(rows));
+    }
+
+    protected <ENTITY> List<ENTITY> toRandomAccessList(List<ENTITY> entityList) { // get(i) of e.g. LinkedList is slow
+        return entityList instanceof RandomAccess ? entityList : new ArrayList<ENTITY>(entityList);
+    }
+
+    protected int getParallelRowThreshold() { // rows per worker at least
+        return 500;
+    }
+
+    protected int getParallelRowWorkerCount() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    protected static List<Td> extractTdList(Tr tr) {
+        return tr.getThOrTd().stream().map(flow -> {
+            return (Td) flow; // #pending check class cast
+        }).collect(Collectors.toList());
+    }
+
+    /**
+     * Reflect the entities to the tbody as streaming, the rows are written to response directly when the page is written. <br>
+     * The first row of the tbody is used as row template, and the rows are serialized per chunk,
+     * so the JAXB objects of whole rows are not kept at the same time, e.g. for large reports. <br>
+     * The entities are iterated after your view returns, and the rows cannot be changed by your view.
+     * The URL rewriting by TypicalMixView is also applied to the rows, see rewriteStreamingRows().
+     * @param <ENTITY> The type of entity.
+     * @param entityIterable The iterable of entities, iterated once when the page is written. (NotNull)
+     * @param baseTag The base tag to find the tbody. (NotNull)
+     * @param tbodyId The ID of tbody that has the row template as first row. (NotNull)
+     * @param oneArgLambda The callback to reflect entity to row. (NotNull)
+     */
+    public <ENTITY> void streamToTBody(Iterable<ENTITY> entityIterable, AbstractJaxb baseTag, String tbodyId,
+            Consumer<TableDataResource<ENTITY>> oneArgLambda) {
+        assertArgumentNotNull("entityIterable", entityIterable);
+        assertArgumentNotNull("baseTag", baseTag);
+        assertArgumentNotNull("tbodyId", tbodyId);
+        assertArgumentNotNull("oneArgLambda", oneArgLambda);
+        final Tbody tbody = findById(baseTag, tbodyId, Tbody.class).get();
+        final Tr baseTr = tbody.getTr().get(0).copy(Tr.class); // #pending check out of bounds
+        final int tableIndex = streamingTableList.size();
+        final Mixer2StreamingTable<ENTITY> streamingTable = newStreamingTable(tbody, baseTr, entityIterable, oneArgLambda, tableIndex);
+        streamingTable.placeHolder();
+        streamingTableList.add(streamingTable);
+    }
+
+    protected <ENTITY> Mixer2StreamingTable<ENTITY> newStreamingTable(Tbody tbody, Tr baseTr, Iterable<ENTITY> entityIterable,
+            Consumer<TableDataResource<ENTITY>> oneArgLambda, int tableIndex) {
+        return new Mixer2StreamingTable<ENTITY>(engine, tbody, baseTr, entityIterable, oneArgLambda, getStreamingChunkSize(),
+                tableIndex);
+    }
+
+    protected int getStreamingChunkSize() { // rows kept as JAXB objects at the same time
+        return 256;
+    }
+
+    /**
+     * Rewrite the rows of streaming tables by the rewriter after rendering, because the rows are made after it. <br>
+     * Call this with the rewriter that rewrites the HTML after your view, e.g. for link URL and style paths.
+     * @param rewriter The rewriter of URL attributes, which has rewritten the HTML. (NotNull)
+     */
+    public void rewriteStreamingRows(Mixer2UrlRewriter rewriter) {
+        assertArgumentNotNull("rewriter", rewriter);
+        for (Mixer2StreamingTable<?> table : streamingTableList) {
+            table.rewriteRows(rewriter);
+        }
+    }
+
+    /**
+     * @return The list of streaming tables registered in the rendering, written by renderer. (NotNull, EmptyAllowed)
+     */
+    public List<Mixer2StreamingTable<?>> getStreamingTableList() {
+        return streamingTableList;
+    }
+
     public static class TableDataResource<ENTITY> {
 
         protected final Tbody tbody;
@@ -386,6 +913,9 @@ public class Mixer2Supporter {
     public void reflectLinkUrl(A atag, String url) {
         assertArgumentNotNull("atag", atag);
         assertArgumentNotNull("url", url);
+        if (url.contains(LINK_URL_BEGIN_MARK)) { // needs resolution of link URL
+            linkUrlProduced = true;
+        }
         atag.setHref(url);
     }
 
@@ -398,7 +928,7 @@ public class Mixer2Supporter {
         assertArgumentNotNull("replacememt", replacememt);
         boolean replaced;
         try {
-            replaced = baseTag.replaceById(id, replacememt);
+            replaced = getIdIndex(baseTag).replace(id, replacememt) || baseTag.replaceById(id, replacememt); // walk if not indexed
         } catch (RuntimeException e) {
             throwMixer2ReplaceByIDFailureException(baseTag, id, replacememt, e);
             return; // unreachable
@@ -436,28 +966,271 @@ public class Mixer2Supporter {
         throw new Mixer2ReplaceByIDNotFoundException(msg);
     }
 
+    // ===================================================================================
+    //                                                                      Fragment Cache
+    //                                                                      ==============
+    /**
+     * Cache the rendered content of the element marked by data-cache attribute, e.g. navigation menu. <br>
+     * The renderer is called only at cache miss, and the cached text is spliced at later renderings until expired.
+     * <pre>
+     * &lt;nav data-cache="globalMenu"&gt; ... &lt;/nav&gt;
+     *
+     * supporter.cacheFragment(html, "globalMenu", () -&gt; "role=" + userRole, 600, nav -&gt; {
+     *     ... // expensive rendering of the menu, depends only on the key
+     * });
+     * </pre>
+     * The same cache name shares the fragments across templates, so the key should contain all that the content depends on.
+     * @param baseTag The base tag to search the element e.g. html, body. (NotNull)
+     * @param cacheName The name of data-cache attribute, also the prefix of cache key. (NotNull)
+     * @param keySupplier The supplier of key for the variation of content e.g. user role. (NotNull)
+     * @param ttlSeconds The time-to-live of the cached content in seconds, should be positive.
+     * @param oneArgLambda The renderer of the element, called only at cache miss. (NotNull)
+     */
+    public void cacheFragment(AbstractJaxb baseTag, String cacheName, Supplier<String> keySupplier, long ttlSeconds,
+            Consumer<AbstractJaxb> oneArgLambda) {
+        assertArgumentNotNull("baseTag", baseTag);
+        assertArgumentNotNull("cacheName", cacheName);
+        assertArgumentNotNull("keySupplier", keySupplier);
+        assertArgumentNotNull("oneArgLambda", oneArgLambda);
+        final List<AbstractJaxb> cacheTagList = doSearchByData(baseTag, CACHE_DATA_KEY, true); // new attribute so whole tree
+        final AbstractJaxb cacheTag = cacheTagList.stream().filter(tag -> {
+            return cacheName.equals(tag.getData(CACHE_DATA_KEY));
+        }).findFirst().orElseThrow(() -> { // #pending rich message
+            return new IllegalStateException("Not found the data-cache element: " + cacheName + " in " + baseTag);
+        });
+        cacheTagFragment(cacheTag, cacheName + ":" + keySupplier.get(), ttlSeconds, oneArgLambda);
+    }
+
+    /**
+     * Cache the rendered content of the tag, e.g. header replaced by layout.
+     * @param <TAG> The type of tag.
+     * @param tag The tag whose content is cached, should be content holder e.g. div, nav. (NotNull)
+     * @param cacheKey The key of the content, unique in all templates. (NotNull)
+     * @param ttlSeconds The time-to-live of the cached content in seconds, should be positive.
+     * @param oneArgLambda The renderer of the tag, called only at cache miss. (NotNull)
+     */
+    public <TAG extends AbstractJaxb> void cacheTagFragment(TAG tag, String cacheKey, long ttlSeconds, Consumer<TAG> oneArgLambda) {
+        assertArgumentNotNull("tag", tag);
+        assertArgumentNotNull("cacheKey", cacheKey);
+        assertArgumentNotNull("oneArgLambda", oneArgLambda);
+        if (ttlSeconds <= 0) {
+            throw new IllegalArgumentException("The argument 'ttlSeconds' should be positive: " + ttlSeconds);
+        }
+        if (fragmentCache == null || !Mixer2TagUtil.isContentHolder(tag)) { // cannot cache
+            oneArgLambda.accept(tag);
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        final List<Object> content = (List<Object>) Mixer2TagUtil.findChildList(tag);
+        final String cached = fragmentCache.findCached(cacheKey);
+        if (cached != null) { // no rendering
+            content.clear();
+            content.add(getFragmentRendering().place(cached));
+            return;
+        }
+        oneArgLambda.accept(tag);
+        @SuppressWarnings("unchecked")
+        final List<Object> renderedContent = (List<Object>) Mixer2TagUtil.findChildList(tag); // may be replaced
+        getFragmentRendering().markPending(renderedContent, cacheKey, ttlSeconds * 1000L);
+    }
+
+    protected FragmentRendering getFragmentRendering() { // only when fragment cache exists
+        if (fragmentRendering == null) {
+            fragmentRendering = fragmentCache.newRendering();
+        }
+        return fragmentRendering;
+    }
+
+    /**
+     * @return The rendering of fragment cache, spliced by renderer. (NullAllowed: when no fragment is cached)
+     */
+    public FragmentRendering findFragmentRendering() {
+        return fragmentRendering;
+    }
+
+    // ===================================================================================
+    //                                                                   Template Features
+    //                                                                   =================
+    /**
+     * Does the rendering HTML might have the feature? e.g. link URL, CSS path, header. <br>
+     * The features of template (and merged parts e.g. layout) are summarized once while the template is cached,
+     * so the resolver stages that are not needed by the page can be skipped if asFeatureSkipped() is enabled. <br>
+     * The tags added by your view are not summarized, so call markFeaturesUnknown() if they need the stages.
+     * @param determiner The determiner of feature for the summary. (NotNull)
+     * @return The determination, true if unknown e.g. not skipped (default), no template index, marked by view.
+     */
+    public boolean mightHaveFeature(Predicate<Mixer2TemplateFeatures> determiner) {
+        assertArgumentNotNull("determiner", determiner);
+        if (!featureSkipped || loadedHtml == null || featuresUnknown) {
+            return true;
+        }
+        if (determiner.test(getTemplateFeatures())) {
+            return true;
+        }
+        for (Mixer2TemplateFeatures partsFeatures : partsFeaturesList) {
+            if (determiner.test(partsFeatures)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Does the rendering HTML might have link URL? e.g. @{/sea/land/} (also true if toLinkUrl() is called)
+     */
+    public boolean mightHaveLinkUrl() {
+        if (linkUrlProduced || !streamingTableList.isEmpty()) { // streamed rows are made later, may produce it
+            return true;
+        }
+        return mightHaveFeature(features -> features.isLinkUrlUsed());
+    }
+
+    /**
+     * Merge the features of parts HTML whose tags are included in the rendering HTML, e.g. layout.
+     * @param path The path of parts HTML e.g. /common/layout.html (NotNull)
+     */
+    public void mergePartsFeatures(String path) {
+        assertArgumentNotNull("path", path);
+        if (!featureSkipped) { // not used
+            return;
+        }
+        deriveFromPartsHtml(path, DERIVED_FEATURES_KEY, master -> new Mixer2TemplateFeatures(master)).ifPresent(features -> {
+            partsFeaturesList.add(features);
+        });
+    }
+
+    /**
+     * Mark the features as unknown so all resolver stages are not skipped, e.g. your view adds relative CSS path.
+     */
+    public void markFeaturesUnknown() {
+        featuresUnknown = true;
+    }
+
+    protected Mixer2TemplateFeatures getTemplateFeatures() { // built once per cached template
+        if (templateFeatures == null) {
+            templateFeatures = loadedHtml.deriveFromMaster(DERIVED_FEATURES_KEY, master -> new Mixer2TemplateFeatures(master));
+        }
+        return templateFeatures;
+    }
+
     // ===================================================================================
     //                                                                    Resolve Link URL
     //                                                                    ================
     public void resolveLinkUrl(AbstractJaxb tag) {
         assertArgumentNotNull("tag", tag);
-        PathAdjuster.replacePath(tag, Pattern.compile("@\\{/"), requestManager.getContextPath() + "/");
-        PathAdjuster.replacePath(tag, Pattern.compile("}$"), ""); // e.g. @{/sea/land/} => /harbor/sea/land/
+        final Mixer2UrlRewriter rewriter = newUrlRewriter();
+        registerLinkUrl(rewriter);
+        rewriter.rewrite(tag);
+    }
+
+    /**
+     * Register the resolution of link URL to the rewriter, e.g. @{/sea/land/} to /harbor/sea/land/
+     * @param rewriter The rewriter of URL attributes, which is run by caller. (NotNull)
+     */
+    public void registerLinkUrl(Mixer2UrlRewriter rewriter) {
+        assertArgumentNotNull("rewriter", rewriter);
+        final String contextPrefix = Matcher.quoteReplacement(requestManager.getContextPath() + "/");
+        rewriter.addRule(LINK_URL_BEGIN_PATTERN, contextPrefix, url -> url.contains(LINK_URL_BEGIN_MARK));
+        rewriter.addRule(LINK_URL_END_PATTERN, "", url -> url.endsWith(LINK_URL_END_MARK));
+    }
+
+    // ===================================================================================
+    //                                                                 Pipeline & Rewriter
+    //                                                                 ===================
+    /**
+     * @return The new-created pipeline of tag visitors, which walks the tree once for all visitors. (NotNull)
+     */
+    public Mixer2TagPipeline newTagPipeline() {
+        final Mixer2TagPipeline pipeline = new Mixer2TagPipeline().asDeepSearch(deepSearch);
+        return isStaticShared() ? pipeline.skip(tag -> isSharedStatic(tag)) : pipeline; // not to change master
+    }
+
+    /**
+     * @return The new-created rewriter of URL attributes, which applies all rules in one walk. (NotNull)
+     */
+    public Mixer2UrlRewriter newUrlRewriter() {
+        final Mixer2UrlRewriter rewriter = new Mixer2UrlRewriter();
+        return isStaticShared() ? rewriter.skip(tag -> isSharedStatic(tag)) : rewriter; // not to change master
+    }
+
+    /**
+     * Share the pipeline with the resolution hooks of view, they register visitors to it instead of walking.
+     * @param pipeline The pipeline run by the view after the hooks. (NullAllowed: when sharing ends)
+     */
+    public void shareTagPipeline(Mixer2TagPipeline pipeline) {
+        this.sharedTagPipeline = pipeline;
+    }
+
+    /**
+     * @return The optional pipeline shared by the view. (NotNull, EmptyAllowed: when not shared, then walk by yourself)
+     */
+    public OptionalThing<Mixer2TagPipeline> findSharedTagPipeline() {
+        return OptionalThing.ofNullable(sharedTagPipeline, () -> {
+            throw new IllegalStateException("Not shared the tag pipeline now.");
+        });
+    }
+
+    /**
+     * Share the rewriter with the resolution hooks of view, they register rules to it instead of walking.
+     * @param rewriter The rewriter run by the view after the hooks. (NullAllowed: when sharing ends)
+     */
+    public void shareUrlRewriter(Mixer2UrlRewriter rewriter) {
+        this.sharedUrlRewriter = rewriter;
+    }
+
+    /**
+     * @return The optional rewriter shared by the view. (NotNull, EmptyAllowed: when not shared, then walk by yourself)
+     */
+    public OptionalThing<Mixer2UrlRewriter> findSharedUrlRewriter() {
+        return OptionalThing.ofNullable(sharedUrlRewriter, () -> {
+            throw new IllegalStateException("Not shared the URL rewriter now.");
+        });
     }
 
     // ===================================================================================
     //                                                                          Convert to
     //                                                                          ==========
     public String toLinkUrl(Class<?> actionType, UrlChain moreUrl_or_params) {
+        linkUrlProduced = true; // the link URL is resolved even if template does not have it
         return "@{" + actionPathResolver.toActionUrl(actionType, moreUrl_or_params) + "}";
     }
 
     // ===================================================================================
     //                                                                          Load Parts
     //                                                                          ==========
+    /**
+     * Load the parts HTML to include its tags in the rendering HTML, the features of parts are merged here.
+     * @param path The path of parts HTML e.g. /common/parts/sea.html (NotNull)
+     * @return The optional HTML copied from the cached parts. (NotNull, EmptyAllowed: when not found)
+     */
     public OptionalThing<Html> loadPartsHtml(String path) {
         assertArgumentNotNull("path", path);
-        return templateReader.loadHtml(path).map(loaded -> loaded.getHtml());
+        return templateReader.loadHtml(path, findTemplateTransformer()).map(loaded -> {
+            if (featureSkipped) { // the parts may be included in the rendering HTML
+                partsFeaturesList.add(loaded.deriveFromMaster(DERIVED_FEATURES_KEY, master -> new Mixer2TemplateFeatures(master)));
+            }
+            return loaded.getHtml();
+        });
+    }
+
+    /**
+     * Derive the data from the parts HTML only once while the template is cached. <br>
+     * The parts HTML is transformed by the same transformer as the rendering template if it exists.
+     * @param <RESULT> The type of derived data.
+     * @param path The path of parts HTML e.g. /common/layout.html (NotNull)
+     * @param derivedKey The key of derived data, unique per derivation e.g. resolver class name. (NotNull)
+     * @param deriver The callback to derive the data from master HTML, should not modify it. (NotNull)
+     * @return The optional derived data, which should be read-only so copy it to use in your HTML. (NotNull)
+     */
+    public <RESULT> OptionalThing<RESULT> deriveFromPartsHtml(String path, String derivedKey, Function<Html, RESULT> deriver) {
+        assertArgumentNotNull("path", path);
+        assertArgumentNotNull("derivedKey", derivedKey);
+        assertArgumentNotNull("deriver", deriver);
+        return templateReader.deriveHtml(path, findTemplateTransformer(), derivedKey, deriver);
+    }
+
+    protected Mixer2TemplateTransformer findTemplateTransformer() { // parts are transformed same as the rendering
+        return loadedHtml != null ? loadedHtml.getTransformer() : null;
     }
 
     // ===================================================================================
@@ -482,4 +1255,8 @@ public class Mixer2Supporter {
     public RequestManager getRequestManager() {
         return requestManager;
     }
+
+    public boolean isDeepSearch() {
+        return deepSearch;
+    }
 }
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2015-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.lastaflute.mixer2.view;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.lastaflute.mixer2.view.Mixer2Supporter.TagDeterminer;
+import org.mixer2.xhtml.AbstractJaxb;
+
+/**
+ * The pipeline of tag visitors, several visitors share one depth-first traversal.
+ * <pre>
+ * Mixer2TagPipeline pipeline = supporter.newTagPipeline();
+ * pipeline.register(tag -&gt; tag instanceof Select, tag -&gt; { ... });
+ * pipeline.register(tag -&gt; tag.getData("errors") != null, tag -&gt; { ... });
+ * pipeline.run(html); // walks only once
+ * </pre>
+ * The matched tags are collected in the traversal, and handlers are called after it
+ * (in registration order, and document order per visitor) so handlers can change the tree safely.
+ * The after-run callbacks are called after all handlers, e.g. resolution by located tags.
+ * The head of html is also visited. The visitors registered in search scope are not called for content of table and head
+ * (as searchTagList() of old versions) unless deep search.
+ * @author jflute
+ */
+public class Mixer2TagPipeline {
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    protected final List<TagVisitor> visitorList = new ArrayList<TagVisitor>();
+    protected final List<Runnable> afterRunList = new ArrayList<Runnable>(2);
+    protected TagDeterminer skipDeterminer; // null allowed: no skip
+    protected boolean deepSearch; // visitors in search scope are also called for content of table and head
+
+    // ===================================================================================
+    //                                                                            Register
+    //                                                                            ========
+    /**
+     * @param determiner The determiner of target tag. (NotNull)
+     * @param handler The handler of the target tag, called after traversal. (NotNull)
+     * @return this. (NotNull)
+     */
+    public Mixer2TagPipeline register(TagDeterminer determiner, TagHandler handler) {
+        if (determiner == null) {
+            throw new IllegalArgumentException("The argument 'determiner' should not be null.");
+        }
+        if (handler == null) {
+            throw new IllegalArgumentException("The argument 'handler' should not be null.");
+        }
+        visitorList.add(new TagVisitor(determiner, handler, false));
+        return this;
+    }
+
+    /**
+     * Register the visitor called only for tags in search scope of supporter, e.g. resolution of data-errors. <br>
+     * The tags in content of table and head are out of the scope unless deep search, as searchTagList() of old versions.
+     * @param determiner The determiner of target tag. (NotNull)
+     * @param handler The handler of the target tag, called after traversal. (NotNull)
+     * @return this. (NotNull)
+     */
+    public Mixer2TagPipeline registerInSearchScope(TagDeterminer determiner, TagHandler handler) {
+        if (determiner == null) {
+            throw new IllegalArgumentException("The argument 'determiner' should not be null.");
+        }
+        if (handler == null) {
+            throw new IllegalArgumentException("The argument 'handler' should not be null.");
+        }
+        visitorList.add(new TagVisitor(determiner, handler, true));
+        return this;
+    }
+
+    @FunctionalInterface
+    public static interface TagHandler {
+
+        void handle(AbstractJaxb tag);
+    }
+
+    /**
+     * @param callback The callback called after all handlers in the run, e.g. by tags located by handlers. (NotNull)
+     * @return this. (NotNull)
+     */
+    public Mixer2TagPipeline afterRun(Runnable callback) {
+        if (callback == null) {
+            throw new IllegalArgumentException("The argument 'callback' should not be null.");
+        }
+        afterRunList.add(callback);
+        return this;
+    }
+
+    /**
+     * @param skipDeterminer The determiner of tags not visited with their descendants, e.g. shared static elements. (NotNull)
+     * @return this. (NotNull)
+     */
+    public Mixer2TagPipeline skip(TagDeterminer skipDeterminer) {
+        if (skipDeterminer == null) {
+            throw new IllegalArgumentException("The argument 'skipDeterminer' should not be null.");
+        }
+        this.skipDeterminer = skipDeterminer;
+        return this;
+    }
+
+    /**
+     * @param deepSearch Are the visitors in search scope also called for content of table and head?
+     * @return this. (NotNull)
+     */
+    public Mixer2TagPipeline asDeepSearch(boolean deepSearch) {
+        this.deepSearch = deepSearch;
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return visitorList.isEmpty();
+    }
+
+    // ===================================================================================
+    //                                                                                 Run
+    //                                                                                 ===
+    /**
+     * Walk the tree once and call the handlers of matched tags, and the after-run callbacks. (no walk if no visitor)
+     * @param baseTag The base tag to walk, also determined itself. (NotNull)
+     */
+    public void run(AbstractJaxb baseTag) {
+        if (baseTag == null) {
+            throw new IllegalArgumentException("The argument 'baseTag' should not be null.");
+        }
+        if (!visitorList.isEmpty()) {
+            walkAndHandle(baseTag);
+        }
+        for (Runnable callback : afterRunList) {
+            callback.run();
+        }
+    }
+
+    protected void walkAndHandle(AbstractJaxb baseTag) {
+        final List<List<AbstractJaxb>> matchedListList = new ArrayList<List<AbstractJaxb>>(visitorList.size());
+        for (int i = 0; i < visitorList.size(); i++) {
+            matchedListList.add(new ArrayList<AbstractJaxb>());
+        }
+        final Mixer2TagWalker walker = newTagWalker();
+        walker.walk(baseTag, tag -> {
+            final boolean outOfScope = !deepSearch && walker.isVisitingDeep();
+            for (int i = 0; i < visitorList.size(); i++) {
+                final TagVisitor visitor = visitorList.get(i);
+                if (outOfScope && visitor.searchScoped) {
+                    continue;
+                }
+                if (visitor.determiner.isTarget(tag)) {
+                    matchedListList.get(i).add(tag);
+                }
+            }
+            return true; // walks all
+        });
+        for (int i = 0; i < visitorList.size(); i++) {
+            final TagHandler handler = visitorList.get(i).handler;
+            for (AbstractJaxb tag : matchedListList.get(i)) {
+                handler.handle(tag);
+            }
+        }
+    }
+
+    protected Mixer2TagWalker newTagWalker() {
+        final Mixer2TagWalker walker = new Mixer2TagWalker();
+        return skipDeterminer != null ? walker.skip(skipDeterminer) : walker;
+    }
+
+    // ===================================================================================
+    //                                                                         Tag Visitor
+    //                                                                         ===========
+    protected static class TagVisitor {
+
+        protected final TagDeterminer determiner;
+        protected final TagHandler handler;
+        protected final boolean searchScoped; // not called for content of table and head unless deep search
+
+        public TagVisitor(TagDeterminer determiner, TagHandler handler, boolean searchScoped) {
+            this.determiner = determiner;
+            this.handler = handler;
+            this.searchScoped = searchScoped;
+        }
+    }
+
+    // ===================================================================================
+    //                                                                      Basic Override
+    //                                                                      ==============
+    @Override
+    public String toString() {
+        return "tagPipeline:{visitors=" + visitorList.size() + ", afterRun=" + afterRunList.size() + "}";
+    }
+}
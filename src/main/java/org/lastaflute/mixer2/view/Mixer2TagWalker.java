@@ -0,0 +1,268 @@
+/*
+ * Copyright 2015-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.lastaflute.mixer2.view;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.lastaflute.mixer2.util.Mixer2TagUtil;
+import org.lastaflute.mixer2.view.Mixer2Supporter.TagDeterminer;
+import org.mixer2.jaxb.xhtml.Html;
+import org.mixer2.xhtml.AbstractJaxb;
+
+/**
+ * The walker of tag tree in document order (depth-first), by explicit stack without recursion. <br>
+ * It does not allocate per tag, and it can stop early by limit, depth or callback.
+ * <pre>
+ * new Mixer2TagWalker().limit(1).search(body, tag -&gt; tag instanceof Select); // stops at first select
+ * new Mixer2TagWalker().maxDepth(2).search(body, tag -&gt; tag instanceof Div); // children and grandchildren only
+ * </pre>
+ * The head of html is also walked (before body). The skipped tags (e.g. shared static elements) are not visited
+ * with their descendants. The compatible scope does not walk content of table and head, as searchTagList() of old versions.
+ * @author jflute
+ */
+public class Mixer2TagWalker {
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    protected int limit = Integer.MAX_VALUE; // count of found tags to stop
+    protected int maxDepth = Integer.MAX_VALUE; // zero means base tag only
+    protected TagDeterminer skipDeterminer; // null allowed: no skip
+    protected boolean compatibleScope; // not walk content of table and head
+    protected List<?>[] listStack = new List<?>[16]; // child list per depth
+    protected int[] indexStack = new int[16]; // next index of child list per depth
+    protected boolean[] deepStack = new boolean[16]; // is the child list in table or head content per depth
+    protected int stackSize;
+
+    // ===================================================================================
+    //                                                                              Option
+    //                                                                              ======
+    /**
+     * @param limit The count of found tags to stop walking, should be positive.
+     * @return this. (NotNull)
+     */
+    public Mixer2TagWalker limit(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("The argument 'limit' should be positive: " + limit);
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * @param maxDepth The max depth of walked tags from base tag, e.g. 1 means children. (zero means base tag only)
+     * @return this. (NotNull)
+     */
+    public Mixer2TagWalker maxDepth(int maxDepth) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("The argument 'maxDepth' should not be minus: " + maxDepth);
+        }
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    /**
+     * @param skipDeterminer The determiner of tags not visited with their descendants, e.g. shared static elements. (NotNull)
+     * @return this. (NotNull)
+     */
+    public Mixer2TagWalker skip(TagDeterminer skipDeterminer) {
+        assertArgumentNotNull("skipDeterminer", skipDeterminer);
+        this.skipDeterminer = skipDeterminer;
+        return this;
+    }
+
+    /**
+     * Not walk content of table and head (e.g. tr, td, title), the tags themselves are visited. <br>
+     * It is the scope of searchTagList() of old versions, so the tags in table are not found as before.
+     * @return this. (NotNull)
+     */
+    public Mixer2TagWalker compatibleScope() {
+        this.compatibleScope = true;
+        return this;
+    }
+
+    // ===================================================================================
+    //                                                                              Search
+    //                                                                              ======
+    /**
+     * @param <TAG> The type of tag.
+     * @param baseTag The base tag to walk, also determined itself. (NotNull)
+     * @param determiner The determiner of target tag. (NotNull)
+     * @return The list of found tags in document order, up to limit. (NotNull, EmptyAllowed)
+     */
+    public <TAG extends AbstractJaxb> List<TAG> search(AbstractJaxb baseTag, TagDeterminer determiner) {
+        assertArgumentNotNull("determiner", determiner);
+        final List<TAG> tagList = new ArrayList<TAG>();
+        walk(baseTag, tag -> {
+            if (determiner.isTarget(tag)) {
+                @SuppressWarnings("unchecked")
+                final TAG castTag = (TAG) tag;
+                tagList.add(castTag);
+                return tagList.size() < limit;
+            }
+            return true;
+        });
+        return tagList;
+    }
+
+    /**
+     * @param <TAG> The type of tag.
+     * @param baseTag The base tag to walk, also determined itself. (NotNull)
+     * @param determiner The determiner of target tag. (NotNull)
+     * @return The first found tag in document order, and stops there. (NullAllowed: when not found)
+     */
+    public <TAG extends AbstractJaxb> TAG findFirst(AbstractJaxb baseTag, TagDeterminer determiner) {
+        assertArgumentNotNull("determiner", determiner);
+        final Object[] found = new Object[1];
+        walk(baseTag, tag -> {
+            if (determiner.isTarget(tag)) {
+                found[0] = tag;
+                return false;
+            }
+            return true;
+        });
+        @SuppressWarnings("unchecked")
+        final TAG foundTag = (TAG) found[0];
+        return foundTag;
+    }
+
+    // ===================================================================================
+    //                                                                                Walk
+    //                                                                                ====
+    /**
+     * Walk the tags under the base tag in document order, the base tag is also visited.
+     * @param baseTag The base tag to walk. (NotNull)
+     * @param callback The callback for each tag, returns false to stop walking. (NotNull)
+     */
+    public void walk(AbstractJaxb baseTag, TagCallback callback) {
+        assertArgumentNotNull("baseTag", baseTag);
+        assertArgumentNotNull("callback", callback);
+        if (isSkipped(baseTag) || !callback.visit(baseTag)) {
+            return;
+        }
+        stackSize = 0;
+        try {
+            if (maxDepth > 0 && isWalkedIn(baseTag)) {
+                pushChildList(baseTag);
+            }
+            while (stackSize > 0) {
+                final int top = stackSize - 1;
+                final List<?> childList = listStack[top];
+                final int index = indexStack[top];
+                if (index >= childList.size()) {
+                    popChildList();
+                    continue;
+                }
+                indexStack[top] = index + 1;
+                final Object child = childList.get(index);
+                if (!(child instanceof AbstractJaxb)) { // e.g. text
+                    continue;
+                }
+                final AbstractJaxb tag = (AbstractJaxb) child;
+                if (isSkipped(tag)) {
+                    continue;
+                }
+                if (!callback.visit(tag)) {
+                    return;
+                }
+                if (stackSize < maxDepth && isWalkedIn(tag)) { // depth of the tag is stack size
+                    pushChildList(tag);
+                }
+            }
+        } finally {
+            clearStack();
+        }
+    }
+
+    /**
+     * Is the visited tag in content of table or head? (available only in callback of walking)
+     * @return The determination, true if e.g. td, tr in table, title in head. (false if base tag)
+     */
+    public boolean isVisitingDeep() {
+        return stackSize > 0 && deepStack[stackSize - 1]; // top is the child list of the visited tag
+    }
+
+    protected boolean isSkipped(AbstractJaxb tag) {
+        return skipDeterminer != null && skipDeterminer.isTarget(tag);
+    }
+
+    protected boolean isWalkedIn(AbstractJaxb tag) { // are the children walked?
+        return !(compatibleScope && Mixer2TagUtil.isDeepChildHolder(tag));
+    }
+
+    @FunctionalInterface
+    public static interface TagCallback {
+
+        /**
+         * @param tag The visited tag. (NotNull)
+         * @return Does it continue to walk? (false: stop)
+         */
+        boolean visit(AbstractJaxb tag);
+    }
+
+    // ===================================================================================
+    //                                                                               Stack
+    //                                                                               =====
+    protected void pushChildList(AbstractJaxb tag) {
+        final List<?> childList = findChildList(tag);
+        if (childList == null || childList.isEmpty()) {
+            return;
+        }
+        final boolean deep = isVisitingDeep() || Mixer2TagUtil.isDeepChildHolder(tag); // before push
+        if (stackSize == listStack.length) {
+            listStack = Arrays.copyOf(listStack, stackSize * 2);
+            indexStack = Arrays.copyOf(indexStack, stackSize * 2);
+            deepStack = Arrays.copyOf(deepStack, stackSize * 2);
+        }
+        listStack[stackSize] = childList;
+        indexStack[stackSize] = 0;
+        deepStack[stackSize] = deep;
+        ++stackSize;
+    }
+
+    protected List<?> findChildList(AbstractJaxb tag) {
+        if (tag instanceof Html) { // head is out of child list of html
+            final Html html = (Html) tag;
+            return html.getHead() != null ? Arrays.asList(html.getHead(), html.getBody()) : Mixer2TagUtil.findChildList(html);
+        }
+        return Mixer2TagUtil.findChildList(tag);
+    }
+
+    protected void popChildList() {
+        --stackSize;
+        listStack[stackSize] = null; // for GC
+    }
+
+    protected void clearStack() {
+        while (stackSize > 0) {
+            popChildList();
+        }
+    }
+
+    // ===================================================================================
+    //                                                                      General Helper
+    //                                                                      ==============
+    protected void assertArgumentNotNull(String variableName, Object value) {
+        if (variableName == null) {
+            throw new IllegalArgumentException("The argument 'variableName' should not be null.");
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("The argument '" + variableName + "' should not be null.");
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2015-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.lastaflute.mixer2.view;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.lastaflute.mixer2.util.Mixer2TagUtil;
+import org.lastaflute.mixer2.view.Mixer2Supporter.TagDeterminer;
+import org.mixer2.xhtml.AbstractJaxb;
+
+/**
+ * The rewriter of URL attributes (href, src, action, data) by ordered rules in one traversal, see Mixer2TagUtil for tags.
+ * <pre>
+ * Mixer2UrlRewriter rewriter = supporter.newUrlRewriter();
+ * rewriter.addRule(Pattern.compile("\\.css$"), ".css?v=1", url -&gt; url.endsWith(".css"));
+ * rewriter.addRule(Pattern.compile("}$"), "", url -&gt; url.endsWith("}"));
+ * rewriter.rewrite(html); // walks only once, and each URL is read and written once
+ * </pre>
+ * The rules are applied to each URL in registration order, so the later rule sees the result of former rules.
+ * The precheck of rule is called before regular expression, so URLs that cannot match are not scanned.
+ * @author jflute
+ */
+public class Mixer2UrlRewriter {
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    protected final List<UrlRule> ruleList = new ArrayList<UrlRule>();
+    protected TagDeterminer skipDeterminer; // null allowed: no skip
+
+    // ===================================================================================
+    //                                                                                Rule
+    //                                                                                ====
+    /**
+     * @param pattern The compiled pattern of URL to be replaced. (NotNull)
+     * @param replacement The replacement for the pattern, can contain group reference e.g. $1 (NotNull)
+     * @param precheck The cheap check of URL before the pattern e.g. url -&gt; url.endsWith(".css") (NotNull)
+     * @return this. (NotNull)
+     */
+    public Mixer2UrlRewriter addRule(Pattern pattern, String replacement, Predicate<String> precheck) {
+        assertArgumentNotNull("pattern", pattern);
+        assertArgumentNotNull("replacement", replacement);
+        assertArgumentNotNull("precheck", precheck);
+        ruleList.add(new UrlRule(precheck, url -> {
+            final Matcher matcher = pattern.matcher(url);
+            return matcher.find() ? matcher.replaceAll(replacement) : url;
+        }));
+        return this;
+    }
+
+    /**
+     * @param precheck The cheap check of URL before the converter e.g. url -&gt; url.endsWith(".css") (NotNull)
+     * @param converter The converter of URL, returns the same instance if not changed. (NotNull)
+     * @return this. (NotNull)
+     */
+    public Mixer2UrlRewriter addRule(Predicate<String> precheck, UnaryOperator<String> converter) {
+        assertArgumentNotNull("precheck", precheck);
+        assertArgumentNotNull("converter", converter);
+        ruleList.add(new UrlRule(precheck, converter));
+        return this;
+    }
+
+    /**
+     * @param skipDeterminer The determiner of tags not rewritten with their descendants, e.g. shared static elements. (NotNull)
+     * @return this. (NotNull)
+     */
+    public Mixer2UrlRewriter skip(TagDeterminer skipDeterminer) {
+        assertArgumentNotNull("skipDeterminer", skipDeterminer);
+        this.skipDeterminer = skipDeterminer;
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return ruleList.isEmpty();
+    }
+
+    // ===================================================================================
+    //                                                                             Rewrite
+    //                                                                             =======
+    /**
+     * Rewrite the URL attributes of the base tag and nested tags. (no walk if no rule)
+     * @param baseTag The base tag to walk, also rewritten itself. (NotNull)
+     */
+    public void rewrite(AbstractJaxb baseTag) {
+        assertArgumentNotNull("baseTag", baseTag);
+        if (ruleList.isEmpty()) {
+            return;
+        }
+        newTagWalker().walk(baseTag, tag -> {
+            rewriteTag(tag);
+            return true; // walks all
+        });
+    }
+
+    /**
+     * Register the rewriting to the pipeline to share its traversal, which is run by caller.
+     * @param pipeline The pipeline of tag visitors. (NotNull)
+     */
+    public void register(Mixer2TagPipeline pipeline) {
+        assertArgumentNotNull("pipeline", pipeline);
+        if (ruleList.isEmpty()) {
+            return;
+        }
+        pipeline.register(tag -> Mixer2TagUtil.hasUrlAttribute(tag), tag -> rewriteTag(tag));
+    }
+
+    /**
+     * Rewrite the URL attribute of the tag itself, not nested tags.
+     * @param tag The tag that may have URL attribute. (NotNull)
+     */
+    public void rewriteTag(AbstractJaxb tag) {
+        if (!Mixer2TagUtil.hasUrlAttribute(tag)) {
+            return;
+        }
+        final String url = Mixer2TagUtil.findUrl(tag);
+        if (url == null) {
+            return;
+        }
+        final String rewritten = rewriteUrl(url);
+        if (rewritten != url) { // changed, identity is enough because not-matched URL is returned as it is
+            Mixer2TagUtil.setUrl(tag, rewritten);
+        }
+    }
+
+    /**
+     * @param url The URL to be rewritten. (NotNull)
+     * @return The URL rewritten by the rules, or the same instance if no rule is matched. (NotNull)
+     */
+    public String rewriteUrl(String url) {
+        String current = url;
+        for (UrlRule rule : ruleList) {
+            if (!rule.precheck.test(current)) { // no regular expression for most URLs
+                continue;
+            }
+            current = rule.converter.apply(current);
+        }
+        return current;
+    }
+
+    protected Mixer2TagWalker newTagWalker() {
+        final Mixer2TagWalker walker = new Mixer2TagWalker();
+        return skipDeterminer != null ? walker.skip(skipDeterminer) : walker;
+    }
+
+    // ===================================================================================
+    //                                                                            URL Rule
+    //                                                                            ========
+    protected static class UrlRule {
+
+        protected final Predicate<String> precheck;
+        protected final UnaryOperator<String> converter;
+
+        public UrlRule(Predicate<String> precheck, UnaryOperator<String> converter) {
+            this.precheck = precheck;
+            this.converter = converter;
+        }
+    }
+
+    // ===================================================================================
+    //                                                                      General Helper
+    //                                                                      ==============
+    protected void assertArgumentNotNull(String variableName, Object value) {
+        if (variableName == null) {
+            throw new IllegalArgumentException("The argument 'variableName' should not be null.");
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("The argument '" + variableName + "' should not be null.");
+        }
+    }
+
+    // ===================================================================================
+    //                                                                      Basic Override
+    //                                                                      ==============
+    @Override
+    public String toString() {
+        return "urlRewriter:{rules=" + ruleList.size() + "}";
+    }
+}
@@ -15,6 +15,8 @@
  */
 package org.lastaflute.mixer2.view;
 
+import org.lastaflute.mixer2.template.Mixer2TemplateTransformer;
+import org.lastaflute.web.servlet.request.RequestManager;
 import org.mixer2.jaxb.xhtml.Html;
 
 /**
@@ -27,4 +29,14 @@ public interface Mixer2View {
      * @param supporter The supporter of mixer2, has e.g. core engine, request manager. (NotNull)
      */
     void beDynamic(Html html, Mixer2Supporter supporter);
+
+    /**
+     * Prepare the transformer of template applied once at load time, called before loading template. <br>
+     * The transformed template is cached, and parts loaded by supporter in the rendering are also transformed.
+     * @param requestManager The manager of request, e.g. for context path. (NotNull)
+     * @return The transformer of template. (NullAllowed: if null, no transformation as default)
+     */
+    default Mixer2TemplateTransformer prepareTemplateTransformer(RequestManager requestManager) {
+        return null;
+    }
 }
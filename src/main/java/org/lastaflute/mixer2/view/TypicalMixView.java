@@ -16,11 +16,14 @@
 package org.lastaflute.mixer2.view;
 
 import org.dbflute.util.Srl;
+import org.lastaflute.mixer2.template.Mixer2TemplateTransformer;
 import org.lastaflute.mixer2.view.resolver.TypicalMixClsResolver;
 import org.lastaflute.mixer2.view.resolver.TypicalMixErrorsResolver;
 import org.lastaflute.mixer2.view.resolver.TypicalMixLayoutResolver;
+import org.lastaflute.mixer2.view.resolver.TypicalMixLayoutResolver.LayoutLocation;
 import org.lastaflute.mixer2.view.resolver.TypicalMixStyleResolver;
 import org.lastaflute.web.UrlChain;
+import org.lastaflute.web.servlet.request.RequestManager;
 import org.mixer2.jaxb.xhtml.Html;
 
 /**
@@ -49,21 +52,54 @@ public abstract class TypicalMixView implements Mixer2View {
     @Override
     public void beDynamic(Html html, Mixer2Supporter supporter) {
         // #pending now making
-        resolveCls(html, supporter);
-        resolveErrors(html, supporter);
-        resolveLayout(html, supporter);
-        resolveStyle(html, supporter);
+        final Mixer2TagPipeline prePipeline = supporter.newTagPipeline(); // one walk before rendering
+        supporter.shareTagPipeline(prePipeline); // hooks register visitors to it
+        try {
+            resolveCls(html, supporter);
+            resolveErrors(html, supporter);
+            resolveLayout(html, supporter); // resolved after the walk
+        } finally {
+            supporter.shareTagPipeline(null);
+        }
+        prePipeline.run(html);
+        final boolean styleAfterRendering = styleResolver.isAfterRendering();
+        if (!styleAfterRendering) { // as default, view sees rewritten paths
+            resolveStyle(html, supporter);
+        }
         render(html, supporter);
-        resolveLinkUrl(html, supporter);
+        final Mixer2UrlRewriter urlRewriter = supporter.newUrlRewriter(); // one walk for URL after rendering
+        supporter.shareUrlRewriter(urlRewriter); // hooks register rules to it
+        try {
+            if (styleAfterRendering) {
+                resolveStyle(html, supporter);
+            }
+            resolveLinkUrl(html, supporter);
+        } finally {
+            supporter.shareUrlRewriter(null);
+        }
+        urlRewriter.rewrite(html);
+        supporter.rewriteStreamingRows(urlRewriter); // streamed rows are made after this
     }
 
     protected abstract void render(Html html, Mixer2Supporter supporter);
 
+    @Override
+    public Mixer2TemplateTransformer prepareTemplateTransformer(RequestManager requestManager) {
+        if (styleResolver.isLoadTimeTransform()) { // style paths are rewritten in cached template
+            return styleResolver.createTemplateTransformer(requestManager.getContextPath());
+        }
+        return null;
+    }
+
     // ===================================================================================
     //                                                                      Classification
     //                                                                      ==============
     protected void resolveCls(Html html, Mixer2Supporter supporter) {
-        clsResolver.resolveCls(html, supporter);
+        supporter.findSharedTagPipeline().ifPresent(pipeline -> {
+            clsResolver.registerCls(html, supporter, pipeline); // handled in shared walk
+        }).orElse(() -> {
+            clsResolver.resolveCls(html, supporter);
+        });
     }
 
     protected TypicalMixClsResolver createTypicalMixClsResolver() {
@@ -74,7 +110,11 @@ public abstract class TypicalMixView implements Mixer2View {
     //                                                                              Errors
     //                                                                              ======
     protected void resolveErrors(Html html, Mixer2Supporter supporter) {
-        errorsResolver.resolveErrors(html, supporter);
+        supporter.findSharedTagPipeline().ifPresent(pipeline -> {
+            errorsResolver.registerErrors(html, supporter, pipeline); // handled in shared walk
+        }).orElse(() -> {
+            errorsResolver.resolveErrors(html, supporter);
+        });
     }
 
     protected TypicalMixErrorsResolver createTypicalMixErrorsResolver() {
@@ -85,7 +125,12 @@ public abstract class TypicalMixView implements Mixer2View {
     //                                                                              Layout
     //                                                                              ======
     protected void resolveLayout(Html html, Mixer2Supporter supporter) {
-        layoutResolver.resolveLayout(html, supporter);
+        supporter.findSharedTagPipeline().ifPresent(pipeline -> {
+            final LayoutLocation location = layoutResolver.registerLayout(html, supporter, pipeline); // located in shared walk
+            pipeline.afterRun(() -> layoutResolver.resolveLayout(html, supporter, location));
+        }).orElse(() -> {
+            layoutResolver.resolveLayout(html, supporter);
+        });
     }
 
     protected TypicalMixLayoutResolver createTypicalMixLayoutResolver() {
@@ -101,7 +146,11 @@ public abstract class TypicalMixView implements Mixer2View {
     //                                                                               Style
     //                                                                               =====
     protected void resolveStyle(Html html, Mixer2Supporter supporter) {
-        styleResolver.resolveStyle(html, supporter);
+        supporter.findSharedUrlRewriter().ifPresent(rewriter -> {
+            styleResolver.registerStyle(html, supporter, rewriter); // rewritten in shared walk
+        }).orElse(() -> {
+            styleResolver.resolveStyle(html, supporter);
+        });
     }
 
     protected TypicalMixStyleResolver createTypicalMixStyleResolver() {
@@ -112,7 +161,14 @@ public abstract class TypicalMixView implements Mixer2View {
     //                                                                            Link URL
     //                                                                            ========
     protected void resolveLinkUrl(Html html, Mixer2Supporter supporter) {
-        supporter.resolveLinkUrl(html);
+        if (!supporter.mightHaveLinkUrl()) { // no walk for simple page
+            return;
+        }
+        supporter.findSharedUrlRewriter().ifPresent(rewriter -> {
+            supporter.registerLinkUrl(rewriter); // rewritten in shared walk
+        }).orElse(() -> {
+            supporter.resolveLinkUrl(html);
+        });
     }
 
     // ===================================================================================
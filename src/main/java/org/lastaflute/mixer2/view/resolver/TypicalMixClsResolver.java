@@ -16,7 +16,13 @@
 package org.lastaflute.mixer2.view.resolver;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.dbflute.jdbc.Classification;
 import org.dbflute.jdbc.ClassificationMeta;
@@ -25,7 +31,8 @@ import org.lastaflute.core.util.ContainerUtil;
 import org.lastaflute.db.dbflute.classification.ListedClassificationProvider;
 import org.lastaflute.db.dbflute.exception.ProvidedClassificationNotFoundException;
 import org.lastaflute.mixer2.view.Mixer2Supporter;
-import org.mixer2.jaxb.xhtml.Body;
+import org.lastaflute.mixer2.util.Mixer2TagUtil;
+import org.lastaflute.mixer2.view.Mixer2TagPipeline;
 import org.mixer2.jaxb.xhtml.Html;
 import org.mixer2.jaxb.xhtml.Optgroup;
 import org.mixer2.jaxb.xhtml.Option;
@@ -37,6 +44,41 @@ import org.mixer2.xhtml.AbstractJaxb;
  */
 public class TypicalMixClsResolver {
 
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    /**
+     * The cache of expanded classifications per provider instance, value is keyed by classification name. <br>
+     * The key is weak so the cache of old provider is released when the provider is recreated e.g. by hot deploy,
+     * and it is not shared with other web applications that have their own providers.
+     */
+    protected static final Map<ListedClassificationProvider, Map<String, List<ClsOptionEntry>>> expandedClsMap =
+            Collections.synchronizedMap(new WeakHashMap<ListedClassificationProvider, Map<String, List<ClsOptionEntry>>>());
+    protected static final String DERIVED_SELECT_INDEX_KEY = ClsSelectIndex.class.getName();
+    protected static final String DERIVED_DEEP_SELECT_INDEX_KEY = ClsSelectIndex.class.getName() + ":deep";
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    protected boolean expandedCacheSuppressed;
+    protected ListedClassificationProvider cachedProvider; // null allowed: lazy-loaded, same as view lifecycle
+
+    // ===================================================================================
+    //                                                                              Option
+    //                                                                              ======
+    /**
+     * Suppress the cache of provider and expanded classifications, e.g. classifications are changed without recreating provider.
+     * @param expandedCacheSuppressed Does it suppress the cache?
+     * @return this. (NotNull)
+     */
+    public TypicalMixClsResolver suppressExpandedCache(boolean expandedCacheSuppressed) {
+        this.expandedCacheSuppressed = expandedCacheSuppressed;
+        return this;
+    }
+
+    // ===================================================================================
+    //                                                                            Resolver
+    //                                                                            ========
     public void resolveCls(Html html, Mixer2Supporter supporter) {
         if (html == null) {
             throw new IllegalArgumentException("The argument 'html' should not be null.");
@@ -44,29 +86,72 @@ public class TypicalMixClsResolver {
         if (supporter == null) {
             throw new IllegalArgumentException("The supporter 'html' should not be null.");
         }
-        final Body body = html.getBody();
-        final List<Select> selectList = supporter.searchTagList(body, tag -> {
+        final Mixer2TagPipeline pipeline = supporter.newTagPipeline();
+        registerCls(html, supporter, pipeline);
+        pipeline.run(html.getBody()); // no walk if no visitor
+    }
+
+    /**
+     * Register the classification resolution to the pipeline, which is run by caller. <br>
+     * The selects of classification are recorded when the template is loaded,
+     * so they are resolved here without visitor if the recorded selects are found in the HTML.
+     * @param html The HTML of rendering. (NotNull)
+     * @param supporter The supporter of rendering. (NotNull)
+     * @param pipeline The pipeline of tag visitors shared with other resolvers. (NotNull)
+     */
+    public void registerCls(Html html, Mixer2Supporter supporter, Mixer2TagPipeline pipeline) {
+        if (!supporter.mightHaveData("cls")) { // no visitor for most templates
+            return;
+        }
+        final List<Select> indexedList = findIndexedSelectList(html, supporter); // null allowed
+        if (indexedList != null) { // no walk
+            for (Select select : indexedList) {
+                reflectSelectCls(select);
+            }
+            return;
+        }
+        pipeline.registerInSearchScope(tag -> { // not in table as before unless deep search
             return tag instanceof Select && hasClsOption((Select) tag);
+        }, tag -> {
+            reflectSelectCls((Select) tag);
         });
-        for (Select select : selectList) {
-            final ListedClassificationProvider provider = getClassificationProvider();
-            final List<AbstractJaxb> groupOrOptList = select.getOptgroupOrOption();
-            for (AbstractJaxb groupOrOpt : new ArrayList<AbstractJaxb>(groupOrOptList)) { // avoid ConcurrentModification
-                if (groupOrOpt instanceof Optgroup) {
-                    final Optgroup optgroup = (Optgroup) groupOrOpt;
-                    final List<Option> optionList = optgroup.getOption();
-                    for (Option option : new ArrayList<Option>(optionList)) { // avoid ConcurrentModification
-                        handleOptionCls(provider, option, optionList);
-                    }
-                } else if (groupOrOpt instanceof Option) {
-                    final Option option = (Option) groupOrOpt;
-                    handleOptionCls(provider, option, groupOrOptList);
+    }
+
+    protected void reflectSelectCls(Select select) {
+        final ListedClassificationProvider provider = getClassificationProvider();
+        final List<AbstractJaxb> groupOrOptList = select.getOptgroupOrOption();
+        for (AbstractJaxb groupOrOpt : new ArrayList<AbstractJaxb>(groupOrOptList)) { // avoid ConcurrentModification
+            if (groupOrOpt instanceof Optgroup) {
+                final Optgroup optgroup = (Optgroup) groupOrOpt;
+                final List<Option> optionList = optgroup.getOption();
+                for (Option option : new ArrayList<Option>(optionList)) { // avoid ConcurrentModification
+                    handleOptionCls(provider, option, optionList);
                 }
+            } else if (groupOrOpt instanceof Option) {
+                final Option option = (Option) groupOrOpt;
+                handleOptionCls(provider, option, groupOrOptList);
             }
         }
     }
 
+    protected List<Select> findIndexedSelectList(Html html, Mixer2Supporter supporter) { // null if cannot use index
+        final boolean deep = supporter.isDeepSearch();
+        return supporter.deriveFromTemplate(html, deep ? DERIVED_DEEP_SELECT_INDEX_KEY : DERIVED_SELECT_INDEX_KEY, master -> {
+            return new ClsSelectIndex(master, deep);
+        }).map(index -> index.findSelectList(html)).orElse(null);
+    }
+
     protected ListedClassificationProvider getClassificationProvider() { // #pending quit getComponent()
+        if (expandedCacheSuppressed) {
+            return findClassificationProvider();
+        }
+        if (cachedProvider == null) { // once per resolver, not per select
+            cachedProvider = findClassificationProvider();
+        }
+        return cachedProvider;
+    }
+
+    protected ListedClassificationProvider findClassificationProvider() {
         return ContainerUtil.getComponent(FwAssistantDirector.class).assistDbDirection().assistListedClassificationProvider();
     }
 
@@ -95,33 +180,203 @@ public class TypicalMixClsResolver {
         if (classificationName == null) {
             return;
         }
+        reflectCls(findExpandedCls(provider, classificationName), option, addedOptionList);
+    }
+
+    // ===================================================================================
+    //                                                                        Select Index
+    //                                                                        ============
+    /**
+     * The index of selects that have classification options, built once from master HTML when the template is loaded. <br>
+     * It has paths of the selects (not selects themselves) so it can be used for HTML copied from the master.
+     * The selects in content of table and head are not indexed unless deep, as searchTagList() of old versions.
+     */
+    public static class ClsSelectIndex {
+
+        protected final List<int[]> selectPathList; // in document order
+        protected final Set<String> classificationNameSet; // for e.g. debug
+        protected final boolean deepIncluded; // also in content of table and head
+
+        /**
+         * @param masterHtml The master HTML of template, only read. (NotNull)
+         */
+        public ClsSelectIndex(Html masterHtml) {
+            this(masterHtml, true);
+        }
+
+        /**
+         * @param masterHtml The master HTML of template, only read. (NotNull)
+         * @param deepIncluded Does the index have selects in content of table and head? (false: compatible search scope)
+         */
+        public ClsSelectIndex(Html masterHtml, boolean deepIncluded) {
+            this.deepIncluded = deepIncluded;
+            final List<int[]> selectPathList = new ArrayList<int[]>(2);
+            final Set<String> classificationNameSet = new LinkedHashSet<String>();
+            indexSelect(masterHtml, new ArrayList<Integer>(), selectPathList, classificationNameSet);
+            this.selectPathList = Collections.unmodifiableList(selectPathList);
+            this.classificationNameSet = Collections.unmodifiableSet(classificationNameSet);
+        }
+
+        protected void indexSelect(Object element, List<Integer> pathList, List<int[]> selectPathList, Set<String> nameSet) {
+            if (element instanceof Select) {
+                if (collectClassificationName((Select) element, nameSet)) {
+                    selectPathList.add(Mixer2TagUtil.toPathArray(pathList));
+                }
+                return; // no select in select
+            }
+            if (!deepIncluded && Mixer2TagUtil.isDeepChildHolder(element)) {
+                return;
+            }
+            final List<?> childList = Mixer2TagUtil.findChildList(element);
+            if (childList == null) {
+                return;
+            }
+            for (int i = 0; i < childList.size(); i++) {
+                pathList.add(i);
+                indexSelect(childList.get(i), pathList, selectPathList, nameSet);
+                pathList.remove(pathList.size() - 1);
+            }
+        }
+
+        protected boolean collectClassificationName(Select select, Set<String> nameSet) {
+            boolean found = false;
+            for (AbstractJaxb groupOrOpt : select.getOptgroupOrOption()) {
+                if (groupOrOpt instanceof Optgroup) {
+                    for (Option option : ((Optgroup) groupOrOpt).getOption()) {
+                        found = collectClassificationName(option, nameSet) || found;
+                    }
+                } else if (groupOrOpt instanceof Option) {
+                    found = collectClassificationName((Option) groupOrOpt, nameSet) || found;
+                }
+            }
+            return found;
+        }
+
+        protected boolean collectClassificationName(Option option, Set<String> nameSet) { // set is null allowed
+            final String classificationName = option.getData("cls");
+            if (classificationName == null) {
+                return false;
+            }
+            if (nameSet != null) {
+                nameSet.add(classificationName);
+            }
+            return true;
+        }
+
+        /**
+         * @param html The HTML copied from the master of this index. (NotNull)
+         * @return The list of selects that have classification options in document order.
+         * (NullAllowed: when the indexed selects are moved by views, so walk the tree, EmptyAllowed: not found in template)
+         */
+        public List<Select> findSelectList(Html html) {
+            final List<Select> selectList = new ArrayList<Select>(selectPathList.size());
+            for (int[] path : selectPathList) {
+                final Object found = Mixer2TagUtil.findByPath(html, path);
+                if (!(found instanceof Select) || !collectClassificationName((Select) found, null)) { // moved
+                    return null;
+                }
+                selectList.add((Select) found);
+            }
+            return selectList;
+        }
+
+        public Set<String> getClassificationNameSet() {
+            return classificationNameSet;
+        }
+
+        @Override
+        public String toString() {
+            return "clsSelectIndex:{selects=" + selectPathList.size() + ", " + classificationNameSet + "}";
+        }
+    }
+
+    // ===================================================================================
+    //                                                                        Expanded Cls
+    //                                                                        ============
+    protected List<ClsOptionEntry> findExpandedCls(ListedClassificationProvider provider, String classificationName) {
+        if (expandedCacheSuppressed) {
+            return expandCls(provider, classificationName);
+        }
+        final Map<String, List<ClsOptionEntry>> providerClsMap = findProviderClsMap(provider);
+        final List<ClsOptionEntry> cached = providerClsMap.get(classificationName);
+        if (cached != null) {
+            return cached;
+        }
+        final List<ClsOptionEntry> expanded = expandCls(provider, classificationName);
+        final List<ClsOptionEntry> existing = providerClsMap.putIfAbsent(classificationName, expanded);
+        return existing != null ? existing : expanded;
+    }
+
+    protected Map<String, List<ClsOptionEntry>> findProviderClsMap(ListedClassificationProvider provider) {
+        return expandedClsMap.computeIfAbsent(provider, key -> new ConcurrentHashMap<String, List<ClsOptionEntry>>());
+    }
+
+    protected List<ClsOptionEntry> expandCls(ListedClassificationProvider provider, String classificationName) {
         final ClassificationMeta meta;
         try {
             meta = provider.provide(classificationName);
         } catch (ProvidedClassificationNotFoundException e) { // #pending rich message
             throw new IllegalStateException("Not found the classification: " + classificationName, e);
         }
-        reflectCls(meta, option, addedOptionList);
-    }
-
-    protected <TAG extends AbstractJaxb> void reflectCls(ClassificationMeta meta, Option option, List<TAG> addedOptionList) {
         final List<Classification> clsList = meta.listAll();
-        int index = 0;
+        final List<ClsOptionEntry> entryList = new ArrayList<ClsOptionEntry>(clsList.size());
         for (Classification cls : clsList) {
-            String code = cls.code();
-            String alias = cls.alias();
+            entryList.add(new ClsOptionEntry(cls.code(), cls.alias()));
+        }
+        return Collections.unmodifiableList(entryList);
+    }
+
+    /**
+     * The entry of option expanded from classification, immutable and shared by requests.
+     */
+    public static class ClsOptionEntry {
+
+        protected final String code;
+        protected final String alias;
+
+        public ClsOptionEntry(String code, String alias) {
+            this.code = code;
+            this.alias = alias;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        public String getAlias() {
+            return alias;
+        }
+    }
+
+    /**
+     * Clear the cache of expanded classifications of all providers, e.g. when classifications are changed.
+     */
+    public static void clearExpandedCache() {
+        expandedClsMap.clear();
+    }
+
+    // ===================================================================================
+    //                                                                         Reflect Cls
+    //                                                                         ===========
+    protected <TAG extends AbstractJaxb> void reflectCls(List<ClsOptionEntry> entryList, Option option, List<TAG> addedOptionList) {
+        if (entryList.isEmpty()) {
+            return;
+        }
+        final List<TAG> copiedList = new ArrayList<TAG>(entryList.size() - 1);
+        for (int index = 0; index < entryList.size(); index++) {
+            final ClsOptionEntry entry = entryList.get(index);
             if (index == 0) {
-                option.setValue(code);
-                option.setContent(alias);
+                option.setValue(entry.getCode());
+                option.setContent(entry.getAlias());
             } else {
                 final Option copied = option.copy(Option.class);
-                copied.setValue(code);
-                copied.setContent(alias);
+                copied.setValue(entry.getCode());
+                copied.setContent(entry.getAlias());
                 @SuppressWarnings("unchecked")
                 final TAG addedTag = (TAG) copied;
-                addedOptionList.add(addedTag); // #pending want to next tag (latest row for now)
+                copiedList.add(addedTag);
             }
-            ++index;
         }
+        addedOptionList.addAll(copiedList); // in one step, #pending want to next tag (latest row for now)
     }
 }
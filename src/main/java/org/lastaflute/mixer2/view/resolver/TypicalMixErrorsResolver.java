@@ -23,6 +23,7 @@ import java.util.stream.Collectors;
 import org.lastaflute.mixer2.messages.ErrorMessages;
 import org.lastaflute.mixer2.messages.ResolvedMessage;
 import org.lastaflute.mixer2.view.Mixer2Supporter;
+import org.lastaflute.mixer2.view.Mixer2TagPipeline;
 import org.lastaflute.web.LastaWebKey;
 import org.lastaflute.web.ruts.message.ActionMessages;
 import org.lastaflute.web.servlet.request.RequestManager;
@@ -49,33 +50,57 @@ public class TypicalMixErrorsResolver {
             return;
         }
         // #hope label coloring
-        final Body body = html.getBody(); // #pending getByData
-        final List<AbstractJaxb> errorsTagList = supporter.searchTagList(body, tag -> {
-            return tag.getData("errors") != null;
-        });
+        final Body body = html.getBody();
+        final List<AbstractJaxb> errorsTagList = supporter.searchByData(body, "errors"); // indexed
         final Set<String> propertySet = messages.toPropertySet();
         for (AbstractJaxb errorsTag : errorsTagList) {
-            final String errorsName = errorsTag.getData("errors");
-            if ("all".equalsIgnoreCase(errorsName)) {
-                final List<ResolvedMessage> messageList = messages.getAll();
-                final Ul ul = new Ul();
-                final List<Li> liList = new ArrayList<Li>();
-                for (ResolvedMessage message : messageList) {
-                    final Li li = new Li();
-                    li.replaceInner(message.getMessage());
-                    liList.add(li);
-                }
-                ul.replaceInner(liList); // #hope List<? extends Object>
-                errorsTag.replaceInner(ul);
-            } else {
-                final String propertyName = toPropertyName(errorsName);
-                if (propertySet.contains(propertyName)) {
-                    final List<ResolvedMessage> messageList = messages.part(propertyName);
-                    final String joinedMessage = messageList.stream().map(message -> {
-                        return message.getMessage();
-                    }).collect(Collectors.joining(", ")); // #thinking use any tag?
-                    errorsTag.replaceInner(joinedMessage);
-                }
+            reflectErrors(errorsTag, messages, propertySet);
+        }
+    }
+
+    /**
+     * Register the errors resolution to the pipeline, which is run by caller.
+     * @param html The HTML of rendering. (NotNull)
+     * @param supporter The supporter of rendering. (NotNull)
+     * @param pipeline The pipeline of tag visitors shared with other resolvers. (NotNull)
+     */
+    public void registerErrors(Html html, Mixer2Supporter supporter, Mixer2TagPipeline pipeline) {
+        if (!supporter.mightHaveData("errors")) { // no need to read messages
+            return;
+        }
+        final ErrorMessages messages = createErrorMessages(supporter.getRequestManager());
+        if (messages.isEmpty()) {
+            return;
+        }
+        final Set<String> propertySet = messages.toPropertySet();
+        pipeline.registerInSearchScope(tag -> { // not in table as before unless deep search
+            return tag.getData("errors") != null;
+        }, tag -> {
+            reflectErrors(tag, messages, propertySet);
+        });
+    }
+
+    protected void reflectErrors(AbstractJaxb errorsTag, ErrorMessages messages, Set<String> propertySet) {
+        final String errorsName = errorsTag.getData("errors");
+        if ("all".equalsIgnoreCase(errorsName)) {
+            final List<ResolvedMessage> messageList = messages.getAll();
+            final Ul ul = new Ul();
+            final List<Li> liList = new ArrayList<Li>();
+            for (ResolvedMessage message : messageList) {
+                final Li li = new Li();
+                li.replaceInner(message.getMessage());
+                liList.add(li);
+            }
+            ul.replaceInner(liList); // #hope List<? extends Object>
+            errorsTag.replaceInner(ul);
+        } else {
+            final String propertyName = toPropertyName(errorsName);
+            if (propertySet.contains(propertyName)) {
+                final List<ResolvedMessage> messageList = messages.part(propertyName);
+                final String joinedMessage = messageList.stream().map(message -> {
+                    return message.getMessage();
+                }).collect(Collectors.joining(", ")); // #thinking use any tag?
+                errorsTag.replaceInner(joinedMessage);
             }
         }
     }
@@ -15,27 +15,41 @@
  */
 package org.lastaflute.mixer2.view.resolver;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
 
 import org.lastaflute.mixer2.view.Mixer2Supporter;
+import org.lastaflute.mixer2.view.Mixer2TagPipeline;
+import org.lastaflute.mixer2.view.Mixer2TagWalker;
 import org.mixer2.jaxb.xhtml.Body;
 import org.mixer2.jaxb.xhtml.Footer;
 import org.mixer2.jaxb.xhtml.Head;
 import org.mixer2.jaxb.xhtml.Header;
 import org.mixer2.jaxb.xhtml.Html;
 import org.mixer2.jaxb.xhtml.Script;
+import org.mixer2.xhtml.AbstractJaxb;
 
 /**
  * @author jflute
  */
 public class TypicalMixLayoutResolver {
 
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    protected static final String DERIVED_LAYOUT_PARTS_KEY = TypicalMixLayoutResolver.class.getName() + ".layoutParts";
+
     // ===================================================================================
     //                                                                           Attribute
     //                                                                           =========
     protected LayoutHeaderResolver headerResolver;
     protected LayoutFooterResolver footerResolver;
     protected LayoutPartsResolver partsResolver;
+    protected Supplier<String> headerCacheKeySupplier; // null allowed: not cached
+    protected long headerCacheTtlSeconds;
+    protected Supplier<String> footerCacheKeySupplier; // null allowed: not cached
+    protected long footerCacheTtlSeconds;
     protected boolean includingHeadSuppressed;
     protected boolean replacingHeaderSuppressed;
     protected boolean replacingFooterSuppressed;
@@ -77,6 +91,33 @@ public class TypicalMixLayoutResolver {
         void resolve(Html html, Mixer2Supporter supporter, Html loaded);
     }
 
+    // -----------------------------------------------------
+    //                                                 Cache
+    //                                                 -----
+    /**
+     * Cache the replaced header (with your header resolver) per key, e.g. navigation menu per user role.
+     * @param keySupplier The supplier of key for the variation of header. (NotNull)
+     * @param ttlSeconds The time-to-live of the cached header in seconds, should be positive.
+     * @return this. (NotNull)
+     */
+    public TypicalMixLayoutResolver cacheHeader(Supplier<String> keySupplier, long ttlSeconds) {
+        this.headerCacheKeySupplier = keySupplier;
+        this.headerCacheTtlSeconds = ttlSeconds;
+        return this;
+    }
+
+    /**
+     * Cache the replaced footer (with your footer resolver) per key.
+     * @param keySupplier The supplier of key for the variation of footer. (NotNull)
+     * @param ttlSeconds The time-to-live of the cached footer in seconds, should be positive.
+     * @return this. (NotNull)
+     */
+    public TypicalMixLayoutResolver cacheFooter(Supplier<String> keySupplier, long ttlSeconds) {
+        this.footerCacheKeySupplier = keySupplier;
+        this.footerCacheTtlSeconds = ttlSeconds;
+        return this;
+    }
+
     // -----------------------------------------------------
     //                                              Suppress
     //                                              --------
@@ -110,21 +151,94 @@ public class TypicalMixLayoutResolver {
         if (supporter == null) {
             throw new IllegalArgumentException("The supporter 'supporter' should not be null.");
         }
-        supporter.loadPartsHtml(getLayoutHtmlPath()).alwaysPresent(loaded -> {
+        final Mixer2TagPipeline pipeline = supporter.newTagPipeline();
+        final LayoutLocation location = registerLayout(html, supporter, pipeline);
+        pipeline.run(html); // header and footer are located in one walk
+        resolveLayout(html, supporter, location);
+    }
+
+    /**
+     * Register the location of layout elements (e.g. header, footer) to the pipeline, which is run by caller.
+     * @param html The HTML of rendering. (NotNull)
+     * @param supporter The supporter of rendering. (NotNull)
+     * @param pipeline The pipeline of tag visitors shared with other resolvers. (NotNull)
+     * @return The location of layout elements, filled when the pipeline is run. (NotNull)
+     */
+    public LayoutLocation registerLayout(Html html, Mixer2Supporter supporter, Mixer2TagPipeline pipeline) {
+        final LayoutLocation location = new LayoutLocation();
+        if (isReplacingHeader() && supporter.mightHaveFeature(features -> features.isHeaderExisting())) { // no walk if not
+            pipeline.register(tag -> tag instanceof Header, tag -> location.acceptHeader((Header) tag));
+        }
+        if (isReplacingFooter() && supporter.mightHaveFeature(features -> features.isFooterExisting())) {
+            pipeline.register(tag -> tag instanceof Footer, tag -> location.acceptFooter((Footer) tag));
+        }
+        return location;
+    }
+
+    /**
+     * Resolve the layout by the location located by the pipeline.
+     * @param html The HTML of rendering. (NotNull)
+     * @param supporter The supporter of rendering. (NotNull)
+     * @param location The location of layout elements, already filled by pipeline. (NotNull)
+     */
+    public void resolveLayout(Html html, Mixer2Supporter supporter, LayoutLocation location) {
+        final String layoutPath = getLayoutHtmlPath();
+        supporter.deriveFromPartsHtml(layoutPath, DERIVED_LAYOUT_PARTS_KEY, loaded -> {
+            return extractLayoutParts(layoutPath, loaded, supporter); // only once while layout is cached
+        }).alwaysPresent(parts -> {
             if (isIncludingHead()) {
-                includeHead(html, supporter, loaded);
+                includeHead(html, supporter, parts);
             }
             if (isReplacingHeader()) {
-                replaceHeader(html, supporter, loaded);
+                replaceHeader(html, supporter, parts, location);
             }
             if (isReplacingFooter()) {
-                replaceFooter(html, supporter, loaded);
+                replaceFooter(html, supporter, parts, location);
             }
             if (isIncludingScript()) {
-                includeScript(html, supporter, loaded);
+                includeScript(html, supporter, parts);
             }
-            asYouLikeIt(html, supporter, loaded);
         });
+        if (partsResolver != null) { // needs whole layout so load it
+            supporter.loadPartsHtml(layoutPath).alwaysPresent(loaded -> {
+                asYouLikeIt(html, supporter, loaded);
+            });
+        }
+        if (isIncludingHead() || isReplacingHeader() || isReplacingFooter() || isIncludingScript() || partsResolver != null) {
+            supporter.mergePartsFeatures(layoutPath); // tags of layout are in the HTML now
+        }
+    }
+
+    /**
+     * The location of layout elements in the HTML of rendering, located by pipeline. <br>
+     * The first one is used, and it fails if over two are found (as findHeader() of supporter).
+     */
+    public static class LayoutLocation {
+
+        protected final List<Header> headerList = new ArrayList<Header>(1);
+        protected final List<Footer> footerList = new ArrayList<Footer>(1);
+
+        public void acceptHeader(Header header) {
+            headerList.add(header);
+            if (headerList.size() > 2) { // #pending rich message
+                throw new IllegalStateException("Duplicate name for header tag: found=" + headerList);
+            }
+        }
+
+        public void acceptFooter(Footer footer) {
+            footerList.add(footer);
+            if (footerList.size() > 2) { // #pending rich message
+                throw new IllegalStateException("Duplicate name for footer tag: found=" + footerList);
+            }
+        }
+
+        public Header getHeader() { // null allowed: not found
+            return !headerList.isEmpty() ? headerList.get(0) : null;
+        }
+
+        public Footer getFooter() { // null allowed: not found
+            return !footerList.isEmpty() ? footerList.get(0) : null;
+        }
     }
 
     protected String getLayoutHtmlPath() {
@@ -153,24 +267,102 @@ public class TypicalMixLayoutResolver {
         }
     }
 
+    // ===================================================================================
+    //                                                                        Layout Parts
+    //                                                                        ============
+    protected LayoutParts extractLayoutParts(String layoutPath, Html loaded, Mixer2Supporter supporter) {
+        final Head head = loaded.getHead();
+        final LayoutLocation location = new LayoutLocation();
+        new Mixer2TagWalker().walk(loaded, tag -> { // no option of the rendering, the parts are shared by requests
+            if (tag instanceof Header) {
+                location.acceptHeader((Header) tag);
+            } else if (tag instanceof Footer) {
+                location.acceptFooter((Footer) tag);
+            }
+            return true;
+        });
+        final List<Script> scriptList = loaded.getDescendants(Script.class);
+        return new LayoutParts(layoutPath, head, location.getHeader(), location.getFooter(), scriptList);
+    }
+
+    /**
+     * The parts of master layout HTML, shared by requests so copy them to use.
+     */
+    public static class LayoutParts {
+
+        protected final String layoutPath;
+        protected final Head head; // null allowed
+        protected final Header header; // null allowed
+        protected final Footer footer; // null allowed
+        protected final List<Script> scriptList;
+
+        public LayoutParts(String layoutPath, Head head, Header header, Footer footer, List<Script> scriptList) {
+            this.layoutPath = layoutPath;
+            this.head = head;
+            this.header = header;
+            this.footer = footer;
+            this.scriptList = scriptList;
+        }
+
+        public String getLayoutPath() {
+            return layoutPath;
+        }
+
+        public Head getHead() {
+            return head;
+        }
+
+        public Header getHeader() {
+            return header;
+        }
+
+        public Footer getFooter() {
+            return footer;
+        }
+
+        public List<Script> getScriptList() {
+            return scriptList;
+        }
+    }
+
     // ===================================================================================
     //                                                                               Head
     //                                                                              ======
-    protected void includeHead(Html html, Mixer2Supporter supporter, Html loaded) {
-        final Head realHead = loaded.getHead();
+    protected void includeHead(Html html, Mixer2Supporter supporter, LayoutParts parts) {
+        final Head realHead = parts.getHead();
+        if (realHead == null) {
+            return;
+        }
         final Head existingHead = html.getHead();
-        existingHead.getContent().addAll(realHead.getContent());
+        existingHead.getContent().addAll(copyContent(realHead.getContent()));
     }
 
     // ===================================================================================
     //                                                                              Header
     //                                                                              ======
-    protected void replaceHeader(Html html, Mixer2Supporter supporter, Html loaded) {
-        final Header realHeader = supporter.findHeader(loaded).get();
+    protected void replaceHeader(Html html, Mixer2Supporter supporter, LayoutParts parts, LayoutLocation location) {
+        final Header masterHeader = parts.getHeader();
+        if (masterHeader == null) { // #pending rich message
+            throw new IllegalStateException("Not found the header tag in the layout: " + parts.getLayoutPath());
+        }
+        final Header existingHeader = location.getHeader();
+        if (existingHeader == null) { // #pending rich message
+            throw new IllegalStateException("Not found the header tag in the tag: " + html);
+        }
+        if (headerCacheKeySupplier != null) { // rendered only at cache miss
+            final String cacheKey = buildLayoutCacheKey(parts, "header", headerCacheKeySupplier);
+            supporter.cacheTagFragment(existingHeader, cacheKey, headerCacheTtlSeconds, header -> {
+                doReplaceHeader(supporter, masterHeader, header);
+            });
+        } else {
+            doReplaceHeader(supporter, masterHeader, existingHeader);
+        }
+    }
+
+    protected void doReplaceHeader(Mixer2Supporter supporter, Header masterHeader, Header existingHeader) {
+        final Header realHeader = masterHeader.copy(Header.class);
         asYouLikeHeader(realHeader, supporter);
-        supporter.findHeader(html).alwaysPresent(existingHeader -> {
-            existingHeader.replaceInner(realHeader.getContent());
-        });
+        existingHeader.replaceInner(realHeader.getContent());
     }
 
     protected void asYouLikeHeader(Header header, Mixer2Supporter supporter) {
@@ -182,12 +374,29 @@ public class TypicalMixLayoutResolver {
     // ===================================================================================
     //                                                                              Footer
     //                                                                              ======
-    protected void replaceFooter(Html html, Mixer2Supporter supporter, Html loaded) {
-        final Footer realFooter = supporter.findFooter(loaded).get();
+    protected void replaceFooter(Html html, Mixer2Supporter supporter, LayoutParts parts, LayoutLocation location) {
+        final Footer masterFooter = parts.getFooter();
+        if (masterFooter == null) { // #pending rich message
+            throw new IllegalStateException("Not found the footer tag in the layout: " + parts.getLayoutPath());
+        }
+        final Footer existingFooter = location.getFooter();
+        if (existingFooter == null) { // #pending rich message
+            throw new IllegalStateException("Not found the footer tag in the tag: " + html);
+        }
+        if (footerCacheKeySupplier != null) { // rendered only at cache miss
+            final String cacheKey = buildLayoutCacheKey(parts, "footer", footerCacheKeySupplier);
+            supporter.cacheTagFragment(existingFooter, cacheKey, footerCacheTtlSeconds, footer -> {
+                doReplaceFooter(supporter, masterFooter, footer);
+            });
+        } else {
+            doReplaceFooter(supporter, masterFooter, existingFooter);
+        }
+    }
+
+    protected void doReplaceFooter(Mixer2Supporter supporter, Footer masterFooter, Footer existingFooter) {
+        final Footer realFooter = masterFooter.copy(Footer.class);
         asYouLikeFooter(realFooter, supporter);
-        supporter.findFooter(html).alwaysPresent(existingHeader -> {
-            existingHeader.replaceInner(realFooter.getContent());
-        });
+        existingFooter.replaceInner(realFooter.getContent());
     }
 
     protected void asYouLikeFooter(Footer footer, Mixer2Supporter supporter) {
@@ -199,15 +408,37 @@ public class TypicalMixLayoutResolver {
     // ===================================================================================
     //                                                                              Script
     //                                                                              ======
-    protected void includeScript(Html html, Mixer2Supporter supporter, Html loaded) {
-        final List<Script> scriptList = loaded.getDescendants(Script.class);
+    protected void includeScript(Html html, Mixer2Supporter supporter, LayoutParts parts) {
+        final List<Script> scriptList = parts.getScriptList();
         final Body body = html.getBody();
         final List<Object> contentList = body.getContent();
         if (!scriptList.isEmpty()) {
             for (Script script : scriptList) {
-                contentList.add(script);
+                contentList.add(script.copy(Script.class));
             }
             contentList.add("\n"); // format
         }
     }
+
+    // ===================================================================================
+    //                                                                        Small Helper
+    //                                                                        ============
+    protected String buildLayoutCacheKey(LayoutParts parts, String partName, Supplier<String> keySupplier) {
+        return getClass().getName() + ":" + parts.getLayoutPath() + ":" + partName + ":" + keySupplier.get();
+    }
+
+    protected <ELEMENT> List<ELEMENT> copyContent(List<ELEMENT> contentList) { // master content is shared
+        final List<ELEMENT> copiedList = new ArrayList<ELEMENT>(contentList.size());
+        for (ELEMENT element : contentList) {
+            if (element instanceof AbstractJaxb) {
+                final AbstractJaxb tag = (AbstractJaxb) element;
+                @SuppressWarnings("unchecked")
+                final ELEMENT copied = (ELEMENT) tag.copy(tag.getClass());
+                copiedList.add(copied);
+            } else { // e.g. text
+                copiedList.add(element);
+            }
+        }
+        return copiedList;
+    }
 }
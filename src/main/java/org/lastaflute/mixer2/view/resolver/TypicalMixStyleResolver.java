@@ -15,11 +15,17 @@
  */
 package org.lastaflute.mixer2.view.resolver;
 
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import javax.servlet.ServletContext;
+
+import org.lastaflute.mixer2.template.Mixer2TemplateTransformer;
+import org.lastaflute.mixer2.view.Mixer2AssetFingerprinter;
 import org.lastaflute.mixer2.view.Mixer2Supporter;
+import org.lastaflute.mixer2.view.Mixer2UrlRewriter;
+import org.lastaflute.web.util.LaServletContextUtil;
 import org.mixer2.jaxb.xhtml.Html;
-import org.mixer2.xhtml.PathAdjuster;
 
 /**
  * @author jflute
@@ -31,14 +37,110 @@ public class TypicalMixStyleResolver {
     protected static final Pattern JS_PATH_PATTERN = Pattern.compile("^\\.+/.*js/(.*)$");
     protected static final Pattern JS_SUFFIX_PATTERN = Pattern.compile("\\.js$");
     protected static final long VQ = System.currentTimeMillis();
+    protected static final String CSS_SUFFIX = ".css";
+    protected static final String JS_SUFFIX = ".js";
+    protected static final String FINGERPRINTER_ATTRIBUTE_PREFIX = Mixer2AssetFingerprinter.class.getName() + ":";
+    protected static final Object fingerprinterLock = new Object(); // for creation in servlet context
 
     protected boolean versionQueryUsed;
+    protected boolean contentHashQueryUsed;
+    protected boolean assetModifiedChecked;
+    protected boolean loadTimeTransformUsed;
+    protected boolean afterRenderingUsed;
+    protected Mixer2AssetFingerprinter cachedFingerprinter; // null allowed: lazy-loaded, shared in application
 
     public TypicalMixStyleResolver useVersionQuery() {
         versionQueryUsed = true;
         return this;
     }
 
+    /**
+     * Use the hash of CSS/JS content as version query instead of boot time, e.g. /harbor/css/sea.css?v=3f2a9c01d4e5b6a7 <br>
+     * The query is same across nodes and restarts while the content is same, so browsers and CDN can cache it long. <br>
+     * The assets under context path are hashed once (cached), other URLs (e.g. external) are not changed.
+     * @return this. (NotNull)
+     */
+    public TypicalMixStyleResolver useContentHashQuery() {
+        contentHashQueryUsed = true;
+        return this;
+    }
+
+    /**
+     * Hash the asset again when its file is modified, for content hash query. (e.g. development) <br>
+     * If load-time transform is also used, the query is updated when the template is loaded again.
+     * @return this. (NotNull)
+     */
+    public TypicalMixStyleResolver useAssetModifiedCheck() {
+        assetModifiedChecked = true;
+        return this;
+    }
+
+    /**
+     * Rewrite the style paths once at template load time, and no rewriting per request. <br>
+     * The templates and parts (e.g. layout) are transformed and cached,
+     * so relative paths of CSS/JS added by your view are not rewritten (use absolute path for them).
+     * @return this. (NotNull)
+     */
+    public TypicalMixStyleResolver useLoadTimeTransform() {
+        loadTimeTransformUsed = true;
+        return this;
+    }
+
+    public boolean isLoadTimeTransform() {
+        return loadTimeTransformUsed;
+    }
+
+    /**
+     * Rewrite the style paths after rendering in the same walk as link URL, instead of before rendering. <br>
+     * One walk is saved, and the paths added by your view are also rewritten,
+     * but your view sees the paths in template as they are (not rewritten yet).
+     * @return this. (NotNull)
+     */
+    public TypicalMixStyleResolver useAfterRendering() {
+        afterRenderingUsed = true;
+        return this;
+    }
+
+    public boolean isAfterRendering() {
+        return afterRenderingUsed;
+    }
+
+    /**
+     * Create the transformer of template for the style adjustments applied at load time.
+     * @param contextPath The context path of the application e.g. /harbor (NotNull, EmptyAllowed: root context)
+     * @return The new-created transformer, its key contains context path and version query. (NotNull)
+     */
+    public Mixer2TemplateTransformer createTemplateTransformer(String contextPath) {
+        if (contextPath == null) {
+            throw new IllegalArgumentException("The argument 'contextPath' should not be null.");
+        }
+        final String transformKey = buildTransformKey(contextPath);
+        return new Mixer2TemplateTransformer() {
+
+            @Override
+            public String getTransformKey() {
+                return transformKey;
+            }
+
+            @Override
+            public void transform(Html html) {
+                final Mixer2UrlRewriter rewriter = new Mixer2UrlRewriter();
+                registerStyle(contextPath, rewriter);
+                rewriter.rewrite(html);
+            }
+
+            @Override
+            public String toString() {
+                return "styleTransformer:{" + transformKey + "}";
+            }
+        };
+    }
+
+    protected String buildTransformKey(String contextPath) {
+        final String query = contentHashQueryUsed ? ":hash" : (versionQueryUsed ? ":v=" + VQ : "");
+        return getClass().getName() + ":" + contextPath + query;
+    }
+
     public void resolveStyle(Html html, Mixer2Supporter supporter) {
         if (html == null) {
             throw new IllegalArgumentException("The argument 'html' should not be null.");
@@ -46,29 +148,96 @@ public class TypicalMixStyleResolver {
         if (supporter == null) {
             throw new IllegalArgumentException("The supporter 'html' should not be null.");
         }
-        adjustCssRelativePath(html, supporter);
-        if (versionQueryUsed) {
-            adjustCssVersionQuery(html, supporter);
+        final Mixer2UrlRewriter rewriter = supporter.newUrlRewriter();
+        registerStyle(html, supporter, rewriter);
+        rewriter.rewrite(html); // walks only once for all adjustments
+    }
+
+    /**
+     * Register the style adjustments to the rewriter, which is run by caller. <br>
+     * The rules are applied in order: CSS path, CSS version, JS path, JS version. <br>
+     * No rule is registered if load-time transform is used, or if no CSS/JS path in template and layout.
+     * @param html The HTML of rendering. (NotNull)
+     * @param supporter The supporter of rendering. (NotNull)
+     * @param rewriter The rewriter of URL attributes shared with other resolvers. (NotNull)
+     */
+    public void registerStyle(Html html, Mixer2Supporter supporter, Mixer2UrlRewriter rewriter) {
+        if (loadTimeTransformUsed) { // already rewritten in template
+            return;
+        }
+        if (!supporter.mightHaveFeature(features -> features.isRelativeUrlUsed() || features.isAssetUrlUsed())) {
+            return; // no walk for the style
+        }
+        registerStyle(supporter.getRequestManager().getContextPath(), rewriter);
+    }
+
+    protected void registerStyle(String contextPath, Mixer2UrlRewriter rewriter) {
+        final Mixer2AssetFingerprinter fingerprinter = contentHashQueryUsed ? getAssetFingerprinter() : null;
+        adjustCssRelativePath(rewriter, contextPath);
+        if (fingerprinter != null) {
+            adjustContentHashQuery(rewriter, contextPath, fingerprinter, CSS_SUFFIX);
+        } else if (versionQueryUsed) {
+            adjustCssVersionQuery(rewriter, contextPath);
         }
-        adjustJsRelativePath(html, supporter);
-        if (versionQueryUsed) {
-            adjustJsVersionQuery(html, supporter);
+        adjustJsRelativePath(rewriter, contextPath);
+        if (fingerprinter != null) {
+            adjustContentHashQuery(rewriter, contextPath, fingerprinter, JS_SUFFIX);
+        } else if (versionQueryUsed) {
+            adjustJsVersionQuery(rewriter, contextPath);
         }
     }
 
-    protected void adjustCssRelativePath(Html html, Mixer2Supporter supporter) {
-        PathAdjuster.replacePath(html, CSS_PATH_PATTERN, supporter.getRequestManager().getContextPath() + "/css/$1");
+    protected void adjustCssRelativePath(Mixer2UrlRewriter rewriter, String contextPath) {
+        final String replacement = Matcher.quoteReplacement(contextPath) + "/css/$1";
+        rewriter.addRule(CSS_PATH_PATTERN, replacement, url -> url.startsWith(".") && url.contains("css/"));
     }
 
-    protected void adjustCssVersionQuery(Html html, Mixer2Supporter supporter) {
-        PathAdjuster.replacePath(html, CSS_SUFFIX_PATTERN, ".css?v=" + VQ);
+    protected void adjustCssVersionQuery(Mixer2UrlRewriter rewriter, String contextPath) {
+        rewriter.addRule(CSS_SUFFIX_PATTERN, ".css?v=" + VQ, url -> url.endsWith(".css"));
     }
 
-    protected void adjustJsRelativePath(Html html, Mixer2Supporter supporter) {
-        PathAdjuster.replacePath(html, JS_PATH_PATTERN, supporter.getRequestManager().getContextPath() + "/js/$1");
+    protected void adjustJsRelativePath(Mixer2UrlRewriter rewriter, String contextPath) {
+        final String replacement = Matcher.quoteReplacement(contextPath) + "/js/$1";
+        rewriter.addRule(JS_PATH_PATTERN, replacement, url -> url.startsWith(".") && url.contains("js/"));
+    }
+
+    protected void adjustJsVersionQuery(Mixer2UrlRewriter rewriter, String contextPath) {
+        rewriter.addRule(JS_SUFFIX_PATTERN, ".js?v=" + VQ, url -> url.endsWith(".js"));
+    }
+
+    protected void adjustContentHashQuery(Mixer2UrlRewriter rewriter, String contextPath, Mixer2AssetFingerprinter fingerprinter,
+            String suffix) {
+        final String pathPrefix = contextPath + "/";
+        rewriter.addRule(url -> url.endsWith(suffix) && url.startsWith(pathPrefix) && !url.startsWith("//"), url -> { // not external
+            final String fingerprint = fingerprinter.findFingerprint(url.substring(contextPath.length()));
+            return fingerprint != null ? url + "?v=" + fingerprint : url; // not changed if not found
+        });
+    }
+
+    /**
+     * @return The fingerprinter of assets, one per application (servlet context) to keep its cache across requests. (NotNull)
+     */
+    protected Mixer2AssetFingerprinter getAssetFingerprinter() {
+        if (cachedFingerprinter == null) {
+            cachedFingerprinter = findAssetFingerprinter(LaServletContextUtil.getServletContext());
+        }
+        return cachedFingerprinter;
+    }
+
+    protected Mixer2AssetFingerprinter findAssetFingerprinter(ServletContext servletContext) { // released with the context
+        final String attributeKey = FINGERPRINTER_ATTRIBUTE_PREFIX + (assetModifiedChecked ? "modifiedChecked" : "plain");
+        synchronized (fingerprinterLock) {
+            final Object existing = servletContext.getAttribute(attributeKey);
+            if (existing instanceof Mixer2AssetFingerprinter) {
+                return (Mixer2AssetFingerprinter) existing;
+            }
+            final Mixer2AssetFingerprinter created = createAssetFingerprinter(servletContext);
+            servletContext.setAttribute(attributeKey, created);
+            return created;
+        }
     }
 
-    protected void adjustJsVersionQuery(Html html, Mixer2Supporter supporter) {
-        PathAdjuster.replacePath(html, JS_SUFFIX_PATTERN, ".js?v=" + VQ);
+    protected Mixer2AssetFingerprinter createAssetFingerprinter(ServletContext servletContext) {
+        return new Mixer2AssetFingerprinter(servletContext, assetModifiedChecked);
     }
 }
@@ -15,7 +15,24 @@
  */
 package org.lastaflute.mixer2;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import org.dbflute.utflute.core.PlainTestCase;
+import org.lastaflute.mixer2.template.Mixer2TemplateReader;
+import org.lastaflute.mixer2.template.Mixer2TemplateReader.LoadedHtml;
+import org.lastaflute.mixer2.view.Mixer2StreamingTable;
+import org.lastaflute.mixer2.view.Mixer2Supporter;
+import org.lastaflute.web.servlet.request.RequestManager;
+import org.mixer2.Mixer2Engine;
+import org.mixer2.jaxb.xhtml.Html;
+import org.mixer2.jaxb.xhtml.Tbody;
+import org.mixer2.jaxb.xhtml.Tr;
 
 /**
  * @author jflute
@@ -29,4 +46,42 @@ public class Mixer2HtmlRendererTest extends PlainTestCase {
 
         // ## Assert ##
     }
+
+    // ===================================================================================
+    //                                                                     Streaming Table
+    //                                                                     ===============
+    public void test_writeStreamingTable_rowsWrittenWhileIterating() throws Exception {
+        // ## Arrange ##
+        Mixer2HtmlRenderer renderer = new Mixer2HtmlRenderer(new Mixer2Engine());
+        RequestManager requestManager = (RequestManager) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { RequestManager.class }, (proxy, method, args) -> null); // not used
+        Mixer2TemplateReader reader = new Mixer2TemplateReader(null, requestManager, null);
+        LoadedHtml loaded = new LoadedHtml(new Html(), false, false);
+        Mixer2Supporter supporter =
+                new Mixer2Supporter(new Mixer2Engine(), requestManager, reader, (actionType, urlChain) -> null, loaded);
+        List<String> writtenList = new ArrayList<String>(); // written text when each row is made
+        List<String> entityList = Arrays.asList("mystic", "bonvo");
+        supporter.getStreamingTableList().add(new Mixer2StreamingTable<String>(null, new Tbody(), new Tr(), entityList, res -> {
+        }, 10, 0) {
+            @Override
+            public void writeRows(Writer writer) throws IOException {
+                for (String entity : entityIterable) {
+                    writtenList.add(writer.toString());
+                    writer.write("<tr><td>" + entity + "</td></tr>");
+                }
+            }
+        });
+        String front = "<html><body><table><tbody>";
+        String rear = "</tbody></table></body></html>";
+        String htmlText = front + "<tr><td>" + Mixer2StreamingTable.getTokenPrefix() + "0.</td></tr>" + rear;
+        StringWriter writer = new StringWriter();
+
+        // ## Act ##
+        renderer.writeStreamingTable(null, null, null, reader, loaded, htmlText, supporter, writer);
+
+        // ## Assert ##
+        log(writer);
+        assertEquals(front + "<tr><td>mystic</td></tr><tr><td>bonvo</td></tr>" + rear, writer.toString());
+        assertEquals(Arrays.asList(front, front + "<tr><td>mystic</td></tr>"), writtenList); // front is already written
+    }
 }
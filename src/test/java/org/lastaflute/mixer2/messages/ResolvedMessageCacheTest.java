@@ -0,0 +1,210 @@
+/*
+ * Copyright 2015-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.lastaflute.mixer2.messages;
+
+import java.lang.reflect.Proxy;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.dbflute.utflute.core.PlainTestCase;
+import org.lastaflute.core.message.MessageManager;
+import org.lastaflute.web.servlet.request.RequestManager;
+
+/**
+ * @author jflute
+ */
+public class ResolvedMessageCacheTest extends PlainTestCase {
+
+    // ===================================================================================
+    //                                                                             Resolve
+    //                                                                             =======
+    public void test_resolve_memo() throws Exception {
+        // ## Arrange ##
+        AtomicInteger messageCount = new AtomicInteger();
+        ResolvedMessageCache cache = new LocalMessageCache(createRequestManager(createMessageManager(messageCount), Locale.ENGLISH));
+
+        // ## Act ##
+        String first = cache.resolve("errors.required");
+        String second = cache.resolve("errors.required");
+
+        // ## Assert ##
+        assertEquals("errors.required:en", first);
+        assertEquals(first, second);
+        assertEquals(1, messageCount.get());
+    }
+
+    public void test_resolve_shared_sameManager() throws Exception {
+        // ## Arrange ##
+        ResolvedMessageCache.clearSharedCache(); // shared in JVM
+        AtomicInteger messageCount = new AtomicInteger();
+        MessageManager messageManager = createMessageManager(messageCount);
+
+        // ## Act ##
+        String first = new SharedMessageCache(createRequestManager(messageManager, Locale.ENGLISH)).resolve("errors.required");
+        String second = new SharedMessageCache(createRequestManager(messageManager, Locale.ENGLISH)).resolve("errors.required");
+
+        // ## Assert ##
+        assertEquals("errors.required:en", first);
+        assertEquals(first, second);
+        assertEquals(1, messageCount.get()); // next request uses shared message
+    }
+
+    public void test_resolve_shared_byLocale() throws Exception {
+        // ## Arrange ##
+        ResolvedMessageCache.clearSharedCache();
+        AtomicInteger messageCount = new AtomicInteger();
+        MessageManager messageManager = createMessageManager(messageCount);
+
+        // ## Act ##
+        String english = new SharedMessageCache(createRequestManager(messageManager, Locale.ENGLISH)).resolve("errors.required");
+        String japanese = new SharedMessageCache(createRequestManager(messageManager, Locale.JAPANESE)).resolve("errors.required");
+
+        // ## Assert ##
+        assertEquals("errors.required:en", english);
+        assertEquals("errors.required:ja", japanese);
+        assertEquals(2, messageCount.get());
+    }
+
+    public void test_resolve_shared_notSharedWithOtherManager() throws Exception {
+        // ## Arrange ##
+        ResolvedMessageCache.clearSharedCache();
+        AtomicInteger oldCount = new AtomicInteger();
+        AtomicInteger newCount = new AtomicInteger();
+        MessageManager oldManager = createMessageManager(oldCount);
+        MessageManager newManager = createMessageManager(newCount); // e.g. hot deploy, other application
+
+        // ## Act ##
+        new SharedMessageCache(createRequestManager(oldManager, Locale.ENGLISH)).resolve("errors.required");
+        new SharedMessageCache(createRequestManager(newManager, Locale.ENGLISH)).resolve("errors.required");
+
+        // ## Assert ##
+        assertEquals(1, oldCount.get());
+        assertEquals(1, newCount.get());
+    }
+
+    public void test_resolve_notShared_development() throws Exception {
+        // ## Arrange ##
+        ResolvedMessageCache.clearSharedCache();
+        AtomicInteger messageCount = new AtomicInteger();
+        MessageManager messageManager = createMessageManager(messageCount);
+
+        // ## Act ##
+        new LocalMessageCache(createRequestManager(messageManager, Locale.ENGLISH)).resolve("errors.required");
+        new LocalMessageCache(createRequestManager(messageManager, Locale.ENGLISH)).resolve("errors.required");
+
+        // ## Assert ##
+        assertEquals(2, messageCount.get());
+    }
+
+    public void test_resolve_sharedCacheEnabled_perManager() throws Exception {
+        // ## Arrange ##
+        ResolvedMessageCache.clearSharedCache();
+        AtomicInteger developmentCount = new AtomicInteger();
+        AtomicInteger productionCount = new AtomicInteger();
+        MessageManager developmentManager = createMessageManager(developmentCount);
+        MessageManager productionManager = createMessageManager(productionCount); // e.g. other application in same JVM
+
+        // ## Act ##
+        new LocalMessageCache(createRequestManager(developmentManager, Locale.ENGLISH)).resolve("errors.required");
+        new SharedMessageCache(createRequestManager(productionManager, Locale.ENGLISH)).resolve("errors.required");
+        new SharedMessageCache(createRequestManager(productionManager, Locale.ENGLISH)).resolve("errors.required");
+        new SharedMessageCache(createRequestManager(developmentManager, Locale.ENGLISH)).resolve("errors.required");
+
+        // ## Assert ##
+        assertEquals(2, developmentCount.get()); // determined when first used, not shared after that
+        assertEquals(1, productionCount.get()); // not affected by development of other manager
+    }
+
+    public void test_clearSharedCache() throws Exception {
+        // ## Arrange ##
+        ResolvedMessageCache.clearSharedCache();
+        AtomicInteger messageCount = new AtomicInteger();
+        MessageManager messageManager = createMessageManager(messageCount);
+        new SharedMessageCache(createRequestManager(messageManager, Locale.ENGLISH)).resolve("errors.required");
+
+        // ## Act ##
+        ResolvedMessageCache.clearSharedCache();
+        new SharedMessageCache(createRequestManager(messageManager, Locale.ENGLISH)).resolve("errors.required");
+
+        // ## Assert ##
+        assertEquals(2, messageCount.get());
+    }
+
+    // ===================================================================================
+    //                                                                        Small Helper
+    //                                                                        ============
+    private static class SharedMessageCache extends ResolvedMessageCache {
+
+        public SharedMessageCache(RequestManager requestManager) {
+            super(requestManager);
+        }
+
+        @Override
+        protected boolean isDevelopmentHere() { // no container in test
+            return false;
+        }
+    }
+
+    private static class LocalMessageCache extends ResolvedMessageCache { // e.g. development
+
+        public LocalMessageCache(RequestManager requestManager) {
+            super(requestManager);
+        }
+
+        @Override
+        protected boolean isDevelopmentHere() {
+            return true;
+        }
+    }
+
+    private MessageManager createMessageManager(AtomicInteger messageCount) {
+        return newProxy(MessageManager.class, (proxy, method, args) -> {
+            if (method.getName().equals("getMessage")) {
+                messageCount.incrementAndGet();
+                return args[1] + ":" + ((Locale) args[0]).getLanguage();
+            }
+            return null;
+        });
+    }
+
+    private RequestManager createRequestManager(MessageManager messageManager, Locale locale) {
+        return newProxy(RequestManager.class, (proxy, method, args) -> {
+            if (method.getName().equals("getMessageManager")) {
+                return messageManager;
+            } else if (method.getName().equals("getUserLocale")) {
+                return locale;
+            }
+            return null;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T newProxy(Class<T> type, java.lang.reflect.InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) { // e.g. hashCode() as weak key
+                switch (method.getName()) {
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    return type.getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+                }
+            }
+            return handler.invoke(proxy, method, args);
+        });
+    }
+}
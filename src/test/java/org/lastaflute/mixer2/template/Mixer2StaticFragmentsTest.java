@@ -0,0 +1,239 @@
+/*
+ * Copyright 2015-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.lastaflute.mixer2.template;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.dbflute.utflute.core.PlainTestCase;
+import org.lastaflute.mixer2.exception.Mixer2StaticFragmentDynamicDataException;
+import org.lastaflute.mixer2.template.Mixer2StaticFragments.StaticFragmentRendering;
+import org.lastaflute.mixer2.util.Mixer2TagUtil;
+import org.lastaflute.mixer2.view.Mixer2FragmentCache;
+import org.lastaflute.mixer2.view.Mixer2StreamingTable;
+import org.mixer2.jaxb.xhtml.Div;
+import org.mixer2.jaxb.xhtml.Html;
+import org.mixer2.jaxb.xhtml.Nav;
+import org.mixer2.jaxb.xhtml.Option;
+import org.mixer2.jaxb.xhtml.Optgroup;
+import org.mixer2.jaxb.xhtml.P;
+import org.mixer2.jaxb.xhtml.Select;
+import org.mixer2.xhtml.AbstractJaxb;
+
+/**
+ * @author jflute
+ */
+public class Mixer2StaticFragmentsTest extends PlainTestCase {
+
+    // ===================================================================================
+    //                                                                              Splice
+    //                                                                              ======
+    public void test_splice_firstCaptured_laterPlaced() throws Exception {
+        // ## Arrange ##
+        Mixer2StaticFragments fragments = new Mixer2StaticFragments(newHtml("menu"));
+
+        // ## Act ##
+        String first = render(fragments, newHtml("menu"));
+        Html secondHtml = newHtml("changed"); // not used if placed
+        String second = render(fragments, secondHtml);
+
+        // ## Assert ##
+        log(first, second, fragments);
+        assertEquals("<body><div><nav>menu</nav><p>sea</p></div></body>", first);
+        assertEquals(first, second);
+        assertFalse(fragments.isEmpty());
+        Object placed = ((Div) secondHtml.getBody().getContent().get(0)).getContent().get(0);
+        assertTrue(placed instanceof String); // replaced with token before view
+    }
+
+    public void test_splice_dynamicAround_kept() throws Exception {
+        // ## Arrange ##
+        Mixer2StaticFragments fragments = new Mixer2StaticFragments(newHtml("menu"));
+        render(fragments, newHtml("menu"));
+        Html html = newHtml("menu");
+        StaticFragmentRendering rendering = fragments.prepare(html);
+        ((P) ((Div) html.getBody().getContent().get(0)).getContent().get(1)).getContent().set(0, "land"); // by view
+
+        // ## Act ##
+        rendering.markPending();
+        String text = rendering.splice(save(html));
+
+        // ## Assert ##
+        assertEquals("<body><div><nav>menu</nav><p>land</p></div></body>", text);
+    }
+
+    public void test_splice_changedByView_notCaptured() throws Exception {
+        // ## Arrange ##
+        Mixer2StaticFragments fragments = new Mixer2StaticFragments(newHtml("menu"));
+        Html html = newHtml("menu");
+        StaticFragmentRendering rendering = fragments.prepare(html);
+        findNav(html).getContent().set(0, "Hello, Pixy"); // by view, e.g. user name
+
+        // ## Act ##
+        rendering.markPending();
+        String first = rendering.splice(save(html));
+        String second = render(fragments, newHtml("menu"));
+        Html thirdHtml = newHtml("menu");
+        fragments.prepare(thirdHtml);
+
+        // ## Assert ##
+        assertEquals("<body><div><nav>Hello, Pixy</nav><p>sea</p></div></body>", first); // not frozen for all users
+        assertEquals("<body><div><nav>menu</nav><p>sea</p></div></body>", second); // captured here, same as master
+        assertTrue(((Div) thirdHtml.getBody().getContent().get(0)).getContent().get(0) instanceof String);
+    }
+
+    public void test_splice_foreignToken_notCaptured() throws Exception {
+        // ## Arrange ##
+        String cacheToken = Mixer2FragmentCache.getTokenPrefix() + "P0."; // e.g. cached fragment by view
+        List<String> foreignList = Arrays.asList(Mixer2FragmentCache.getTokenPrefix(), Mixer2StreamingTable.getTokenPrefix());
+        Mixer2StaticFragments fragments = new Mixer2StaticFragments(newHtml(cacheToken), null, foreignList);
+
+        // ## Act ##
+        String first = render(fragments, newHtml(cacheToken));
+        Html secondHtml = newHtml(cacheToken);
+        fragments.prepare(secondHtml);
+
+        // ## Assert ##
+        assertEquals("<body><div><nav>" + cacheToken + "</nav><p>sea</p></div></body>", first);
+        assertSame(Nav.class, ((Div) secondHtml.getBody().getContent().get(0)).getContent().get(0).getClass()); // not placed
+    }
+
+    public void test_splice_mixer2Text_captured() throws Exception {
+        // ## Arrange ##
+        List<String> foreignList = Arrays.asList(Mixer2FragmentCache.getTokenPrefix(), Mixer2StreamingTable.getTokenPrefix());
+        Mixer2StaticFragments fragments = new Mixer2StaticFragments(newHtml("about mixer2"), null, foreignList);
+
+        // ## Act ##
+        render(fragments, newHtml("about mixer2"));
+        Html secondHtml = newHtml("about mixer2");
+        fragments.prepare(secondHtml);
+
+        // ## Assert ##
+        assertTrue(((Div) secondHtml.getBody().getContent().get(0)).getContent().get(0) instanceof String); // placed
+    }
+
+    public void test_splice_noStatic() throws Exception {
+        // ## Arrange ##
+        Html master = new Html();
+        master.getBody().getContent().add(new Div());
+        Mixer2StaticFragments fragments = new Mixer2StaticFragments(master);
+
+        // ## Act ##
+        // ## Assert ##
+        assertTrue(fragments.isEmpty());
+        assertEquals("<body><div></div></body>", render(fragments, master));
+    }
+
+    // ===================================================================================
+    //                                                                        Dynamic Data
+    //                                                                        ============
+    public void test_dynamicData_cls_rejected() throws Exception {
+        // ## Arrange ##
+        Html master = newHtml("menu");
+        Select select = new Select();
+        Optgroup optgroup = new Optgroup();
+        Option option = new Option();
+        option.setData("cls", "MemberStatus");
+        optgroup.getOption().add(option);
+        select.getOptgroupOrOption().add(optgroup);
+        findNav(master).getContent().add(select);
+
+        // ## Act ##
+        // ## Assert ##
+        try {
+            new Mixer2StaticFragments(master);
+            fail();
+        } catch (Mixer2StaticFragmentDynamicDataException e) {
+            log(e.getMessage());
+            assertContains(e.getMessage(), "data-cls=\"MemberStatus\"");
+        }
+    }
+
+    public void test_dynamicData_errorsAndCache_rejected() throws Exception {
+        for (String dataKey : new String[] { "errors", "cache" }) {
+            // ## Arrange ##
+            Html master = newHtml("menu");
+            Div div = new Div();
+            div.setData(dataKey, "sea");
+            findNav(master).getContent().add(div);
+
+            // ## Act ##
+            // ## Assert ##
+            try {
+                new Mixer2StaticFragments(master);
+                fail();
+            } catch (Mixer2StaticFragmentDynamicDataException e) {
+                assertContains(e.getMessage(), "data-" + dataKey + "=\"sea\"");
+            }
+        }
+    }
+
+    public void test_dynamicData_outsideStatic_allowed() throws Exception {
+        // ## Arrange ##
+        Html master = newHtml("menu");
+        Div div = new Div();
+        div.setData("errors", "sea");
+        master.getBody().getContent().add(div);
+
+        // ## Act ##
+        Mixer2StaticFragments fragments = new Mixer2StaticFragments(master);
+
+        // ## Assert ##
+        assertFalse(fragments.isEmpty());
+    }
+
+    // ===================================================================================
+    //                                                                        Small Helper
+    //                                                                        ============
+    private Html newHtml(String navText) { // body > div > (nav[data-static], p)
+        Html html = new Html();
+        Div div = new Div();
+        Nav nav = new Nav();
+        nav.setData(Mixer2StaticFragments.STATIC_DATA_KEY, "globalNavi");
+        nav.getContent().add(navText);
+        P p = new P();
+        p.getContent().add("sea");
+        div.getContent().add(nav);
+        div.getContent().add(p);
+        html.getBody().getContent().add(div);
+        return html;
+    }
+
+    private Nav findNav(Html html) {
+        return (Nav) ((Div) html.getBody().getContent().get(0)).getContent().get(0);
+    }
+
+    private String render(Mixer2StaticFragments fragments, Html html) {
+        StaticFragmentRendering rendering = fragments.prepare(html);
+        rendering.markPending();
+        return rendering.splice(save(html));
+    }
+
+    private String save(Object element) { // simple serializer instead of engine, data attributes are omitted
+        if (!(element instanceof AbstractJaxb)) {
+            return String.valueOf(element);
+        }
+        String name = element.getClass().getSimpleName().toLowerCase();
+        StringBuilder sb = new StringBuilder("<" + name + ">");
+        List<?> childList = Mixer2TagUtil.findChildList(element);
+        if (childList != null) {
+            for (Object child : childList) {
+                sb.append(save(child));
+            }
+        }
+        return element instanceof Html ? sb.substring(name.length() + 2) : sb.append("</" + name + ">").toString();
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2015-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, 
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.lastaflute.mixer2.template;
+
+import java.util.Arrays;
+
+import org.dbflute.utflute.core.PlainTestCase;
+import org.lastaflute.mixer2.template.Mixer2TemplateCache.CacheStatistics;
+import org.lastaflute.mixer2.template.Mixer2TemplateCache.WeightedDerived;
+import org.lastaflute.mixer2.template.Mixer2TemplateReader.LoadedHtml;
+
+/**
+ * @author jflute
+ */
+public class Mixer2TemplateCacheTest extends PlainTestCase {
+
+    public void test_cache_basic() throws Exception {
+        // ## Arrange ##
+        Mixer2TemplateCache cache = new Mixer2TemplateCache();
+        LoadedHtml sea = newLoadedHtml(10);
+
+        // ## Act ##
+        LoadedHtml notYet = cache.findCached("/sea.html");
+        LoadedHtml cached = cache.cache("/sea.html", sea, null, 0L);
+        LoadedHtml found = cache.findCached("/sea.html");
+
+        // ## Assert ##
+        assertNull(notYet);
+        assertSame(sea, cached);
+        assertSame(sea, found);
+        CacheStatistics statistics = cache.getStatistics();
+        log(statistics);
+        assertEquals(1, statistics.getSize());
+        assertEquals(1L, statistics.getHitCount());
+        assertEquals(1L, statistics.getMissCount());
+        assertEquals(1L, statistics.getLoadCount());
+    }
+
+    public void test_cache_existing() throws Exception {
+        // ## Arrange ##
+        Mixer2TemplateCache cache = new Mixer2TemplateCache();
+        LoadedHtml first = newLoadedHtml(10);
+        LoadedHtml second = newLoadedHtml(10);
+
+        // ## Act ##
+        cache.cache("/sea.html", first, null, 0L);
+        LoadedHtml cached = cache.cache("/sea.html", second, null, 0L); // e.g. other thread
+
+        // ## Assert ##
+        assertSame(first, cached);
+        assertEquals(1, cache.size());
+    }
+
+    public void test_cache_evict_leastRecentlyUsed() throws Exception {
+        // ## Arrange ##
+        Mixer2TemplateCache cache = new Mixer2TemplateCache(false, 30L);
+        cache.cache("/sea.html", newLoadedHtml(10), null, 0L);
+        cache.cache("/land.html", newLoadedHtml(10), null, 0L);
+        cache.cache("/piari.html", newLoadedHtml(10), null, 0L);
+        cache.findCached("/sea.html"); // land is least recently used
+
+        // ## Act ##
+        cache.cache("/bonvo.html", newLoadedHtml(10), null, 0L);
+
+        // ## Assert ##
+        assertNotNull(cache.findCached("/sea.html"));
+        assertNull(cache.findCached("/land.html"));
+        assertNotNull(cache.findCached("/piari.html"));
+        assertNotNull(cache.findCached("/bonvo.html"));
+        CacheStatistics statistics = cache.getStatistics();
+        assertEquals(3, statistics.getSize());
+        assertEquals(30L, statistics.getWeight());
+        assertEquals(1L, statistics.getEvictionCount());
+    }
+
+    public void test_cache_tooLarge() throws Exception {
+        // ## Arrange ##
+        Mixer2TemplateCache cache = new Mixer2TemplateCache(false, 30L);
+        LoadedHtml large = newLoadedHtml(31);
+
+        // ## Act ##
+        LoadedHtml cached = cache.cache("/large.html", large, null, 0L);
+
+        // ## Assert ##
+        assertSame(large, cached);
+        assertNull(cache.findCached("/large.html"));
+    }
+
+    public void test_cache_derived_charged() throws Exception {
+        // ## Arrange ##
+        Mixer2TemplateCache cache = new Mixer2TemplateCache(false, 100L);
+        LoadedHtml sea = newLoadedHtml(10);
+        cache.cache("/sea.html", sea, null, 0L);
+
+        // ## Act ##
+        sea.deriveFromMaster("sea.index", master -> Arrays.asList("a", "b")); // collection: size * 16
+        sea.deriveFromMaster("sea.index", master -> Arrays.asList("c")); // already derived, not charged
+        sea.deriveFromMaster("sea.weighted", master -> (WeightedDerived) () -> 5L);
+
+        // ## Assert ##
+        assertEquals(37L, sea.getDerivedWeight());
+        assertEquals(47L, cache.getStatistics().getWeight());
+    }
+
+    public void test_cache_derived_evictByCharge() throws Exception {
+        // ## Arrange ##
+        Mixer2TemplateCache cache = new Mixer2TemplateCache(false, 30L);
+        LoadedHtml sea = newLoadedHtml(10);
+        LoadedHtml land = newLoadedHtml(10);
+        cache.cache("/sea.html", sea, null, 0L);
+        cache.cache("/land.html", land, null, 0L);
+
+        // ## Act ##
+        land.newDerivedCharger().accept(15L); // e.g. captured static text
+
+        // ## Assert ##
+        assertNull(cache.findCached("/sea.html")); // least recently used
+        assertSame(land, cache.findCached("/land.html"));
+        CacheStatistics statistics = cache.getStatistics();
+        assertEquals(25L, statistics.getWeight());
+        assertEquals(1L, statistics.getEvictionCount());
+    }
+
+    public void test_cache_derived_afterEviction_notCharged() throws Exception {
+        // ## Arrange ##
+        Mixer2TemplateCache cache = new Mixer2TemplateCache(false, 20L);
+        LoadedHtml sea = newLoadedHtml(10);
+        cache.cache("/sea.html", sea, null, 0L);
+        cache.cache("/land.html", newLoadedHtml(10), null, 0L);
+        cache.cache("/piari.html", newLoadedHtml(10), null, 0L); // evicts sea
+
+        // ## Act ##
+        sea.chargeDerivedWeight(5L);
+
+        // ## Assert ##
+        assertEquals(20L, cache.getStatistics().getWeight());
+        assertEquals(5L, sea.getDerivedWeight());
+    }
+
+    public void test_cache_derived_countedAtCaching() throws Exception {
+        // ## Arrange ##
+        Mixer2TemplateCache cache = new Mixer2TemplateCache(false, 100L);
+        LoadedHtml sea = newLoadedHtml(10);
+        sea.chargeDerivedWeight(7L); // before caching
+
+        // ## Act ##
+        cache.cache("/sea.html", sea, null, 0L);
+
+        // ## Assert ##
+        assertEquals(17L, cache.getStatistics().getWeight());
+    }
+
+    protected LoadedHtml newLoadedHtml(int templateSize) {
+        return new LoadedHtml(null, true, true, templateSize); // HTML is not used in cache
+    }
+}
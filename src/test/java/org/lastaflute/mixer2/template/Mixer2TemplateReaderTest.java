@@ -0,0 +1,203 @@
+/*
+ * Copyright 2015-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.lastaflute.mixer2.template;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.dbflute.utflute.core.PlainTestCase;
+import org.lastaflute.mixer2.exception.Mixer2TemplateHtmlParseFailureException;
+import org.lastaflute.mixer2.template.Mixer2TemplateReader.ReadHtmlText;
+
+/**
+ * @author jflute
+ */
+public class Mixer2TemplateReaderTest extends PlainTestCase {
+
+    private static final String XMLNS = " xmlns=\"http://www.w3.org/1999/xhtml\"";
+
+    // ===================================================================================
+    //                                                                      Read HTML Text
+    //                                                                      ==============
+    public void test_readHtmlText_lf_xmlnsSpliced() throws Exception {
+        // ## Arrange ##
+        String html = "<!DOCTYPE html>\n<html>\n<body>sea</body>\n</html>\n";
+
+        // ## Act ##
+        ReadHtmlText read = readHtmlText(toBytes(html));
+
+        // ## Assert ##
+        log(read.getReadHtml());
+        assertTrue(read.isDocTypeDefined());
+        assertTrue(read.isXmlnsFiltered());
+        assertEquals("<!DOCTYPE html>\n<html" + XMLNS + ">\n<body>sea</body>\n</html>\n", read.getReadHtml());
+    }
+
+    public void test_readHtmlText_xmlnsExisting_notSpliced() throws Exception {
+        // ## Arrange ##
+        String html = "<!DOCTYPE html>\n<html" + XMLNS + " lang=\"ja\">\n<body>sea</body>\n</html>";
+
+        // ## Act ##
+        ReadHtmlText read = readHtmlText(toBytes(html));
+
+        // ## Assert ##
+        assertTrue(read.isDocTypeDefined());
+        assertFalse(read.isXmlnsFiltered());
+        assertEquals(html, read.getReadHtml());
+    }
+
+    public void test_readHtmlText_attributeKept_xmlnsSpliced() throws Exception {
+        // ## Arrange ##
+        String html = "<!DOCTYPE html>\n<html lang=\"ja\">\n<body>sea</body>\n</html>";
+
+        // ## Act ##
+        ReadHtmlText read = readHtmlText(toBytes(html));
+
+        // ## Assert ##
+        assertTrue(read.isXmlnsFiltered());
+        assertEquals("<!DOCTYPE html>\n<html" + XMLNS + " lang=\"ja\">\n<body>sea</body>\n</html>", read.getReadHtml());
+    }
+
+    public void test_readHtmlText_bom_removed() throws Exception {
+        // ## Arrange ##
+        byte[] body = toBytes("<!DOCTYPE html>\n<html>\n<body>海</body>\n</html>"); // multi-byte after BOM
+        byte[] bytes = new byte[body.length + 3];
+        bytes[0] = (byte) 0xEF;
+        bytes[1] = (byte) 0xBB;
+        bytes[2] = (byte) 0xBF;
+        System.arraycopy(body, 0, bytes, 3, body.length);
+
+        // ## Act ##
+        ReadHtmlText read = readHtmlText(bytes);
+
+        // ## Assert ##
+        assertTrue(read.isDocTypeDefined());
+        assertTrue(read.isXmlnsFiltered());
+        assertEquals("<!DOCTYPE html>\n<html" + XMLNS + ">\n<body>海</body>\n</html>", read.getReadHtml());
+    }
+
+    public void test_readHtmlText_crlf() throws Exception {
+        // ## Arrange ##
+        String html = "<!DOCTYPE html>\r\n<html>\r\n<body>sea</body>\r\n</html>\r\n";
+
+        // ## Act ##
+        ReadHtmlText read = readHtmlText(toBytes(html));
+
+        // ## Assert ##
+        assertTrue(read.isDocTypeDefined());
+        assertTrue(read.isXmlnsFiltered());
+        assertEquals("<!DOCTYPE html>\r\n<html" + XMLNS + ">\r\n<body>sea</body>\r\n</html>\r\n", read.getReadHtml());
+    }
+
+    public void test_readHtmlText_loneCr() throws Exception {
+        // ## Arrange ##
+        String html = "<!DOCTYPE html>\r<html>\r<body>sea</body>\r</html>";
+
+        // ## Act ##
+        ReadHtmlText read = readHtmlText(toBytes(html));
+
+        // ## Assert ##
+        assertTrue(read.isDocTypeDefined());
+        assertTrue(read.isXmlnsFiltered());
+        assertEquals("<!DOCTYPE html>\r<html" + XMLNS + ">\r<body>sea</body>\r</html>", read.getReadHtml());
+    }
+
+    public void test_readHtmlText_extraCapacity_ignored() throws Exception {
+        // ## Arrange ##
+        byte[] html = toBytes("<!DOCTYPE html>\n<html>\n</html>");
+        byte[] bytes = new byte[html.length + 16]; // e.g. read buffer
+        System.arraycopy(html, 0, bytes, 0, html.length);
+        bytes[html.length] = 'x';
+
+        // ## Act ##
+        ReadHtmlText read = createReader().readHtmlText(bytes, html.length, "/sea.html");
+
+        // ## Assert ##
+        assertEquals("<!DOCTYPE html>\n<html" + XMLNS + ">\n</html>", read.getReadHtml());
+    }
+
+    public void test_readHtmlText_stream() throws Exception {
+        // ## Arrange ##
+        StringBuilder sb = new StringBuilder("<!DOCTYPE html>\n<html>\n<body>");
+        for (int i = 0; i < 2000; i++) { // over first buffer
+            sb.append("sea");
+        }
+        sb.append("</body>\n</html>");
+        String html = sb.toString();
+
+        // ## Act ##
+        ReadHtmlText read = createReader().readHtmlText(new ByteArrayInputStream(toBytes(html)), "/sea.html");
+
+        // ## Assert ##
+        assertEquals(html.replace("<html>", "<html" + XMLNS + ">"), read.getReadHtml());
+    }
+
+    public void test_readHtmlText_empty() throws Exception {
+        // ## Arrange ##
+        // ## Act ##
+        ReadHtmlText read = readHtmlText(new byte[0]);
+
+        // ## Assert ##
+        assertEquals("", read.getReadHtml());
+        assertFalse(read.isDocTypeDefined());
+        assertFalse(read.isXmlnsFiltered());
+    }
+
+    public void test_readHtmlText_nonDocType() throws Exception {
+        // ## Arrange ##
+        String html = "<html>\n<body>sea</body>\n</html>";
+
+        // ## Act ##
+        // ## Assert ##
+        try {
+            readHtmlText(toBytes(html));
+            fail();
+        } catch (Mixer2TemplateHtmlParseFailureException e) {
+            log(e.getMessage());
+            assertContains(e.getMessage(), "(no action: e.g. warmup)");
+        }
+    }
+
+    public void test_readHtmlText_nonHtmlTag() throws Exception {
+        // ## Arrange ##
+        String html = "<!DOCTYPE html>\r<!-- sea -->\r<html>\r</html>";
+
+        // ## Act ##
+        // ## Assert ##
+        try {
+            readHtmlText(toBytes(html));
+            fail();
+        } catch (Mixer2TemplateHtmlParseFailureException e) {
+            log(e.getMessage());
+            assertContains(e.getMessage(), "<!-- sea -->");
+        }
+    }
+
+    // ===================================================================================
+    //                                                                        Small Helper
+    //                                                                        ============
+    private ReadHtmlText readHtmlText(byte[] bytes) {
+        return createReader().readHtmlText(bytes, bytes.length, "/sea.html");
+    }
+
+    private Mixer2TemplateReader createReader() {
+        return new Mixer2TemplateReader(null, null, null); // byte-level reading needs no engine
+    }
+
+    private byte[] toBytes(String html) {
+        return html.getBytes(StandardCharsets.UTF_8);
+    }
+}
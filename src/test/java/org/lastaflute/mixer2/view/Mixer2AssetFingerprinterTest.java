@@ -0,0 +1,150 @@
+/*
+ * Copyright 2015-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.lastaflute.mixer2.view;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletContext;
+
+import org.dbflute.utflute.core.PlainTestCase;
+
+/**
+ * @author jflute
+ */
+public class Mixer2AssetFingerprinterTest extends PlainTestCase {
+
+    // ===================================================================================
+    //                                                                         Fingerprint
+    //                                                                         ===========
+    public void test_findFingerprint_found_cached() throws Exception {
+        // ## Arrange ##
+        Map<String, String> assetMap = new HashMap<String, String>();
+        assetMap.put("/css/sea.css", "body {}");
+        AtomicInteger readCount = new AtomicInteger();
+        Mixer2AssetFingerprinter fingerprinter = new Mixer2AssetFingerprinter(createServletContext(assetMap, readCount), false);
+
+        // ## Act ##
+        String first = fingerprinter.findFingerprint("/css/sea.css");
+        String second = fingerprinter.findFingerprint("/css/sea.css");
+
+        // ## Assert ##
+        log(first);
+        assertNotNull(first);
+        assertEquals(16, first.length());
+        assertEquals(first, second);
+        assertEquals(1, readCount.get());
+    }
+
+    public void test_findFingerprint_notFound_cached() throws Exception {
+        // ## Arrange ##
+        Map<String, String> assetMap = new HashMap<String, String>();
+        AtomicInteger readCount = new AtomicInteger();
+        Mixer2AssetFingerprinter fingerprinter = new Mixer2AssetFingerprinter(createServletContext(assetMap, readCount), false);
+
+        // ## Act ##
+        String first = fingerprinter.findFingerprint("/css/land.css");
+        String second = fingerprinter.findFingerprint("/css/land.css");
+
+        // ## Assert ##
+        assertNull(first);
+        assertNull(second);
+        assertEquals(1, readCount.get()); // not read again
+    }
+
+    public void test_findFingerprint_notFound_clearCache() throws Exception {
+        // ## Arrange ##
+        Map<String, String> assetMap = new HashMap<String, String>();
+        AtomicInteger readCount = new AtomicInteger();
+        Mixer2AssetFingerprinter fingerprinter = new Mixer2AssetFingerprinter(createServletContext(assetMap, readCount), false);
+        assertNull(fingerprinter.findFingerprint("/css/land.css"));
+        assetMap.put("/css/land.css", "body {}"); // deployed later
+
+        // ## Act ##
+        fingerprinter.clearCache();
+        String found = fingerprinter.findFingerprint("/css/land.css");
+
+        // ## Assert ##
+        assertNotNull(found);
+        assertEquals(2, readCount.get());
+    }
+
+    public void test_findFingerprint_notSharedWithOtherInstance() throws Exception {
+        // ## Arrange ##
+        Map<String, String> assetMap = new HashMap<String, String>();
+        assetMap.put("/css/sea.css", "body {}");
+        AtomicInteger readCount = new AtomicInteger();
+        Map<String, String> otherMap = new HashMap<String, String>();
+        otherMap.put("/css/sea.css", "body { color: red; }"); // same path in other application
+        AtomicInteger otherCount = new AtomicInteger();
+
+        // ## Act ##
+        String found = new Mixer2AssetFingerprinter(createServletContext(assetMap, readCount), false).findFingerprint("/css/sea.css");
+        String other = new Mixer2AssetFingerprinter(createServletContext(otherMap, otherCount), false).findFingerprint("/css/sea.css");
+
+        // ## Assert ##
+        assertFalse(found.equals(other));
+        assertEquals(1, readCount.get());
+        assertEquals(1, otherCount.get());
+    }
+
+    public void test_findFingerprint_overLimit_evicted() throws Exception {
+        // ## Arrange ##
+        Map<String, String> assetMap = new HashMap<String, String>();
+        assetMap.put("/css/sea.css", "body {}");
+        assetMap.put("/css/land.css", "div {}");
+        assetMap.put("/css/piari.css", "p {}");
+        AtomicInteger readCount = new AtomicInteger();
+        Mixer2AssetFingerprinter fingerprinter = new Mixer2AssetFingerprinter(createServletContext(assetMap, readCount), false) {
+            @Override
+            protected int getCacheLimit() {
+                return 2;
+            }
+        };
+        fingerprinter.findFingerprint("/css/sea.css");
+        fingerprinter.findFingerprint("/css/land.css");
+        fingerprinter.findFingerprint("/css/sea.css"); // recently used
+
+        // ## Act ##
+        fingerprinter.findFingerprint("/css/piari.css"); // evicts land
+        fingerprinter.findFingerprint("/css/piari.css");
+        fingerprinter.findFingerprint("/css/sea.css");
+
+        // ## Assert ##
+        assertEquals(3, readCount.get()); // still cached after limit
+        fingerprinter.findFingerprint("/css/land.css");
+        assertEquals(4, readCount.get());
+    }
+
+    // ===================================================================================
+    //                                                                        Small Helper
+    //                                                                        ============
+    private ServletContext createServletContext(Map<String, String> assetMap, AtomicInteger readCount) {
+        return (ServletContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ServletContext.class },
+                (proxy, method, args) -> {
+                    if (method.getName().equals("getResourceAsStream")) {
+                        readCount.incrementAndGet();
+                        final String text = assetMap.get(args[0]);
+                        return text != null ? new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)) : null;
+                    }
+                    return null; // e.g. getRealPath(): in war
+                });
+    }
+}
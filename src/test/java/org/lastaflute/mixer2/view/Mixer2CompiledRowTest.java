@@ -0,0 +1,140 @@
+/*
+ * Copyright 2015-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.lastaflute.mixer2.view;
+
+import java.io.StringWriter;
+
+import org.dbflute.utflute.core.PlainTestCase;
+import org.mixer2.jaxb.xhtml.Td;
+import org.mixer2.jaxb.xhtml.Tr;
+
+/**
+ * @author jflute
+ */
+public class Mixer2CompiledRowTest extends PlainTestCase {
+
+    private static final String PREFIX = "mixer2row";
+
+    // ===================================================================================
+    //                                                                           Write Row
+    //                                                                           =========
+    public void test_writeRow_escaped() throws Exception {
+        // ## Arrange ##
+        Mixer2CompiledRow row = new Mixer2CompiledRow(markedText("sea", "land"), PREFIX, 2);
+
+        // ## Act ##
+        String written = writeRow(row, "a & b", "<script>alert(\"x\")</script>");
+
+        // ## Assert ##
+        log(written);
+        assertTrue(row.isAvailable());
+        String expected = "&lt;script&gt;alert(&quot;x&quot;)&lt;/script&gt;";
+        assertEquals("<tr class=\"row\"><td>a &amp; b</td><td class=\"num\">" + expected + "</td></tr>", written);
+    }
+
+    public void test_writeRow_noSpecialChar_asIs() throws Exception {
+        // ## Arrange ##
+        Mixer2CompiledRow row = new Mixer2CompiledRow(markedText("sea", "land"), PREFIX, 2);
+
+        // ## Act ##
+        String written = writeRow(row, "piari", "");
+
+        // ## Assert ##
+        assertEquals("<tr class=\"row\"><td>piari</td><td class=\"num\"></td></tr>", written);
+    }
+
+    public void test_writeRow_onlySpecialChars() throws Exception {
+        // ## Arrange ##
+        Mixer2CompiledRow row = new Mixer2CompiledRow(markedText("sea", "land"), PREFIX, 2);
+
+        // ## Act ##
+        String written = writeRow(row, "&&", "<>\"");
+
+        // ## Assert ##
+        assertEquals("<tr class=\"row\"><td>&amp;&amp;</td><td class=\"num\">&lt;&gt;&quot;</td></tr>", written);
+    }
+
+    public void test_writeRow_nullSlot_defaultContentNotEscaped() throws Exception {
+        // ## Arrange ##
+        Mixer2CompiledRow row = new Mixer2CompiledRow(markedText("<em>sea</em>", "land"), PREFIX, 2);
+
+        // ## Act ##
+        String written = writeRow(row, null, "bonvo");
+
+        // ## Assert ##
+        assertEquals("<tr class=\"row\"><td><em>sea</em></td><td class=\"num\">bonvo</td></tr>", written);
+    }
+
+    public void test_writeRow_shortSlots_defaultContent() throws Exception {
+        // ## Arrange ##
+        Mixer2CompiledRow row = new Mixer2CompiledRow(markedText("sea", "land"), PREFIX, 2);
+
+        // ## Act ##
+        String written = writeRow(row, "dockside");
+
+        // ## Assert ##
+        assertEquals("<tr class=\"row\"><td>dockside</td><td class=\"num\">land</td></tr>", written);
+    }
+
+    // ===================================================================================
+    //                                                                             Compile
+    //                                                                             =======
+    public void test_compile_markNotFound_notAvailable() throws Exception {
+        // ## Arrange ##
+        String text = "<tr><td>" + PREFIX + "B0.sea</td></tr>"; // no end mark
+
+        // ## Act ##
+        Mixer2CompiledRow row = new Mixer2CompiledRow(text, PREFIX, 1);
+
+        // ## Assert ##
+        assertFalse(row.isAvailable());
+    }
+
+    public void test_markSlots_basic() throws Exception {
+        // ## Arrange ##
+        Tr tr = new Tr();
+        Td first = new Td();
+        first.getContent().add("sea");
+        Td second = new Td();
+        tr.getThOrTd().add(first);
+        tr.getThOrTd().add(second);
+
+        // ## Act ##
+        int slotCount = Mixer2CompiledRow.markSlots(tr, PREFIX);
+
+        // ## Assert ##
+        assertEquals(2, slotCount);
+        assertEquals(PREFIX + "B0.", first.getContent().get(0));
+        assertEquals("sea", first.getContent().get(1));
+        assertEquals(PREFIX + "E0.", first.getContent().get(2));
+        assertEquals(PREFIX + "B1.", second.getContent().get(0));
+        assertEquals(PREFIX + "E1.", second.getContent().get(1));
+    }
+
+    // ===================================================================================
+    //                                                                        Small Helper
+    //                                                                        ============
+    private String markedText(String firstContent, String secondContent) { // as serialized by engine
+        return "<tr class=\"row\"><td>" + PREFIX + "B0." + firstContent + PREFIX + "E0.</td><td class=\"num\">" + PREFIX + "B1."
+                + secondContent + PREFIX + "E1.</td></tr>";
+    }
+
+    private String writeRow(Mixer2CompiledRow row, String... slotTexts) throws Exception {
+        StringWriter writer = new StringWriter();
+        row.writeRow(slotTexts, writer);
+        return writer.toString();
+    }
+}
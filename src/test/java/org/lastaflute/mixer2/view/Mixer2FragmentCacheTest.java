@@ -0,0 +1,206 @@
+/*
+ * Copyright 2015-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.lastaflute.mixer2.view;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dbflute.utflute.core.PlainTestCase;
+import org.lastaflute.mixer2.view.Mixer2FragmentCache.FragmentRendering;
+
+/**
+ * @author jflute
+ */
+public class Mixer2FragmentCacheTest extends PlainTestCase {
+
+    private static final long TTL = 60000L;
+
+    // ===================================================================================
+    //                                                                              Splice
+    //                                                                              ======
+    public void test_splice_placed() throws Exception {
+        // ## Arrange ##
+        Mixer2FragmentCache cache = new Mixer2FragmentCache();
+        FragmentRendering rendering = cache.newRendering();
+        String token = rendering.place("<li>sea</li><li>land</li>");
+
+        // ## Act ##
+        String spliced = rendering.splice("<ul id=\"menu\">" + token + "</ul><p>piari</p>");
+
+        // ## Assert ##
+        log(token);
+        assertTrue(token.startsWith(Mixer2FragmentCache.TOKEN_PREFIX + "P"));
+        assertEquals("<ul id=\"menu\"><li>sea</li><li>land</li></ul><p>piari</p>", spliced);
+        assertFalse(rendering.isEmpty());
+    }
+
+    public void test_splice_pending_cached() throws Exception {
+        // ## Arrange ##
+        Mixer2FragmentCache cache = new Mixer2FragmentCache();
+        FragmentRendering rendering = cache.newRendering();
+        List<Object> content = new ArrayList<Object>();
+        content.add("<li>sea</li>"); // as serialized content
+        rendering.markPending(content, "globalMenu:admin", TTL);
+
+        // ## Act ##
+        String spliced = rendering.splice("<ul>" + join(content) + "</ul>");
+
+        // ## Assert ##
+        assertEquals(3, content.size());
+        assertEquals(Mixer2FragmentCache.TOKEN_PREFIX + "B0.", content.get(0));
+        assertEquals(Mixer2FragmentCache.TOKEN_PREFIX + "E0.", content.get(2));
+        assertEquals("<ul><li>sea</li></ul>", spliced);
+        assertEquals("<li>sea</li>", cache.findCached("globalMenu:admin"));
+    }
+
+    public void test_splice_pending_nextRenderingPlaced() throws Exception {
+        // ## Arrange ##
+        Mixer2FragmentCache cache = new Mixer2FragmentCache();
+        FragmentRendering first = cache.newRendering();
+        List<Object> content = new ArrayList<Object>();
+        content.add("<li>sea</li>");
+        first.markPending(content, "globalMenu", TTL);
+        first.splice("<ul>" + join(content) + "</ul>");
+
+        // ## Act ##
+        FragmentRendering second = cache.newRendering();
+        String spliced = second.splice("<ul>" + second.place(cache.findCached("globalMenu")) + "</ul>");
+
+        // ## Assert ##
+        assertEquals("<ul><li>sea</li></ul>", spliced);
+        assertEquals(1, cache.size());
+    }
+
+    public void test_splice_pending_containsPlaced() throws Exception {
+        // ## Arrange ##
+        Mixer2FragmentCache cache = new Mixer2FragmentCache();
+        FragmentRendering rendering = cache.newRendering();
+        List<Object> content = new ArrayList<Object>();
+        content.add("<li>" + rendering.place("land") + "</li>"); // inner cached fragment
+        rendering.markPending(content, "outer", TTL);
+
+        // ## Act ##
+        String spliced = rendering.splice("<ul>" + join(content) + "</ul>");
+
+        // ## Assert ##
+        assertEquals("<ul><li>land</li></ul>", spliced);
+        assertEquals("<li>land</li>", cache.findCached("outer")); // spliced text is cached
+    }
+
+    public void test_splice_pending_multiple() throws Exception {
+        // ## Arrange ##
+        Mixer2FragmentCache cache = new Mixer2FragmentCache();
+        FragmentRendering rendering = cache.newRendering();
+        List<Object> firstContent = new ArrayList<Object>();
+        firstContent.add("sea");
+        rendering.markPending(firstContent, "first", TTL);
+        List<Object> secondContent = new ArrayList<Object>();
+        secondContent.add("land");
+        rendering.markPending(secondContent, "second", TTL);
+
+        // ## Act ##
+        String spliced = rendering.splice("<p>" + join(firstContent) + "</p><p>" + join(secondContent) + "</p>");
+
+        // ## Assert ##
+        assertEquals("<p>sea</p><p>land</p>", spliced);
+        assertEquals("sea", cache.findCached("first"));
+        assertEquals("land", cache.findCached("second"));
+    }
+
+    public void test_splice_pending_endOnly_notCached() throws Exception {
+        // ## Arrange ##
+        Mixer2FragmentCache cache = new Mixer2FragmentCache();
+        FragmentRendering rendering = cache.newRendering();
+        List<Object> content = new ArrayList<Object>();
+        content.add("sea");
+        rendering.markPending(content, "removed", TTL);
+        content.remove(0); // e.g. begin token removed by view
+
+        // ## Act ##
+        String spliced = rendering.splice("<p>" + join(content) + "</p>");
+
+        // ## Assert ##
+        assertEquals("<p>sea</p>", spliced);
+        assertNull(cache.findCached("removed"));
+    }
+
+    public void test_splice_noToken_sameText() throws Exception {
+        // ## Arrange ##
+        Mixer2FragmentCache cache = new Mixer2FragmentCache();
+        FragmentRendering rendering = cache.newRendering();
+        String html = "<p>mixer2cache</p>"; // not token prefix (random part)
+
+        // ## Act ##
+        String spliced = rendering.splice(html);
+
+        // ## Assert ##
+        assertSame(html, spliced);
+        assertTrue(rendering.isEmpty());
+    }
+
+    // ===================================================================================
+    //                                                                        Cache Access
+    //                                                                        ============
+    public void test_cache_expired() throws Exception {
+        // ## Arrange ##
+        Mixer2FragmentCache cache = new Mixer2FragmentCache();
+
+        // ## Act ##
+        cache.cache("sea", "<li>sea</li>", -1L); // already expired
+
+        // ## Assert ##
+        assertNull(cache.findCached("sea"));
+        assertEquals(0, cache.size());
+    }
+
+    public void test_cache_evicted_leastRecentlyUsed() throws Exception {
+        // ## Arrange ##
+        Mixer2FragmentCache cache = new Mixer2FragmentCache(10L);
+        cache.cache("sea", "1234", TTL);
+        cache.cache("land", "5678", TTL);
+        cache.findCached("sea"); // land is least recently used
+
+        // ## Act ##
+        cache.cache("piari", "abcd", TTL); // over max weight
+
+        // ## Assert ##
+        assertEquals("1234", cache.findCached("sea"));
+        assertNull(cache.findCached("land"));
+        assertEquals("abcd", cache.findCached("piari"));
+    }
+
+    public void test_cache_tooLarge_notCached() throws Exception {
+        // ## Arrange ##
+        Mixer2FragmentCache cache = new Mixer2FragmentCache(3L);
+
+        // ## Act ##
+        cache.cache("sea", "1234", TTL);
+
+        // ## Assert ##
+        assertNull(cache.findCached("sea"));
+    }
+
+    // ===================================================================================
+    //                                                                        Small Helper
+    //                                                                        ============
+    private String join(List<Object> content) { // as engine serializes text content
+        StringBuilder sb = new StringBuilder();
+        for (Object element : content) {
+            sb.append(element);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2015-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.lastaflute.mixer2.view;
+
+import org.dbflute.utflute.core.PlainTestCase;
+import org.mixer2.jaxb.xhtml.Div;
+import org.mixer2.jaxb.xhtml.Html;
+import org.mixer2.jaxb.xhtml.Span;
+import org.mixer2.xhtml.AbstractJaxb;
+
+/**
+ * @author jflute
+ */
+public class Mixer2IdIndexTest extends PlainTestCase {
+
+    // ===================================================================================
+    //                                                                                Find
+    //                                                                                ====
+    public void test_find_basic() throws Exception {
+        // ## Arrange ##
+        Html html = new Html();
+        Div sea = newDiv("sea");
+        Span land = newSpan("land");
+        sea.getContent().add(land);
+        html.getBody().getContent().add(sea);
+        CountingIdIndex index = new CountingIdIndex(html);
+
+        // ## Act ##
+        // ## Assert ##
+        assertSame(sea, index.find("sea"));
+        assertSame(land, index.find("land"));
+        assertNull(index.find("piari")); // walked by caller
+        assertEquals(1, index.buildCount);
+    }
+
+    public void test_find_idChangedByView_notAnswered() throws Exception {
+        // ## Arrange ##
+        Html html = new Html();
+        Div sea = newDiv("sea");
+        html.getBody().getContent().add(sea);
+        CountingIdIndex index = new CountingIdIndex(html);
+        assertSame(sea, index.find("sea"));
+
+        // ## Act ##
+        sea.setId("land"); // at the same path
+
+        // ## Assert ##
+        assertNull(index.find("sea")); // not stale tag
+        assertEquals(1, index.buildCount); // no rebuilding at the miss, walked once by caller
+        assertSame(sea, index.find("land")); // rebuilt at next lookup
+        assertEquals(2, index.buildCount);
+    }
+
+    public void test_find_movedByView_notAnswered() throws Exception {
+        // ## Arrange ##
+        Html html = new Html();
+        Div sea = newDiv("sea");
+        html.getBody().getContent().add(sea);
+        CountingIdIndex index = new CountingIdIndex(html);
+        assertSame(sea, index.find("sea"));
+
+        // ## Act ##
+        Div inserted = newDiv("sea"); // duplicate added before it
+        html.getBody().getContent().add(0, inserted);
+
+        // ## Assert ##
+        assertNull(index.find("sea")); // path is changed, walked by caller
+        assertEquals(1, index.buildCount);
+        assertNull(index.find("sea")); // duplicate after rebuilding, walked by caller
+        assertEquals(2, index.buildCount);
+    }
+
+    public void test_find_duplicateInTemplate_notAnswered() throws Exception {
+        // ## Arrange ##
+        Html html = new Html();
+        Div first = newDiv("sea");
+        Div second = newDiv("sea");
+        Div land = newDiv("land");
+        first.getContent().add(land);
+        html.getBody().getContent().add(first);
+        html.getBody().getContent().add(second);
+        CountingIdIndex index = new CountingIdIndex(html);
+
+        // ## Act ##
+        // ## Assert ##
+        assertNull(index.find("sea")); // walked by caller like getById()
+        assertSame(land, index.find("land"));
+        assertEquals(1, index.buildCount);
+    }
+
+    // ===================================================================================
+    //                                                                             Replace
+    //                                                                             =======
+    public void test_replace_basic() throws Exception {
+        // ## Arrange ##
+        Html html = new Html();
+        Div sea = newDiv("sea");
+        Span land = newSpan("land");
+        sea.getContent().add(land);
+        html.getBody().getContent().add(sea);
+        CountingIdIndex index = new CountingIdIndex(html);
+        Div replacement = newDiv("sea");
+        Span piari = newSpan("piari");
+        replacement.getContent().add(piari);
+
+        // ## Act ##
+        assertTrue(index.replace("sea", replacement));
+
+        // ## Assert ##
+        assertSame(replacement, html.getBody().getContent().get(0));
+        assertSame(replacement, index.find("sea"));
+        assertSame(piari, index.find("piari"));
+        assertNull(index.find("land")); // removed with replaced tag
+        assertEquals(1, index.buildCount);
+    }
+
+    public void test_replace_duplicateAddedEarlier_notAnswered() throws Exception {
+        // ## Arrange ##
+        Html html = new Html();
+        Div sea = newDiv("sea");
+        Div land = newDiv("land");
+        html.getBody().getContent().add(sea);
+        html.getBody().getContent().add(land);
+        CountingIdIndex index = new CountingIdIndex(html);
+        Div replacement = newDiv("sea");
+        Span duplicate = newSpan("land"); // before existing land
+        replacement.getContent().add(duplicate);
+
+        // ## Act ##
+        assertTrue(index.replace("sea", replacement));
+
+        // ## Assert ##
+        assertNull(index.find("land")); // walked by caller, finding the first one like getById()
+        assertSame(replacement, index.find("sea"));
+        assertEquals(1, index.buildCount);
+    }
+
+    // ===================================================================================
+    //                                                                        Small Helper
+    //                                                                        ============
+    private static class CountingIdIndex extends Mixer2IdIndex {
+
+        private int buildCount;
+
+        public CountingIdIndex(AbstractJaxb baseTag) {
+            super(baseTag);
+        }
+
+        @Override
+        protected void buildIndex() {
+            ++buildCount;
+            super.buildIndex();
+        }
+    }
+
+    private Div newDiv(String id) {
+        Div div = new Div();
+        div.setId(id);
+        return div;
+    }
+
+    private Span newSpan(String id) {
+        Span span = new Span();
+        span.setId(id);
+        return span;
+    }
+}
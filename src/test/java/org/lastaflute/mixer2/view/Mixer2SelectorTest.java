@@ -0,0 +1,113 @@
+/*
+ * Copyright 2015-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.lastaflute.mixer2.view;
+
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import org.dbflute.utflute.core.PlainTestCase;
+import org.mixer2.jaxb.xhtml.Div;
+import org.mixer2.jaxb.xhtml.Html;
+import org.mixer2.jaxb.xhtml.Input;
+import org.mixer2.xhtml.AbstractJaxb;
+
+/**
+ * @author jflute
+ */
+public class Mixer2SelectorTest extends PlainTestCase {
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    public void test_select_attribute_property() throws Exception {
+        // ## Arrange ##
+        Html html = new Html();
+        Input piari = newInput("piari");
+        Input bonvo = newInput("bonvo");
+        html.getBody().getContent().add(piari);
+        html.getBody().getContent().add(bonvo);
+
+        // ## Act ##
+        List<AbstractJaxb> valueList = Mixer2Selector.compile("input[name=piari]").select(html);
+        List<AbstractJaxb> existsList = Mixer2Selector.compile("[name]").select(html);
+
+        // ## Assert ##
+        assertEquals(1, valueList.size());
+        assertSame(piari, valueList.get(0));
+        assertEquals(2, existsList.size());
+    }
+
+    public void test_select_attribute_notPropertyGetter() throws Exception {
+        // ## Arrange ##
+        Html html = new Html();
+        Div sea = new Div();
+        sea.getContent().add("mystic");
+        html.getBody().getContent().add(sea);
+
+        // ## Act ##
+        List<AbstractJaxb> contentList = Mixer2Selector.compile("[content]").select(html);
+        List<AbstractJaxb> cssClassList = Mixer2Selector.compile("[css-class]").select(html);
+
+        // ## Assert ##
+        assertHasZeroElement(contentList); // getContent() is not attribute
+        assertHasZeroElement(cssClassList);
+    }
+
+    public void test_select_attribute_otherAttributes() throws Exception {
+        // ## Arrange ##
+        Html html = new Html();
+        Div sea = new Div();
+        sea.getOtherAttributes().put(new QName("role"), "main");
+        Div land = new Div();
+        land.getOtherAttributes().put(new QName("role"), "navigation");
+        html.getBody().getContent().add(sea);
+        html.getBody().getContent().add(land);
+
+        // ## Act ##
+        List<AbstractJaxb> tagList = Mixer2Selector.compile("div[role=main]").select(html);
+
+        // ## Assert ##
+        assertEquals(1, tagList.size());
+        assertSame(sea, tagList.get(0));
+    }
+
+    // ===================================================================================
+    //                                                                        Matched Path
+    //                                                                        ============
+    public void test_findMatchedByPath_ancestorFromBaseTag() throws Exception {
+        // ## Arrange ##
+        Html html = new Html();
+        Div sea = new Div();
+        html.getBody().getContent().add(sea);
+        Mixer2Selector selector = Mixer2Selector.compile("html div");
+
+        // ## Act ##
+        // ## Assert ##
+        assertSame(sea, selector.findMatchedByPath(html, new int[] { 0, 0 }));
+        assertNull(selector.findMatchedByPath(html.getBody(), new int[] { 0 })); // html is not ancestor from body
+        assertNull(selector.findMatchedByPath(html, new int[] { 0, 1 })); // not found
+    }
+
+    // ===================================================================================
+    //                                                                        Small Helper
+    //                                                                        ============
+    private Input newInput(String name) {
+        Input input = new Input();
+        input.setName(name);
+        return input;
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2015-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.lastaflute.mixer2.view;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.dbflute.utflute.core.PlainTestCase;
+import org.mixer2.Mixer2Engine;
+import org.mixer2.jaxb.xhtml.A;
+import org.mixer2.jaxb.xhtml.Flow;
+import org.mixer2.jaxb.xhtml.Html;
+import org.mixer2.jaxb.xhtml.Tbody;
+import org.mixer2.jaxb.xhtml.Td;
+import org.mixer2.jaxb.xhtml.Tr;
+import org.mixer2.xhtml.AbstractJaxb;
+
+/**
+ * @author jflute
+ */
+public class Mixer2StreamingTableTest extends PlainTestCase {
+
+    // ===================================================================================
+    //                                                                         Rewrite URL
+    //                                                                         ===========
+    public void test_writeRows_compiled_linkUrlRewritten() throws Exception {
+        // ## Arrange ##
+        Tr baseTr = newLinkTr();
+        List<String> entityList = Arrays.asList("mystic", "bonvo");
+        Mixer2StreamingTable<String> table =
+                new Mixer2StreamingTable<String>(new MockEngine(), new Tbody(), baseTr, entityList, res -> {
+                    res.register(res.getEntity());
+                }, 10, 0);
+        table.rewriteRows(newLinkRewriter());
+        StringWriter writer = new StringWriter();
+
+        // ## Act ##
+        table.writeRows(writer);
+
+        // ## Assert ##
+        String rowsText = writer.toString();
+        log(rowsText);
+        assertEquals("<tr><td>mystic</td><td><a href=\"/harbor/land/\">detail</a></td></tr>"
+                + "<tr><td>bonvo</td><td><a href=\"/harbor/land/\">detail</a></td></tr>", rowsText);
+        assertEquals("@{/land/}", findLink(baseTr).getHref()); // template is not changed
+    }
+
+    public void test_writeRows_materialized_linkUrlRewritten() throws Exception {
+        // ## Arrange ##
+        Tr baseTr = newLinkTr();
+        List<String> entityList = Arrays.asList("mystic", "bonvo", "dstore");
+        Mixer2StreamingTable<String> table =
+                new Mixer2StreamingTable<String>(new MockEngine(), new Tbody(), baseTr, entityList, res -> {
+                    findLink(res.getTr()).setHref("@{/land/" + res.getEntity() + "/}"); // made as JAXB objects
+                }, 2, 0);
+        table.rewriteRows(newLinkRewriter());
+        StringWriter writer = new StringWriter();
+
+        // ## Act ##
+        table.writeRows(writer);
+
+        // ## Assert ##
+        String rowsText = writer.toString();
+        log(rowsText);
+        assertNotContains(rowsText, "@{");
+        int mysticIndex = rowsText.indexOf("href=\"/harbor/land/mystic/\"");
+        int bonvoIndex = rowsText.indexOf("href=\"/harbor/land/bonvo/\"");
+        int dstoreIndex = rowsText.indexOf("href=\"/harbor/land/dstore/\"");
+        assertTrue(mysticIndex >= 0);
+        assertTrue(mysticIndex < bonvoIndex);
+        assertTrue(bonvoIndex < dstoreIndex);
+    }
+
+    public void test_writeRows_noRewriter_asIs() throws Exception {
+        // ## Arrange ##
+        Tr baseTr = newLinkTr();
+        List<String> entityList = Arrays.asList("mystic");
+        Mixer2StreamingTable<String> table =
+                new Mixer2StreamingTable<String>(new MockEngine(), new Tbody(), baseTr, entityList, res -> {
+                    res.register(res.getEntity());
+                }, 10, 0);
+        StringWriter writer = new StringWriter();
+
+        // ## Act ##
+        table.writeRows(writer);
+
+        // ## Assert ##
+        assertEquals("<tr><td>mystic</td><td><a href=\"@{/land/}\">detail</a></td></tr>", writer.toString());
+    }
+
+    // ===================================================================================
+    //                                                                        Small Helper
+    //                                                                        ============
+    private Tr newLinkTr() {
+        Tr tr = new Tr();
+        Td nameTd = new Td();
+        nameTd.getContent().add("sea");
+        Td linkTd = new Td();
+        A link = new A();
+        link.setHref("@{/land/}");
+        link.getContent().add("detail");
+        linkTd.getContent().add(link);
+        tr.getThOrTd().add(nameTd);
+        tr.getThOrTd().add(linkTd);
+        return tr;
+    }
+
+    private static A findLink(Tr tr) {
+        return (A) ((Td) tr.getThOrTd().get(1)).getContent().get(0);
+    }
+
+    private Mixer2UrlRewriter newLinkRewriter() { // same as link URL resolution
+        Mixer2UrlRewriter rewriter = new Mixer2UrlRewriter();
+        rewriter.addRule(Pattern.compile("@\\{/"), "/harbor/", url -> url.contains("@{/"));
+        rewriter.addRule(Pattern.compile("}$"), "", url -> url.endsWith("}"));
+        return rewriter;
+    }
+
+    private static class MockEngine extends Mixer2Engine { // serializes only rows of the scratch tbody
+
+        private final Tbody scratchTbody = new Tbody();
+
+        @Override
+        public Html loadHtmlTemplate(String str) {
+            return new Html() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                public <T extends AbstractJaxb> T getById(String id, Class<T> tagType) {
+                    return tagType.cast(scratchTbody);
+                }
+            };
+        }
+
+        @Override
+        public String saveToString(Html html) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("<html><body><table><tbody>");
+            for (Tr tr : scratchTbody.getTr()) {
+                sb.append("<tr>");
+                for (Flow cell : tr.getThOrTd()) {
+                    sb.append("<td>");
+                    appendContent(sb, ((Td) cell).getContent());
+                    sb.append("</td>");
+                }
+                sb.append("</tr>");
+            }
+            sb.append("</tbody></table></body></html>");
+            return sb.toString();
+        }
+
+        private void appendContent(StringBuilder sb, List<Object> contentList) {
+            for (Object content : contentList) {
+                if (content instanceof A) {
+                    A link = (A) content;
+                    sb.append("<a href=\"").append(link.getHref()).append("\">");
+                    appendContent(sb, link.getContent());
+                    sb.append("</a>");
+                } else {
+                    sb.append(content);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,566 @@
+/*
+ * Copyright 2015-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.lastaflute.mixer2.view;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.dbflute.utflute.core.PlainTestCase;
+import org.lastaflute.mixer2.exception.Mixer2StaticFragmentDynamicDataException;
+import org.lastaflute.mixer2.template.Mixer2StaticFragments;
+import org.lastaflute.mixer2.template.Mixer2TemplateReader;
+import org.lastaflute.mixer2.template.Mixer2TemplateReader.LoadedHtml;
+import org.lastaflute.mixer2.view.Mixer2Supporter.TableDataResource;
+import org.lastaflute.web.servlet.request.RequestManager;
+import org.mixer2.Mixer2Engine;
+import org.mixer2.jaxb.xhtml.A;
+import org.mixer2.jaxb.xhtml.Div;
+import org.mixer2.jaxb.xhtml.Footer;
+import org.mixer2.jaxb.xhtml.Header;
+import org.mixer2.jaxb.xhtml.Html;
+import org.mixer2.jaxb.xhtml.Input;
+import org.mixer2.jaxb.xhtml.Link;
+import org.mixer2.jaxb.xhtml.Nav;
+import org.mixer2.jaxb.xhtml.Script;
+import org.mixer2.jaxb.xhtml.Select;
+import org.mixer2.jaxb.xhtml.Span;
+import org.mixer2.jaxb.xhtml.Table;
+import org.mixer2.jaxb.xhtml.Tbody;
+import org.mixer2.jaxb.xhtml.Td;
+import org.mixer2.jaxb.xhtml.Tr;
+import org.mixer2.xhtml.AbstractJaxb;
+
+/**
+ * @author jflute
+ */
+public class Mixer2SupporterTest extends PlainTestCase {
+
+    // ===================================================================================
+    //                                                                       Static Shared
+    //                                                                       =============
+    public void test_staticShared_concurrentRendering_masterNotChanged() throws Exception {
+        // ## Arrange ##
+        Html masterHtml = newStaticHtml("/harbor/sea/");
+        LoadedHtml master = new LoadedHtml(masterHtml, true, true, 100);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<String>> futureList = new ArrayList<Future<String>>();
+
+        // ## Act ##
+        try {
+            for (int i = 0; i < 200; i++) {
+                futureList.add(executor.submit(new Callable<String>() {
+                    public String call() throws Exception {
+                        return renderSimply(master.copyStaticShared());
+                    }
+                }));
+            }
+            for (Future<String> future : futureList) {
+                assertEquals("/harbor/land/?rewritten", future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // ## Assert ##
+        assertEquals("/harbor/sea/", findStaticLink(masterHtml).getHref());
+        assertEquals("@{/land/}", findMainLink(masterHtml).getHref());
+    }
+
+    public void test_staticShared_sharedInstance_notWalked() throws Exception {
+        // ## Arrange ##
+        Html masterHtml = newStaticHtml("/harbor/sea/");
+        LoadedHtml loaded = new LoadedHtml(masterHtml, true, true, 100).copyStaticShared();
+        Mixer2Supporter supporter = newSupporter(loaded);
+
+        // ## Act ##
+        List<A> linkList = supporter.searchTagList(loaded.getHtml().getBody(), tag -> tag instanceof A);
+
+        // ## Assert ##
+        assertTrue(supporter.isStaticShared());
+        assertSame(findStaticNav(masterHtml), findStaticNav(loaded.getHtml())); // shared
+        assertNotSame(findMainLink(masterHtml), findMainLink(loaded.getHtml())); // copied
+        assertEquals(1, linkList.size());
+        assertSame(findMainLink(loaded.getHtml()), linkList.get(0));
+    }
+
+    public void test_staticShared_privateCopy_walked() throws Exception {
+        // ## Arrange ##
+        Html masterHtml = newStaticHtml("/harbor/sea/");
+        LoadedHtml loaded = new LoadedHtml(masterHtml, true, true, 100).copy();
+        Mixer2Supporter supporter = newSupporter(loaded);
+
+        // ## Act ##
+        List<A> linkList = supporter.searchTagList(loaded.getHtml().getBody(), tag -> tag instanceof A);
+
+        // ## Assert ##
+        assertFalse(supporter.isStaticShared());
+        assertEquals(2, linkList.size());
+    }
+
+    public void test_staticShared_linkUrlInStatic_rejected() throws Exception {
+        // ## Arrange ##
+        LoadedHtml master = new LoadedHtml(newStaticHtml("@{/sea/}"), true, true, 100);
+
+        // ## Act ##
+        // ## Assert ##
+        try {
+            master.copyStaticShared();
+            fail();
+        } catch (Mixer2StaticFragmentDynamicDataException e) {
+            log(e.getMessage());
+            assertContains(e.getMessage(), "@{/sea/}");
+        }
+    }
+
+    public void test_staticShared_relativePathInStatic_rejected() throws Exception {
+        // ## Arrange ##
+        LoadedHtml master = new LoadedHtml(newStaticHtml("../css/sea.css"), true, true, 100);
+
+        // ## Act ##
+        // ## Assert ##
+        try {
+            master.copyStaticShared();
+            fail();
+        } catch (Mixer2StaticFragmentDynamicDataException e) {
+            assertContains(e.getMessage(), "../css/sea.css");
+        }
+    }
+
+    // ===================================================================================
+    //                                                                              Select
+    //                                                                              ======
+    public void test_select_indexedAndWalked_sameResult() throws Exception {
+        // ## Arrange ##
+        Html masterHtml = newStaticHtml("/harbor/sea/");
+        Html html = new LoadedHtml(masterHtml, true, true, 100).copy().getHtml();
+        LoadedHtml loaded = new LoadedHtml(masterHtml, true, true, 100).copy();
+        Mixer2Supporter indexed = newSupporter(loaded);
+        Html indexedHtml = loaded.getHtml();
+
+        // ## Act ##
+        // ## Assert ##
+        for (String selector : new String[] { "html div", "html a", "body a", "div a", "nav", "[href]", "[content]" }) {
+            List<AbstractJaxb> bodyWalked = Mixer2Selector.compile(selector).select(html.getBody());
+            List<AbstractJaxb> bodyIndexed = indexed.select(indexedHtml.getBody(), selector);
+            assertEquals(selector, bodyWalked.size(), bodyIndexed.size());
+            List<AbstractJaxb> htmlWalked = Mixer2Selector.compile(selector).select(html);
+            List<AbstractJaxb> htmlIndexed = indexed.select(indexedHtml, selector);
+            assertEquals(selector, htmlWalked.size(), htmlIndexed.size());
+        }
+        assertHasZeroElement(indexed.select(indexedHtml.getBody(), "html div")); // html is out of body
+        assertEquals(1, indexed.select(indexedHtml, "html div").size());
+    }
+
+    // ===================================================================================
+    //                                                                              Search
+    //                                                                              ======
+    public void test_searchTagList_fromHtml_compatibleScope() throws Exception {
+        // ## Arrange ##
+        Html html = newFormHtml();
+        Mixer2Supporter supporter = newSupporter(null);
+
+        // ## Act ##
+        List<Input> inputList = supporter.searchTagList(html, tag -> tag instanceof Input);
+        List<AbstractJaxb> tagList = supporter.searchTagList(html, tag -> true);
+
+        // ## Assert ##
+        assertEquals(Arrays.asList("header", "footer"), extractNameList(inputList)); // not main
+        assertSame(html, tagList.get(0));
+        assertSame(html.getHead(), tagList.get(1));
+        assertTrue(tagList.get(2) instanceof Header); // not in head content as before
+        assertTrue(tagList.get(tagList.size() - 1) instanceof Script);
+        assertFalse(supporter.findInput(html, "main").isPresent());
+        assertTrue(supporter.findInput(html, "footer").isPresent());
+        assertTrue(supporter.findInput(html.getBody(), "main").isPresent()); // from body
+        assertEquals(1, supporter.searchTagList(html, tag -> tag instanceof Input, 1).size());
+    }
+
+    public void test_searchTagList_fromHtml_wholeHtmlSearch() throws Exception {
+        // ## Arrange ##
+        Html html = newFormHtml();
+        Mixer2Supporter supporter = newSupporter(null).asWholeHtmlSearch(true);
+
+        // ## Act ##
+        List<Input> inputList = supporter.searchTagList(html, tag -> tag instanceof Input);
+
+        // ## Assert ##
+        assertEquals(Arrays.asList("header", "main", "footer"), extractNameList(inputList));
+        assertTrue(supporter.findInput(html, "main").isPresent());
+    }
+
+    public void test_searchTagList_inTable_compatibleScope() throws Exception {
+        // ## Arrange ##
+        Html html = newTableHtml();
+        Mixer2Supporter supporter = newSupporter(null);
+        Td td = findTableTd(html);
+
+        // ## Act ##
+        List<Input> inputList = supporter.searchTagList(html.getBody(), tag -> tag instanceof Input);
+
+        // ## Assert ##
+        assertEquals(Arrays.asList("outside"), extractNameList(inputList)); // not in table as before
+        assertFalse(supporter.findInput(html.getBody(), "inTable").isPresent());
+        assertFalse(supporter.findSelect(html.getBody(), "inTable").isPresent());
+        assertTrue(supporter.findInput(td, "inTable").isPresent()); // from td
+        assertHasZeroElement(supporter.searchByData(html.getBody(), "errors"));
+        List<AbstractJaxb> visitedList = new ArrayList<AbstractJaxb>();
+        List<AbstractJaxb> scopedList = new ArrayList<AbstractJaxb>();
+        Mixer2TagPipeline pipeline = supporter.newTagPipeline();
+        pipeline.register(tag -> tag instanceof Select, tag -> visitedList.add(tag)); // e.g. URL rewriter
+        pipeline.registerInSearchScope(tag -> tag instanceof Select, tag -> scopedList.add(tag)); // e.g. cls resolver
+        pipeline.run(html.getBody());
+        assertEquals(1, visitedList.size());
+        assertHasZeroElement(scopedList);
+    }
+
+    public void test_searchTagList_inTable_compatibleScope_indexed() throws Exception {
+        // ## Arrange ##
+        LoadedHtml loaded = new LoadedHtml(newTableHtml(), true, true, 100).copy();
+        Mixer2Supporter supporter = newSupporter(loaded);
+        Html html = loaded.getHtml();
+
+        // ## Act ##
+        List<AbstractJaxb> errorsList = supporter.searchByData(html.getBody(), "errors");
+
+        // ## Assert ##
+        assertHasZeroElement(errorsList); // same as walking
+        assertEquals(1, supporter.asDeepSearch(true).searchByData(html.getBody(), "errors").size());
+    }
+
+    public void test_searchTagList_inTable_deepSearch() throws Exception {
+        // ## Arrange ##
+        Html html = newTableHtml();
+        Mixer2Supporter supporter = newSupporter(null).asDeepSearch(true);
+
+        // ## Act ##
+        List<Input> inputList = supporter.searchTagList(html.getBody(), tag -> tag instanceof Input);
+
+        // ## Assert ##
+        assertEquals(Arrays.asList("inTable", "outside"), extractNameList(inputList));
+        assertTrue(supporter.findInput(html.getBody(), "inTable").isPresent());
+        assertTrue(supporter.findSelect(html.getBody(), "inTable").isPresent());
+        assertEquals(1, supporter.searchByData(html.getBody(), "errors").size());
+        List<AbstractJaxb> scopedList = new ArrayList<AbstractJaxb>();
+        Mixer2TagPipeline pipeline = supporter.newTagPipeline();
+        pipeline.registerInSearchScope(tag -> tag instanceof Select, tag -> scopedList.add(tag));
+        pipeline.run(html.getBody());
+        assertEquals(1, scopedList.size());
+    }
+
+    // ===================================================================================
+    //                                                                   Template Features
+    //                                                                   =================
+    public void test_mightHaveFeature_default_notSkipped() throws Exception {
+        // ## Arrange ##
+        Mixer2Supporter supporter = newSupporter(new LoadedHtml(newFormHtml(), true, true, 100).copy()); // no link URL, no data
+
+        // ## Act ##
+        // ## Assert ##
+        assertTrue(supporter.mightHaveLinkUrl()); // e.g. setHref("@{/sea/}") by view
+        assertTrue(supporter.mightHaveData("errors"));
+        assertTrue(supporter.mightHaveFeature(features -> features.isRelativeUrlUsed()));
+    }
+
+    public void test_mightHaveFeature_featureSkipped() throws Exception {
+        // ## Arrange ##
+        Mixer2Supporter supporter = newSupporter(new LoadedHtml(newFormHtml(), true, true, 100).copy()).asFeatureSkipped(true);
+
+        // ## Act ##
+        // ## Assert ##
+        assertFalse(supporter.mightHaveLinkUrl());
+        assertFalse(supporter.mightHaveData("errors"));
+        assertFalse(supporter.mightHaveFeature(features -> features.isRelativeUrlUsed()));
+        assertTrue(supporter.mightHaveFeature(features -> features.isHeaderExisting()));
+        assertTrue(supporter.mightHaveFeature(features -> features.isFooterExisting()));
+    }
+
+    public void test_mightHaveFeature_featureSkipped_linkUrlProduced() throws Exception {
+        // ## Arrange ##
+        Mixer2Supporter supporter = newSupporter(new LoadedHtml(newFormHtml(), true, true, 100).copy()).asFeatureSkipped(true);
+
+        // ## Act ##
+        supporter.toLinkUrl(Object.class, null);
+
+        // ## Assert ##
+        assertTrue(supporter.mightHaveLinkUrl());
+        assertFalse(supporter.mightHaveData("errors"));
+    }
+
+    public void test_mightHaveFeature_featureSkipped_markedUnknown() throws Exception {
+        // ## Arrange ##
+        Mixer2Supporter supporter = newSupporter(new LoadedHtml(newFormHtml(), true, true, 100).copy()).asFeatureSkipped(true);
+
+        // ## Act ##
+        supporter.markFeaturesUnknown();
+
+        // ## Assert ##
+        assertTrue(supporter.mightHaveLinkUrl());
+        assertTrue(supporter.mightHaveData("errors"));
+    }
+
+    public void test_mightHaveFeature_featureSkipped_noTemplate() throws Exception {
+        // ## Arrange ##
+        Mixer2Supporter supporter = newSupporter(null).asFeatureSkipped(true);
+
+        // ## Act ##
+        // ## Assert ##
+        assertTrue(supporter.mightHaveLinkUrl());
+        assertTrue(supporter.mightHaveData("errors"));
+    }
+
+    private Html newFormHtml() { // head > link, body > (header > input, div > input, footer > input, script)
+        Html html = new Html();
+        html.getHead().getContent().add(new Link());
+        Header header = new Header();
+        header.getContent().add(newInput("header"));
+        Div main = new Div();
+        main.getContent().add(newInput("main"));
+        Footer footer = new Footer();
+        footer.getContent().add(newInput("footer"));
+        html.getBody().getContent().add(header);
+        html.getBody().getContent().add(main);
+        html.getBody().getContent().add(footer);
+        html.getBody().getContent().add(new Script());
+        return html;
+    }
+
+    private Html newTableHtml() { // body > (table > tbody > tr > td > (input, select, span[data-errors]), div > input)
+        Html html = new Html();
+        Td td = new Td();
+        td.getContent().add(newInput("inTable"));
+        Select select = new Select();
+        select.setName("inTable");
+        td.getContent().add(select);
+        Span errors = new Span();
+        errors.setData("errors", "memberName");
+        td.getContent().add(errors);
+        Tr tr = new Tr();
+        tr.getThOrTd().add(td);
+        Tbody tbody = new Tbody();
+        tbody.getTr().add(tr);
+        Table table = new Table();
+        table.getTbody().add(tbody);
+        Div outside = new Div();
+        outside.getContent().add(newInput("outside"));
+        html.getBody().getContent().add(table);
+        html.getBody().getContent().add(outside);
+        return html;
+    }
+
+    private Td findTableTd(Html html) {
+        return (Td) ((Table) html.getBody().getContent().get(0)).getTbody().get(0).getTr().get(0).getThOrTd().get(0);
+    }
+
+    private Input newInput(String name) {
+        Input input = new Input();
+        input.setName(name);
+        return input;
+    }
+
+    private List<String> extractNameList(List<Input> inputList) {
+        List<String> nameList = new ArrayList<String>();
+        for (Input input : inputList) {
+            nameList.add(input.getName());
+        }
+        return nameList;
+    }
+
+    private String renderSimply(LoadedHtml loaded) { // like typical view: pipeline and URL rewriter
+        Html html = loaded.getHtml();
+        Mixer2Supporter supporter = newSupporter(loaded);
+        Mixer2TagPipeline pipeline = supporter.newTagPipeline();
+        pipeline.register(tag -> tag instanceof A, tag -> {
+            A link = (A) tag;
+            link.setHref(link.getHref().replace("@{", "/harbor").replace("}", ""));
+        });
+        pipeline.run(html);
+        Mixer2UrlRewriter rewriter = supporter.newUrlRewriter();
+        rewriter.addRule(url -> true, url -> url + "?rewritten");
+        rewriter.rewrite(html);
+        return findMainLink(html).getHref();
+    }
+
+    private Html newStaticHtml(String staticUrl) { // body > (nav[data-static] > a, div > a)
+        Html html = new Html();
+        Nav nav = new Nav();
+        nav.setData(Mixer2StaticFragments.STATIC_DATA_KEY, "globalNavi");
+        A staticLink = new A();
+        staticLink.setHref(staticUrl);
+        nav.getContent().add(staticLink);
+        Div main = new Div();
+        A mainLink = new A();
+        mainLink.setHref("@{/land/}");
+        main.getContent().add(mainLink);
+        html.getBody().getContent().add(nav);
+        html.getBody().getContent().add(main);
+        return html;
+    }
+
+    private Nav findStaticNav(Html html) {
+        return (Nav) html.getBody().getContent().get(0);
+    }
+
+    private A findStaticLink(Html html) {
+        return (A) findStaticNav(html).getContent().get(0);
+    }
+
+    private A findMainLink(Html html) {
+        return (A) ((Div) html.getBody().getContent().get(1)).getContent().get(0);
+    }
+
+    // ===================================================================================
+    //                                                                        Reflect Data
+    //                                                                        ============
+    public void test_reflectListToTBodyInParallel_sameAsSequential() throws Exception {
+        // ## Arrange ##
+        List<String> entityList = new LinkedList<String>(); // not random access
+        for (int i = 0; i < 30; i++) {
+            entityList.add("member" + i);
+        }
+        Html sequentialHtml = newMemberTableHtml();
+        Html parallelHtml = newMemberTableHtml();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        // ## Act ##
+        newSupporter(null).reflectListToTBody(entityList, sequentialHtml, "members", res -> {
+            reflectMemberRow(res);
+        });
+        try {
+            newParallelSupporter().reflectListToTBodyInParallel(entityList, parallelHtml, "members", executor, res -> {
+                reflectMemberRow(res);
+            });
+        } finally {
+            executor.shutdown();
+        }
+
+        // ## Assert ##
+        List<String> sequentialList = extractRowTextList(sequentialHtml);
+        List<String> parallelList = extractRowTextList(parallelHtml);
+        log(parallelList);
+        assertEquals(30, parallelList.size());
+        assertEquals("member0:sea", parallelList.get(0));
+        assertEquals("member29:sea", parallelList.get(29));
+        assertEquals(sequentialList, parallelList); // same order
+    }
+
+    public void test_reflectListToTBodyInParallel_exceptionUnwrapped() throws Exception {
+        // ## Arrange ##
+        List<String> entityList = new ArrayList<String>();
+        for (int i = 0; i < 30; i++) {
+            entityList.add("member" + i);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        // ## Act ##
+        // ## Assert ##
+        try {
+            newSupporter(null).reflectListToTBody(entityList, newMemberTableHtml(), "members", res -> {
+                throwIfBroken(res.getEntity());
+            });
+            fail();
+        } catch (IllegalStateException e) {
+            log(e.getMessage());
+            assertEquals("broken: member20", e.getMessage());
+        }
+        try {
+            newParallelSupporter().reflectListToTBodyInParallel(entityList, newMemberTableHtml(), "members", executor, res -> {
+                throwIfBroken(res.getEntity());
+            });
+            fail();
+        } catch (IllegalStateException e) { // not wrapped by completion exception
+            log(e.getMessage());
+            assertEquals("broken: member20", e.getMessage());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // ===================================================================================
+    //                                                                        Small Helper
+    //                                                                        ============
+    private Mixer2Supporter newParallelSupporter() { // parallel for small list
+        RequestManager requestManager = (RequestManager) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { RequestManager.class }, (proxy, method, args) -> null); // not used
+        Mixer2TemplateReader reader = new Mixer2TemplateReader(null, requestManager, null);
+        return new Mixer2Supporter(new Mixer2Engine(), requestManager, reader, (actionType, urlChain) -> null, null) {
+            @Override
+            protected int getParallelRowThreshold() {
+                return 2;
+            }
+
+            @Override
+            protected int getParallelRowWorkerCount() {
+                return 4;
+            }
+        };
+    }
+
+    private Html newMemberTableHtml() { // body > table > tbody#members > tr > (td, td)
+        Html html = new Html();
+        Td nameTd = new Td();
+        Td seaTd = new Td();
+        seaTd.getContent().add("sea");
+        Tr tr = new Tr();
+        tr.getThOrTd().add(nameTd);
+        tr.getThOrTd().add(seaTd);
+        Tbody tbody = new Tbody();
+        tbody.setId("members");
+        tbody.getTr().add(tr);
+        Table table = new Table();
+        table.getTbody().add(tbody);
+        html.getBody().getContent().add(table);
+        return html;
+    }
+
+    private void reflectMemberRow(TableDataResource<String> res) {
+        res.getTdList().get(0).getContent().add(res.getEntity());
+    }
+
+    private void throwIfBroken(String entity) {
+        if (entity.equals("member20")) {
+            throw new IllegalStateException("broken: " + entity);
+        }
+    }
+
+    private List<String> extractRowTextList(Html html) { // e.g. member0:sea
+        List<String> textList = new ArrayList<String>();
+        Tbody tbody = ((Table) html.getBody().getContent().get(0)).getTbody().get(0);
+        for (Tr tr : tbody.getTr()) {
+            StringBuilder sb = new StringBuilder();
+            for (Object td : tr.getThOrTd()) {
+                for (Object content : ((Td) td).getContent()) {
+                    sb.append(sb.length() > 0 ? ":" : "").append(content);
+                }
+            }
+            textList.add(sb.toString());
+        }
+        return textList;
+    }
+
+    private Mixer2Supporter newSupporter(LoadedHtml loaded) {
+        RequestManager requestManager = (RequestManager) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { RequestManager.class }, (proxy, method, args) -> null); // not used
+        Mixer2TemplateReader reader = new Mixer2TemplateReader(null, requestManager, null);
+        return new Mixer2Supporter(new Mixer2Engine(), requestManager, reader, (actionType, urlChain) -> null, loaded);
+    }
+}
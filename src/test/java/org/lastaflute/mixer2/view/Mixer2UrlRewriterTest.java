@@ -0,0 +1,141 @@
+/*
+ * Copyright 2015-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.lastaflute.mixer2.view;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.dbflute.utflute.core.PlainTestCase;
+import org.lastaflute.mixer2.util.Mixer2TagUtil;
+import org.mixer2.jaxb.xhtml.A;
+import org.mixer2.jaxb.xhtml.Area;
+import org.mixer2.jaxb.xhtml.Audio;
+import org.mixer2.jaxb.xhtml.Div;
+import org.mixer2.jaxb.xhtml.Embed;
+import org.mixer2.jaxb.xhtml.Form;
+import org.mixer2.jaxb.xhtml.Html;
+import org.mixer2.jaxb.xhtml.Iframe;
+import org.mixer2.jaxb.xhtml.Img;
+import org.mixer2.jaxb.xhtml.Input;
+import org.mixer2.jaxb.xhtml.Link;
+import org.mixer2.jaxb.xhtml.Script;
+import org.mixer2.jaxb.xhtml.Source;
+import org.mixer2.jaxb.xhtml.Track;
+import org.mixer2.jaxb.xhtml.Video;
+import org.mixer2.xhtml.AbstractJaxb;
+
+/**
+ * @author jflute
+ */
+public class Mixer2UrlRewriterTest extends PlainTestCase {
+
+    // ===================================================================================
+    //                                                                             Rewrite
+    //                                                                             =======
+    public void test_rewrite_allUrlTags() throws Exception {
+        // ## Arrange ##
+        List<AbstractJaxb> urlTagList = newUrlTagList();
+        Html html = new Html();
+        html.getHead().getContent().add(newUrlTag(new Link(), "../css/sea.css"));
+        Div div = new Div();
+        div.getContent().addAll(urlTagList);
+        html.getBody().getContent().add(div);
+        Mixer2UrlRewriter rewriter = new Mixer2UrlRewriter();
+        rewriter.addRule(Pattern.compile("^\\.\\./"), "/harbor/", url -> url.startsWith("../"));
+
+        // ## Act ##
+        rewriter.rewrite(html);
+
+        // ## Assert ##
+        assertEquals("/harbor/css/sea.css", Mixer2TagUtil.findUrl((AbstractJaxb) html.getHead().getContent().get(0)));
+        for (AbstractJaxb tag : urlTagList) {
+            log(tag.getClass().getSimpleName(), Mixer2TagUtil.findUrl(tag));
+            assertTrue(Mixer2TagUtil.hasUrlAttribute(tag));
+            assertEquals(tag.getClass().getSimpleName(), "/harbor/land/" + tag.getClass().getSimpleName().toLowerCase(),
+                    Mixer2TagUtil.findUrl(tag));
+        }
+    }
+
+    public void test_rewrite_ruleOrder() throws Exception {
+        // ## Arrange ##
+        Html html = new Html();
+        Link link = newUrlTag(new Link(), "../css/sea.css");
+        Script script = newUrlTag(new Script(), "./js/land.js");
+        A anchor = newUrlTag(new A(), "@{/piari/}");
+        html.getHead().getContent().add(link);
+        html.getHead().getContent().add(script);
+        html.getBody().getContent().add(anchor);
+        Mixer2UrlRewriter rewriter = new Mixer2UrlRewriter(); // like style and link URL resolvers
+        rewriter.addRule(Pattern.compile("^\\.+/.*css/(.*)$"), "/harbor/css/$1", url -> url.startsWith(".") && url.contains("css/"));
+        rewriter.addRule(Pattern.compile("\\.css$"), ".css?v=1", url -> url.endsWith(".css"));
+        rewriter.addRule(Pattern.compile("^\\.+/.*js/(.*)$"), "/harbor/js/$1", url -> url.startsWith(".") && url.contains("js/"));
+        rewriter.addRule(Pattern.compile("\\.js$"), ".js?v=1", url -> url.endsWith(".js"));
+        rewriter.addRule(Pattern.compile("^@\\{/"), "/harbor/", url -> url.contains("@{/"));
+        rewriter.addRule(Pattern.compile("}$"), "", url -> url.endsWith("}"));
+
+        // ## Act ##
+        rewriter.rewrite(html);
+
+        // ## Assert ##
+        assertEquals("/harbor/css/sea.css?v=1", link.getHref()); // version query after path
+        assertEquals("/harbor/js/land.js?v=1", script.getSrc());
+        assertEquals("/harbor/piari/", anchor.getHref());
+    }
+
+    public void test_rewriteUrl_laterRuleSeesFormerResult() throws Exception {
+        // ## Arrange ##
+        Mixer2UrlRewriter rewriter = new Mixer2UrlRewriter();
+        rewriter.addRule(url -> url.startsWith("/sea"), url -> url.replace("/sea", "/land"));
+        rewriter.addRule(url -> url.startsWith("/land"), url -> url + "?v=1");
+        rewriter.addRule(url -> url.startsWith("/sea"), url -> "/never"); // former rule already changed it
+
+        // ## Act ##
+        // ## Assert ##
+        assertEquals("/land/mystic?v=1", rewriter.rewriteUrl("/sea/mystic"));
+        String notMatched = "/piari/";
+        assertSame(notMatched, rewriter.rewriteUrl(notMatched));
+    }
+
+    // ===================================================================================
+    //                                                                        Small Helper
+    //                                                                        ============
+    private List<AbstractJaxb> newUrlTagList() { // same tags as PathAdjuster
+        List<AbstractJaxb> tagList = new ArrayList<AbstractJaxb>();
+        tagList.add(new A());
+        tagList.add(new Area());
+        tagList.add(new Img());
+        tagList.add(new Script());
+        tagList.add(new Iframe());
+        tagList.add(new Input());
+        tagList.add(new Embed());
+        tagList.add(new Audio());
+        tagList.add(new Video());
+        tagList.add(new Source());
+        tagList.add(new Track());
+        tagList.add(new Form());
+        tagList.add(new org.mixer2.jaxb.xhtml.Object());
+        for (AbstractJaxb tag : tagList) {
+            Mixer2TagUtil.setUrl(tag, "../land/" + tag.getClass().getSimpleName().toLowerCase());
+        }
+        return tagList;
+    }
+
+    private <TAG extends AbstractJaxb> TAG newUrlTag(TAG tag, String url) {
+        Mixer2TagUtil.setUrl(tag, url);
+        return tag;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2015-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.lastaflute.mixer2.view;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.dbflute.utflute.core.PlainTestCase;
+import org.lastaflute.mixer2.template.Mixer2TemplateReader;
+import org.lastaflute.mixer2.view.resolver.TypicalMixStyleResolver;
+import org.lastaflute.web.servlet.request.RequestManager;
+import org.mixer2.Mixer2Engine;
+import org.mixer2.jaxb.xhtml.Html;
+
+/**
+ * @author jflute
+ */
+public class TypicalMixViewTest extends PlainTestCase {
+
+    // ===================================================================================
+    //                                                                        Dynamic HTML
+    //                                                                        ============
+    public void test_beDynamic_hookOrder_styleBeforeRendering() throws Exception {
+        // ## Arrange ##
+        HookRecordingView view = new HookRecordingView(false);
+
+        // ## Act ##
+        view.beDynamic(new Html(), newSupporter());
+
+        // ## Assert ##
+        assertEquals(Arrays.asList("cls:shared", "errors:shared", "layout:shared", "style:own", "render", "linkUrl:shared"),
+                view.hookList);
+    }
+
+    public void test_beDynamic_hookOrder_styleAfterRendering() throws Exception {
+        // ## Arrange ##
+        HookRecordingView view = new HookRecordingView(true);
+
+        // ## Act ##
+        view.beDynamic(new Html(), newSupporter());
+
+        // ## Assert ##
+        assertEquals(Arrays.asList("cls:shared", "errors:shared", "layout:shared", "render", "style:shared", "linkUrl:shared"),
+                view.hookList);
+    }
+
+    public void test_beDynamic_sharingEnded() throws Exception {
+        // ## Arrange ##
+        HookRecordingView view = new HookRecordingView(false);
+        Mixer2Supporter supporter = newSupporter();
+
+        // ## Act ##
+        view.beDynamic(new Html(), supporter);
+
+        // ## Assert ##
+        assertFalse(supporter.findSharedTagPipeline().isPresent());
+        assertFalse(supporter.findSharedUrlRewriter().isPresent());
+    }
+
+    // ===================================================================================
+    //                                                                        Small Helper
+    //                                                                        ============
+    private static class HookRecordingView extends TypicalMixView { // overrides hooks like application views
+
+        private final boolean styleAfterRendering;
+        private final List<String> hookList = new ArrayList<String>();
+
+        public HookRecordingView(boolean styleAfterRendering) {
+            this.styleAfterRendering = styleAfterRendering;
+        }
+
+        @Override
+        protected TypicalMixStyleResolver createTypicalMixStyleResolver() {
+            return new TypicalMixStyleResolver() {
+                @Override
+                public boolean isAfterRendering() {
+                    return styleAfterRendering;
+                }
+            };
+        }
+
+        @Override
+        protected void resolveCls(Html html, Mixer2Supporter supporter) {
+            hookList.add("cls:" + (supporter.findSharedTagPipeline().isPresent() ? "shared" : "own"));
+        }
+
+        @Override
+        protected void resolveErrors(Html html, Mixer2Supporter supporter) {
+            hookList.add("errors:" + (supporter.findSharedTagPipeline().isPresent() ? "shared" : "own"));
+        }
+
+        @Override
+        protected void resolveLayout(Html html, Mixer2Supporter supporter) {
+            hookList.add("layout:" + (supporter.findSharedTagPipeline().isPresent() ? "shared" : "own"));
+        }
+
+        @Override
+        protected void resolveStyle(Html html, Mixer2Supporter supporter) {
+            hookList.add("style:" + (supporter.findSharedUrlRewriter().isPresent() ? "shared" : "own"));
+        }
+
+        @Override
+        protected void render(Html html, Mixer2Supporter supporter) {
+            hookList.add("render");
+        }
+
+        @Override
+        protected void resolveLinkUrl(Html html, Mixer2Supporter supporter) {
+            hookList.add("linkUrl:" + (supporter.findSharedUrlRewriter().isPresent() ? "shared" : "own"));
+        }
+    }
+
+    private Mixer2Supporter newSupporter() {
+        RequestManager requestManager = (RequestManager) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { RequestManager.class }, (proxy, method, args) -> null); // not used
+        Mixer2TemplateReader reader = new Mixer2TemplateReader(null, requestManager, null);
+        return new Mixer2Supporter(new Mixer2Engine(), requestManager, reader, (actionType, urlChain) -> null, null);
+    }
+}
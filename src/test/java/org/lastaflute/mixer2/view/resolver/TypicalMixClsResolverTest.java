@@ -0,0 +1,252 @@
+/*
+ * Copyright 2015-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.lastaflute.mixer2.view.resolver;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.dbflute.jdbc.Classification;
+import org.dbflute.jdbc.ClassificationMeta;
+import org.dbflute.utflute.core.PlainTestCase;
+import org.lastaflute.db.dbflute.classification.ListedClassificationProvider;
+import org.lastaflute.mixer2.view.resolver.TypicalMixClsResolver.ClsOptionEntry;
+import org.lastaflute.mixer2.view.resolver.TypicalMixClsResolver.ClsSelectIndex;
+import org.mixer2.jaxb.xhtml.Html;
+import org.mixer2.jaxb.xhtml.Option;
+import org.mixer2.jaxb.xhtml.Select;
+import org.mixer2.jaxb.xhtml.Table;
+import org.mixer2.jaxb.xhtml.Td;
+import org.mixer2.jaxb.xhtml.Tr;
+import org.mixer2.xhtml.AbstractJaxb;
+
+/**
+ * @author jflute
+ */
+public class TypicalMixClsResolverTest extends PlainTestCase {
+
+    // ===================================================================================
+    //                                                                         Reflect Cls
+    //                                                                         ===========
+    public void test_reflectSelectCls_expanded() throws Exception {
+        // ## Arrange ##
+        TypicalMixClsResolver.clearExpandedCache(); // shared in JVM
+        AtomicInteger provideCount = new AtomicInteger();
+        CountingClsResolver resolver = new CountingClsResolver(createProvider(provideCount));
+        Select select = createClsSelect("MemberStatus");
+
+        // ## Act ##
+        resolver.reflectSelectCls(select);
+
+        // ## Assert ##
+        List<AbstractJaxb> optionList = select.getOptgroupOrOption();
+        assertEquals(3, optionList.size());
+        assertEquals("FML", ((Option) optionList.get(0)).getValue());
+        assertEquals("Formalized", ((Option) optionList.get(0)).getContent());
+        assertEquals("PRV", ((Option) optionList.get(1)).getValue());
+        assertEquals("WDL", ((Option) optionList.get(2)).getValue());
+        assertEquals("Withdrawal", ((Option) optionList.get(2)).getContent());
+        assertEquals(1, resolver.findCount);
+        assertEquals(1, provideCount.get());
+    }
+
+    public void test_reflectSelectCls_providerFoundOncePerResolver() throws Exception {
+        // ## Arrange ##
+        TypicalMixClsResolver.clearExpandedCache();
+        AtomicInteger provideCount = new AtomicInteger();
+        CountingClsResolver resolver = new CountingClsResolver(createProvider(provideCount));
+
+        // ## Act ##
+        resolver.reflectSelectCls(createClsSelect("MemberStatus"));
+        resolver.reflectSelectCls(createClsSelect("MemberStatus"));
+        resolver.reflectSelectCls(createClsSelect("PaymentMethod"));
+
+        // ## Assert ##
+        assertEquals(1, resolver.findCount);
+        assertEquals(2, provideCount.get()); // once per classification
+    }
+
+    // ===================================================================================
+    //                                                                        Expanded Cls
+    //                                                                        ============
+    public void test_findExpandedCls_cachedPerProvider() throws Exception {
+        // ## Arrange ##
+        TypicalMixClsResolver.clearExpandedCache();
+        AtomicInteger provideCount = new AtomicInteger();
+        ListedClassificationProvider provider = createProvider(provideCount);
+
+        // ## Act ##
+        List<ClsOptionEntry> first = new CountingClsResolver(provider).findExpandedCls(provider, "MemberStatus");
+        List<ClsOptionEntry> second = new CountingClsResolver(provider).findExpandedCls(provider, "MemberStatus"); // next request
+
+        // ## Assert ##
+        assertSame(first, second);
+        assertEquals(1, provideCount.get());
+    }
+
+    public void test_findExpandedCls_notSharedWithOtherProvider() throws Exception {
+        // ## Arrange ##
+        TypicalMixClsResolver.clearExpandedCache();
+        AtomicInteger oldCount = new AtomicInteger();
+        AtomicInteger newCount = new AtomicInteger();
+        ListedClassificationProvider oldProvider = createProvider(oldCount);
+        ListedClassificationProvider newProvider = createProvider(newCount); // e.g. hot deploy, other application
+
+        // ## Act ##
+        List<ClsOptionEntry> oldList = new CountingClsResolver(oldProvider).findExpandedCls(oldProvider, "MemberStatus");
+        List<ClsOptionEntry> newList = new CountingClsResolver(newProvider).findExpandedCls(newProvider, "MemberStatus");
+
+        // ## Assert ##
+        assertNotSame(oldList, newList);
+        assertEquals(1, oldCount.get());
+        assertEquals(1, newCount.get());
+    }
+
+    public void test_findExpandedCls_suppressed() throws Exception {
+        // ## Arrange ##
+        TypicalMixClsResolver.clearExpandedCache();
+        AtomicInteger provideCount = new AtomicInteger();
+        CountingClsResolver resolver = new CountingClsResolver(createProvider(provideCount));
+        resolver.suppressExpandedCache(true);
+
+        // ## Act ##
+        resolver.reflectSelectCls(createClsSelect("MemberStatus"));
+        resolver.reflectSelectCls(createClsSelect("MemberStatus"));
+
+        // ## Assert ##
+        assertEquals(2, resolver.findCount);
+        assertEquals(2, provideCount.get());
+    }
+
+    public void test_clearExpandedCache() throws Exception {
+        // ## Arrange ##
+        TypicalMixClsResolver.clearExpandedCache();
+        AtomicInteger provideCount = new AtomicInteger();
+        ListedClassificationProvider provider = createProvider(provideCount);
+        new CountingClsResolver(provider).findExpandedCls(provider, "MemberStatus");
+
+        // ## Act ##
+        TypicalMixClsResolver.clearExpandedCache();
+        new CountingClsResolver(provider).findExpandedCls(provider, "MemberStatus");
+
+        // ## Assert ##
+        assertEquals(2, provideCount.get());
+    }
+
+    // ===================================================================================
+    //                                                                        Select Index
+    //                                                                        ============
+    public void test_clsSelectIndex_inTable_compatibleScope() throws Exception {
+        // ## Arrange ##
+        Html html = new Html();
+        Td td = new Td();
+        td.getContent().add(createClsSelect("MemberStatus"));
+        Tr tr = new Tr();
+        tr.getThOrTd().add(td);
+        Table table = new Table();
+        table.getTr().add(tr);
+        html.getBody().getContent().add(table);
+        html.getBody().getContent().add(createClsSelect("PaymentMethod"));
+
+        // ## Act ##
+        ClsSelectIndex compatibleIndex = new ClsSelectIndex(html, false);
+        ClsSelectIndex deepIndex = new ClsSelectIndex(html, true);
+
+        // ## Assert ##
+        assertEquals(1, compatibleIndex.findSelectList(html).size()); // not in table as before
+        assertEquals(Arrays.asList("PaymentMethod"), new ArrayList<String>(compatibleIndex.getClassificationNameSet()));
+        assertEquals(2, deepIndex.findSelectList(html).size());
+    }
+
+    // ===================================================================================
+    //                                                                        Small Helper
+    //                                                                        ============
+    private static class CountingClsResolver extends TypicalMixClsResolver {
+
+        private final ListedClassificationProvider provider;
+        private int findCount;
+
+        public CountingClsResolver(ListedClassificationProvider provider) {
+            this.provider = provider;
+        }
+
+        @Override
+        protected ListedClassificationProvider findClassificationProvider() {
+            ++findCount;
+            return provider;
+        }
+    }
+
+    private Select createClsSelect(String classificationName) {
+        Select select = new Select();
+        Option option = new Option();
+        option.setData("cls", classificationName);
+        select.getOptgroupOrOption().add(option);
+        return select;
+    }
+
+    private ListedClassificationProvider createProvider(AtomicInteger provideCount) {
+        return newProxy(ListedClassificationProvider.class, (proxy, method, args) -> {
+            if (method.getName().equals("provide")) {
+                provideCount.incrementAndGet();
+                return createMeta((String) args[0]);
+            }
+            return null;
+        });
+    }
+
+    private ClassificationMeta createMeta(String classificationName) {
+        List<Classification> clsList = new ArrayList<Classification>();
+        for (String[] codeAlias : Arrays.asList(new String[] { "FML", "Formalized" }, new String[] { "PRV", "Provisional" },
+                new String[] { "WDL", "Withdrawal" })) {
+            clsList.add(newProxy(Classification.class, (proxy, method, args) -> {
+                if (method.getName().equals("code")) {
+                    return codeAlias[0];
+                } else if (method.getName().equals("alias")) {
+                    return codeAlias[1];
+                }
+                return null;
+            }));
+        }
+        return newProxy(ClassificationMeta.class, (proxy, method, args) -> {
+            if (method.getName().equals("listAll")) {
+                return clsList;
+            } else if (method.getName().equals("classificationName")) {
+                return classificationName;
+            }
+            return null;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T newProxy(Class<T> type, java.lang.reflect.InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) { // e.g. hashCode() as weak key
+                switch (method.getName()) {
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    return type.getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+                }
+            }
+            return handler.invoke(proxy, method, args);
+        });
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.lastaflute.mixer2.view.resolver;
+
+import org.dbflute.utflute.core.PlainTestCase;
+import org.lastaflute.mixer2.view.resolver.TypicalMixLayoutResolver.LayoutLocation;
+import org.lastaflute.mixer2.view.resolver.TypicalMixLayoutResolver.LayoutParts;
+import org.mixer2.jaxb.xhtml.Div;
+import org.mixer2.jaxb.xhtml.Footer;
+import org.mixer2.jaxb.xhtml.Header;
+import org.mixer2.jaxb.xhtml.Html;
+
+/**
+ * @author jflute
+ */
+public class TypicalMixLayoutResolverTest extends PlainTestCase {
+
+    // ===================================================================================
+    //                                                                     Layout Location
+    //                                                                     ===============
+    public void test_layoutLocation_first() throws Exception {
+        // ## Arrange ##
+        LayoutLocation location = new LayoutLocation();
+        Header first = new Header();
+        Footer footer = new Footer();
+
+        // ## Act ##
+        location.acceptHeader(first);
+        location.acceptHeader(new Header()); // allowed as before
+        location.acceptFooter(footer);
+
+        // ## Assert ##
+        assertSame(first, location.getHeader());
+        assertSame(footer, location.getFooter());
+    }
+
+    public void test_layoutLocation_duplicate() throws Exception {
+        // ## Arrange ##
+        LayoutLocation location = new LayoutLocation();
+        location.acceptHeader(new Header());
+        location.acceptHeader(new Header());
+
+        // ## Act ##
+        // ## Assert ##
+        try {
+            location.acceptHeader(new Header());
+            fail();
+        } catch (IllegalStateException e) {
+            log(e.getMessage());
+        }
+    }
+
+    // ===================================================================================
+    //                                                                        Layout Parts
+    //                                                                        ============
+    public void test_extractLayoutParts_withoutSupporterOption() throws Exception {
+        // ## Arrange ##
+        Html layout = new Html();
+        Div wrapper = new Div();
+        Header header = new Header();
+        wrapper.getContent().add(header);
+        layout.getBody().getContent().add(wrapper);
+        Footer footer = new Footer();
+        layout.getBody().getContent().add(footer);
+
+        // ## Act ##
+        LayoutParts parts = new TypicalMixLayoutResolver().extractLayoutParts("/common/layout.html", layout, null); // not use
+
+        // ## Assert ##
+        assertSame(header, parts.getHeader());
+        assertSame(footer, parts.getFooter());
+        assertSame(layout.getHead(), parts.getHead());
+    }
+}
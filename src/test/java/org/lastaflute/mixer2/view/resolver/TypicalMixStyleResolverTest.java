@@ -0,0 +1,79 @@
+/*
+ * Copyright 2015-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.lastaflute.mixer2.view.resolver;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.ServletContext;
+
+import org.dbflute.utflute.core.PlainTestCase;
+import org.lastaflute.mixer2.view.Mixer2AssetFingerprinter;
+
+/**
+ * @author jflute
+ */
+public class TypicalMixStyleResolverTest extends PlainTestCase {
+
+    // ===================================================================================
+    //                                                                 Asset Fingerprinter
+    //                                                                 ===================
+    public void test_findAssetFingerprinter_onePerServletContext() throws Exception {
+        // ## Arrange ##
+        ServletContext servletContext = createServletContext();
+        ServletContext otherContext = createServletContext(); // e.g. other application, redeployed
+
+        // ## Act ##
+        Mixer2AssetFingerprinter first = new TypicalMixStyleResolver().findAssetFingerprinter(servletContext);
+        Mixer2AssetFingerprinter second = new TypicalMixStyleResolver().findAssetFingerprinter(servletContext); // next request
+        Mixer2AssetFingerprinter other = new TypicalMixStyleResolver().findAssetFingerprinter(otherContext);
+
+        // ## Assert ##
+        assertSame(first, second);
+        assertNotSame(first, other);
+    }
+
+    public void test_findAssetFingerprinter_modifiedCheck_separated() throws Exception {
+        // ## Arrange ##
+        ServletContext servletContext = createServletContext();
+
+        // ## Act ##
+        Mixer2AssetFingerprinter plain = new TypicalMixStyleResolver().findAssetFingerprinter(servletContext);
+        TypicalMixStyleResolver checkedResolver = new TypicalMixStyleResolver().useAssetModifiedCheck();
+        Mixer2AssetFingerprinter checked = checkedResolver.findAssetFingerprinter(servletContext);
+
+        // ## Assert ##
+        assertNotSame(plain, checked);
+        assertSame(checked, checkedResolver.findAssetFingerprinter(servletContext));
+    }
+
+    // ===================================================================================
+    //                                                                        Small Helper
+    //                                                                        ============
+    private ServletContext createServletContext() {
+        Map<String, Object> attributeMap = new HashMap<String, Object>();
+        return (ServletContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ServletContext.class },
+                (proxy, method, args) -> {
+                    if (method.getName().equals("getAttribute")) {
+                        return attributeMap.get(args[0]);
+                    } else if (method.getName().equals("setAttribute")) {
+                        attributeMap.put((String) args[0], args[1]);
+                    }
+                    return null;
+                });
+    }
+}